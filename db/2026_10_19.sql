@@ -0,0 +1,18 @@
+ALTER TABLE `xiaozhi`.`sys_role` 
+ADD COLUMN `modelGroup` varchar(255) DEFAULT NULL COMMENT 'LLM路由组，格式 configId[:weight],...' AFTER modelId;
+
+ALTER TABLE `xiaozhi`.`sys_message`
+ADD INDEX `idx_device_role_time` (`deviceId`, `roleId`, `createTime`);
+
+-- 聊天记录键集分页：按设备和全量按时间倒序翻页
+ALTER TABLE `xiaozhi`.`sys_message`
+ADD INDEX `idx_device_time` (`deviceId`, `createTime`),
+ADD INDEX `idx_create_time` (`createTime`);
+
+-- 设备消息数计数列，替代列表查询中的COUNT子查询
+ALTER TABLE `xiaozhi`.`sys_device`
+ADD COLUMN `totalMessage` int NOT NULL DEFAULT 0 COMMENT '有效消息数，随消息写入累加，定时校正' AFTER lastLogin,
+ADD INDEX `roleId` (`roleId`);
+
+UPDATE `xiaozhi`.`sys_device`
+SET totalMessage = (SELECT COUNT(*) FROM `xiaozhi`.`sys_message` WHERE sys_message.deviceId = sys_device.deviceId AND sys_message.state = '1');
@@ -68,9 +68,11 @@ CREATE TABLE `xiaozhi`.`sys_device` (
   `createTime` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updateTime` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `lastLogin` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最后登录时间',
+  `totalMessage` int NOT NULL DEFAULT 0 COMMENT '有效消息数，随消息写入累加，定时校正',
   PRIMARY KEY (`deviceId`),
   KEY `deviceName` (`deviceName`),
-  KEY `userId` (`userId`)
+  KEY `userId` (`userId`),
+  KEY `roleId` (`roleId`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='设备信息表';
 
 -- xiaozhi.sys_message definition
@@ -88,7 +90,10 @@ CREATE TABLE `xiaozhi`.`sys_message` (
   `createTime` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '消息发送时间',
   PRIMARY KEY (`messageId`),
   KEY `deviceId` (`deviceId`),
-  KEY `sessionId` (`sessionId`)
+  KEY `sessionId` (`sessionId`),
+  KEY `idx_device_role_time` (`deviceId`, `roleId`, `createTime`),
+  KEY `idx_device_time` (`deviceId`, `createTime`),
+  KEY `idx_create_time` (`createTime`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='人与AI对话消息表';
 
 -- xiaozhi.sys_role definition
@@ -100,6 +105,7 @@ CREATE TABLE `xiaozhi`.`sys_role` (
   `avatar` varchar(255) DEFAULT NULL COMMENT '角色头像',
   `ttsId` int DEFAULT NULL COMMENT 'TTS服务ID',
   `modelId` int unsigned DEFAULT NULL COMMENT '模型ID',
+  `modelGroup` varchar(255) DEFAULT NULL COMMENT 'LLM路由组，格式 configId[:weight],...',
   `sttId` int unsigned DEFAULT NULL COMMENT 'STT服务ID',
   `vadSpeechTh` FLOAT DEFAULT 0.5 COMMENT '语音检测阈值',
   `vadSilenceTh` FLOAT DEFAULT 0.3 COMMENT '静音检测阈值',
@@ -0,0 +1,315 @@
+package com.xiaozhi.common.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有容量上限和写入过期时间的缓存
+ * 按访问顺序淘汰最久未使用的条目；过期条目在访问时删除，写入时顺带清理。
+ * 注册了加载器时，命中超过刷新时间的条目会先返回旧值，再在虚拟线程中重新加载（refresh-ahead），
+ * 避免热点角色/配置过期瞬间所有请求都回源。
+ * get(key, valueLoader)对同一个key同时只加载一次，其余调用等待同一次加载的结果。
+ */
+public class BoundedCache extends AbstractValueAdaptingCache {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedCache.class);
+
+    private final String name;
+    private final CacheSpec spec;
+    private final long expireNanos;
+    private final long refreshNanos;
+    private final NearCacheInvalidator invalidator;
+    private volatile Function<Object, Object> loader;
+
+    private final LinkedHashMap<Object, Entry> store;
+    // 正在通过get(key, valueLoader)加载的key
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private long lastPurgeNanos = System.nanoTime();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    private static final class Entry {
+        final Object value;
+        final long writeNanos = System.nanoTime();
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        Entry(Object value) {
+            this.value = value;
+        }
+    }
+
+    public BoundedCache(String name, CacheSpec spec, NearCacheInvalidator invalidator) {
+        super(true);
+        this.name = name;
+        this.spec = spec;
+        this.expireNanos = spec.expireAfterWrite().toNanos();
+        this.refreshNanos = spec.refreshAfterWrite().toNanos();
+        this.invalidator = invalidator;
+        this.store = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                if (size() > spec.maxSize()) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 设置刷新用的加载器，返回null表示数据已不存在
+     */
+    void setLoader(Function<Object, Object> loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return store;
+    }
+
+    public CacheSpec getSpec() {
+        return spec;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Entry entry;
+        long now = System.nanoTime();
+        synchronized (store) {
+            entry = store.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                store.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (refreshNanos > 0 && now - entry.writeNanos > refreshNanos) {
+            refreshAhead(key, entry);
+        }
+        return entry.value;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return expireNanos > 0 && now - entry.writeNanos > expireNanos;
+    }
+
+    private void refreshAhead(Object key, Entry entry) {
+        Function<Object, Object> currentLoader = loader;
+        if (currentLoader == null || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.startVirtualThread(() -> {
+            try {
+                Object value = currentLoader.apply(key);
+                synchronized (store) {
+                    // 刷新期间条目被删除或覆盖时放弃本次结果
+                    if (store.get(key) == entry) {
+                        if (value == null) {
+                            store.remove(key);
+                        } else {
+                            store.put(key, new Entry(toStoreValue(value)));
+                        }
+                    }
+                }
+                refreshes.increment();
+            } catch (Exception e) {
+                entry.refreshing.set(false);
+                logger.warn("缓存 {} 刷新失败 - key: {}, {}", name, key, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object storeValue = lookup(key);
+        if (storeValue != null) {
+            return (T) fromStoreValue(storeValue);
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // 其他线程正在加载同一个key，等待它的结果
+            try {
+                return (T) fromStoreValue(inFlight.join());
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            // 上一次加载可能在本次查询之后刚刚写入
+            storeValue = peek(key);
+            if (storeValue == null) {
+                storeValue = toStoreValue(valueLoader.call());
+                putLoaded(key, storeValue, future);
+            }
+            future.complete(storeValue);
+            return (T) fromStoreValue(storeValue);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    // 不计入命中统计地读取未过期的值
+    private Object peek(Object key) {
+        synchronized (store) {
+            Entry entry = store.get(key);
+            return entry == null || isExpired(entry, System.nanoTime()) ? null : entry.value;
+        }
+    }
+
+    // 加载期间key被删除时不写入，避免把删除前读到的旧值放回缓存
+    private void putLoaded(Object key, Object storeValue, CompletableFuture<Object> future) {
+        Entry entry = new Entry(storeValue);
+        synchronized (store) {
+            if (loading.get(key) != future) {
+                return;
+            }
+            store.put(key, entry);
+            purgeExpired(entry.writeNanos);
+        }
+        puts.increment();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Entry entry = new Entry(toStoreValue(value));
+        synchronized (store) {
+            store.put(key, entry);
+            purgeExpired(entry.writeNanos);
+        }
+        puts.increment();
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long now = System.nanoTime();
+        synchronized (store) {
+            Entry existing = store.get(key);
+            if (existing != null && !isExpired(existing, now)) {
+                return toValueWrapper(existing.value);
+            }
+            store.put(key, new Entry(toStoreValue(value)));
+            purgeExpired(now);
+        }
+        puts.increment();
+        return null;
+    }
+
+    // 每隔半个过期时间清理一次未被访问到的过期条目，需持有store锁
+    private void purgeExpired(long now) {
+        if (expireNanos <= 0 || now - lastPurgeNanos < expireNanos / 2) {
+            return;
+        }
+        lastPurgeNanos = now;
+        Iterator<Entry> iterator = store.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+                expirations.increment();
+            }
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        invalidateLocal(key);
+        invalidator.invalidated(name, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean removed;
+        synchronized (store) {
+            removed = store.remove(key) != null;
+            loading.remove(key);
+        }
+        invalidator.invalidated(name, key);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        invalidateLocal(null);
+        invalidator.invalidated(name, null);
+    }
+
+    /**
+     * 只删除本地条目，不通知其他节点，key为null时清空
+     */
+    public void invalidateLocal(Object key) {
+        synchronized (store) {
+            if (key == null) {
+                store.clear();
+                loading.clear();
+            } else {
+                store.remove(key);
+                loading.remove(key);
+            }
+        }
+    }
+
+    public long size() {
+        synchronized (store) {
+            return store.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long putCount() {
+        return puts.sum();
+    }
+
+    /**
+     * 因容量淘汰和过期删除的条目数
+     */
+    public long evictionCount() {
+        return evictions.sum() + expirations.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    public long refreshCount() {
+        return refreshes.sum();
+    }
+}
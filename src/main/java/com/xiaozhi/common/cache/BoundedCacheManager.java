@@ -0,0 +1,90 @@
+package com.xiaozhi.common.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 有界缓存管理器，替代默认的ConcurrentMapCacheManager
+ * 每个缓存按名称使用各自的容量与过期策略，未单独配置的使用默认策略；缓存首次使用时创建并注册指标。
+ */
+public class BoundedCacheManager implements CacheManager {
+
+    private final Map<String, CacheSpec> specs;
+    private final CacheSpec defaultSpec;
+    private final NearCacheInvalidator invalidator;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, BoundedCache> caches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Function<Object, Object>> loaders = new ConcurrentHashMap<>();
+
+    /**
+     * @param specs         按缓存名称配置的策略
+     * @param defaultSpec   默认策略
+     * @param invalidator   近端缓存失效钩子，为null时不通知
+     * @param meterRegistry 指标注册表，为null时不注册指标
+     */
+    public BoundedCacheManager(Map<String, CacheSpec> specs, CacheSpec defaultSpec,
+                               NearCacheInvalidator invalidator, MeterRegistry meterRegistry) {
+        this.specs = Map.copyOf(specs);
+        this.defaultSpec = defaultSpec;
+        this.invalidator = invalidator != null ? invalidator : NearCacheInvalidator.NONE;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    private BoundedCache createCache(String name) {
+        BoundedCache cache = new BoundedCache(name, specs.getOrDefault(name, defaultSpec), invalidator);
+        Function<Object, Object> loader = loaders.get(name);
+        if (loader != null) {
+            cache.setLoader(loader);
+        }
+        if (meterRegistry != null) {
+            new BoundedCacheMetrics(cache, Tags.of("cacheManager", "bounded")).bindTo(meterRegistry);
+        }
+        return cache;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * 注册缓存的刷新加载器，配置了refreshAfterWrite的缓存在条目临近过期时用它重新加载
+     *
+     * @param name   缓存名称
+     * @param loader 按key加载最新值，数据不存在时返回null
+     */
+    public void registerLoader(String name, Function<Object, Object> loader) {
+        loaders.put(name, loader);
+        BoundedCache cache = caches.get(name);
+        if (cache != null) {
+            cache.setLoader(loader);
+        }
+    }
+
+    /**
+     * 收到其他节点的失效通知时调用，只删除本地条目，不再向外通知
+     *
+     * @param name 缓存名称
+     * @param key  缓存key，为null时清空整个缓存
+     */
+    public void invalidateLocal(String name, Object key) {
+        BoundedCache cache = caches.get(name);
+        if (cache != null) {
+            cache.invalidateLocal(key);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.xiaozhi.common.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * 将缓存的命中、未命中、写入、淘汰和刷新次数注册到Micrometer，可通过 /actuator/metrics/cache.gets 等查看
+ */
+public class BoundedCacheMetrics extends CacheMeterBinder<BoundedCache> {
+
+    public BoundedCacheMetrics(BoundedCache cache, Iterable<Tag> tags) {
+        super(cache, cache.getName(), tags);
+    }
+
+    @Override
+    protected Long size() {
+        BoundedCache cache = getCache();
+        return cache == null ? null : cache.size();
+    }
+
+    @Override
+    protected long hitCount() {
+        BoundedCache cache = getCache();
+        return cache == null ? 0 : cache.hitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        BoundedCache cache = getCache();
+        return cache == null ? null : cache.missCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        BoundedCache cache = getCache();
+        return cache == null ? null : cache.evictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        BoundedCache cache = getCache();
+        return cache == null ? 0 : cache.putCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        BoundedCache cache = getCache();
+        FunctionCounter.builder("cache.refreshes", cache, BoundedCache::refreshCount)
+                .tags(getTagsWithCacheName())
+                .description("The number of entries reloaded ahead of expiry")
+                .register(registry);
+        FunctionCounter.builder("cache.expirations", cache, BoundedCache::expirationCount)
+                .tags(getTagsWithCacheName())
+                .description("The number of entries removed after expiry")
+                .register(registry);
+    }
+}
@@ -0,0 +1,26 @@
+package com.xiaozhi.common.cache;
+
+import java.time.Duration;
+
+/**
+ * 单个缓存的容量与过期策略
+ *
+ * @param maxSize           最大条目数，超出后淘汰最久未访问的条目
+ * @param expireAfterWrite  写入后过期时间，为0表示不过期
+ * @param refreshAfterWrite 写入后多久在命中时提前异步刷新，为0表示不刷新；需要注册加载器才生效
+ */
+public record CacheSpec(int maxSize, Duration expireAfterWrite, Duration refreshAfterWrite) {
+
+    public CacheSpec {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize必须大于0");
+        }
+        expireAfterWrite = expireAfterWrite == null ? Duration.ZERO : expireAfterWrite;
+        refreshAfterWrite = refreshAfterWrite == null ? Duration.ZERO : refreshAfterWrite;
+    }
+
+    public static CacheSpec of(int maxSize, long expireAfterWriteSeconds, long refreshAfterWriteSeconds) {
+        return new CacheSpec(maxSize, Duration.ofSeconds(expireAfterWriteSeconds),
+                Duration.ofSeconds(refreshAfterWriteSeconds));
+    }
+}
@@ -0,0 +1,21 @@
+package com.xiaozhi.common.cache;
+
+/**
+ * 近端缓存失效钩子
+ * 多节点部署时，本节点缓存条目被删除或清空后通过该钩子通知其他节点（如消息队列、Redis发布订阅），
+ * 其他节点收到通知后调用 {@link BoundedCacheManager#invalidateLocal(String, Object)} 删除本地副本。
+ * 单节点部署无需实现。
+ */
+public interface NearCacheInvalidator {
+
+    NearCacheInvalidator NONE = (cacheName, key) -> {
+    };
+
+    /**
+     * 本地缓存条目已失效
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存key，为null表示整个缓存已清空
+     */
+    void invalidated(String cacheName, Object key);
+}
@@ -0,0 +1,62 @@
+package com.xiaozhi.common.config;
+
+import com.xiaozhi.common.cache.BoundedCacheManager;
+import com.xiaozhi.common.cache.CacheSpec;
+import com.xiaozhi.common.cache.NearCacheInvalidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * 缓存配置
+ * 设备、角色、配置缓存分别限制容量和过期时间，角色和配置在过期前异步刷新。
+ * 需要多节点同步失效时，注册一个 {@link NearCacheInvalidator} Bean即可。
+ */
+@Configuration
+public class CacheConfig {
+
+    @Value("${xiaozhi.cache.default.max-size:1000}")
+    private int defaultMaxSize;
+
+    @Value("${xiaozhi.cache.default.expire-seconds:600}")
+    private long defaultExpireSeconds;
+
+    @Value("${xiaozhi.cache.device.max-size:20000}")
+    private int deviceMaxSize;
+
+    @Value("${xiaozhi.cache.device.expire-seconds:600}")
+    private long deviceExpireSeconds;
+
+    @Value("${xiaozhi.cache.role.max-size:2000}")
+    private int roleMaxSize;
+
+    @Value("${xiaozhi.cache.role.expire-seconds:1800}")
+    private long roleExpireSeconds;
+
+    @Value("${xiaozhi.cache.role.refresh-seconds:600}")
+    private long roleRefreshSeconds;
+
+    @Value("${xiaozhi.cache.config.max-size:1000}")
+    private int configMaxSize;
+
+    @Value("${xiaozhi.cache.config.expire-seconds:1800}")
+    private long configExpireSeconds;
+
+    @Value("${xiaozhi.cache.config.refresh-seconds:600}")
+    private long configRefreshSeconds;
+
+    @Bean
+    public BoundedCacheManager cacheManager(ObjectProvider<NearCacheInvalidator> invalidator,
+                                            ObjectProvider<MeterRegistry> meterRegistry) {
+        Map<String, CacheSpec> specs = Map.of(
+                "XiaoZhi:SysDevice", CacheSpec.of(deviceMaxSize, deviceExpireSeconds, 0),
+                "XiaoZhi:SysRole", CacheSpec.of(roleMaxSize, roleExpireSeconds, roleRefreshSeconds),
+                "XiaoZhi:SysConfig", CacheSpec.of(configMaxSize, configExpireSeconds, configRefreshSeconds));
+        return new BoundedCacheManager(specs, CacheSpec.of(defaultMaxSize, defaultExpireSeconds, 0),
+                invalidator.getIfAvailable(), meterRegistry.getIfAvailable());
+    }
+}
@@ -0,0 +1,121 @@
+package com.xiaozhi.common.config;
+
+import com.xiaozhi.common.datasource.ReadReplica;
+import com.xiaozhi.common.datasource.ReadReplicaInterceptor;
+import com.xiaozhi.common.datasource.ReplicaDataSource;
+import com.xiaozhi.common.datasource.RoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * 读写分离数据源配置
+ * 配置了xiaozhi.datasource.replica.urls时启用，主库沿用spring.datasource.*及其hikari连接池配置，
+ * 从库使用单独的连接池大小配置，避免后台查询占满主库连接影响实时对话的写入。
+ * 未配置从库时不加载，仍使用Spring Boot默认的单数据源。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "xiaozhi.datasource.replica", name = "urls")
+public class DataSourceConfig {
+
+    @Value("${xiaozhi.datasource.replica.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${xiaozhi.datasource.replica.username:}")
+    private String replicaUsername;
+
+    @Value("${xiaozhi.datasource.replica.password:}")
+    private String replicaPassword;
+
+    @Value("${xiaozhi.datasource.replica.maximum-pool-size:20}")
+    private int replicaMaxPoolSize;
+
+    @Value("${xiaozhi.datasource.replica.minimum-idle:2}")
+    private int replicaMinIdle;
+
+    @Value("${xiaozhi.datasource.replica.connection-timeout-ms:3000}")
+    private long replicaConnectionTimeoutMs;
+
+    // 复制状态查询语句，留空时只检查连接（如本地测试用的H2）
+    @Value("${xiaozhi.datasource.replica.lag-query:SHOW REPLICA STATUS}")
+    private String replicaLagQuery;
+
+    @Value("${xiaozhi.datasource.replica.max-lag-seconds:5}")
+    private long replicaMaxLagSeconds;
+
+    @Value("${xiaozhi.datasource.replica.check-interval-seconds:5}")
+    private long replicaCheckIntervalSeconds;
+
+    @Bean(destroyMethod = "close")
+    public RoutingDataSource routingDataSource(DataSourceProperties properties, Environment environment,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        bindMetrics(primary, meterRegistry);
+
+        List<ReplicaDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("ReplicaHikariCP-" + i);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(replicaUrls.get(i).trim());
+            replica.setUsername(StringUtils.hasText(replicaUsername) ? replicaUsername : properties.determineUsername());
+            replica.setPassword(StringUtils.hasText(replicaPassword) ? replicaPassword : properties.determinePassword());
+            replica.setMaximumPoolSize(replicaMaxPoolSize);
+            replica.setMinimumIdle(replicaMinIdle);
+            replica.setConnectionTimeout(replicaConnectionTimeoutMs);
+            replica.setReadOnly(true);
+            bindMetrics(replica, meterRegistry);
+            replicas.add(new ReplicaDataSource(replica, replicaLagQuery, replicaMaxLagSeconds));
+        }
+        return new RoutingDataSource(primary, replicas, replicaCheckIntervalSeconds);
+    }
+
+    /**
+     * 延迟到第一条语句执行时才获取连接，此时事务的只读标记已经设置，可以据此选择主库或从库
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(RoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readReplicaAdvisor() {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(ReadReplica.class), new ReadReplicaInterceptor());
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    private static void bindMetrics(HikariDataSource dataSource, ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        }
+    }
+}
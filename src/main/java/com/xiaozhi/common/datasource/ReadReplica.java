@@ -0,0 +1,18 @@
+package com.xiaozhi.common.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记方法内的查询可以走只读从库
+ * 只在未开启读写事务时生效，读写事务内的查询仍然走主库；没有可用从库时回退到主库。
+ * 适合管理后台列表、历史记录、导出等允许短暂延迟的查询。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReadReplica {
+}
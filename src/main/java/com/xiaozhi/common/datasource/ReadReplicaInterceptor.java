@@ -0,0 +1,20 @@
+package com.xiaozhi.common.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * 在 {@link ReadReplica} 方法执行期间开启只读路由
+ */
+public class ReadReplicaInterceptor implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        ReadRouteContext.enter();
+        try {
+            return invocation.proceed();
+        } finally {
+            ReadRouteContext.exit();
+        }
+    }
+}
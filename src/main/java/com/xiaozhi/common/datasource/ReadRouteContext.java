@@ -0,0 +1,27 @@
+package com.xiaozhi.common.datasource;
+
+/**
+ * 当前线程是否处于只读路由中，支持嵌套调用
+ */
+public final class ReadRouteContext {
+
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private ReadRouteContext() {
+    }
+
+    public static void enter() {
+        DEPTH.get()[0]++;
+    }
+
+    public static void exit() {
+        int[] depth = DEPTH.get();
+        if (--depth[0] <= 0) {
+            DEPTH.remove();
+        }
+    }
+
+    public static boolean isReadOnly() {
+        return DEPTH.get()[0] > 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.xiaozhi.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 只读从库连接池及其健康状态
+ * 定时检查连接是否可用以及复制延迟，延迟超过阈值或复制中断时暂停路由，恢复后自动重新加入。
+ */
+public class ReplicaDataSource {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+    private final HikariDataSource dataSource;
+    private final String lagQuery;
+    private final long maxLagSeconds;
+
+    private volatile boolean available = true;
+    private volatile long lagSeconds;
+
+    /**
+     * @param dataSource    从库连接池
+     * @param lagQuery      查询复制状态的语句，为空时只检查连接
+     * @param maxLagSeconds 允许的最大复制延迟
+     */
+    public ReplicaDataSource(HikariDataSource dataSource, String lagQuery, long maxLagSeconds) {
+        this.dataSource = dataSource;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    public HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    public String getName() {
+        return dataSource.getPoolName();
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public long getLagSeconds() {
+        return lagSeconds;
+    }
+
+    /**
+     * 检查连接和复制延迟，更新可用状态
+     */
+    public void check() {
+        boolean wasAvailable = available;
+        try (Connection connection = dataSource.getConnection()) {
+            long lag = StringUtils.hasText(lagQuery) ? queryLag(connection) : 0;
+            lagSeconds = lag;
+            available = lag >= 0 && lag <= maxLagSeconds;
+        } catch (Exception e) {
+            available = false;
+            logger.debug("从库检查失败 - {}: {}", getName(), e.getMessage());
+        }
+        if (wasAvailable != available) {
+            if (available) {
+                logger.info("从库恢复可用 - {}, 延迟: {}秒", getName(), lagSeconds);
+            } else {
+                logger.warn("从库暂停使用 - {}, 延迟: {}秒", getName(), lagSeconds);
+            }
+        }
+    }
+
+    /**
+     * 返回复制延迟秒数，复制中断时返回-1；未配置复制的实例视为无延迟
+     */
+    private long queryLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(lagQuery)) {
+            if (!rs.next()) {
+                return 0;
+            }
+            Object lag = column(rs, "Seconds_Behind_Source");
+            if (lag == null) {
+                lag = column(rs, "Seconds_Behind_Master");
+            }
+            return lag == null ? -1 : Long.parseLong(lag.toString());
+        }
+    }
+
+    private static Object column(ResultSet rs, String label) {
+        try {
+            return rs.getObject(label);
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    public void close() {
+        dataSource.close();
+    }
+}
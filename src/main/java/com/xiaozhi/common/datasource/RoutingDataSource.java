@@ -0,0 +1,107 @@
+package com.xiaozhi.common.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * 读写分离数据源
+ * 只读事务和 {@link ReadReplica} 方法中的查询轮询可用的从库，其余都走主库；从库全部不可用或获取连接失败时回退到主库。
+ * 路由在获取连接时决定，需要包装在LazyConnectionDataSourceProxy中，保证事务的只读标记在获取连接前已经设置。
+ */
+public class RoutingDataSource extends AbstractDataSource {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<ReplicaDataSource> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RoutingDataSource(DataSource primary, List<ReplicaDataSource> replicas, long checkIntervalSeconds) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        if (!this.replicas.isEmpty()) {
+            scheduler.scheduleWithFixedDelay(this::checkReplicas, 0, checkIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReplicaDataSource replica = selectReplica();
+        if (replica != null) {
+            try {
+                return replica.getDataSource().getConnection();
+            } catch (SQLException e) {
+                logger.warn("获取从库连接失败，回退到主库 - {}: {}", replica.getName(), e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * 当前线程需要读路由时选择一个可用的从库，否则返回null
+     */
+    private ReplicaDataSource selectReplica() {
+        if (replicas.isEmpty() || !isReadRoute()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicaDataSource replica = replicas.get((start + i) % replicas.size());
+            if (replica.isAvailable()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isReadRoute() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return true;
+        }
+        // 读写事务中的查询必须看到本事务的写入
+        return !TransactionSynchronizationManager.isActualTransactionActive() && ReadRouteContext.isReadOnly();
+    }
+
+    private void checkReplicas() {
+        for (ReplicaDataSource replica : replicas) {
+            replica.check();
+        }
+    }
+
+    public List<ReplicaDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+        replicas.forEach(ReplicaDataSource::close);
+        if (primary instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                logger.warn("关闭主库连接池失败: {}", e.getMessage());
+            }
+        }
+    }
+}
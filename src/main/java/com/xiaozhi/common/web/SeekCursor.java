@@ -0,0 +1,48 @@
+package com.xiaozhi.common.web;
+
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 键集分页游标
+ * 记录上一页最后一条记录的(时间, ID)，对外编码为不透明的字符串，客户端原样传回即可。
+ *
+ * @param time 时间戳（毫秒）
+ * @param id   记录ID
+ */
+public record SeekCursor(long time, int id) {
+
+    public static SeekCursor of(Date time, Integer id) {
+        return new SeekCursor(time.getTime(), id);
+    }
+
+    public Date getDate() {
+        return new Date(time);
+    }
+
+    public String encode() {
+        String raw = time + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，为空时返回null
+     *
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static SeekCursor decode(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = raw.indexOf(':');
+            return new SeekCursor(Long.parseLong(raw.substring(0, index)), Integer.parseInt(raw.substring(index + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.xiaozhi.common.web;
+
+import java.util.List;
+
+/**
+ * 键集分页结果
+ *
+ * @param list       本页数据
+ * @param nextCursor 下一页游标，没有下一页时为null
+ * @param hasMore    是否还有下一页
+ * @param total      总条数，未要求统计时为null
+ */
+public record SeekPage<T>(List<T> list, String nextCursor, boolean hasMore, Long total) {
+}
@@ -4,14 +4,17 @@ import com.xiaozhi.communication.domain.iot.IotDescriptor;
 import com.xiaozhi.dialogue.llm.memory.Conversation;
 import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
 import com.xiaozhi.dialogue.llm.tool.mcp.device.DeviceMcpHolder;
+import com.xiaozhi.dialogue.service.DialogueContext;
+import com.xiaozhi.dialogue.service.RoleSnapshot;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.enums.ListenMode;
 import com.xiaozhi.utils.AudioUtils;
 import lombok.Data;
 import org.springframework.ai.tool.ToolCallback;
-import reactor.core.publisher.Sinks;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -70,7 +73,7 @@ public abstract class ChatSession {
     /**
      * 会话的音频数据流
      */
-    protected Sinks.Many<byte[]> audioSinks;
+    protected SttAudioStream audioStream;
     /**
      * 会话是否正在进行流式识别
      */
@@ -88,9 +91,20 @@ public abstract class ChatSession {
     // --------------------设备mcp-------------------------
     private DeviceMcpHolder deviceMcpHolder = new DeviceMcpHolder();
 
+    /**
+     * 对话上下文，持有对话、播放和VAD的会话级状态，会话关闭时统一释放
+     */
+    private final DialogueContext dialogueContext;
+
+    /**
+     * 当前角色及其配置的解析快照，角色或配置变更后置空，下次使用时重新解析
+     */
+    private volatile RoleSnapshot roleSnapshot;
+
     public ChatSession(String sessionId) {
         this.sessionId = sessionId;
         this.lastActivityTime = Instant.now();
+        this.dialogueContext = new DialogueContext(sessionId);
     }
 
     public void setAttribute(String key, Object value) {
@@ -180,6 +194,15 @@ public abstract class ChatSession {
 
     public abstract void sendBinaryMessage(byte[] message);
 
+    /**
+     * 发送缓冲区中剩余的数据，不改变缓冲区的位置；默认复制为数组发送，支持直接发送缓冲区的实现可以覆盖
+     */
+    public void sendBinaryMessage(ByteBuffer message) {
+        byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        sendBinaryMessage(bytes);
+    }
+
     /**
      * 设置 Conversation，需要与当前活跃角色一致。
      * 当切换角色时，会释放当前 Conversation，并新建一个对应于新角色的Conversation。
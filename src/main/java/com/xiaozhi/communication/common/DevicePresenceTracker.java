@@ -0,0 +1,155 @@
+package com.xiaozhi.communication.common;
+
+import com.xiaozhi.dao.DeviceMapper;
+import com.xiaozhi.entity.DevicePresence;
+import com.xiaozhi.entity.SysDevice;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备在线状态跟踪
+ * 设备上下线只更新内存中的状态并标记为待写入，后台按固定间隔把变化过的设备批量写入数据库。
+ * 同一设备在一个间隔内反复上下线只保留最后的状态，只写一次；在线状态直接从内存读取，不查询数据库。
+ */
+@Component
+public class DevicePresenceTracker {
+    private static final Logger logger = LoggerFactory.getLogger(DevicePresenceTracker.class);
+
+    // 单条UPDATE语句最多更新的设备数量
+    private static final int FLUSH_CHUNK_SIZE = 200;
+
+    @Value("${xiaozhi.device.presence.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    @Resource
+    private DeviceMapper deviceMapper;
+
+    // 当前节点已知的设备状态
+    private final Map<String, DevicePresence> presences = new ConcurrentHashMap<>();
+
+    // 尚未写入数据库的状态，同一设备只保留最新的一条
+    private final Map<String, DevicePresence> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    public void init() {
+        // 项目启动时，将上次运行遗留的在线设备设置为离线
+        scheduler.execute(() -> {
+            try {
+                int updatedRows = deviceMapper.resetOnlineState();
+                logger.info("项目启动，重置 {} 个设备状态为离线", updatedRows);
+            } catch (Exception e) {
+                logger.error("项目启动时设置设备状态为离线失败", e);
+            }
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("设备在线状态跟踪已启动，写入间隔: {}ms", flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写入关闭前剩余的状态变化
+        flush();
+    }
+
+    /**
+     * 设备上线，同一设备的内存状态和待写入状态在同一把锁内更新
+     */
+    public void online(String deviceId, String sessionId, String ip, String location) {
+        DevicePresence presence = new DevicePresence(deviceId, sessionId, SysDevice.DEVICE_STATE_ONLINE, new Date(), ip, location);
+        presences.compute(deviceId, (id, current) -> {
+            pending.put(id, presence);
+            return presence;
+        });
+    }
+
+    /**
+     * 设备下线，只有关闭的是设备当前的会话时才生效，避免重连后旧连接的关闭把设备标记为离线
+     */
+    public void offline(String deviceId, String sessionId) {
+        DevicePresence presence = new DevicePresence(deviceId, sessionId, SysDevice.DEVICE_STATE_OFFLINE, new Date(), null, null);
+        presences.compute(deviceId, (id, current) -> {
+            if (current != null && sessionId != null && !sessionId.equals(current.getSessionId())) {
+                return current;
+            }
+            pending.put(id, presence);
+            return presence;
+        });
+    }
+
+    public DevicePresence getPresence(String deviceId) {
+        return presences.get(deviceId);
+    }
+
+    public boolean isOnline(String deviceId) {
+        DevicePresence presence = presences.get(deviceId);
+        return presence != null && SysDevice.DEVICE_STATE_ONLINE.equals(presence.getState());
+    }
+
+    /**
+     * 用内存中的在线状态覆盖从数据库查询到的设备状态，弥补尚未写入的变化
+     */
+    public void applyTo(List<SysDevice> devices) {
+        for (SysDevice device : devices) {
+            DevicePresence presence = presences.get(device.getDeviceId());
+            if (presence != null) {
+                device.setState(presence.getState());
+            }
+        }
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * 批量写入待写入的状态，写入失败的放回待写入队列，期间产生的新状态优先
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<DevicePresence> batch = new ArrayList<>(pending.size());
+        for (DevicePresence presence : pending.values()) {
+            // 只取走当前这一条，写入期间更新的状态留到下一次
+            if (pending.remove(presence.getDeviceId(), presence)) {
+                batch.add(presence);
+            }
+        }
+        for (int i = 0; i < batch.size(); i += FLUSH_CHUNK_SIZE) {
+            List<DevicePresence> chunk = batch.subList(i, Math.min(i + FLUSH_CHUNK_SIZE, batch.size()));
+            try {
+                deviceMapper.updatePresence(chunk);
+            } catch (Exception e) {
+                logger.warn("批量写入 {} 个设备状态失败，下次重试: {}", chunk.size(), e.getMessage());
+                chunk.forEach(presence -> pending.putIfAbsent(presence.getDeviceId(), presence));
+                continue;
+            }
+            // 离线设备写入成功后不再保留在内存中，写入失败的保留，避免查询时读到数据库中过期的在线状态
+            chunk.stream()
+                    .filter(presence -> SysDevice.DEVICE_STATE_OFFLINE.equals(presence.getState()))
+                    .forEach(presence -> presences.remove(presence.getDeviceId(), presence));
+        }
+    }
+}
@@ -9,16 +9,15 @@ import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
 import com.xiaozhi.dialogue.service.AudioService;
 import com.xiaozhi.dialogue.service.DialogueService;
 import com.xiaozhi.dialogue.service.IotService;
+import com.xiaozhi.dialogue.service.RoleSnapshot;
+import com.xiaozhi.dialogue.service.RoleSnapshotService;
 import com.xiaozhi.dialogue.service.VadService;
 import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
 import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
-import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.enums.ListenState;
-import com.xiaozhi.service.SysConfigService;
 import com.xiaozhi.service.SysDeviceService;
-import com.xiaozhi.service.SysRoleService;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +26,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
-import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
@@ -40,6 +37,9 @@ public class MessageHandler {
     @Resource
     private SysDeviceService deviceService;
 
+    @Resource
+    private DevicePresenceTracker presenceTracker;
+
     @Resource
     private AudioService audioService;
 
@@ -53,7 +53,7 @@ public class MessageHandler {
     private SessionManager sessionManager;
 
     @Resource
-    private SysConfigService configService;
+    private RoleSnapshotService roleSnapshotService;
 
     @Resource
     private DialogueService dialogueService;
@@ -76,9 +76,6 @@ public class MessageHandler {
     @Resource
     private ToolsGlobalRegistry toolsGlobalRegistry;
 
-    @Resource
-    private SysRoleService roleService;
-
     // 用于存储设备ID和验证码生成状态的映射
     private final Map<String, Boolean> captchaGenerationInProgress = new ConcurrentHashMap<>();
 
@@ -105,25 +102,24 @@ public class MessageHandler {
             ToolsSessionHolder toolsSessionHolder = new ToolsSessionHolder(chatSession.getSessionId(),
                     device, toolsGlobalRegistry);
             chatSession.setFunctionSessionHolder(toolsSessionHolder);
-            // 从数据库获取角色描述。device.getRoleId()表示当前设备的当前活跃角色，或者上次退出时的活跃角色。
-            SysRole role = roleService.selectRoleById(device.getRoleId());
+            // 解析角色及其配置的快照。device.getRoleId()表示当前设备的当前活跃角色，或者上次退出时的活跃角色。
+            RoleSnapshot snapshot = roleSnapshotService.resolve(chatSession);
+            if (snapshot == null) {
+                logger.warn("设备绑定的角色不存在 - DeviceId: {}, RoleId: {}", deviceId, device.getRoleId());
+                return;
+            }
+            SysRole role = snapshot.role();
             Conversation conversation = conversationFactory.initConversation(device, role, sessionId);
             chatSession.setConversation(conversation);
 
             //以上同步处理结束后，再启动虚拟线程进行设备初始化，确保chatSession中已设置的sysDevice信息
             Thread.startVirtualThread(() -> {
                 try {
-                    if (role.getSttId() != null) {
-                        SysConfig sttConfig = configService.selectConfigById(role.getSttId());
-                        if (sttConfig != null) {
-                            sttFactory.getSttService(sttConfig);// 提前初始化，加速后续使用
-                        }
+                    if (snapshot.sttConfig() != null) {
+                        sttFactory.getSttService(snapshot.sttConfig());// 提前初始化，加速后续使用
                     }
-                    if (role.getTtsId() != null) {
-                        SysConfig ttsConfig = configService.selectConfigById(role.getTtsId());
-                        if (ttsConfig != null) {
-                            ttsFactory.getTtsService(ttsConfig, role.getVoiceName());// 提前初始化，加速后续使用
-                        }
+                    if (snapshot.ttsConfig() != null) {
+                        ttsFactory.getTtsService(snapshot.ttsConfig(), snapshot.voiceName());// 提前初始化，加速后续使用
                     }
                     if (role.getModelId() != null) {
                         chatModelFactory.takeChatModel(chatSession);// 提前初始化，加速后续使用
@@ -131,11 +127,9 @@ public class MessageHandler {
                         toolsSessionHolder.registerGlobalFunctionTools(chatSession);
                     }
 
-                    // 更新设备状态
-                    deviceService.update(new SysDevice()
-                            .setDeviceId(deviceId)
-                            .setState(SysDevice.DEVICE_STATE_ONLINE)
-                            .setLastLogin(new Date().toString()));
+                    // 更新设备状态，由状态跟踪器合并后批量写入
+                    device.setState(SysDevice.DEVICE_STATE_ONLINE);
+                    presenceTracker.online(deviceId, sessionId, null, null);
 
                 } catch (Exception e) {
                     logger.error("设备初始化失败 - DeviceId: " + deviceId, e);
@@ -162,26 +156,11 @@ public class MessageHandler {
         // 连接关闭时清理资源
         SysDevice device = sessionManager.getDeviceConfig(sessionId);
         if (device != null) {
-            Thread.startVirtualThread(() -> {
-                try {
-                    deviceService.update(new SysDevice()
-                            .setDeviceId(device.getDeviceId())
-                            .setState(SysDevice.DEVICE_STATE_OFFLINE)
-                            .setLastLogin(new Date().toString()));
-                    logger.info("WebSocket连接关闭 - SessionId: {}, DeviceId: {}", sessionId, device.getDeviceId());
-                } catch (Exception e) {
-                    logger.error("更新设备状态失败", e);
-                }
-            });
+            presenceTracker.offline(device.getDeviceId(), sessionId);
+            logger.info("WebSocket连接关闭 - SessionId: {}, DeviceId: {}", sessionId, device.getDeviceId());
         }
-        // 清理会话
+        // 清理会话，VAD、音频播放和对话状态随会话的DialogueContext一起释放
         sessionManager.closeSession(sessionId);
-        // 清理VAD会话
-        vadService.resetSession(sessionId);
-        // 清理音频处理会话
-        audioService.cleanupSession(sessionId);
-        // 清理对话
-        dialogueService.cleanupSession(sessionId);
         // 清理Conversation缓存的对话历史。
         Conversation conversation = chatSession.getConversation();
         if (conversation != null) {
@@ -257,8 +236,10 @@ public class MessageHandler {
                     audioFilePath = codeResult.getAudioPath();
                 }
 
-                audioService.sendAudioMessage(chatSession,
-                        new DialogueService.Sentence(codeResult.getCode(), codeResult.getAudioPath()), true, true);
+                // 同一验证码的提示音会反复播放
+                DialogueService.Sentence codeSentence = new DialogueService.Sentence(codeResult.getCode(), audioFilePath);
+                codeSentence.setReusable(true);
+                audioService.sendAudioMessage(chatSession, codeSentence, true, true);
 
                 // 延迟一段时间后再解除标记
                 try {
@@ -288,6 +269,8 @@ public class MessageHandler {
 
                 // 初始化VAD会话
                 vadService.initSession(sessionId);
+                // 提前建立识别服务的连接
+                dialogueService.prewarmStt(chatSession);
                 break;
 
             case ListenState.Stop:
@@ -304,7 +287,7 @@ public class MessageHandler {
 
             case ListenState.Text:
                 // 检测聊天文本输入
-                if (audioService.isPlaying(sessionId)) {
+                if (audioService.isPlaying(chatSession)) {
                     dialogueService.abortDialogue(chatSession, message.getMode().getValue());
                 }
                 dialogueService.handleText(chatSession, message.getText(), null);
@@ -348,11 +331,12 @@ public class MessageHandler {
     }
 
     private void handleDeviceMcpMessage(ChatSession chatSession, DeviceMcpMessage message) {
-        Long mcpRequestId = message.getPayload().getId();
-        CompletableFuture<DeviceMcpMessage> future = chatSession.getDeviceMcpHolder().getMcpPendingRequests().get(mcpRequestId);
-        if(future != null){
-            future.complete(message);
-            chatSession.getDeviceMcpHolder().getMcpPendingRequests().remove(mcpRequestId);
+        chatSession.getDeviceMcpHolder().completeRequest(message);
+    }
+
+    private void handlePlaybackMessage(ChatSession chatSession, PlaybackMessage message) {
+        if ("drained".equals(message.getState())) {
+            audioService.onPlaybackDrained(chatSession);
         }
     }
 
@@ -364,6 +348,7 @@ public class MessageHandler {
             case AbortMessage m -> handleAbortMessage(chatSession, m);
             case GoodbyeMessage m -> handleGoodbyeMessage(chatSession, m);
             case DeviceMcpMessage m -> handleDeviceMcpMessage(chatSession, m);
+            case PlaybackMessage m -> handlePlaybackMessage(chatSession, m);
             default -> {
             }
         }
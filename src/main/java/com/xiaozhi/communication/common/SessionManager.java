@@ -1,23 +1,30 @@
 package com.xiaozhi.communication.common;
 
 import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
+import com.xiaozhi.dialogue.service.DialogueContext;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.enums.ListenMode;
 import com.xiaozhi.event.ChatSessionCloseEvent;
-import com.xiaozhi.service.SysDeviceService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -41,41 +48,70 @@ public class SessionManager {
     // 用于存储所有连接的会话信息
     private final ConcurrentHashMap<String, ChatSession> sessions = new ConcurrentHashMap<>();
 
+    // 设备ID到会话ID的索引，设备重连时指向最新的会话
+    private final ConcurrentHashMap<String, String> deviceSessions = new ConcurrentHashMap<>();
+
+    // 按不活跃截止时间组织会话的时间轮，刻度1秒，一圈128秒
+    private final TimingWheel<ChatSession> idleWheel = new TimingWheel<>(1000, 128, System.currentTimeMillis());
+
     // 存储验证码生成状态
     private final ConcurrentHashMap<String, Boolean> captchaState = new ConcurrentHashMap<>();
 
     // 定时任务执行器
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    // 每次流式识别等待识别服务处理的音频块上限，约60ms一块
+    @Value("${xiaozhi.stt.audio-queue-size:512}")
+    private int audioQueueSize;
+
     @Resource
     private ApplicationContext applicationContext;
 
-    @Resource
-    @Lazy
-    private SysDeviceService deviceService;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
 
     /**
      * 初始化方法，启动定时检查不活跃会话的任务
      */
     @PostConstruct
     public void init() {
-        // 项目启动时，将所有设备状态设置为离线
-        // 延迟执行设备状态重置，避免循环依赖
-        scheduler.schedule(() -> {
-            try {
-                SysDevice device = new SysDevice();
-                device.setState(SysDevice.DEVICE_STATE_OFFLINE);
-                // 不设置deviceId，这样会更新所有设备
-                int updatedRows = deviceService.update(device);
-                logger.info("项目启动，重置 {} 个设备状态为离线", updatedRows);
-            } catch (Exception e) {
-                logger.error("项目启动时设置设备状态为离线失败", e);
-            }
-        }, 1, TimeUnit.SECONDS);
-        
-        // 每10秒检查一次不活跃的会话
-        scheduler.scheduleAtFixedRate(this::checkInactiveSessions, 10, 10, TimeUnit.SECONDS);
+        // 每秒推进一次时间轮，只检查截止时间已到的会话
+        scheduler.scheduleAtFixedRate(this::checkInactiveSessions, 1, 1, TimeUnit.SECONDS);
         logger.info("不活跃会话检查任务已启动，超时时间: {}秒", INACTIVITY_TIMEOUT_SECONDS);
+
+        // 每分钟检查一次已移除会话遗留的对话上下文
+        scheduler.scheduleAtFixedRate(this::checkOrphanedContexts, 60, 60, TimeUnit.SECONDS);
+
+        bindAudioStreamMetrics(meterRegistry.getIfAvailable());
+    }
+
+    /**
+     * 注册识别音频队列的指标，可通过 /actuator/metrics/stt.audio.queue.depth 等查看
+     */
+    private void bindAudioStreamMetrics(MeterRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+        Gauge.builder("stt.audio.queue.depth", this, manager -> manager.audioStreamDepth(false))
+                .description("The number of audio chunks waiting for STT providers across all sessions")
+                .register(registry);
+        Gauge.builder("stt.audio.queue.max", this, manager -> manager.audioStreamDepth(true))
+                .description("The deepest audio queue of a single session")
+                .register(registry);
+        FunctionCounter.builder("stt.audio.dropped", this, manager -> SttAudioStream.droppedCount())
+                .description("The number of audio chunks dropped because an STT provider fell behind")
+                .register(registry);
+    }
+
+    private double audioStreamDepth(boolean max) {
+        int result = 0;
+        for (ChatSession session : sessions.values()) {
+            SttAudioStream audioStream = session.getAudioStream();
+            if (audioStream != null) {
+                result = max ? Math.max(result, audioStream.depth()) : result + audioStream.depth();
+            }
+        }
+        return result;
     }
 
     /**
@@ -98,25 +134,69 @@ public class SessionManager {
 
     /**
      * 检查不活跃的会话并关闭它们
+     * 时间轮只返回截止时间已到的会话：期间有过活动的会话按最新活动时间重新登记，已关闭的会话直接丢弃。
+     * 更新活动时间本身不操作时间轮，每个会话每个超时周期最多被检查一次。
      * 使用虚拟线程实现异步处理
      */
     private void checkInactiveSessions() {
+        Instant now = Instant.now();
+        List<ChatSession> due = idleWheel.advance(now.toEpochMilli());
+        if (due.isEmpty()) {
+            return;
+        }
         Thread.startVirtualThread(() -> {
-            Instant now = Instant.now();
-            sessions.values().forEach(session -> {
+            for (ChatSession session : due) {
+                if (sessions.get(session.getSessionId()) != session) {
+                    continue;
+                }
                 Instant lastActivity = session.getLastActivityTime();
-                if (lastActivity != null) {
-                    Duration inactiveDuration = Duration.between(lastActivity, now);
-                    if (inactiveDuration.getSeconds() > INACTIVITY_TIMEOUT_SECONDS) {
-                        logger.info("会话 {} 已经 {} 秒没有有效活动，自动关闭",
-                            session.getSessionId(), inactiveDuration.getSeconds());
-                        closeSession(session);
-                    }
+                if (lastActivity == null) {
+                    continue;
                 }
-            });
+                Duration inactiveDuration = Duration.between(lastActivity, now);
+                if (inactiveDuration.getSeconds() >= INACTIVITY_TIMEOUT_SECONDS) {
+                    logger.info("会话 {} 已经 {} 秒没有有效活动，自动关闭",
+                        session.getSessionId(), inactiveDuration.getSeconds());
+                    closeSession(session);
+                } else {
+                    scheduleIdleCheck(session);
+                }
+            }
         });
     }
 
+    // 按最后活动时间登记不活跃检查
+    private void scheduleIdleCheck(ChatSession session) {
+        Instant lastActivity = session.getLastActivityTime();
+        long deadline = (lastActivity != null ? lastActivity : Instant.now())
+                .plusSeconds(INACTIVITY_TIMEOUT_SECONDS).toEpochMilli();
+        idleWheel.schedule(session, deadline);
+    }
+
+    /**
+     * 泄漏检测：对话上下文未关闭，但所属会话已经不在会话表中（或已被同ID的新会话替换），
+     * 说明会话被移除时没有经过closeSession，报告并释放遗留的状态
+     */
+    private void checkOrphanedContexts() {
+        long now = System.currentTimeMillis();
+        int orphaned = 0;
+        for (DialogueContext context : DialogueContext.openContexts()) {
+            // 刚创建的会话可能尚未注册
+            if (now - context.getCreateTime() < INACTIVITY_TIMEOUT_SECONDS * 1000) {
+                continue;
+            }
+            ChatSession session = sessions.get(context.getSessionId());
+            if (session == null || session.getDialogueContext() != context) {
+                orphaned++;
+                logger.warn("检测到未释放的对话上下文: {}", context.describe());
+                context.close();
+            }
+        }
+        if (orphaned > 0) {
+            logger.warn("本次共释放 {} 个遗留的对话上下文，当前会话数: {}", orphaned, sessions.size());
+        }
+    }
+
     /**
      * 更新会话的最后有效活动时间
      * 这个方法应该只在检测到实际的用户活动时调用，如语音输入或明确的交互
@@ -138,6 +218,7 @@ public class SessionManager {
      */
     public void registerSession(String sessionId, ChatSession chatSession) {
         sessions.put(sessionId, chatSession);
+        scheduleIdleCheck(chatSession);
         logger.info("会话已注册 - SessionId: {}  SessionType: {}", sessionId, chatSession.getClass().getSimpleName());
     }
 
@@ -164,18 +245,25 @@ public class SessionManager {
             return;
         }
         try {
-            sessions.remove(chatSession.getSessionId());
+            sessions.remove(chatSession.getSessionId(), chatSession);
+            // 设备已重连到新会话时保留新的索引
+            SysDevice device = chatSession.getSysDevice();
+            if (device != null && device.getDeviceId() != null) {
+                deviceSessions.remove(device.getDeviceId(), chatSession.getSessionId());
+            }
             // 关闭会话
             chatSession.close();
             // 清理音频流
-            Sinks.Many<byte[]> sink = chatSession.getAudioSinks();
-            if (sink != null) {
-                sink.tryEmitComplete();
+            SttAudioStream audioStream = chatSession.getAudioStream();
+            if (audioStream != null) {
+                audioStream.cancel();
             }
             // 重置会话状态
             chatSession.setStreamingState(false);
-            chatSession.setAudioSinks(null);
+            chatSession.setAudioStream(null);
             applicationContext.publishEvent(new ChatSessionCloseEvent(chatSession));
+            // 释放对话上下文中的全部会话状态
+            chatSession.getDialogueContext().close();
             // 从会话映射中移除
             logger.info("会话已关闭 - SessionId: {} SessionType: {}", chatSession.getSessionId(), chatSession.getClass().getSimpleName());
         } catch (Exception e) {
@@ -195,6 +283,12 @@ public class SessionManager {
         ChatSession chatSession = sessions.get(sessionId);
         if(chatSession != null){
             chatSession.setSysDevice(device);
+            if (device.getDeviceId() != null) {
+                String previous = deviceSessions.put(device.getDeviceId(), sessionId);
+                if (previous != null && !previous.equals(sessionId)) {
+                    logger.info("设备重连，会话索引切换 - DeviceId: {}, {} -> {}", device.getDeviceId(), previous, sessionId);
+                }
+            }
             updateLastActivity(sessionId); // 更新活动时间
             logger.debug("设备配置已注册 - SessionId: {}, DeviceId: {}", sessionId, device.getDeviceId());
         }
@@ -259,6 +353,15 @@ public class SessionManager {
         return sessions.get(sessionId);
     }
 
+    /**
+     * 获取所有会话
+     *
+     * @return 只读的会话集合
+     */
+    public Collection<ChatSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
     /**
      * 获取会话
      *
@@ -266,10 +369,14 @@ public class SessionManager {
      * @return 会话ID
      */
     public ChatSession getSessionByDeviceId(String deviceId) {
-        for (ChatSession chatSession : sessions.values()) {
-            if (chatSession.getSysDevice() != null && deviceId.equals(chatSession.getSysDevice().getDeviceId())) {
-                return chatSession;
-            }
+        String sessionId = deviceSessions.get(deviceId);
+        if (sessionId == null) {
+            return null;
+        }
+        ChatSession chatSession = sessions.get(sessionId);
+        if (chatSession != null && chatSession.getSysDevice() != null
+                && deviceId.equals(chatSession.getSysDevice().getDeviceId())) {
+            return chatSession;
         }
         return null;
     }
@@ -430,10 +537,9 @@ public class SessionManager {
      * @param sessionId 会话ID
      */
     public void createAudioStream(String sessionId) {
-        Sinks.Many<byte[]> sink = Sinks.many().multicast().onBackpressureBuffer();
         ChatSession chatSession = sessions.get(sessionId);
         if (chatSession != null) {
-            chatSession.setAudioSinks(sink);
+            chatSession.setAudioStream(new SttAudioStream(audioQueueSize));
         }
     }
 
@@ -443,10 +549,10 @@ public class SessionManager {
      * @param sessionId 会话ID
      * @return 音频数据流
      */
-    public Sinks.Many<byte[]> getAudioStream(String sessionId) {
+    public SttAudioStream getAudioStream(String sessionId) {
         ChatSession chatSession = sessions.get(sessionId);
         if (chatSession != null) {
-            return chatSession.getAudioSinks();
+            return chatSession.getAudioStream();
         }
         return null;
     }
@@ -458,9 +564,9 @@ public class SessionManager {
      * @param data 音频数据
      */
     public void sendAudioData(String sessionId, byte[] data) {
-        Sinks.Many<byte[]> sink = getAudioStream(sessionId);
-        if (sink != null) {
-            sink.tryEmitNext(data);
+        SttAudioStream audioStream = getAudioStream(sessionId);
+        if (audioStream != null) {
+            audioStream.emit(data);
         }
     }
 
@@ -470,23 +576,25 @@ public class SessionManager {
      * @param sessionId 会话ID
      */
     public void completeAudioStream(String sessionId) {
-        Sinks.Many<byte[]> sink = getAudioStream(sessionId);
-        if (sink != null) {
-            sink.tryEmitComplete();
+        SttAudioStream audioStream = getAudioStream(sessionId);
+        if (audioStream != null) {
+            audioStream.complete();
         }
     }
 
     /**
-     * 关闭音频流
+     * 关闭音频流，尚未结束的识别立即取消，不再等待识别超时
      *
      * @param sessionId 会话ID
      */
     public void closeAudioStream(String sessionId) {
-        Sinks.Many<byte[]> sink = getAudioStream(sessionId);
-
         ChatSession chatSession = sessions.get(sessionId);
         if (chatSession != null) {
-            chatSession.setAudioSinks(null);
+            SttAudioStream audioStream = chatSession.getAudioStream();
+            chatSession.setAudioStream(null);
+            if (audioStream != null) {
+                audioStream.cancel();
+            }
         }
     }
 
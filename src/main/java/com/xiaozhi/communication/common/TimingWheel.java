@@ -0,0 +1,78 @@
+package com.xiaozhi.communication.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 哈希时间轮
+ * 按截止时间把元素放入对应刻度的槽位，推进时只取出到期槽位中的元素，开销与到期元素数量成正比，与总元素数量无关。
+ * 超过一圈的截止时间记录剩余圈数。调度和推进都是低频操作，直接加锁。
+ */
+public class TimingWheel<T> {
+
+    private static final class Entry<T> {
+        final T item;
+        long rounds;
+
+        Entry(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots;
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * 登记元素，在截止时间所在刻度（向上取整）结束后由advance返回；已过期的截止时间在下一刻度返回
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        long rounds = (tick - currentTick - 1) / slots.size();
+        slots.get((int) (tick % slots.size())).add(new Entry<>(item, rounds));
+        size++;
+    }
+
+    /**
+     * 推进到指定时间，返回期间到期的元素
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            List<Entry<T>> slot = slots.get((int) (currentTick % slots.size()));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<Entry<T>> remaining = new ArrayList<>();
+            for (Entry<T> entry : slot) {
+                if (entry.rounds <= 0) {
+                    expired.add(entry.item);
+                    size--;
+                } else {
+                    entry.rounds--;
+                    remaining.add(entry);
+                }
+            }
+            slot.clear();
+            slot.addAll(remaining);
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
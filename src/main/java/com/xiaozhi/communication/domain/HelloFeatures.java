@@ -1,5 +1,6 @@
 package com.xiaozhi.communication.domain;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
@@ -12,4 +13,9 @@ public class HelloFeatures {
      * 设备是否启用服务端aec
      */
     private Boolean aec = false;
+    /**
+     * 设备是否在播放队列已空时发送播放确认
+     */
+    @JsonProperty("playback_ack")
+    private Boolean playbackAck = false;
 }
\ No newline at end of file
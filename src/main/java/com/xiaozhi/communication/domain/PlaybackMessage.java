@@ -0,0 +1,18 @@
+package com.xiaozhi.communication.domain;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 设备的播放确认，设备在hello的features中声明playback_ack后发送
+ * state为drained时表示设备的播放队列已空
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public final class PlaybackMessage extends Message {
+    public PlaybackMessage() {
+        super("playback");
+    }
+
+    private String state;
+}
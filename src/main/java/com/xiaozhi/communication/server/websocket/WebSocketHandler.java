@@ -167,6 +167,13 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
 
         try {
             session.sendMessage(new TextMessage(JsonUtil.toJson(resp)));
+            if (message.getFeatures() != null && Boolean.TRUE.equals(message.getFeatures().getPlaybackAck())) {
+                // 设备支持播放确认，播放结束以设备的确认为准
+                ChatSession chatSession = sessionManager.getSession(sessionId);
+                if (chatSession != null) {
+                    chatSession.getDialogueContext().getPlayout().setAckSupported(true);
+                }
+            }
             if(message.getFeatures() != null && message.getFeatures().getMcp()) {
                 //如果客户端开启mcp协议，异步初始化MCP工具
                 ChatSession chatSession = sessionManager.getSession(sessionId);
@@ -7,6 +7,7 @@ import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.TextMessage;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class WebSocketSession extends ChatSession {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSession.class);
@@ -71,4 +72,14 @@ public class WebSocketSession extends ChatSession {
             logger.error("发送Binary消息失败", e);
         }
     }
+
+    @Override
+    public void sendBinaryMessage(ByteBuffer message) {
+        try {
+            // 映射文件的帧切片直接交给容器发送，不复制为数组
+            session.sendMessage(new BinaryMessage(message.duplicate()));
+        } catch (IOException e) {
+            logger.error("发送Binary消息失败", e);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.github.pagehelper.PageInfo;
 import com.xiaozhi.common.web.AjaxResult;
 import com.xiaozhi.common.web.PageFilter;
 import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.DevicePresenceTracker;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.service.SysDeviceService;
@@ -46,6 +47,9 @@ public class DeviceController extends BaseController {
     @Resource
     private SessionManager sessionManager;
 
+    @Resource
+    private DevicePresenceTracker presenceTracker;
+
     @Resource
     private Environment environment;
 
@@ -66,6 +70,8 @@ public class DeviceController extends BaseController {
             PageFilter pageFilter = initPageFilter(request);
             device.setUserId(CmsUtils.getUserId());
             List<SysDevice> deviceList = deviceService.query(device, pageFilter);
+            // 在线状态以内存为准，数据库中的状态可能还未写入
+            presenceTracker.applyTo(deviceList);
             AjaxResult result = AjaxResult.success();
             result.put("data", new PageInfo<>(deviceList));
             return result;
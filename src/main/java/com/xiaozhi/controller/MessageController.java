@@ -1,9 +1,12 @@
 package com.xiaozhi.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.pagehelper.PageInfo;
 import com.xiaozhi.common.web.AjaxResult;
 import com.xiaozhi.common.web.PageFilter;
+import com.xiaozhi.common.web.SeekPage;
 import com.xiaozhi.dialogue.llm.ChatService;
+import com.xiaozhi.entity.MessageSeekQuery;
 import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.service.SysMessageService;
 import com.xiaozhi.utils.CmsUtils;
@@ -12,9 +15,22 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 
 /**
@@ -34,6 +50,15 @@ public class MessageController extends BaseController {
     @Resource
     private ChatService chatService;
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    // 导出时每写入多少行刷新一次输出
+    private static final int EXPORT_FLUSH_ROWS = 500;
+
+    private static final String[] EXPORT_COLUMNS = {
+            "messageId", "deviceId", "deviceName", "roleId", "roleName", "sender", "messageType", "message", "createTime" };
+
     /**
      * 查询对话
      *
@@ -57,6 +82,124 @@ public class MessageController extends BaseController {
         }
     }
 
+    /**
+     * 键集分页查询对话
+     * 按(createTime, messageId)倒序，通过上一页返回的游标定位下一页，翻到多深都只读取一页的数据
+     *
+     * @param message
+     * @param cursor 上一页返回的nextCursor，第一页不传
+     * @param limit 每页条数
+     * @param count 是否返回总条数
+     * @return
+     */
+    @GetMapping("/seek")
+    @ResponseBody
+    @Operation(summary = "游标分页查询对话消息", description = "返回对话消息列表和下一页游标，count=true时额外返回总条数")
+    public AjaxResult seek(MessageSeekQuery message,
+                           @RequestParam(required = false) String cursor,
+                           @RequestParam(defaultValue = "10") int limit,
+                           @RequestParam(defaultValue = "false") boolean count) {
+        try {
+            message.setUserId(CmsUtils.getUserId());
+            int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            SeekPage<SysMessage> page = sysMessageService.querySeek(message, cursor, pageSize, count);
+            AjaxResult result = AjaxResult.success();
+            result.put("data", page);
+            return result;
+        } catch (IllegalArgumentException e) {
+            return AjaxResult.error(e.getMessage());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return AjaxResult.error();
+        }
+    }
+
+    /**
+     * 导出对话
+     * 使用数据库游标逐行读取，边读边写，内存占用与数据量无关
+     *
+     * @param message
+     * @param format csv或json
+     * @return
+     */
+    @GetMapping("/export")
+    @Operation(summary = "导出对话消息", description = "按条件流式导出对话消息，format支持csv（默认）和json")
+    public ResponseEntity<StreamingResponseBody> export(SysMessage message,
+                                                        @RequestParam(defaultValue = "csv") String format) {
+        message.setUserId(CmsUtils.getUserId());
+        boolean json = "json".equalsIgnoreCase(format);
+        String fileName = "messages-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date())
+                + (json ? ".json" : ".csv");
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            if (json) {
+                exportJson(message, writer);
+            } else {
+                exportCsv(message, writer);
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(json ? MediaType.APPLICATION_JSON : new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    private void exportCsv(SysMessage message, Writer writer) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT+8"));
+        // BOM，Excel按UTF-8打开
+        writer.write('\uFEFF');
+        writer.write(String.join(",", EXPORT_COLUMNS));
+        writer.write("\r\n");
+        int[] rows = { 0 };
+        sysMessageService.export(message, item -> {
+            try {
+                writer.write(String.join(",",
+                        csv(item.getMessageId()), csv(item.getDeviceId()), csv(item.getDeviceName()),
+                        csv(item.getRoleId()), csv(item.getRoleName()), csv(item.getSender()),
+                        csv(item.getMessageType()), csv(item.getMessage()),
+                        csv(item.getCreateTime() == null ? null : dateFormat.format(item.getCreateTime()))));
+                writer.write("\r\n");
+                if (++rows[0] % EXPORT_FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void exportJson(SysMessage message, Writer writer) throws IOException {
+        writer.write('[');
+        int[] rows = { 0 };
+        sysMessageService.export(message, item -> {
+            try {
+                if (rows[0] > 0) {
+                    writer.write(',');
+                }
+                writer.write(objectMapper.writeValueAsString(item));
+                if (++rows[0] % EXPORT_FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.write(']');
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+
     /**
      * 删除聊天记录
      * 
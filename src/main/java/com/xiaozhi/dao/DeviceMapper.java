@@ -1,8 +1,12 @@
 package com.xiaozhi.dao;
 
+import com.xiaozhi.entity.DevicePresence;
 import com.xiaozhi.entity.SysDevice;
 
 import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.annotations.Param;
 
 /**
  * 设备信息 数据层
@@ -28,4 +32,14 @@ public interface DeviceMapper {
   int delete(SysDevice device);
 
   int insertCode(String deviceId, String code);
+
+  int incrementMessageCount(@Param("deltas") Map<String, Long> deltas);
+
+  int recountMessages(@Param("userId") Integer userId, @Param("deviceIds") List<String> deviceIds);
+
+  int updatePresence(@Param("presences") List<DevicePresence> presences);
+
+  int resetOnlineState();
+
+  List<String> queryDeviceIds(@Param("afterDeviceId") String afterDeviceId, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -2,6 +2,10 @@ package com.xiaozhi.dao;
 
 import java.util.List;
 
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import com.xiaozhi.entity.MessageSeekQuery;
 import com.xiaozhi.entity.SysMessage;
 
 /**
@@ -14,7 +18,18 @@ public interface MessageMapper {
 
   int add(SysMessage message);
 
+  int addBatch(List<SysMessage> messages);
+
   int delete(SysMessage message);
 
   List<SysMessage> query(SysMessage message);
+
+  List<SysMessage> querySeek(MessageSeekQuery query);
+
+  long count(SysMessage message);
+
+  Cursor<SysMessage> queryCursor(SysMessage message);
+
+  List<SysMessage> queryHistory(@Param("deviceId") String deviceId, @Param("roleId") Integer roleId,
+      @Param("messageType") String messageType, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -5,7 +5,6 @@ import com.xiaozhi.dialogue.llm.api.StreamResponseListener;
 import com.xiaozhi.dialogue.llm.factory.ChatModelFactory;
 import com.xiaozhi.dialogue.llm.memory.ChatMemory;
 import com.xiaozhi.entity.SysMessage;
-import com.xiaozhi.utils.EmojiUtils;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +24,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -39,27 +37,9 @@ public class ChatService {
 
     public static final String TOOL_CONTEXT_SESSION_KEY = "session";
 
-    // 句子结束标点符号模式（中英文句号、感叹号、问号）
-    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
-
-    // 逗号、分号等停顿标点
-    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
-
-    // 冒号和引号等特殊标点
-    private static final Pattern SPECIAL_PATTERN = Pattern.compile("[：:\"]");
-
-    // 换行符
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("[\n\r]");
-
-    // 数字模式（用于检测小数点是否在数字中）
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
-
     // 表情符号模式
     private static final Pattern EMOJI_PATTERN = Pattern.compile("\\p{So}|\\p{Sk}|\\p{Sm}");
 
-    // 最小句子长度（字符数）
-    private static final int MIN_SENTENCE_LENGTH = 5;
-
     // 新句子判断的字符阈值
     private static final int NEW_SENTENCE_TOKEN_THRESHOLD = 8;
 
@@ -185,22 +165,6 @@ public class ChatService {
         chatMemoryStore.clearMessages(deviceId);
     }
 
-    /**
-     * 判断文本是否包含实质性内容（不仅仅是空白字符或标点符号）
-     *
-     * @param text 要检查的文本
-     * @return 是否包含实质性内容
-     */
-    private boolean containsSubstantialContent(String text) {
-        if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
-            return false;
-        }
-
-        // 移除所有标点符号和空白字符后，检查是否还有内容
-        String stripped = text.replaceAll("[\\p{P}\\s]", "");
-        return stripped.length() >= 2; // 至少有两个非标点非空白字符
-    }
-
     /**
      * 三参数消费者接口
      */
@@ -210,8 +174,7 @@ public class ChatService {
 
     class TokenStreamResponseListener implements StreamResponseListener {
 
-        final StringBuilder currentSentence = new StringBuilder(); // 当前句子的缓冲区
-        final StringBuilder contextBuffer = new StringBuilder(); // 上下文缓冲区，用于检测数字中的小数点
+        final SentenceSegmenter segmenter = new SentenceSegmenter(this::onSentence); // 流式断句器
         final AtomicInteger sentenceCount = new AtomicInteger(0); // 已发送句子的计数
         final StringBuilder fullResponse = new StringBuilder(); // 完整响应的缓冲区
         final AtomicBoolean finalSentenceSent = new AtomicBoolean(false); // 跟踪最后一个句子是否已发送
@@ -234,88 +197,26 @@ public class ChatService {
             // 将token添加到完整响应
             fullResponse.append(token);
 
-            // 逐字符处理token
-            for (int i = 0; i < token.length();) {
-                int codePoint = token.codePointAt(i);
-                String charStr = new String(Character.toChars(codePoint));
-
-                // 将字符添加到上下文缓冲区（保留最近的字符以检测数字模式）
-                contextBuffer.append(charStr);
-                if (contextBuffer.length() > 20) { // 保留足够的上下文
-                    contextBuffer.delete(0, contextBuffer.length() - 20);
-                }
-
-                // 将字符添加到当前句子缓冲区
-                currentSentence.append(charStr);
-
-                // 检查各种断句标记
-                boolean shouldSendSentence = false;
-                boolean isEndMark = SENTENCE_END_PATTERN.matcher(charStr).find();
-                boolean isPauseMark = PAUSE_PATTERN.matcher(charStr).find();
-                boolean isSpecialMark = SPECIAL_PATTERN.matcher(charStr).find();
-                boolean isNewline = NEWLINE_PATTERN.matcher(charStr).find();
-                boolean isEmoji = EmojiUtils.isEmoji(codePoint);
-
-                // 检查当前句子是否包含颜文字
-                boolean containsKaomoji = false;
-                if (currentSentence.length() >= 3) { // 颜文字至少需要3个字符
-                    containsKaomoji = EmojiUtils.containsKaomoji(currentSentence.toString());
-                }
-
-                // 如果当前字符是句号，检查它是否是数字中的小数点
-                if (isEndMark && charStr.equals(".")) {
-                    String context = contextBuffer.toString();
-                    Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
-                    // 如果找到数字模式（如"0.271"），则不视为句子结束标点
-                    if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
-                        isEndMark = false;
-                    }
-                }
-
-                // 判断是否应该发送当前句子
-                if (isEndMark) {
-                    // 句子结束标点是强断句信号
-                    shouldSendSentence = true;
-                } else if (isNewline) {
-                    // 换行符也是强断句信号
-                    shouldSendSentence = true;
-                } else if ((isPauseMark || isSpecialMark || isEmoji || containsKaomoji)
-                        && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
-                    // 停顿标点、特殊标点、表情符号或颜文字在句子足够长时可以断句
-                    shouldSendSentence = true;
-                }
-
-                // 如果应该发送句子，且当前句子长度满足要求
-                if (shouldSendSentence && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
-                    String sentence = currentSentence.toString().trim();
-
-                    // 过滤颜文字
-                    sentence = EmojiUtils.filterKaomoji(sentence);
-
-                    if (containsSubstantialContent(sentence)) {
-                        boolean isFirst = sentenceCount.get() == 0;
-                        boolean isLast = false; // 只有在onComplete中才会有最后一个句子
-
-                        sentenceHandler.accept(sentence, isFirst, isLast);
-                        sentenceCount.incrementAndGet();
-
-                        // 清空当前句子缓冲区
-                        currentSentence.setLength(0);
-                    }
-                }
-
-                // 移动到下一个码点
-                i += Character.charCount(codePoint);
-            }
+            // 逐字符断句，满足条件时回调onSentence
+            segmenter.append(token);
+        }
+
+        void onSentence(String sentence) {
+            boolean isFirst = sentenceCount.get() == 0;
+            boolean isLast = false; // 只有在onComplete中才会有最后一个句子
+
+            sentenceHandler.accept(sentence, isFirst, isLast);
+            sentenceCount.incrementAndGet();
         }
 
         @Override
         public void onComplete(String toolName) {
             // 检查该会话是否已完成处理
             // 处理当前缓冲区剩余的内容（如果有）
-            if (currentSentence.length() > 0 && containsSubstantialContent(currentSentence.toString())
+            String remainder = segmenter.remainder();
+            if (!remainder.isEmpty() && SentenceSegmenter.containsSubstantialContent(remainder)
                     && !finalSentenceSent.get()) {
-                String sentence = currentSentence.toString().trim();
+                String sentence = remainder.trim();
                 boolean isFirst = sentenceCount.get() == 0;
                 boolean isLast = true; // 这是最后一个句子
 
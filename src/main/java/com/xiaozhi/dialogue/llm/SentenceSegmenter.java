@@ -0,0 +1,323 @@
+package com.xiaozhi.dialogue.llm;
+
+import com.xiaozhi.utils.EmojiUtils;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * 流式文本断句器
+ * 以单趟有限状态机的方式逐字符处理LLM输出的token，标点分类使用预计算的查找表，
+ * 数字和颜文字状态增量维护，避免每个字符创建字符串、执行正则或复制整个句子缓冲区。
+ * 非线程安全，每个流式响应使用一个实例。
+ */
+public class SentenceSegmenter {
+
+    // 最小句子长度（字符数）
+    public static final int MIN_SENTENCE_LENGTH = 5;
+
+    private static final byte NONE = 0;
+    // 句子结束标点（中英文句号、感叹号、问号）
+    private static final byte END = 1;
+    // 换行符
+    private static final byte NEWLINE = 2;
+    // 逗号、分号等停顿标点
+    private static final byte PAUSE = 3;
+    // 冒号和引号等特殊标点
+    private static final byte SPECIAL = 4;
+
+    private static final BitSet END_MARKS = bits("。！？!?");
+    private static final BitSet NEWLINE_MARKS = bits("\n\r");
+    private static final BitSet PAUSE_MARKS = bits("，、；,;");
+    private static final BitSet SPECIAL_MARKS = bits("：:\"");
+    // 可能出现在数字中间的分隔符，如 1,000 或 3.14
+    private static final BitSet NUMBER_SEPARATORS = bits(",.");
+
+    // 基本多文种平面内的表情符号，与 EmojiUtils.isEmoji 保持一致
+    private static final BitSet BMP_EMOJI = new BitSet(Character.MAX_VALUE + 1);
+
+    // 颜文字括号的最大内容长度，对应 EmojiUtils 中的 {1,10}
+    private static final int KAOMOJI_MAX_INNER = 10;
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (EmojiUtils.isEmoji(c)) {
+                BMP_EMOJI.set(c);
+            }
+        }
+    }
+
+    private final Consumer<String> sentenceConsumer;
+
+    // 当前句子的缓冲区
+    private final StringBuilder currentSentence = new StringBuilder(64);
+
+    // 被token边界拆开的高位代理字符
+    private char pendingHighSurrogate;
+
+    // 数字后的分隔符需要看到下一个字符才能决定是否断句
+    private byte pendingSeparatorClass = NONE;
+
+    // 当前句子中的码点位置及最近两个码点
+    private int position;
+    private int prev1 = -1;
+    private int prev2 = -1;
+
+    // 颜文字增量状态
+    private boolean kaomojiSeen;
+    private int parenOpen1 = -1;
+    private int parenOpen2 = -1;
+    private int parenClose = -1;
+    private int angleOpen1 = -1;
+    private int angleOpen2 = -1;
+    private int angleClose = -1;
+    private int dashRun;
+    private boolean dashAfterMark;
+
+    /**
+     * @param sentenceConsumer 接收完整句子（已去除首尾空白并过滤颜文字）
+     */
+    public SentenceSegmenter(Consumer<String> sentenceConsumer) {
+        this.sentenceConsumer = sentenceConsumer;
+    }
+
+    /**
+     * 追加一段token文本，满足断句条件时回调句子
+     */
+    public void append(CharSequence token) {
+        for (int i = 0, len = token.length(); i < len; i++) {
+            char c = token.charAt(i);
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    accept(Character.toCodePoint(high, c), high, c);
+                    continue;
+                }
+                accept(high, high, (char) 0);
+            }
+            if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+                continue;
+            }
+            accept(c, c, (char) 0);
+        }
+    }
+
+    /**
+     * 当前尚未断句的剩余内容
+     */
+    public String remainder() {
+        if (pendingHighSurrogate != 0) {
+            currentSentence.append(pendingHighSurrogate);
+            pendingHighSurrogate = 0;
+        }
+        return currentSentence.toString();
+    }
+
+    /**
+     * 判断文本是否包含实质性内容（不仅仅是空白字符或标点符号）
+     *
+     * @param text 要检查的文本
+     * @return 是否包含实质性内容
+     */
+    public static boolean containsSubstantialContent(String text) {
+        if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
+            return false;
+        }
+        // 至少有两个非标点非空白字符（按char计数）
+        int count = 0;
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            int charCount = Character.charCount(codePoint);
+            if (!isWhitespace(codePoint) && !isPunctuation(codePoint)) {
+                count += charCount;
+                if (count >= 2) {
+                    return true;
+                }
+            }
+            i += charCount;
+        }
+        return false;
+    }
+
+    private void accept(int codePoint, char first, char second) {
+        if (pendingSeparatorClass != NONE) {
+            byte separatorClass = pendingSeparatorClass;
+            pendingSeparatorClass = NONE;
+            if (!isDigit(codePoint)) {
+                // 分隔符后不是数字，按原标点处理
+                tryEmit(separatorClass);
+            }
+        }
+
+        currentSentence.append(first);
+        if (second != 0) {
+            currentSentence.append(second);
+        }
+
+        byte markClass = classify(codePoint);
+        boolean isEmoji = codePoint <= Character.MAX_VALUE ? BMP_EMOJI.get(codePoint) : EmojiUtils.isEmoji(codePoint);
+        boolean afterDigit = isDigit(prev1);
+        trackKaomoji(codePoint);
+
+        if (markClass != NONE && afterDigit && NUMBER_SEPARATORS.get(codePoint)) {
+            pendingSeparatorClass = markClass;
+            return;
+        }
+        if (markClass == NONE && isEmoji) {
+            markClass = SPECIAL;
+        }
+        tryEmit(markClass);
+    }
+
+    private void tryEmit(byte markClass) {
+        // 结束标点和换行是强断句信号，停顿、特殊标点、表情符号或颜文字在句子足够长时断句
+        boolean shouldSendSentence = markClass != NONE || kaomojiSeen;
+        if (!shouldSendSentence || currentSentence.length() < MIN_SENTENCE_LENGTH) {
+            return;
+        }
+        String sentence = EmojiUtils.filterKaomoji(currentSentence.toString().trim());
+        if (containsSubstantialContent(sentence)) {
+            sentenceConsumer.accept(sentence);
+            reset();
+        }
+    }
+
+    private void trackKaomoji(int codePoint) {
+        int pos = position++;
+        if (!kaomojiSeen) {
+            kaomojiSeen = matchesBracketed(codePoint, pos)
+                    || matchesDash(codePoint)
+                    || matchesShort(codePoint);
+        }
+        prev2 = prev1;
+        prev1 = codePoint;
+    }
+
+    // [(（][^)）]{1,10}[)）] 与 [<＜][^>＞]{1,10}[>＞]
+    private boolean matchesBracketed(int codePoint, int pos) {
+        switch (codePoint) {
+            case '(', '（' -> {
+                parenOpen2 = parenOpen1;
+                parenOpen1 = pos;
+            }
+            case '<', '＜' -> {
+                angleOpen2 = angleOpen1;
+                angleOpen1 = pos;
+            }
+            case ')', '）' -> {
+                boolean matched = closes(parenOpen1, parenOpen2, parenClose, pos);
+                parenClose = pos;
+                return matched;
+            }
+            case '>', '＞' -> {
+                boolean matched = closes(angleOpen1, angleOpen2, angleClose, pos);
+                angleClose = pos;
+                return matched;
+            }
+            default -> {
+            }
+        }
+        return false;
+    }
+
+    private static boolean closes(int open1, int open2, int lastClose, int pos) {
+        int open = open1 <= pos - 2 ? open1 : open2;
+        int lower = Math.max(lastClose + 1, pos - KAOMOJI_MAX_INNER - 1);
+        return open >= 0 && open >= lower;
+    }
+
+    // [\¯*][_-]{1,2}[\¯*]
+    private boolean matchesDash(int codePoint) {
+        if (codePoint == '\\' || codePoint == '¯' || codePoint == '*') {
+            boolean matched = dashAfterMark && dashRun >= 1 && dashRun <= 2;
+            dashAfterMark = true;
+            dashRun = 0;
+            return matched;
+        }
+        if (codePoint == '_' || codePoint == '-') {
+            dashRun++;
+        } else {
+            dashRun = 0;
+            dashAfterMark = false;
+        }
+        return false;
+    }
+
+    // \o/ | :-?[)D(] | ;-?[)] | =\\?[_/]
+    private boolean matchesShort(int codePoint) {
+        return switch (codePoint) {
+            case '/' -> (prev1 == 'o' && prev2 == '\\') || follows('=', '\\');
+            case ')' -> follows(':', '-') || follows(';', '-');
+            case 'D', '(' -> follows(':', '-');
+            case '_' -> follows('=', '\\');
+            default -> false;
+        };
+    }
+
+    // 前一个码点为 lead，或前两个码点为 lead 加可选的 optional
+    private boolean follows(int lead, int optional) {
+        return prev1 == lead || (prev1 == optional && prev2 == lead);
+    }
+
+    private void reset() {
+        currentSentence.setLength(0);
+        position = 0;
+        prev1 = -1;
+        prev2 = -1;
+        kaomojiSeen = false;
+        parenOpen1 = -1;
+        parenOpen2 = -1;
+        parenClose = -1;
+        angleOpen1 = -1;
+        angleOpen2 = -1;
+        angleClose = -1;
+        dashRun = 0;
+        dashAfterMark = false;
+    }
+
+    private static byte classify(int codePoint) {
+        if (codePoint > Character.MAX_VALUE) {
+            return NONE;
+        }
+        if (END_MARKS.get(codePoint)) {
+            return END;
+        }
+        if (NEWLINE_MARKS.get(codePoint)) {
+            return NEWLINE;
+        }
+        if (PAUSE_MARKS.get(codePoint)) {
+            return PAUSE;
+        }
+        if (SPECIAL_MARKS.get(codePoint)) {
+            return SPECIAL;
+        }
+        return NONE;
+    }
+
+    private static boolean isDigit(int codePoint) {
+        return codePoint >= '0' && codePoint <= '9';
+    }
+
+    // 对应正则 \s
+    private static boolean isWhitespace(int codePoint) {
+        return codePoint == ' ' || (codePoint >= '\t' && codePoint <= '\r');
+    }
+
+    // 对应正则 \p{P}
+    private static boolean isPunctuation(int codePoint) {
+        return switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                    Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION,
+                    Character.FINAL_QUOTE_PUNCTUATION, Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    private static BitSet bits(String chars) {
+        BitSet set = new BitSet();
+        chars.chars().forEach(set::set);
+        return set;
+    }
+}
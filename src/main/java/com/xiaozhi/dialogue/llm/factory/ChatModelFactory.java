@@ -3,6 +3,8 @@ package com.xiaozhi.dialogue.llm.factory;
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.dialogue.llm.providers.CozeChatModel;
 import com.xiaozhi.dialogue.llm.providers.DifyChatModel;
+import com.xiaozhi.dialogue.llm.router.LlmRouter;
+import com.xiaozhi.dialogue.llm.router.RoutingChatModel;
 import com.xiaozhi.dialogue.token.factory.TokenServiceFactory;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
@@ -12,6 +14,8 @@ import com.xiaozhi.service.SysRoleService;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +57,8 @@ public class ChatModelFactory {
     private ToolCallingManager toolCallingManager;
     @Autowired
     private TokenServiceFactory tokenService;
+    @Autowired
+    private LlmRouter llmRouter;
     private final Logger logger = LoggerFactory.getLogger(ChatModelFactory.class);
 
     /**
@@ -67,8 +73,20 @@ public class ChatModelFactory {
         SysRole role = roleService.selectRoleById(device.getRoleId());
         Integer modelId = role.getModelId();
         Assert.notNull(modelId, "配置ID不能为空");
-        // 根据配置ID查询配置
-        SysConfig config = configService.selectConfigById(modelId);
+        // 角色绑定了路由组时，按路由顺序构建带故障转移和对冲的ChatModel
+        // 只剩一个可用配置时同样经过路由，继续统计该配置的健康状态
+        List<Integer> configIds = llmRouter.route(role);
+        boolean grouped = LlmRouter.parseGroup(modelId, role.getModelGroup()).size() > 1;
+        if (!configIds.isEmpty() && (grouped || configIds.size() > 1)) {
+            List<RoutingChatModel.Endpoint> endpoints = new ArrayList<>(configIds.size());
+            for (Integer configId : configIds) {
+                endpoints.add(new RoutingChatModel.Endpoint(configId,
+                        () -> createChatModel(configService.selectConfigById(configId), role)));
+            }
+            return new RoutingChatModel(endpoints, llmRouter);
+        }
+        // 根据配置ID查询配置，路由结果优先于角色的主模型
+        SysConfig config = configService.selectConfigById(configIds.isEmpty() ? modelId : configIds.getFirst());
         return createChatModel(config, role);
     }
 
@@ -25,11 +25,12 @@ public interface ChatMemory {
      * TODO messageType参数，后续考虑是否需要。另外可重构为一个枚举类
      *
      * @param deviceId 设备ID
+     * @param roleId 角色ID，为null时不区分角色
      * @param messageType 消息类型
      * @param limit 限制数量
-     * @return 消息列表
+     * @return 按时间正序的消息列表
      */
-    List<SysMessage> getMessages(String deviceId, String messageType, Integer limit);
+    List<SysMessage> getMessages(String deviceId, Integer roleId, String messageType, Integer limit);
 
     /**
      * 清除设备的历史记录
@@ -11,6 +11,7 @@ import org.springframework.util.Assert;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -96,8 +97,12 @@ public class Conversation {
                 .map(message -> {
                     String role = message.getSender();
                     // 一般消息("messageType", "NORMAL");//默认为普通消息
-                    Map<String, Object> metadata = Map.of("messageId", message.getMessageId(), "messageType",
-                            message.getMessageType());
+                    // 写入时加入缓存的消息尚未入库，没有messageId
+                    Map<String, Object> metadata = new HashMap<>();
+                    if (message.getMessageId() != null) {
+                        metadata.put("messageId", message.getMessageId());
+                    }
+                    metadata.put("messageType", message.getMessageType());
                     return switch (role) {
                         case "assistant" -> new AssistantMessage(message.getMessage(), metadata);
                         case "user" -> UserMessage.builder().text(message.getMessage()).metadata(metadata).build();
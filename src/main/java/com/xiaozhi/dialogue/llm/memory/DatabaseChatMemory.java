@@ -1,19 +1,19 @@
 package com.xiaozhi.dialogue.llm.memory;
 
-import com.xiaozhi.common.web.PageFilter;
-import com.xiaozhi.entity.Base;
+import com.xiaozhi.dialogue.service.DialogueRecorder;
 import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.service.SysMessageService;
+import com.xiaozhi.utils.AudioUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -28,44 +28,68 @@ public class DatabaseChatMemory  implements ChatMemory {
 
     private final SysMessageService messageService;
 
+    private final MessageWriteBuffer messageWriteBuffer;
+
+    private final DialogueRecorder dialogueRecorder;
+
+    // 最近对话历史缓存，写入时保持最新，设备重连时不再查询数据库
+    private final MessageHistoryCache historyCache;
+
     @Autowired
-    public DatabaseChatMemory(SysMessageService messageService) {
+    public DatabaseChatMemory(SysMessageService messageService, MessageWriteBuffer messageWriteBuffer,
+                              DialogueRecorder dialogueRecorder,
+                              @Value("${xiaozhi.message.history.cache.max-entries:10000}") int historyCacheEntries,
+                              @Value("${xiaozhi.message.history.cache.depth:20}") int historyCacheDepth) {
         this.messageService = messageService;
+        this.messageWriteBuffer = messageWriteBuffer;
+        this.dialogueRecorder = dialogueRecorder;
+        this.historyCache = new MessageHistoryCache(historyCacheEntries, historyCacheDepth);
     }
 
     @Override
     public void addMessage(String deviceId, String sessionId, String sender, String content, Integer roleId, String messageType, Long timeMillis) {
-        // 异步虚拟线程处理持久化。
-        Thread.startVirtualThread(() -> {
-            try {
-                SysMessage message = new SysMessage();
-                message.setDeviceId(deviceId);
-                message.setSessionId(sessionId);
-                message.setSender(sender);
-                message.setMessage(content);
-                message.setRoleId(roleId);
-                message.setMessageType(messageType);
-                Instant instant = Instant.ofEpochMilli(timeMillis).truncatedTo(ChronoUnit.SECONDS);
-                message.setCreateTime(Date.from(instant));
-                messageService.add(message);
-            } catch (Exception e) {
-                logger.error("保存消息时出错: {}", e.getMessage(), e);
+        // 交给批量写入队列异步持久化
+        try {
+            SysMessage message = new SysMessage();
+            message.setDeviceId(deviceId);
+            message.setSessionId(sessionId);
+            message.setSender(sender);
+            message.setMessage(content);
+            message.setRoleId(roleId);
+            message.setMessageType(messageType);
+            Instant instant = Instant.ofEpochMilli(timeMillis).truncatedTo(ChronoUnit.SECONDS);
+            message.setCreateTime(Date.from(instant));
+            if (deviceId != null) {
+                // 录音格式在保存时确定，查询时不再检查文件是wav还是opus
+                message.setAudioPath(dialogueRecorder.resolve(
+                        AudioUtils.messageAudioPath(deviceId, roleId, sender, message.getCreateTime())).toString());
             }
-        });
+            // 先登记到写入队列再追加缓存，同时加载的历史要么看到待写入的消息而不缓存，要么先缓存再被追加
+            messageWriteBuffer.add(message);
+            historyCache.append(MessageHistoryCache.key(deviceId, roleId, messageType), message);
+        } catch (Exception e) {
+            logger.error("保存消息时出错: {}", e.getMessage(), e);
+        }
     }
 
     @Override
-    public List<SysMessage> getMessages(String deviceId, String messageType, Integer limit) {
+    public List<SysMessage> getMessages(String deviceId, Integer roleId, String messageType, Integer limit) {
         try {
-            SysMessage queryMessage = new SysMessage();
-            queryMessage.setDeviceId(deviceId);
-            queryMessage.setMessageType(messageType);
-            PageFilter pageFilter = new PageFilter(1, limit);
-            List<SysMessage> messages = messageService.query(queryMessage, pageFilter);
-            messages = new ArrayList<>(messages);
-            messages.sort(Comparator.comparing(Base::getCreateTime));
-            return messages;
-            // return messages;
+            String key = MessageHistoryCache.key(deviceId, roleId, messageType);
+            List<SysMessage> cached = historyCache.get(key, limit);
+            if (cached != null) {
+                return cached;
+            }
+            // 一次按缓存深度加载，后续重连直接命中缓存
+            int depth = historyCache.depth();
+            if (limit > depth) {
+                return messageService.queryHistory(deviceId, roleId, messageType, limit);
+            }
+            List<SysMessage> messages = messageService.queryHistory(deviceId, roleId, messageType, depth);
+            // 设备还有待写入或复制中的消息时读到的历史不完整，只返回不缓存
+            historyCache.put(key, messages, () -> messageWriteBuffer.isSettled(deviceId));
+            return messages.size() > limit ? new ArrayList<>(messages.subList(messages.size() - limit, messages.size()))
+                    : messages;
         } catch (Exception e) {
             logger.error("获取历史消息时出错: {}", e.getMessage(), e);
             return new ArrayList<>();
@@ -75,7 +99,8 @@ public class DatabaseChatMemory  implements ChatMemory {
     @Override
     public void clearMessages(String deviceId) {
         try {
-            // 清除设备的历史消息
+            // 清除设备的历史消息缓存，下次加载时从数据库读取
+            historyCache.evictDevice(deviceId);
             SysMessage deleteMessage = new SysMessage();
             deleteMessage.setDeviceId(deviceId);
             // messageService.update(deleteMessage);
@@ -0,0 +1,101 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 按设备/角色/消息类型缓存最近的对话历史
+ * 首次加载时从数据库读取最近depth条，之后新消息在写入时追加，设备重连时直接从内存返回。
+ * 只追加已经加载过的条目；设备还有没写入数据库或刚写入、只读副本可能还没复制到的消息时，
+ * 读到的历史可能缺少这些消息，不写入缓存。条目总数有上限，按最近使用淘汰。
+ */
+class MessageHistoryCache {
+
+    private final int depth;
+    private final LinkedHashMap<String, ArrayDeque<SysMessage>> entries;
+
+    MessageHistoryCache(int maxEntries, int depth) {
+        this.depth = depth;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArrayDeque<SysMessage>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static String key(String deviceId, Integer roleId, String messageType) {
+        return deviceId + ":" + roleId + ":" + messageType;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * 获取最近limit条历史，未缓存或超出缓存深度时返回null
+     */
+    synchronized List<SysMessage> get(String key, int limit) {
+        ArrayDeque<SysMessage> history = entries.get(key);
+        if (history == null || limit > depth) {
+            return null;
+        }
+        List<SysMessage> messages = new ArrayList<>(history);
+        return messages.size() > limit ? messages.subList(messages.size() - limit, messages.size()) : messages;
+    }
+
+    /**
+     * 写入从数据库加载的历史（按时间正序，不超过缓存深度）
+     * 在锁内检查读到的历史是否完整，与{@link #append}互斥：检查之后提交的消息会追加到这里写入的条目
+     *
+     * @param complete 读到的历史是否包含全部已提交的消息
+     * @return 是否写入了缓存
+     */
+    synchronized boolean put(String key, List<SysMessage> messages, BooleanSupplier complete) {
+        if (!complete.getAsBoolean()) {
+            return false;
+        }
+        ArrayDeque<SysMessage> history = new ArrayDeque<>(messages);
+        while (history.size() > depth) {
+            history.pollFirst();
+        }
+        entries.put(key, history);
+        return true;
+    }
+
+    /**
+     * 追加新消息，只更新已缓存的条目
+     */
+    synchronized void append(String key, SysMessage message) {
+        ArrayDeque<SysMessage> history = entries.get(key);
+        if (history == null) {
+            return;
+        }
+        history.addLast(message);
+        if (history.size() > depth) {
+            history.pollFirst();
+        }
+    }
+
+    /**
+     * 删除设备的全部缓存，deviceId为null时清空
+     */
+    synchronized void evictDevice(String deviceId) {
+        if (deviceId == null) {
+            entries.clear();
+            return;
+        }
+        String prefix = deviceId + ":";
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
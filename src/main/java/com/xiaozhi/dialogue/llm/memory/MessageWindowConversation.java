@@ -24,8 +24,9 @@ public class MessageWindowConversation extends Conversation {
         super(device, role, sessionId);
         this.maxMessages = maxMessages;
         this.chatMemory = chatMemory;
-        logger.info("加载设备{}的普通消息(SysMessage.MESSAGE_TYPE_NORMAL)作为对话历史",device.getDeviceId());
-        List<SysMessage> history = chatMemory.getMessages(device.getDeviceId(), SysMessage.MESSAGE_TYPE_NORMAL, maxMessages);
+        logger.info("加载设备{}角色{}的普通消息(SysMessage.MESSAGE_TYPE_NORMAL)作为对话历史",device.getDeviceId(), role.getRoleId());
+        List<SysMessage> history = chatMemory.getMessages(device.getDeviceId(), role.getRoleId(),
+                SysMessage.MESSAGE_TYPE_NORMAL, maxMessages);
         super.messages.addAll(convert(history)) ;
     }
 
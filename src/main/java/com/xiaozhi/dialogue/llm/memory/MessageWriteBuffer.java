@@ -0,0 +1,232 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.service.SysMessageService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息的延迟批量写入
+ * 消息先进入有界队列，由后台线程凑满一批或等待到刷新间隔后用一条多行INSERT写入，减少连接占用和往返次数。
+ * 队列满时调用方最多等待一段时间，仍然写不进去则同步写入，以此形成背压而不丢消息。
+ * 写入失败按次数重试，整批仍失败时逐条写入，只丢弃确实写不进去的消息。应用关闭时写完队列中剩余的消息。
+ * 按设备记录还没写完的消息数和最近写完的时间，读取方据此判断从数据库或只读副本读到的历史是否已包含设备的全部消息。
+ */
+@Component
+public class MessageWriteBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBuffer.class);
+
+    @Value("${xiaozhi.message.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${xiaozhi.message.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${xiaozhi.message.write-behind.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${xiaozhi.message.write-behind.offer-timeout-ms:500}")
+    private long offerTimeoutMs;
+
+    @Value("${xiaozhi.message.write-behind.retries:3}")
+    private int retries;
+
+    @Value("${xiaozhi.message.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    // 写完后再等待的时间，覆盖只读副本的复制延迟
+    @Value("${xiaozhi.message.write-behind.settle-ms:3000}")
+    private long settleMs;
+
+    @Autowired
+    private SysMessageService messageService;
+
+    private BlockingQueue<SysMessage> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // 设备ID -> 还没写完的消息，只在compute中读写
+    private final ConcurrentHashMap<String, DeviceWrites> deviceWrites = new ConcurrentHashMap<>();
+
+    private static final class DeviceWrites {
+        int pending;
+        long flushedNanos;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        writer = Thread.ofVirtual().name("message-write-behind").start(this::runLoop);
+        logger.info("消息批量写入已启动，队列容量: {}, 批大小: {}, 刷新间隔: {}ms", capacity, batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            // 后台线程未能及时写完，在当前线程写入剩余消息
+            List<SysMessage> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            logger.warn("关闭时仍有 {} 条消息未写入，同步写入", remaining.size());
+            flush(remaining);
+        }
+        logger.info("消息批量写入已关闭");
+    }
+
+    /**
+     * 提交一条消息，队列满时最多等待offerTimeoutMs，超时或已关闭时同步写入
+     */
+    public void add(SysMessage message) {
+        track(message);
+        if (running) {
+            try {
+                if (queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                logger.warn("消息写入队列已满（{}条），数据库写入跟不上，改为同步写入", queue.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush(List.of(message));
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * 设备的消息是否都已写入并且过了复制延迟，此后从数据库或只读副本读到的历史包含设备之前提交的全部消息
+     */
+    public boolean isSettled(String deviceId) {
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMs);
+        return deviceWrites.computeIfPresent(deviceId, (key, writes) ->
+                writes.pending == 0 && System.nanoTime() - writes.flushedNanos >= settleNanos ? null : writes) == null;
+    }
+
+    private void track(SysMessage message) {
+        if (message.getDeviceId() == null) {
+            return;
+        }
+        deviceWrites.compute(message.getDeviceId(), (key, writes) -> {
+            if (writes == null) {
+                writes = new DeviceWrites();
+            }
+            writes.pending++;
+            return writes;
+        });
+    }
+
+    private void untrack(List<SysMessage> batch) {
+        long now = System.nanoTime();
+        for (SysMessage message : batch) {
+            if (message.getDeviceId() == null) {
+                continue;
+            }
+            deviceWrites.computeIfPresent(message.getDeviceId(), (key, writes) -> {
+                writes.pending--;
+                writes.flushedNanos = now;
+                return writes;
+            });
+        }
+    }
+
+    private void runLoop() {
+        List<SysMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SysMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 凑满一批或等到刷新间隔
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    SysMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                flush(batch);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("消息批量写入线程出错: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<SysMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } finally {
+            // 写入成功或已丢弃都不再是待写入的消息
+            untrack(batch);
+        }
+    }
+
+    private void write(List<SysMessage> batch) {
+        for (int attempt = 1; attempt <= retries; attempt++) {
+            try {
+                messageService.addBatch(batch);
+                return;
+            } catch (Exception e) {
+                logger.warn("批量写入 {} 条消息失败（第{}次）: {}", batch.size(), attempt, e.getMessage());
+                if (attempt < retries) {
+                    try {
+                        Thread.sleep(100L * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        // 整批失败时逐条写入，避免一条异常数据拖累整批
+        int failed = 0;
+        for (SysMessage message : batch) {
+            try {
+                messageService.add(message);
+            } catch (Exception e) {
+                failed++;
+                logger.error("保存消息时出错，消息已丢弃 - DeviceId: {}, Sender: {}: {}",
+                        message.getDeviceId(), message.getSender(), e.getMessage());
+            }
+        }
+        if (failed > 0) {
+            logger.error("本批 {} 条消息中有 {} 条写入失败", batch.size(), failed);
+        }
+    }
+}
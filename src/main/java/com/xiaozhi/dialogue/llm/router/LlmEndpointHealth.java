@@ -0,0 +1,166 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import java.util.Arrays;
+
+/**
+ * 单个LLM配置（端点）的健康统计
+ * 滚动记录首token耗时与调用结果，并维护熔断状态：
+ * CLOSED 正常放行；OPEN 熔断中直接拒绝；熔断时间到期后进入 HALF_OPEN，只放行一个探测请求。
+ */
+public class LlmEndpointHealth {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Integer configId;
+    private final long[] ttftNanos;
+    private final boolean[] failures;
+    private final double failureRateThreshold;
+    private final int minCalls;
+    private final long openNanos;
+
+    private int ttftIndex;
+    private int ttftCount;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private int failureCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public LlmEndpointHealth(Integer configId, int windowSize, double failureRateThreshold, int minCalls,
+            long openMillis) {
+        this.configId = configId;
+        this.ttftNanos = new long[windowSize];
+        this.failures = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.minCalls = minCalls;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    public Integer getConfigId() {
+        return configId;
+    }
+
+    /**
+     * 是否可以被路由选中（不占用探测名额）
+     */
+    public synchronized boolean isAvailable() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> !probeInFlight;
+        };
+    }
+
+    /**
+     * 真正发起请求前调用，熔断中返回false；半开状态下只有第一个调用者获得探测名额
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    yield false;
+                }
+                probeInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * 记录首token耗时样本
+     */
+    public synchronized void recordFirstToken(long nanos) {
+        ttftNanos[ttftIndex] = nanos;
+        ttftIndex = (ttftIndex + 1) % ttftNanos.length;
+        if (ttftCount < ttftNanos.length) {
+            ttftCount++;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        recordOutcome(false);
+        if (state == State.HALF_OPEN) {
+            // 探测成功，恢复正常并清空窗口
+            state = State.CLOSED;
+            probeInFlight = false;
+            outcomeIndex = 0;
+            outcomeCount = 0;
+            failureCount = 0;
+            Arrays.fill(failures, false);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        recordOutcome(true);
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED && outcomeCount >= minCalls
+                && (double) failureCount / outcomeCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 请求在产生结果前被取消（如对冲请求落败），释放探测名额但不计入结果
+     */
+    public synchronized void recordCancelled() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * 首token耗时的分位数
+     *
+     * @param percentile 0~1
+     * @param minSamples 样本不足时返回-1
+     */
+    public synchronized long ttftPercentileNanos(double percentile, int minSamples) {
+        if (ttftCount < Math.max(1, minSamples)) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(ttftNanos, ttftCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * ttftCount) - 1;
+        return sorted[Math.min(ttftCount - 1, Math.max(0, index))];
+    }
+
+    public synchronized double failureRate() {
+        return outcomeCount == 0 ? 0 : (double) failureCount / outcomeCount;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == failures.length) {
+            if (failures[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        failures[outcomeIndex] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % failures.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probeInFlight = false;
+    }
+}
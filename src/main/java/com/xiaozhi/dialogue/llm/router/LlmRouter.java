@@ -0,0 +1,155 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import com.xiaozhi.entity.SysRole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * LLM路由
+ * 角色除了主模型(modelId)外，可以通过 modelGroup 绑定一组LLM配置，格式为 "configId[:weight],..."。
+ * 未指定权重时按配置顺序作为主备；任一成员指定了权重时，按权重随机决定本次请求的尝试顺序。
+ * 处于熔断中的端点会被排除，全部熔断时仍按原顺序尝试。
+ */
+@Component
+public class LlmRouter {
+    private static final Logger logger = LoggerFactory.getLogger(LlmRouter.class);
+
+    // 每个端点滚动窗口大小（首token耗时样本数、调用结果数）
+    @Value("${llm.routing.window.size:100}")
+    private int windowSize;
+
+    // 对冲请求的触发分位数
+    @Value("${llm.routing.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    // 计算分位数所需的最少样本数，不足时使用默认对冲延迟
+    @Value("${llm.routing.hedge.min.samples:10}")
+    private int hedgeMinSamples;
+
+    @Value("${llm.routing.hedge.default.ms:3000}")
+    private long hedgeDefaultMs;
+
+    @Value("${llm.routing.hedge.min.ms:500}")
+    private long hedgeMinMs;
+
+    @Value("${llm.routing.hedge.max.ms:8000}")
+    private long hedgeMaxMs;
+
+    // 熔断：窗口内错误率阈值
+    @Value("${llm.routing.circuit.failure.rate:0.5}")
+    private double failureRateThreshold;
+
+    // 熔断：窗口内最少调用次数
+    @Value("${llm.routing.circuit.min.calls:10}")
+    private int minCalls;
+
+    // 熔断：打开持续时间
+    @Value("${llm.routing.circuit.open.ms:30000}")
+    private long openMillis;
+
+    private final Map<Integer, LlmEndpointHealth> healthMap = new ConcurrentHashMap<>();
+
+    /**
+     * 路由组成员
+     */
+    public record Member(Integer configId, int weight, boolean weighted) {
+    }
+
+    /**
+     * 计算角色本次请求的候选LLM配置顺序
+     *
+     * @param role 角色
+     * @return 配置ID列表，第一个为主请求
+     */
+    public List<Integer> route(SysRole role) {
+        List<Member> members = parseGroup(role.getModelId(), role.getModelGroup());
+        if (members.size() <= 1) {
+            return members.stream().map(Member::configId).toList();
+        }
+        List<Integer> ordered = members.stream().anyMatch(Member::weighted)
+                ? weightedOrder(members)
+                : members.stream().map(Member::configId).toList();
+
+        List<Integer> available = new ArrayList<>(ordered.size());
+        for (Integer configId : ordered) {
+            if (health(configId).isAvailable()) {
+                available.add(configId);
+            }
+        }
+        if (available.isEmpty()) {
+            logger.warn("角色 {} 的所有LLM配置均处于熔断状态，按原顺序尝试", role.getRoleId());
+            return ordered;
+        }
+        return available;
+    }
+
+    /**
+     * 对冲延迟：主请求在该时间内没有返回首token时，向下一个端点发起对冲请求
+     */
+    public Duration hedgeDelay(Integer configId) {
+        long nanos = health(configId).ttftPercentileNanos(hedgePercentile, hedgeMinSamples);
+        long millis = nanos < 0 ? hedgeDefaultMs : nanos / 1_000_000L;
+        return Duration.ofMillis(Math.min(hedgeMaxMs, Math.max(hedgeMinMs, millis)));
+    }
+
+    public LlmEndpointHealth health(Integer configId) {
+        return healthMap.computeIfAbsent(configId,
+                id -> new LlmEndpointHealth(id, windowSize, failureRateThreshold, minCalls, openMillis));
+    }
+
+    /**
+     * 解析路由组，主模型始终包含在内，重复的配置ID只保留第一次出现
+     */
+    public static List<Member> parseGroup(Integer modelId, String modelGroup) {
+        Map<Integer, Member> members = new LinkedHashMap<>();
+        if (StringUtils.hasText(modelGroup)) {
+            for (String item : modelGroup.split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) {
+                    continue;
+                }
+                try {
+                    int separator = item.indexOf(':');
+                    Integer configId = Integer.valueOf((separator < 0 ? item : item.substring(0, separator)).trim());
+                    int weight = separator < 0 ? 1 : Integer.parseInt(item.substring(separator + 1).trim());
+                    if (weight > 0) {
+                        members.putIfAbsent(configId, new Member(configId, weight, separator >= 0));
+                    }
+                } catch (NumberFormatException e) {
+                    logger.warn("忽略无效的LLM路由组配置项: {}", item);
+                }
+            }
+        }
+        if (modelId != null && !members.containsKey(modelId)) {
+            Map<Integer, Member> withPrimary = new LinkedHashMap<>();
+            withPrimary.put(modelId, new Member(modelId, 1, false));
+            withPrimary.putAll(members);
+            members = withPrimary;
+        }
+        return new ArrayList<>(members.values());
+    }
+
+    // 加权随机排列（Efraimidis-Spirakis），权重越大越可能排在前面
+    private static List<Integer> weightedOrder(List<Member> members) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        record Keyed(Integer configId, double key) {
+        }
+        return members.stream()
+                .map(m -> new Keyed(m.configId(), Math.log(1 - random.nextDouble()) / m.weight()))
+                .sorted(Comparator.comparingDouble(Keyed::key).reversed())
+                .map(Keyed::configId)
+                .toList();
+    }
+}
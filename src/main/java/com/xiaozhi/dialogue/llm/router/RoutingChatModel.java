@@ -0,0 +1,178 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 带故障转移和对冲请求的ChatModel
+ * 按路由顺序依次尝试各端点：主请求在对冲延迟内没有返回首token时，向下一个端点发起对冲请求，
+ * 先返回首token的一方胜出，另一方被取消；首token前出错则立即转移到下一个端点。
+ * 同一轮对话中工具调用只允许一个请求执行，工具开始执行后不再发起对冲，避免设备动作重复执行。
+ */
+public class RoutingChatModel implements ChatModel {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    /**
+     * 工具上下文中对冲凭证的key
+     */
+    public static final String TOOL_CONTEXT_HEDGE_KEY = "llmHedgeTicket";
+
+    /**
+     * 路由端点，ChatModel在真正发起请求时才创建
+     */
+    public record Endpoint(Integer configId, Supplier<ChatModel> chatModel) {
+    }
+
+    /**
+     * 对冲凭证，同一轮对话的各个请求共享owner，第一个执行工具调用的请求成为owner
+     */
+    public record HedgeTicket(AtomicInteger owner, int attempt) {
+
+        public boolean claim() {
+            return owner.compareAndSet(-1, attempt) || owner.get() == attempt;
+        }
+    }
+
+    /**
+     * 工具调用已由同一轮对话的另一个请求执行，本请求作为对冲落败方结束，不代表端点出错
+     */
+    public static class HedgeLostException extends IllegalStateException {
+        public HedgeLostException(String message) {
+            super(message);
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final LlmRouter router;
+
+    public RoutingChatModel(List<Endpoint> endpoints, LlmRouter router) {
+        this.endpoints = List.copyOf(endpoints);
+        this.router = router;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        RuntimeException lastError = null;
+        for (Endpoint endpoint : endpoints) {
+            LlmEndpointHealth health = router.health(endpoint.configId());
+            if (!health.tryAcquire()) {
+                continue;
+            }
+            try {
+                // 阻塞调用只有整体耗时，不计入决定对冲延迟的首token耗时样本
+                ChatResponse response = endpoint.chatModel().get().call(prompt);
+                health.recordSuccess();
+                return response;
+            } catch (RuntimeException e) {
+                health.recordFailure();
+                lastError = e;
+                logger.warn("LLM配置 {} 调用失败，尝试下一个: {}", endpoint.configId(), e.getMessage());
+            }
+        }
+        throw lastError != null ? lastError : new IllegalStateException("没有可用的LLM配置");
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        AtomicInteger owner = new AtomicInteger(-1);
+        return streamFrom(0, prompt, owner);
+    }
+
+    private Flux<ChatResponse> streamFrom(int index, Prompt prompt, AtomicInteger owner) {
+        Endpoint endpoint = endpoints.get(index);
+        Flux<ChatResponse> attempt = attempt(endpoint, withHedgeTicket(prompt, owner, index));
+        if (index + 1 >= endpoints.size()) {
+            return attempt;
+        }
+
+        // 首token前出错时立即触发下一个端点，否则等到对冲延迟
+        Sinks.Empty<Void> failed = Sinks.empty();
+        Flux<ChatResponse> primary = attempt.doOnError(e -> failed.tryEmitEmpty());
+        Mono<Long> hedgeTimer = Mono.delay(router.hedgeDelay(endpoint.configId()))
+                .flatMap(tick -> owner.get() != -1 ? Mono.<Long>never() : Mono.just(tick))
+                .doOnNext(tick -> logger.info("LLM配置 {} 首token超时，发起对冲请求", endpoint.configId()));
+        Flux<ChatResponse> fallback = Flux.defer(() -> streamFrom(index + 1, prompt, owner))
+                .delaySubscription(Mono.firstWithSignal(hedgeTimer, failed.asMono()));
+        return Flux.firstWithValue(primary, fallback);
+    }
+
+    // 包装单个端点的流式请求，记录首token耗时、结果与取消
+    private Flux<ChatResponse> attempt(Endpoint endpoint, Prompt prompt) {
+        return Flux.defer(() -> {
+            LlmEndpointHealth health = router.health(endpoint.configId());
+            if (!health.tryAcquire()) {
+                return Flux.error(new IllegalStateException("LLM配置 " + endpoint.configId() + " 处于熔断状态"));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean(false);
+            AtomicBoolean terminated = new AtomicBoolean(false);
+            return endpoint.chatModel().get().stream(prompt)
+                    .doOnNext(response -> {
+                        if (firstToken.compareAndSet(false, true)) {
+                            health.recordFirstToken(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        terminated.set(true);
+                        health.recordSuccess();
+                    })
+                    .doOnError(e -> {
+                        terminated.set(true);
+                        if (isHedgeLost(e)) {
+                            // 对冲落败，按取消处理
+                            health.recordCancelled();
+                            logger.info("LLM配置 {} 的工具调用已由对冲请求执行，结束本请求", endpoint.configId());
+                            return;
+                        }
+                        health.recordFailure();
+                        logger.warn("LLM配置 {} 流式调用失败: {}", endpoint.configId(), e.getMessage());
+                    })
+                    .doOnCancel(() -> {
+                        if (terminated.get()) {
+                            return;
+                        }
+                        if (firstToken.get()) {
+                            health.recordSuccess();
+                        } else {
+                            // 对冲落败，以已等待的时间作为耗时样本，反映端点变慢
+                            health.recordFirstToken(System.nanoTime() - start);
+                            health.recordCancelled();
+                        }
+                    });
+        });
+    }
+
+    private static boolean isHedgeLost(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof HedgeLostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Prompt withHedgeTicket(Prompt prompt, AtomicInteger owner, int attempt) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions options)) {
+            return prompt;
+        }
+        ToolCallingChatOptions copy = options.copy();
+        Map<String, Object> toolContext = new HashMap<>(copy.getToolContext());
+        toolContext.put(TOOL_CONTEXT_HEDGE_KEY, new HedgeTicket(owner, attempt));
+        copy.setToolContext(toolContext);
+        return new Prompt(prompt.getInstructions(), copy);
+    }
+}
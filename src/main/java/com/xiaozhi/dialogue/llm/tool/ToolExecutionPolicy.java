@@ -0,0 +1,59 @@
+package com.xiaozhi.dialogue.llm.tool;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 工具执行策略
+ * 同一批次中互不依赖的工具调用会并发执行，这里标记必须串行执行的工具（如切换角色、退出会话、播放音乐等
+ * 会改变会话状态的系统控制类工具），并给出单个工具调用的超时时间。
+ */
+public class ToolExecutionPolicy {
+
+    /**
+     * 默认需要串行执行的工具
+     */
+    public static final Set<String> DEFAULT_SERIAL_TOOLS = Set.of(
+            "func_changeRole", "func_exitSession", "func_playMusic", "func_playHuiBen");
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Set<String> serialTools;
+
+    private final Duration timeout;
+
+    public ToolExecutionPolicy(Collection<String> serialTools, Duration timeout) {
+        this.serialTools = Set.copyOf(serialTools);
+        this.timeout = timeout;
+    }
+
+    public static ToolExecutionPolicy defaults() {
+        return new ToolExecutionPolicy(DEFAULT_SERIAL_TOOLS, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * 在默认串行工具的基础上追加额外的工具名称
+     */
+    public static ToolExecutionPolicy of(Collection<String> extraSerialTools, Duration timeout) {
+        Set<String> serialTools = new HashSet<>(DEFAULT_SERIAL_TOOLS);
+        for (String toolName : extraSerialTools) {
+            if (toolName != null && !toolName.isBlank()) {
+                serialTools.add(toolName.trim());
+            }
+        }
+        return new ToolExecutionPolicy(serialTools, timeout);
+    }
+
+    /**
+     * 是否必须串行执行：执行前等待之前的调用全部完成，执行完成后才开始后续调用
+     */
+    public boolean isSerial(String toolName) {
+        return serialTools.contains(toolName);
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,42 @@
+package com.xiaozhi.dialogue.llm.tool;
+
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 不可变的工具集合快照
+ * 工具回调与传给LLM的ToolDefinition列表在构建时一次性算好，工具集合变化时整体替换。
+ *
+ * @param callbacks   工具回调
+ * @param definitions 与callbacks一一对应的工具定义
+ */
+public record ToolSet(List<ToolCallback> callbacks, List<ToolDefinition> definitions) {
+
+    public static final ToolSet EMPTY = new ToolSet(List.of(), List.of());
+
+    public static ToolSet of(Collection<ToolCallback> callbacks) {
+        if (callbacks.isEmpty()) {
+            return EMPTY;
+        }
+        List<ToolCallback> snapshot = List.copyOf(callbacks);
+        return new ToolSet(snapshot, snapshot.stream().map(ToolCallback::getToolDefinition).toList());
+    }
+
+    /**
+     * 判断给定的回调列表是否与当前快照完全一致（按引用比较）
+     */
+    public boolean matches(List<ToolCallback> toolCallbacks) {
+        if (toolCallbacks.size() != callbacks.size()) {
+            return false;
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            if (toolCallbacks.get(i) != callbacks.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.resolution.ToolCallbackResolver;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,6 +23,9 @@ public class ToolsGlobalRegistry implements ToolCallbackResolver {
     protected static final ConcurrentHashMap<String, ToolCallback> allFunction
             = new ConcurrentHashMap<>();
 
+    // 与会话无关的全局function只构建一次，所有会话共享同一个实例
+    private final Map<GlobalFunction, ToolCallback> sharedFunctions = new ConcurrentHashMap<>();
+
     @Resource
     protected List<GlobalFunction> globalFunctions;
 
@@ -60,24 +64,42 @@ public class ToolsGlobalRegistry implements ToolCallbackResolver {
     }
 
     /**
-     * Get all registered functions
+     * Get all functions available for the session
+     * 与会话无关的function取共享实例并注册到全局，依赖会话数据的function每次单独构建，只返回给当前会话
      *
-     * @return a map of all registered functions
+     * @return a map of functions available for the session
      */
     public Map<String, ToolCallback> getAllFunctions(ChatSession chatSession) {
-        globalFunctions.forEach(
-                globalFunction -> {
-                    ToolCallback toolCallback = globalFunction.getFunctionCallTool(chatSession);
-                    if(toolCallback != null){
-                        registerFunction(toolCallback.getToolDefinition().name(),
-                                toolCallback);
+        Map<String, ToolCallback> functions = new LinkedHashMap<>();
+        for (GlobalFunction globalFunction : globalFunctions) {
+            ToolCallback toolCallback;
+            if (globalFunction.isSessionScoped()) {
+                toolCallback = globalFunction.getFunctionCallTool(chatSession);
+            } else {
+                toolCallback = sharedFunctions.get(globalFunction);
+                if (toolCallback == null) {
+                    toolCallback = globalFunction.getFunctionCallTool(chatSession);
+                    if (toolCallback != null) {
+                        sharedFunctions.putIfAbsent(globalFunction, toolCallback);
+                        registerFunction(toolCallback.getToolDefinition().name(), toolCallback);
                     }
                 }
-        );
-        return allFunction;
+            }
+            if (toolCallback != null) {
+                functions.put(toolCallback.getToolDefinition().name(), toolCallback);
+            }
+        }
+        return functions;
     }
 
     public interface GlobalFunction{
         ToolCallback getFunctionCallTool(ChatSession chatSession);
+
+        /**
+         * 工具回调是否依赖会话数据（如捕获了当前设备、角色列表），是则每个会话单独构建，不能共享
+         */
+        default boolean isSessionScoped() {
+            return false;
+        }
     }
 }
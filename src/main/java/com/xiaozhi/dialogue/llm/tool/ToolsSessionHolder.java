@@ -10,13 +10,19 @@ import java.util.*;
 
 /**
  * 与session绑定的functionTools
+ * 只保存工具回调的引用，回调本身（全局函数、同类型iot设备的函数）在会话之间共享，会话上下文通过ToolContext传入。
  */
 public class ToolsSessionHolder {
     private final Logger logger = LoggerFactory.getLogger(ToolsSessionHolder.class);
 
     private static final String TAG = "FUNCTION_SESSION";
 
-    private final Map<String, ToolCallback> functionRegistry = new HashMap<>();
+    private final Map<String, ToolCallback> functionRegistry = new LinkedHashMap<>();
+
+    // 工具集合快照，注册或注销工具后在下次读取时重建
+    private volatile ToolSet toolSet = ToolSet.EMPTY;
+
+    private volatile boolean dirty;
 
     private String sessionId;
 
@@ -43,7 +49,10 @@ public class ToolsSessionHolder {
             logger.error("[{}] - SessionId:{} Function:{} not found in globalFunctionRegistry", TAG, sessionId, name);
             return null;
         }
-        functionRegistry.put(name, func);
+        synchronized (functionRegistry) {
+            functionRegistry.put(name, func);
+            dirty = true;
+        }
         logger.debug("[{}] - SessionId:{} Function:{} registered from global successfully", TAG, sessionId, name);
         return func;
     }
@@ -55,7 +64,10 @@ public class ToolsSessionHolder {
      * @return the registered function or null if not found
      */
     public void registerFunction(String name, ToolCallback functionCallTool) {
-        functionRegistry.put(name, functionCallTool);
+        synchronized (functionRegistry) {
+            functionRegistry.put(name, functionCallTool);
+            dirty = true;
+        }
 //        logger.debug("[{}] - SessionId:{} Function:{} registered successfully", TAG, sessionId, name);
     }
 
@@ -67,11 +79,13 @@ public class ToolsSessionHolder {
      */
     public boolean unregisterFunction(String name) {
         // Check if the function exists before unregistering
-        if (!functionRegistry.containsKey(name)) {
-            logger.error("[{}] - SessionId:{} Function:{} not found", TAG, sessionId, name);
-            return false;
+        synchronized (functionRegistry) {
+            if (functionRegistry.remove(name) == null) {
+                logger.error("[{}] - SessionId:{} Function:{} not found", TAG, sessionId, name);
+                return false;
+            }
+            dirty = true;
         }
-        functionRegistry.remove(name);
         logger.info("[{}] - SessionId:{} Function:{} unregistered successfully", TAG, sessionId, name);
         return true;
     }
@@ -83,7 +97,9 @@ public class ToolsSessionHolder {
      * @return the function or null if not found
      */
     public ToolCallback getFunction(String name) {
-        return functionRegistry.get(name);
+        synchronized (functionRegistry) {
+            return functionRegistry.get(name);
+        }
     }
 
     /**
@@ -92,7 +108,24 @@ public class ToolsSessionHolder {
      * @return a map of all registered functions
      */
     public List<ToolCallback> getAllFunction() {
-        return functionRegistry.values().stream().toList();
+        return getToolSet().callbacks();
+    }
+
+    /**
+     * Get the immutable snapshot of registered functions and their definitions
+     *
+     * @return the current tool set
+     */
+    public ToolSet getToolSet() {
+        if (dirty) {
+            synchronized (functionRegistry) {
+                if (dirty) {
+                    toolSet = ToolSet.of(functionRegistry.values());
+                    dirty = false;
+                }
+            }
+        }
+        return toolSet;
     }
 
     /**
@@ -101,7 +134,9 @@ public class ToolsSessionHolder {
      * @return a list of all registered function name
      */
     public List<String> getAllFunctionName() {
-        return new ArrayList<>(functionRegistry.keySet());
+        synchronized (functionRegistry) {
+            return new ArrayList<>(functionRegistry.keySet());
+        }
     }
 
     /**
@@ -109,13 +144,19 @@ public class ToolsSessionHolder {
      */
     public void registerGlobalFunctionTools(ChatSession chatSession) {
         String functionNames = sysDevice == null? null : sysDevice.getFunctionNames();
+        Map<String, ToolCallback> globalFunctions = globalFunctionRegistry.getAllFunctions(chatSession);
         if(functionNames != null && !functionNames.isEmpty()){//如果指定了function配置，则只加载指定的
             String[] functionNameArr = functionNames.split(",");
             for(String functionName : functionNameArr){
-                registerFunction(functionName);
+                ToolCallback func = globalFunctions.get(functionName);
+                if (func == null) {
+                    logger.error("[{}] - SessionId:{} Function:{} not found in globalFunctionRegistry", TAG, sessionId, functionName);
+                    continue;
+                }
+                registerFunction(functionName, func);
             }
         }else{//否则加载所有的全局function
-            globalFunctionRegistry.getAllFunctions(chatSession).forEach(this::registerFunction);
+            globalFunctions.forEach(this::registerFunction);
         }
     }
 }
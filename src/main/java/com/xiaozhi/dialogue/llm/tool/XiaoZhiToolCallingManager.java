@@ -1,5 +1,8 @@
 package com.xiaozhi.dialogue.llm.tool;
 
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.dialogue.llm.ChatService;
+import com.xiaozhi.dialogue.llm.router.RoutingChatModel;
 import io.micrometer.observation.ObservationRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +32,7 @@ import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * 自定义的工具调用管理器，用于处理工具调用和执行。
@@ -53,6 +57,9 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
     private static final ToolExecutionExceptionProcessor DEFAULT_TOOL_EXECUTION_EXCEPTION_PROCESSOR
             = DefaultToolExecutionExceptionProcessor.builder().build();
 
+    private static final ExecutorService TOOL_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tool-call-", 0).factory());
+
     // @formatter:on
 
     private final ObservationRegistry observationRegistry;
@@ -63,6 +70,8 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
 
     private ToolCallingObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    private ToolExecutionPolicy toolExecutionPolicy = ToolExecutionPolicy.defaults();
+
     public XiaoZhiToolCallingManager(ObservationRegistry observationRegistry, ToolCallbackResolver toolCallbackResolver,
                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
         Assert.notNull(observationRegistry, "observationRegistry cannot be null");
@@ -78,6 +87,20 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
     public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
         Assert.notNull(chatOptions, "chatOptions cannot be null");
 
+        if (chatOptions.getToolNames().isEmpty()) {
+            if (chatOptions.getToolCallbacks().isEmpty()) {
+                return List.of();
+            }
+            // 工具回调来自会话的工具集合时，直接使用预先计算好的工具定义
+            if (chatOptions.getToolContext().get(ChatService.TOOL_CONTEXT_SESSION_KEY) instanceof ChatSession session
+                    && session.getToolsSessionHolder() != null) {
+                ToolSet toolSet = session.getToolsSessionHolder().getToolSet();
+                if (toolSet.matches(chatOptions.getToolCallbacks())) {
+                    return toolSet.definitions();
+                }
+            }
+        }
+
         List<ToolCallback> toolCallbacks = new ArrayList<>(chatOptions.getToolCallbacks());
         for (String toolName : chatOptions.getToolNames()) {
             // Skip the tool if it is already present in the request toolCallbacks.
@@ -113,40 +136,24 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
             throw new IllegalStateException("No tool call requested by the chat model");
         }
 
-        String toolId = null;
-        String toolType = null;
-        StringBuilder functionName = new StringBuilder();
-        StringBuilder functionParam = new StringBuilder();
-        for (AssistantMessage.ToolCall toolCall : toolCallGeneration.get().getOutput().getToolCalls()) {
-            if(!toolCall.id().isEmpty()){
-                toolId = toolCall.id();
-            }
-            if(!toolCall.type().isEmpty()){
-                toolType = toolCall.type();
-            }
-            if(!toolCall.name().isEmpty()){
-                functionName.append(toolCall.name());
-            }
-            if (!toolCall.arguments().isEmpty()) {
-                functionParam.append(toolCall.arguments());
-            }
+        // 对冲请求中只允许一个请求执行工具，避免设备动作重复执行
+        if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
+                && toolCallingChatOptions.getToolContext().get(RoutingChatModel.TOOL_CONTEXT_HEDGE_KEY) instanceof RoutingChatModel.HedgeTicket ticket
+                && !ticket.claim()) {
+            throw new RoutingChatModel.HedgeLostException("Tool calls are already being executed by another hedged request");
         }
+
         AssistantMessage assistantMessage = toolCallGeneration.get().getOutput();
-        AssistantMessage.ToolCall toolCall = new AssistantMessage.ToolCall(
-                toolId.toString(),
-                toolType.toString(),
-                functionName.toString(),
-                functionParam.toString()
-        );
-        AssistantMessage toolCallMessage = new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), List.of(toolCall));
+        AssistantMessage toolCallMessage = new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(),
+                mergeToolCalls(assistantMessage.getToolCalls()));
 
-        ToolContext toolContext = buildToolContext(prompt, assistantMessage);
+        ToolContext toolContext = buildToolContext(prompt, toolCallMessage);
 
         XiaoZhiToolCallingManager.InternalToolExecutionResult internalToolExecutionResult = executeToolCall(prompt, toolCallMessage,
                 toolContext);
 
         List<Message> conversationHistory = buildConversationHistoryAfterToolExecution(prompt.getInstructions(),
-                assistantMessage, internalToolExecutionResult.toolResponseMessage());
+                toolCallMessage, internalToolExecutionResult.toolResponseMessage());
 
         return ToolExecutionResult.builder()
                 .conversationHistory(conversationHistory)
@@ -180,8 +187,51 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
         return messageHistory;
     }
 
+    /**
+     * 合并模型返回的工具调用片段。
+     * 有的模型会把一个工具调用拆成多条返回，其中有的只包含名称，有的只包含参数；
+     * 出现与当前不同的id时视为一个新的工具调用；ToolCall不带序号，没有id的片段在参数开始之后又出现名称时才视为新的调用，
+     * 否则名称片段拼接到当前调用，兼容把函数名分多条流式返回的模型。
+     */
+    static List<AssistantMessage.ToolCall> mergeToolCalls(List<AssistantMessage.ToolCall> fragments) {
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        String toolId = "";
+        String toolType = "";
+        StringBuilder functionName = new StringBuilder();
+        StringBuilder functionParam = new StringBuilder();
+        for (AssistantMessage.ToolCall fragment : fragments) {
+            String id = fragment.id() == null ? "" : fragment.id();
+            String type = fragment.type() == null ? "" : fragment.type();
+            String name = fragment.name() == null ? "" : fragment.name();
+            String arguments = fragment.arguments() == null ? "" : fragment.arguments();
+            boolean newId = !id.isEmpty() && !toolId.isEmpty() && !id.equals(toolId);
+            boolean newName = !name.isEmpty() && !functionParam.isEmpty();
+            if (newId || newName) {
+                toolCalls.add(new AssistantMessage.ToolCall(toolId, toolType, functionName.toString(), functionParam.toString()));
+                toolId = "";
+                toolType = "";
+                functionName.setLength(0);
+                functionParam.setLength(0);
+            }
+            if (!id.isEmpty()) {
+                toolId = id;
+            }
+            if (!type.isEmpty()) {
+                toolType = type;
+            }
+            functionName.append(name);
+            functionParam.append(arguments);
+        }
+        if (!functionName.isEmpty()) {
+            toolCalls.add(new AssistantMessage.ToolCall(toolId, toolType, functionName.toString(), functionParam.toString()));
+        }
+        return toolCalls;
+    }
+
     /**
      * Execute the tool call and return the response message.
+     * 互不依赖的工具调用在虚拟线程上并发执行，策略中标记为串行的工具等待之前的调用完成后单独执行；
+     * 每个调用有独立的超时，结果保持原有顺序，单个调用失败时返回错误信息而不是中断整批调用。
      */
     private XiaoZhiToolCallingManager.InternalToolExecutionResult executeToolCall(Prompt prompt, AssistantMessage assistantMessage,
                                                                                   ToolContext toolContext) {
@@ -190,59 +240,107 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
             toolCallbacks = toolCallingChatOptions.getToolCallbacks();
         }
 
-        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        String[] results = new String[toolCalls.size()];
+        Map<Integer, PendingCall> inFlight = new LinkedHashMap<>();
 
         Boolean returnDirect = null;
 
-        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
-
-            logger.debug("Executing tool call: {}", toolCall.name());
-
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
             String toolName = toolCall.name();
-            String toolInputArguments = toolCall.arguments();
-
             ToolCallback toolCallback = toolCallbacks.stream()
                     .filter(tool -> toolName.equals(tool.getToolDefinition().name()))
                     .findFirst()
                     .orElseGet(() -> this.toolCallbackResolver.resolve(toolName));
 
+            boolean toolReturnDirect = toolCallback != null && toolCallback.getToolMetadata().returnDirect();
+            returnDirect = returnDirect == null ? toolReturnDirect : returnDirect && toolReturnDirect;
+
             if (toolCallback == null) {
-                throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+                logger.error("No ToolCallback found for tool name: {}", toolName);
+                results[i] = "工具调用失败：未找到工具 " + toolName;
+                continue;
             }
 
-            if (returnDirect == null) {
-                returnDirect = toolCallback.getToolMetadata().returnDirect();
+            boolean serial = toolExecutionPolicy.isSerial(toolName);
+            if (serial) {
+                // 串行工具：等待之前的调用全部完成后再执行，执行完成后才继续后续调用
+                awaitAll(inFlight, toolCalls, results);
             }
-            else {
-                returnDirect = returnDirect && toolCallback.getToolMetadata().returnDirect();
+            long deadline = System.nanoTime() + toolExecutionPolicy.getTimeout().toNanos();
+            PendingCall pendingCall = new PendingCall(
+                    TOOL_EXECUTOR.submit(() -> callTool(toolCallback, toolCall, toolContext)), deadline);
+            if (serial) {
+                results[i] = awaitResult(pendingCall, toolName);
+            } else {
+                inFlight.put(i, pendingCall);
             }
+        }
+        awaitAll(inFlight, toolCalls, results);
 
-            ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
-                    .toolDefinition(toolCallback.getToolDefinition())
-                    .toolMetadata(toolCallback.getToolMetadata())
-                    .toolCallArguments(toolInputArguments)
-                    .build();
-
-            String toolCallResult = ToolCallingObservationDocumentation.TOOL_CALL
-                    .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
-                            this.observationRegistry)
-                    .observe(() -> {
-                        String toolResult;
-                        try {
-                            toolResult = toolCallback.call(toolInputArguments, toolContext);
-                        }
-                        catch (ToolExecutionException ex) {
-                            toolResult = this.toolExecutionExceptionProcessor.process(ex);
-                        }
-                        observationContext.setToolCallResult(toolResult);
-                        return toolResult;
-                    });
-
-            toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolName,
-                    toolCallResult != null ? toolCallResult : ""));
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                    results[i] != null ? results[i] : ""));
         }
 
-        return new XiaoZhiToolCallingManager.InternalToolExecutionResult(new ToolResponseMessage(toolResponses, Map.of()), returnDirect);
+        return new XiaoZhiToolCallingManager.InternalToolExecutionResult(new ToolResponseMessage(toolResponses, Map.of()),
+                returnDirect != null && returnDirect);
+    }
+
+    private String callTool(ToolCallback toolCallback, AssistantMessage.ToolCall toolCall, ToolContext toolContext) {
+        logger.debug("Executing tool call: {}", toolCall.name());
+
+        String toolInputArguments = toolCall.arguments();
+        ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
+                .toolDefinition(toolCallback.getToolDefinition())
+                .toolMetadata(toolCallback.getToolMetadata())
+                .toolCallArguments(toolInputArguments)
+                .build();
+
+        return ToolCallingObservationDocumentation.TOOL_CALL
+                .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
+                        this.observationRegistry)
+                .observe(() -> {
+                    String toolResult;
+                    try {
+                        toolResult = toolCallback.call(toolInputArguments, toolContext);
+                    }
+                    catch (ToolExecutionException ex) {
+                        toolResult = this.toolExecutionExceptionProcessor.process(ex);
+                    }
+                    observationContext.setToolCallResult(toolResult);
+                    return toolResult;
+                });
+    }
+
+    private void awaitAll(Map<Integer, PendingCall> inFlight, List<AssistantMessage.ToolCall> toolCalls, String[] results) {
+        inFlight.forEach((index, pendingCall) -> results[index] = awaitResult(pendingCall, toolCalls.get(index).name()));
+        inFlight.clear();
+    }
+
+    /**
+     * 等待单个工具调用结果，超时或失败时返回错误信息
+     */
+    private String awaitResult(PendingCall pendingCall, String toolName) {
+        Future<String> future = pendingCall.future();
+        try {
+            return future.get(Math.max(0, pendingCall.deadlineNanos() - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.warn("Tool call timed out: {}", toolName);
+            return "工具调用超时：" + toolName;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return "工具调用被中断：" + toolName;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.error("Tool call failed: {}", toolName, cause);
+            return "工具调用失败：" + cause.getMessage();
+        }
     }
 
     private List<Message> buildConversationHistoryAfterToolExecution(List<Message> previousMessages,
@@ -257,10 +355,18 @@ public class XiaoZhiToolCallingManager implements ToolCallingManager {
         this.observationConvention = observationConvention;
     }
 
+    public void setToolExecutionPolicy(ToolExecutionPolicy toolExecutionPolicy) {
+        Assert.notNull(toolExecutionPolicy, "toolExecutionPolicy cannot be null");
+        this.toolExecutionPolicy = toolExecutionPolicy;
+    }
+
     public static XiaoZhiToolCallingManager.Builder builder() {
         return new XiaoZhiToolCallingManager.Builder();
     }
 
+    private record PendingCall(Future<String> future, long deadlineNanos) {
+    }
+
     private record InternalToolExecutionResult(ToolResponseMessage toolResponseMessage, boolean returnDirect) {
     }
 
@@ -1,5 +1,6 @@
 package com.xiaozhi.dialogue.llm.tool.config;
 
+import com.xiaozhi.dialogue.llm.tool.ToolExecutionPolicy;
 import com.xiaozhi.dialogue.llm.tool.XiaoZhiToolCallingManager;
 import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.model.tool.ToolCallingManager;
@@ -7,21 +8,36 @@ import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProces
 import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
 import org.springframework.ai.tool.resolution.ToolCallbackResolver;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.List;
+
 @Configuration
 public class ToolCallConfig {
 
     private final ToolExecutionExceptionProcessor defaultToolExecutionExceptionProcessor
             = DefaultToolExecutionExceptionProcessor.builder().build();
 
+    // 单个工具调用的超时时间
+    @Value("${tool.call.timeout.ms:30000}")
+    private long toolCallTimeoutMs;
+
+    // 除默认的系统控制类工具外，额外需要串行执行的工具名称
+    @Value("${tool.call.serial.names:}")
+    private List<String> serialToolNames;
+
     @Bean
     public ToolCallingManager toolCallingManager(ObservationRegistry observationRegistry, ToolCallbackResolver toolCallbackResolver,
                                                  @Autowired(required = false) ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
         // Create and return a ToolCallingManager instance
         // This is a placeholder; actual implementation may vary based on requirements
-        return new XiaoZhiToolCallingManager(observationRegistry, toolCallbackResolver,
+        XiaoZhiToolCallingManager toolCallingManager = new XiaoZhiToolCallingManager(observationRegistry, toolCallbackResolver,
                 toolExecutionExceptionProcessor == null ? defaultToolExecutionExceptionProcessor : toolExecutionExceptionProcessor);
+        toolCallingManager.setToolExecutionPolicy(
+                ToolExecutionPolicy.of(serialToolNames, Duration.ofMillis(toolCallTimeoutMs)));
+        return toolCallingManager;
     }
 }
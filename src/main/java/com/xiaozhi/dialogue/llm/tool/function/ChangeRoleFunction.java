@@ -37,6 +37,12 @@ public class ChangeRoleFunction implements ToolsGlobalRegistry.GlobalFunction {
     @Resource
     ConversationFactory conversationFactory;
 
+    @Override
+    public boolean isSessionScoped() {
+        // 可选角色列表与当前设备绑定
+        return true;
+    }
+
     @Override
     public ToolCallback getFunctionCallTool(ChatSession chatSession) {
         SysDevice sysDevice = chatSession.getSysDevice();
@@ -1,35 +1,77 @@
 package com.xiaozhi.dialogue.llm.tool.mcp.device;
 
 import com.xiaozhi.communication.domain.DeviceMcpMessage;
-import lombok.Data;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 设备端mcp相关属性
+ * 请求ID原子递增，等待响应的请求保存在并发表中，允许多个请求同时等待设备响应。
  */
-@Data
 public class DeviceMcpHolder {
     /**
      * mcp请求ID
      */
-    private Long mcpRequestId = 10000L;
+    private final AtomicLong mcpRequestId = new AtomicLong(10000L);
     /**
      * mcp初始化完成
      */
-    private boolean mcpInitialized = false;
+    private volatile boolean mcpInitialized = false;
     /**
-     * mcp指令阻塞请求表
+     * mcp指令等待响应的请求表
      */
-    private Map<Long, CompletableFuture<DeviceMcpMessage>> mcpPendingRequests = new HashMap<>();
+    private final Map<Long, CompletableFuture<DeviceMcpMessage>> mcpPendingRequests = new ConcurrentHashMap<>();
+
+    public Long getMcpRequestId() {
+        return mcpRequestId.getAndIncrement();
+    }
+
+    public boolean isMcpInitialized() {
+        return mcpInitialized;
+    }
+
+    public void setMcpInitialized(boolean mcpInitialized) {
+        this.mcpInitialized = mcpInitialized;
+    }
+
+    public Map<Long, CompletableFuture<DeviceMcpMessage>> getMcpPendingRequests() {
+        return mcpPendingRequests;
+    }
+
     /**
-     * mcp工具获取游标 用于分页，首次请求为空字符串
+     * 登记等待响应的请求，请求完成（响应、超时或取消）后自动移除
      */
-    private String mcpCursor = "";
+    public void addPendingRequest(Long id, CompletableFuture<DeviceMcpMessage> future) {
+        mcpPendingRequests.put(id, future);
+        future.whenComplete((response, e) -> mcpPendingRequests.remove(id, future));
+    }
 
-    public Long getMcpRequestId() {
-        return mcpRequestId ++;
+    /**
+     * 设备响应到达
+     *
+     * @return 是否有对应的等待请求
+     */
+    public boolean completeRequest(DeviceMcpMessage message) {
+        if (message.getPayload() == null || message.getPayload().getId() == null) {
+            return false;
+        }
+        CompletableFuture<DeviceMcpMessage> future = mcpPendingRequests.remove(message.getPayload().getId());
+        return future != null && future.complete(message);
+    }
+
+    /**
+     * 会话关闭时取消所有等待中的请求
+     */
+    public void cancelPendingRequests() {
+        for (Long id : mcpPendingRequests.keySet()) {
+            CompletableFuture<DeviceMcpMessage> future = mcpPendingRequests.remove(id);
+            if (future != null) {
+                future.completeExceptionally(new CancellationException("session closed"));
+            }
+        }
     }
-}
\ No newline at end of file
+}
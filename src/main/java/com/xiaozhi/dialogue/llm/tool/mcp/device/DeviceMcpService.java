@@ -6,7 +6,11 @@ import com.xiaozhi.communication.domain.mcp.device.DeviceMcpPayload;
 import com.xiaozhi.communication.domain.mcp.device.initialize.DeviceMcpClientInfo;
 import com.xiaozhi.communication.domain.mcp.device.initialize.DeviceMcpInitialize;
 import com.xiaozhi.communication.domain.mcp.device.initialize.DeviceMcpVision;
+import com.xiaozhi.dialogue.llm.ChatService;
 import com.xiaozhi.dialogue.llm.tool.ToolCallStringResultConverter;
+import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
+import com.xiaozhi.entity.SysDevice;
+import com.xiaozhi.event.ChatSessionCloseEvent;
 import com.xiaozhi.utils.CmsUtils;
 import com.xiaozhi.utils.JsonUtil;
 import jakarta.annotation.Resource;
@@ -18,16 +22,27 @@ import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 设备端MCP客户端
+ * 请求全部异步发送，响应通过CompletableFuture组合处理，多个请求可以同时等待设备响应；
+ * 每个请求的超时由CompletableFuture共享的延时调度线程触发，不占用等待线程。
+ * 同型号、同固件版本设备的工具列表是一致的，工具回调按型号和固件版本缓存，设备重连时跳过工具发现。
+ */
 @Service
-public class DeviceMcpService {
+public class DeviceMcpService implements ApplicationListener<ChatSessionCloseEvent> {
     private static final Logger logger = LoggerFactory.getLogger(DeviceMcpService.class);
 
     @Resource
@@ -39,50 +54,80 @@ public class DeviceMcpService {
     @Value("${xiaozhi.mcp:device:max.tools.count:32}")
     private static int maxToolsCount = 32; // 最大工具数量限制
 
+    // 单个MCP请求的超时时间
+    @Value("${xiaozhi.mcp.device.request.timeout.ms:30000}")
+    private long requestTimeoutMs = 30000;
+
+    // 工具列表缓存的最大条目数（设备型号+固件版本的组合数），超出后不再缓存
+    @Value("${xiaozhi.mcp.device.tools.cache.size:256}")
+    private int toolsCacheSize = 256;
+
+    /**
+     * 设备型号+固件版本 -> 工具回调
+     * 回调执行时从ToolContext获取会话，可以在同型号设备的会话之间共享
+     */
+    private final Map<String, List<ToolCallback>> toolsCache = new ConcurrentHashMap<>();
+
+    @Override
+    public void onApplicationEvent(ChatSessionCloseEvent event) {
+        ChatSession chatSession = event.getSession();
+        if (chatSession != null && chatSession.getDeviceMcpHolder() != null) {
+            chatSession.getDeviceMcpHolder().cancelPendingRequests();
+        }
+    }
+
     /**
      * 初始化设备端MCP工具列表
      *
      * @param chatSession
+     * @return 工具注册完成（或失败）时结束
      */
-    public void initialize(ChatSession chatSession) {
+    public CompletableFuture<Void> initialize(ChatSession chatSession) {
+        String sessionId = chatSession.getSessionId();
         //1、调用始化命令
-        DeviceMcpMessage initResult = sendInitialize(chatSession);
-        //根据调用结果进行处理
-        if (initResult != null) {
-            chatSession.getDeviceMcpHolder().setMcpInitialized(true);
-        }
-        if (chatSession.getDeviceMcpHolder().isMcpInitialized()) {
-            //2、获取工具列表
-            sendToolsList(chatSession);
-        }
+        return sendInitialize(chatSession)
+                .thenCompose(initResult -> {
+                    chatSession.getDeviceMcpHolder().setMcpInitialized(true);
+                    //2、获取工具列表，命中缓存时直接注册
+                    String cacheKey = toolsCacheKey(chatSession.getSysDevice(), initResult);
+                    List<ToolCallback> cached = cacheKey == null ? null : toolsCache.get(cacheKey);
+                    if (cached != null) {
+                        logger.debug("SessionId: {}, mcp tools loaded from cache: {}", sessionId, cacheKey);
+                        return CompletableFuture.completedFuture(cached);
+                    }
+                    return listTools(chatSession, "", new ArrayList<>()).thenApply(toolCallbacks -> {
+                        List<ToolCallback> result = List.copyOf(toolCallbacks);
+                        if (cacheKey != null && toolsCache.size() < toolsCacheSize) {
+                            toolsCache.putIfAbsent(cacheKey, result);
+                        }
+                        return result;
+                    });
+                })
+                .thenAccept(toolCallbacks -> {
+                    registerTools(chatSession, toolCallbacks);
+                    logger.debug("SessionId: {}, mcp tools loaded successfully", sessionId);
+                })
+                .exceptionally(e -> {
+                    logger.error("SessionId: {}, MCP initialize failed", sessionId, unwrap(e));
+                    return null;
+                });
     }
 
     /**
      * 发送初始化命令
      *
      * @param chatSession
-     * @return
+     * @return 设备的初始化响应
      */
-    protected DeviceMcpMessage sendInitialize(ChatSession chatSession) {
-        DeviceMcpMessage message = new DeviceMcpMessage();
-        message.setSessionId(chatSession.getSessionId());
-        DeviceMcpPayload payload = new DeviceMcpPayload();
-        payload.setId(chatSession.getDeviceMcpHolder().getMcpRequestId());
-        payload.setMethod("initialize");
-
-        DeviceMcpInitialize initialize = deviceMcpInitialize(chatSession);
-
-        payload.setParams(initialize);
-        message.setPayload(payload);
-
-        DeviceMcpMessage result = sendMcpRequest(chatSession, message);
-        if (result != null) {
-            logger.debug("SessionId: {}, MCP initialized successfully", chatSession.getSessionId());
-            return result;
-        }
-        return null;
+    protected CompletableFuture<DeviceMcpMessage> sendInitialize(ChatSession chatSession) {
+        return sendMcpRequestAsync(chatSession, "initialize", deviceMcpInitialize(chatSession))
+                .thenApply(result -> {
+                    logger.debug("SessionId: {}, MCP initialized successfully", chatSession.getSessionId());
+                    return result;
+                });
     }
 
+
     /**
      * 摄像头视觉相关, 根据实际需要设置vision的属性
      */
@@ -106,109 +151,143 @@ public class DeviceMcpService {
     }
 
     /**
-     * 发送工具列表请求
+     * 分页获取工具列表，按游标依次请求下一页，工具数量超过限制时停止
      *
      * @param chatSession
+     * @param cursor        分页游标，首次请求为空字符串
+     * @param toolCallbacks 已获取的工具
      */
-    private void sendToolsList(ChatSession chatSession) {
-        DeviceMcpMessage message = new DeviceMcpMessage();
-        message.setSessionId(chatSession.getSessionId());
-        DeviceMcpPayload payload = new DeviceMcpPayload();
-        payload.setId(chatSession.getDeviceMcpHolder().getMcpRequestId());
-        payload.setMethod("tools/list");
-        if (chatSession.getDeviceMcpHolder().getMcpCursor() != null) {
-            payload.setParams(Map.of(
-                    "cursor", chatSession.getDeviceMcpHolder().getMcpCursor()));
-        } else {
-            payload.setParams(Map.of(
-                    "cursor", "")); // 初始请求时使用空字符串
-        }
-        message.setPayload(payload);
+    private CompletableFuture<List<ToolCallback>> listTools(ChatSession chatSession, String cursor,
+            List<ToolCallback> toolCallbacks) {
+        return sendMcpRequestAsync(chatSession, "tools/list", Map.of("cursor", cursor))
+                .thenCompose(result -> {
+                    Map<String, Object> payloadResult = result.getPayload().getResult();
+                    if (payloadResult == null) {
+                        return CompletableFuture.completedFuture(toolCallbacks);
+                    }
+                    List<Map<String, Object>> tools = (List<Map<String, Object>>) payloadResult.get("tools");
+                    if (tools == null || tools.isEmpty() || (toolCallbacks.size() + tools.size()) > maxToolsCount) {//工具数量超过限制，不再添加
+                        return CompletableFuture.completedFuture(toolCallbacks);
+                    }
+                    for (Map<String, Object> tool : tools) {
+                        toolCallbacks.add(buildToolCallback(tool));
+                    }
+                    // 如果cursor不为空，则继续请求下一页
+                    Object nextCursor = payloadResult.get("nextCursor");
+                    if (nextCursor != null && !nextCursor.toString().isEmpty()) {
+                        return listTools(chatSession, nextCursor.toString(), toolCallbacks);
+                    }
+                    return CompletableFuture.completedFuture(toolCallbacks);
+                });
+    }
 
-        DeviceMcpMessage result = sendMcpRequest(chatSession, message);
-        if (result != null) {
-            //处理工具的注册
-            List<Map<String, Object>> tools = (List<Map<String, Object>>) result.getPayload().getResult().get("tools");
-            Object nextCursor = result.getPayload().getResult().get("nextCursor");
-            int toolsCount = chatSession.getToolCallbacks().size();
-            if (tools.isEmpty() || (toolsCount + tools.size()) > maxToolsCount) {//工具数量超过限制，不再添加
-                return;
-            } else {
-                for (Map<String, Object> tool : tools) {
-                    //开始注册工具
-                    String name = (String) tool.get("name");
-                    String funcName = "mcp_" + name.replace(".", "_");
-                    String funcDescription = (String) tool.get("description");
-                    Object inputSchema = tool.get("inputSchema");
-
-                    ToolCallback toolCallback = FunctionToolCallback
-                            .builder(funcName, (Map<String, Object> params, ToolContext toolContext) -> {
-                                DeviceMcpMessage request = new DeviceMcpMessage();
-                                request.setSessionId(chatSession.getSessionId());
-
-                                DeviceMcpPayload requestPayload = new DeviceMcpPayload();
-                                requestPayload.setMethod("tools/call");
-                                requestPayload.setId(chatSession.getDeviceMcpHolder().getMcpRequestId());
-                                requestPayload.setParams(Map.of(
-                                        "name", name,
-                                        "arguments", params
-                                ));
-
-                                request.setPayload(requestPayload);
-                                DeviceMcpMessage response = sendMcpRequest(chatSession, request);
-                                if (response != null) {
-                                    logger.debug("SessionId: {},  MCP function call response: {}", chatSession.getSessionId(), response);
-                                    //空指针
-                                    if (response.getPayload().getResult() == null) {
-                                        return response.getPayload().getError().get("message");//返回结果
-                                    }
-                                    if ("false".equals(String.valueOf(response.getPayload().getResult().get("isError")))) {
-                                        return response.getPayload().getResult().get("content");//返回结果
-                                    } else {
-                                        return response.getPayload().getError();
-                                    }
-                                } else {
-                                    return "操作失败";
-                                }
-                            })
-                            .toolMetadata(ToolMetadata.builder().returnDirect(false).build())// 设置返回值需要ai再处理
-                            .description(funcDescription)
-                            .inputSchema(JsonUtil.toJson(inputSchema))
-                            .inputType(Map.class)
-                            .toolCallResultConverter(ToolCallStringResultConverter.INSTANCE)
-                            .build();
-                    // 注册到当前会话的函数持有者
-                    chatSession.getToolsSessionHolder().registerFunction(funcName, toolCallback);
-                }
-            }
-            // 如果cursor不为空，则迭代调用
-            if (nextCursor != null && !nextCursor.toString().isEmpty()) {
-                // 如果有下一页游标，继续请求下一页
-                chatSession.getDeviceMcpHolder().setMcpCursor(nextCursor.toString());
-                sendToolsList(chatSession);
-            } else {
-                // 所有工具加载完成
-                chatSession.getDeviceMcpHolder().setMcpCursor(null);
-                logger.debug("SessionId: {}, mcp tools loaded successfully", chatSession.getSessionId());
+    /**
+     * 生成设备端工具的回调，回调执行时从ToolContext获取会话
+     */
+    private ToolCallback buildToolCallback(Map<String, Object> tool) {
+        String name = (String) tool.get("name");
+        String funcName = "mcp_" + name.replace(".", "_");
+        String funcDescription = (String) tool.get("description");
+        Object inputSchema = tool.get("inputSchema");
+
+        return FunctionToolCallback
+                .builder(funcName, (Map<String, Object> params, ToolContext toolContext) -> {
+                    ChatSession chatSession = (ChatSession) toolContext.getContext().get(ChatService.TOOL_CONTEXT_SESSION_KEY);
+                    DeviceMcpMessage response;
+                    try {
+                        response = sendMcpRequestAsync(chatSession, "tools/call", Map.of(
+                                "name", name,
+                                "arguments", params
+                        )).join();
+                    } catch (CompletionException e) {
+                        logger.error("SessionId: {}, MCP function call {} failed", chatSession.getSessionId(), name, unwrap(e));
+                        return "操作失败";
+                    }
+                    logger.debug("SessionId: {},  MCP function call response: {}", chatSession.getSessionId(), response);
+                    //空指针
+                    if (response.getPayload().getResult() == null) {
+                        return response.getPayload().getError() == null ? "操作失败"
+                                : response.getPayload().getError().get("message");//返回结果
+                    }
+                    if ("false".equals(String.valueOf(response.getPayload().getResult().get("isError")))) {
+                        return response.getPayload().getResult().get("content");//返回结果
+                    } else {
+                        return response.getPayload().getError();
+                    }
+                })
+                .toolMetadata(ToolMetadata.builder().returnDirect(false).build())// 设置返回值需要ai再处理
+                .description(funcDescription)
+                .inputSchema(JsonUtil.toJson(inputSchema))
+                .inputType(Map.class)
+                .toolCallResultConverter(ToolCallStringResultConverter.INSTANCE)
+                .build();
+    }
+
+    /**
+     * 注册到当前会话的函数持有者，会话工具总数不超过限制
+     */
+    private void registerTools(ChatSession chatSession, List<ToolCallback> toolCallbacks) {
+        ToolsSessionHolder toolsSessionHolder = chatSession.getToolsSessionHolder();
+        int toolsCount = toolsSessionHolder.getAllFunction().size();
+        for (ToolCallback toolCallback : toolCallbacks) {
+            if (toolsCount >= maxToolsCount) {
+                logger.warn("SessionId: {}, 工具数量超过限制 {}，忽略剩余的设备端工具", chatSession.getSessionId(), maxToolsCount);
+                break;
             }
+            toolsSessionHolder.registerFunction(toolCallback.getToolDefinition().name(), toolCallback);
+            toolsCount++;
         }
     }
 
-    public DeviceMcpMessage sendMcpRequest(ChatSession chatSession, DeviceMcpMessage mcpMessage) {
-        Long id = mcpMessage.getPayload().getId();
-        CompletableFuture<DeviceMcpMessage> future = new CompletableFuture<>();
-        chatSession.sendTextMessage(JsonUtil.toJson(mcpMessage));
-        chatSession.getDeviceMcpHolder().getMcpPendingRequests().put(id, future);
+    /**
+     * 工具列表缓存key：优先使用设备初始化响应中的serverInfo（板型和固件版本），否则使用设备上报的芯片型号和版本。
+     * 无法确定固件版本时不缓存。
+     */
+    private static String toolsCacheKey(SysDevice device, DeviceMcpMessage initResult) {
+        Map<String, Object> result = initResult.getPayload() == null ? null : initResult.getPayload().getResult();
+        if (result != null && result.get("serverInfo") instanceof Map<?, ?> serverInfo
+                && serverInfo.get("name") != null && serverInfo.get("version") != null) {
+            return serverInfo.get("name") + "@" + serverInfo.get("version");
+        }
+        if (device != null && StringUtils.hasText(device.getVersion())
+                && (StringUtils.hasText(device.getChipModelName()) || StringUtils.hasText(device.getType()))) {
+            return device.getChipModelName() + "/" + device.getType() + "@" + device.getVersion();
+        }
+        return null;
+    }
+
+    /**
+     * 异步发送MCP请求
+     * 先登记等待表再发送，避免响应先于登记到达；超时、会话关闭或发送失败时future异常结束。
+     *
+     * @param chatSession
+     * @param method      方法名称
+     * @param params      方法参数
+     * @return 设备响应
+     */
+    public CompletableFuture<DeviceMcpMessage> sendMcpRequestAsync(ChatSession chatSession, String method, Object params) {
+        DeviceMcpHolder holder = chatSession.getDeviceMcpHolder();
+        DeviceMcpPayload payload = new DeviceMcpPayload();
+        payload.setId(holder.getMcpRequestId());
+        payload.setMethod(method);
+        payload.setParams(params);
+        DeviceMcpMessage message = new DeviceMcpMessage();
+        message.setSessionId(chatSession.getSessionId());
+        message.setPayload(payload);
 
-        DeviceMcpMessage response = null;
+        CompletableFuture<DeviceMcpMessage> future = new CompletableFuture<DeviceMcpMessage>()
+                .orTimeout(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        holder.addPendingRequest(payload.getId(), future);
         try {
-            // 阻塞并等待异步操作完成
-            response = future.get(30, TimeUnit.SECONDS);//等待2秒，没反应则退出
+            chatSession.sendTextMessage(JsonUtil.toJson(message));
         } catch (Exception e) {
-            logger.error("SessionId: {}, Error sending MCP request", chatSession.getSessionId(), e);
-            chatSession.getDeviceMcpHolder().getMcpPendingRequests().remove(id);
+            future.completeExceptionally(e);
         }
-        return response;
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
-}
\ No newline at end of file
+}
@@ -2,26 +2,27 @@ package com.xiaozhi.dialogue.service;
 
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.utils.AudioDecoder;
 import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.OpusProcessor;
 
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 音频服务，负责处理音频的流式和非流式发送
@@ -33,12 +34,20 @@ public class AudioService {
     // 帧发送时间间隔略小于OPUS_FRAME_DURATION_MS，避免因某些调度原因，导致没能在规定时间内发送，设备出现杂音
     private static final long OPUS_FRAME_SEND_INTERVAL_MS = AudioUtils.OPUS_FRAME_DURATION_MS;
     
-    // 仅播放文本的 Sleep 时长
-    private static final long ONLY_TEXT_SLEEP_TIME_MS = 1000;
+    // 只有文字或表情的句子在设备上的显示时长
+    private static final long ONLY_TEXT_DISPLAY_MS = 1000;
+
+    // 设备收到音频帧后到播放出来之间的缓冲估计（网络抖动和设备播放队列），默认约3帧
+    // 设备支持播放确认时作为等不到确认的上限
+    @Value("${xiaozhi.audio.playout.device-buffer-ms:180}")
+    private long deviceBufferMs;
 
     @Autowired
     private OpusProcessor opusProcessor;
 
+    @Autowired
+    private OpusAssetStore opusAssetStore;
+
     @Autowired
     private SessionManager sessionManager;
 
@@ -50,29 +59,20 @@ public class AudioService {
             Runtime.getRuntime().availableProcessors(),
             Thread.ofVirtual().name("audio-scheduler-", 0).factory());
 
-    // 存储每个会话最后一次发送帧的时间戳
-    private final Map<String, AtomicLong> lastFrameSentTime = new ConcurrentHashMap<>();
-
-    // 存储每个会话当前是否正在播放音频
-    private final Map<String, AtomicBoolean> isPlaying = new ConcurrentHashMap<>();
-    
-
-    // 存储每个会话的调度任务
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
-
-    // 存储每个会话的音频发送任务
-    private final Map<String, CompletableFuture<?>> sendAudioTasks = new ConcurrentHashMap<>();
+    // 播放状态、帧调度任务和播放时钟保存在会话的DialogueContext中
 
-    // 存储播放开始时间（纳秒）
-    private final Map<String, Long> playStartTimes = new ConcurrentHashMap<>();
-    
-    // 存储播放位置（毫秒）
-    private final Map<String, Long> playPositions = new ConcurrentHashMap<>();
+    @PostConstruct
+    public void init() {
+        // 后台预加载ffmpeg原生库，避免第一次解码mp3时等待
+        Thread.startVirtualThread(AudioDecoder::warmUp);
+    }
 
     /**
      * 发送TTS开始消息
      */
     public void sendStart(ChatSession session) {
+        // 上一段播放还在等待结束时不再单独发送stop，由这段播放结束时发送
+        session.getDialogueContext().getPlayout().supersede();
         messageService.sendTtsMessage(session, null, "start");
     }
 
@@ -90,8 +90,17 @@ public class AudioService {
         return sendStop(session, false);
     }
 
+    /**
+     * 立即停止设备播放并发送停止消息，用于打断正在播放的回复
+     */
+    public CompletableFuture<Void> interruptPlayback(ChatSession session) {
+        session.getDialogueContext().getPlayout().reset();
+        return sendStop(session);
+    }
+
     /**
      * 发送停止消息
+     * 在设备播放完已发送的音频、显示完文字时发送，之后再按需关闭会话
      */
     public CompletableFuture<Void> sendStop(ChatSession session, boolean stopByAudioTaskInner) {
         String sessionId = session.getSessionId();
@@ -102,39 +111,34 @@ public class AudioService {
                 return CompletableFuture.completedFuture(null);
             }
 
+            DialogueContext context = session.getDialogueContext();
             // 标记播放结束
-            AtomicBoolean playingState = isPlaying.computeIfAbsent(sessionId, k -> new AtomicBoolean());
-            playingState.set(false);
+            context.getPlaying().set(false);
             
             // 取消调度任务
-            cancelScheduledTask(sessionId);
+            context.cancelFrameTask();
             
             // 清理播放时间信息
-            cleanTimers(sessionId);
+            context.resetPlayClock();
             
-            // 延迟500ms后发送stop消息，确保设备完成音频播放
-            CompletableFuture<Void> sendTtsMessageFuture = CompletableFuture.runAsync(() -> {
-                messageService.sendTtsMessage(session, null, "stop");
-            }, CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
-            // 检查是否需要关闭会话
-            if (sessionManager.isCloseAfterChat(sessionId)) {
-                sendTtsMessageFuture.thenRun(() -> {
-                    sessionManager.closeSession(sessionId);
-                });
-            }
+            // 设备播放完后发送stop消息，期间开始了新的播放时由新的播放发送
+            CompletableFuture<Void> sendTtsMessageFuture = context.getPlayout()
+                    .whenDrained(scheduler, TimeUnit.MILLISECONDS.toNanos(deviceBufferMs))
+                    .thenAccept(drained -> {
+                        if (!drained) {
+                            return;
+                        }
+                        messageService.sendTtsMessage(session, null, "stop");
+                        // 检查是否需要关闭会话
+                        if (sessionManager.isCloseAfterChat(sessionId)) {
+                            sessionManager.closeSession(sessionId);
+                        }
+                    });
             sessionManager.setPlaying(sessionId, false);
-
-            if(!stopByAudioTaskInner){
-                CompletableFuture<?> sendAudioTask = sendAudioTasks.remove(sessionId);
-                if(sendAudioTask != null && !sendAudioTask.isDone()){
-                    sendAudioTask.cancel(true);
-                }
-            }
             return sendTtsMessageFuture;
         } catch (Exception e) {
             logger.error("发送停止消息失败", e);
-            AtomicBoolean playingState = isPlaying.computeIfAbsent(sessionId, k -> new AtomicBoolean());
-            playingState.set(false);
+            session.getDialogueContext().getPlaying().set(false);
             return CompletableFuture.completedFuture(null);
         }
     }
@@ -142,9 +146,8 @@ public class AudioService {
     /**
      * 检查会话是否正在播放音频
      */
-    public boolean isPlaying(String sessionId) {
-        return isPlaying.containsKey(sessionId) && 
-               isPlaying.get(sessionId).get();
+    public boolean isPlaying(ChatSession session) {
+        return session != null && session.getDialogueContext().getPlaying().get();
     }
 
     /**
@@ -165,9 +168,10 @@ public class AudioService {
         String sessionId = session.getSessionId();
         String audioPath = sentence.getAudioPath();
         String text = sentence.getText();
+        DialogueContext context = session.getDialogueContext();
 
         // 标记开始播放
-        AtomicBoolean playingState = isPlaying.computeIfAbsent(sessionId, k -> new AtomicBoolean(true));
+        AtomicBoolean playingState = context.getPlaying();
         playingState.set(true);
 
         // 创建一个 CompletableFuture 链来处理整个流程
@@ -190,16 +194,7 @@ public class AudioService {
                     
                     return emotionFuture.thenCompose(v -> {
                         finalPlayingState.set(false);
-                        try {
-                            TimeUnit.MILLISECONDS.sleep(ONLY_TEXT_SLEEP_TIME_MS);
-                        } catch (InterruptedException e) {
-                            logger.error("等待表情播放失败", e);
-                        }
-
-                        if (isLast) {
-                            return sendStop(session);
-                        }
-                        return CompletableFuture.completedFuture(null);
+                        return holdText(session, isLast);
                     });
                 } else {
                     // 有实际文本内容，发送异常提示
@@ -213,16 +208,7 @@ public class AudioService {
 
                     return emotionFuture.thenCompose(v -> {
                         finalPlayingState.set(false);
-                        try {
-                            TimeUnit.MILLISECONDS.sleep(ONLY_TEXT_SLEEP_TIME_MS);
-                        } catch (InterruptedException e) {
-                            logger.error("等待异常提示播放失败", e);
-                        }
-
-                        if (isLast) {
-                            return sendStop(session);
-                        }
-                        return CompletableFuture.completedFuture(null);
+                        return holdText(session, isLast);
                     });
                 }
             }
@@ -252,17 +238,18 @@ public class AudioService {
                 return null;
             }
 
-            List<byte[]> opusFrames;
+            List<ByteBuffer> opusFrames;
 
             try {
-                if (audioPath.contains(".opus")) {
-                    // 如果是opus文件，直接读取opus帧数据
-                    opusFrames = opusProcessor.readOpus(audioFile);
+                if (sentence.isReusable() || audioPath.endsWith(".opus")) {
+                    // 反复播放的音频和opus文件使用预编码的帧文件，按帧映射发送
+                    opusFrames = opusAssetStore.open(fullPath);
                 } else {
-                    // 如果不是opus文件，按照原来的逻辑处理
+                    // 一次性的TTS音频，解码后直接编码为Opus帧
                     byte[] audioData = AudioUtils.readAsPcm(fullPath);
                     // 将PCM转换为Opus帧
-                    opusFrames = opusProcessor.pcmToOpus(sessionId, audioData, false);
+                    opusFrames = opusProcessor.pcmToOpus(sessionId, audioData, false).stream()
+                            .map(ByteBuffer::wrap).toList();
                 }
                 return opusFrames;
             } catch (Exception e) {
@@ -286,8 +273,7 @@ public class AudioService {
             
             try {
                 // 初始化播放时间和位置
-                playStartTimes.put(sessionId, System.nanoTime());
-                playPositions.put(sessionId, 0L);
+                context.startPlayClock();
                 
                 // 创建帧发送任务，从第一帧开始通过调度器发送
                 final int[] frameIndex = {0};
@@ -298,7 +284,7 @@ public class AudioService {
                         try {
                             if (!finalPlayingState.get() || frameIndex[0] >= opusFrames.size() || !session.isOpen()) {
                                 // 完成非流式音频处理
-                                endTask(sessionId, sendFramesFuture);
+                                endTask(context, sendFramesFuture);
                                 return;
                             }
                             
@@ -306,42 +292,39 @@ public class AudioService {
                             sessionManager.updateLastActivity(sessionId);
                             
                             // 发送当前帧
-                            byte[] frame = opusFrames.get(frameIndex[0]++);
+                            ByteBuffer frame = opusFrames.get(frameIndex[0]++);
                             sendOpusFrame(session, frame);
                             
                             // 更新播放位置
-                            Long position = playPositions.get(sessionId);
-                            if (position != null) {
-                                playPositions.put(sessionId, position + OPUS_FRAME_SEND_INTERVAL_MS);
-                            }
+                            context.advancePlayPosition(OPUS_FRAME_SEND_INTERVAL_MS);
                             
                             // 计算下一帧的发送时间
                             if (frameIndex[0] < opusFrames.size()) {
-                                scheduleNextFrame(sessionId, this);
+                                scheduleNextFrame(context, this);
                             } else {
                                 // 所有帧已发送完成
-                                endTask(sessionId, sendFramesFuture);
+                                endTask(context, sendFramesFuture);
                             }
                             
                         } catch (Exception e) {
                             // 发生错误，取消调度任务
                             logger.error("非流式帧处理失败", e);
-                            endTask(sessionId, sendFramesFuture, e);
+                            endTask(context, sendFramesFuture, e);
                         }
                     }
                 };
                 
                 // 启动帧发送调度
                 if (opusFrames.size() > 0) {
-                    scheduleNextFrame(sessionId, frameTask);
+                    scheduleNextFrame(context, frameTask);
                 } else {
                     // 没有帧需要发送
-                    endTask(sessionId, sendFramesFuture);
+                    endTask(context, sendFramesFuture);
                 }
                 
             } catch (Exception e) {
                 logger.error("音频帧发送初始化失败", e);
-                endTask(sessionId, sendFramesFuture, e);
+                endTask(context, sendFramesFuture, e);
             }
             
             // 返回帧发送Future
@@ -351,10 +334,10 @@ public class AudioService {
             finalPlayingState.set(false);
             
             // 取消调度任务
-            cancelScheduledTask(sessionId);
+            context.cancelFrameTask();
             
             // 清理播放时间信息
-            cleanTimers(sessionId);
+            context.resetPlayClock();
         }).thenCompose(v -> {
             // 发送停止消息（只有在isLast为true时才发送）
             if (isLast) {
@@ -376,11 +359,39 @@ public class AudioService {
         });
     }
 
+    /**
+     * 只有文字或表情的句子：文字至少显示一段时间，与仍在播放的音频和之后的句子重叠计时，不阻塞线程
+     * 最后一句在显示完、设备播放完时发送stop；其他句子立即处理下一句
+     */
+    private CompletableFuture<Void> holdText(ChatSession session, boolean isLast) {
+        session.getDialogueContext().getPlayout().hold(ONLY_TEXT_DISPLAY_MS);
+        if (isLast) {
+            return sendStop(session);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * 发送Opus帧数据
      */
     public void sendOpusFrame(ChatSession session, byte[] opusFrame) throws IOException {
         messageService.sendBinaryMessage(session, opusFrame);
+        session.getDialogueContext().getPlayout().onFrameSent();
+    }
+
+    /**
+     * 发送Opus帧数据，帧可以是映射文件的切片
+     */
+    public void sendOpusFrame(ChatSession session, ByteBuffer opusFrame) throws IOException {
+        messageService.sendBinaryMessage(session, opusFrame);
+        session.getDialogueContext().getPlayout().onFrameSent();
+    }
+
+    /**
+     * 设备报告播放队列已空，支持播放确认的设备不必再等待设备缓冲的估计
+     */
+    public void onPlaybackDrained(ChatSession session) {
+        session.getDialogueContext().getPlayout().onDrained();
     }
 
     /**
@@ -397,38 +408,32 @@ public class AudioService {
 
     /**
      * 清理会话资源
+     * 播放状态随DialogueContext释放，这里只清理编解码器
      */
-    public void cleanupSession(String sessionId) {
-        lastFrameSentTime.remove(sessionId);
-        isPlaying.remove(sessionId);
-        cleanTimers(sessionId);
-        cancelScheduledTask(sessionId);
-        opusProcessor.cleanup(sessionId);
-        
-        // 清理音频发送任务
-        CompletableFuture<?> sendAudioTask = sendAudioTasks.remove(sessionId);
-        if (sendAudioTask != null && !sendAudioTask.isDone()) {
-            sendAudioTask.cancel(true);
-            logger.info("已取消音频发送任务 - SessionId: {}", sessionId);
-        }
+    public void cleanupSession(ChatSession session) {
+        DialogueContext context = session.getDialogueContext();
+        context.getPlaying().set(false);
+        context.cancelFrameTask();
+        context.resetPlayClock();
+        opusProcessor.cleanup(session.getSessionId());
     }
     
     /**
      * 结束非流式任务
      */
-    private void endTask(String sessionId, CompletableFuture<Void> future) {
-        endTask(sessionId, future, null);
+    private void endTask(DialogueContext context, CompletableFuture<Void> future) {
+        endTask(context, future, null);
     }
     
     /**
      * 结束非流式任务（带异常）
      */
-    private void endTask(String sessionId, CompletableFuture<Void> future, Throwable error) {
+    private void endTask(DialogueContext context, CompletableFuture<Void> future, Throwable error) {
         // 取消调度任务
-        cancelScheduledTask(sessionId);
+        context.cancelFrameTask();
         
         // 清理播放时间信息
-        cleanTimers(sessionId);
+        context.resetPlayClock();
         
         // 完成Future
         if (error != null) {
@@ -438,25 +443,16 @@ public class AudioService {
         }
     }
     
-    /**
-     * 清理计时器资源
-     */
-    private void cleanTimers(String sessionId) {
-        playStartTimes.remove(sessionId);
-        playPositions.remove(sessionId);
-    }
-    
     /**
      * 计算并调度下一帧的发送时间
      */
-    private void scheduleNextFrame(String sessionId, Runnable frameTask) {
-        Long startTime = playStartTimes.get(sessionId);
-        Long position = playPositions.get(sessionId);
+    private void scheduleNextFrame(DialogueContext context, Runnable frameTask) {
+        long startTime = context.getPlayStartNanos();
+        long position = context.getPlayPositionMs();
         
-        if (startTime == null || position == null) {
+        if (startTime < 0 || position < 0) {
             // 如果没有时间信息，使用固定间隔
-            ScheduledFuture<?> future = scheduler.schedule(frameTask, OPUS_FRAME_SEND_INTERVAL_MS, TimeUnit.MILLISECONDS);
-            scheduledTasks.put(sessionId, future);
+            context.setFrameTask(scheduler.schedule(frameTask, OPUS_FRAME_SEND_INTERVAL_MS, TimeUnit.MILLISECONDS));
             return;
         }
 
@@ -474,17 +470,16 @@ public class AudioService {
             future = scheduler.schedule(frameTask, delayNanos, TimeUnit.NANOSECONDS);
         }
 
-        scheduledTasks.put(sessionId, future);
+        context.setFrameTask(future);
     }
     
     /**
      * 取消调度任务
      */
     public void cancelScheduledTask(String sessionId) {
-        ScheduledFuture<?> task = scheduledTasks.remove(sessionId);
-        if (task != null && !task.isDone()) {
-            task.cancel(false);
+        ChatSession session = sessionManager.getSession(sessionId);
+        if (session != null) {
+            session.getDialogueContext().cancelFrameTask();
         }
     }
-
-}
\ No newline at end of file
+}
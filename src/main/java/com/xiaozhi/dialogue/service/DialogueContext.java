@@ -0,0 +1,324 @@
+package com.xiaozhi.dialogue.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话级的对话上下文
+ * 集中持有一个会话在对话、播放和VAD过程中的全部状态，由ChatSession持有，会话关闭时通过close()统一释放。
+ * 未关闭的上下文登记在全局表中，用于检测会话已经移除但状态未释放的情况。
+ */
+public final class DialogueContext implements AutoCloseable {
+
+    // 所有未关闭的上下文，用于泄漏检测
+    private static final Set<DialogueContext> OPEN_CONTEXTS = ConcurrentHashMap.newKeySet();
+
+    private final String sessionId;
+    private final long createTime = System.currentTimeMillis();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // --------------------对话-------------------------
+    private final AtomicInteger seqCounter = new AtomicInteger(0);
+    private volatile long sttStartTime;
+    private volatile long llmStartTime;
+    private final CopyOnWriteArrayList<DialogueService.Sentence> sentenceQueue = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean firstSentDone = new AtomicBoolean(false);
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final PriorityBlockingQueue<DialogueService.TtsTask> ttsTaskQueue = new PriorityBlockingQueue<>();
+    private volatile Semaphore ttsSemaphore;
+    private volatile Turn turn;
+
+    // --------------------播放-------------------------
+    private final AtomicBoolean playing = new AtomicBoolean(false);
+    private volatile ScheduledFuture<?> frameTask;
+    // 播放开始时间（纳秒）与播放位置（毫秒），-1表示未在播放
+    private volatile long playStartNanos = -1;
+    private volatile long playPositionMs = -1;
+    // 设备端播放进度，用于在设备播放完时发送stop
+    private final PlayoutTracker playout = new PlayoutTracker();
+
+    // --------------------VAD-------------------------
+    private final Object vadLock = new Object();
+    private VadService.VadState vadState;
+
+    /**
+     * 一轮对话（一次用户输入对应的助手回复）的状态
+     */
+    public static class Turn {
+        private final Long assistantTimeMillis;
+        // 助手回复的录音，第一句播放时打开
+        private volatile DialogueRecorder.Recording recording;
+        // 完整文本回复
+        private final StringBuffer response = new StringBuffer();
+
+        Turn(Long assistantTimeMillis) {
+            this.assistantTimeMillis = assistantTimeMillis;
+        }
+
+        public Long getAssistantTimeMillis() {
+            return assistantTimeMillis;
+        }
+
+        public DialogueRecorder.Recording getRecording() {
+            return recording;
+        }
+
+        public void setRecording(DialogueRecorder.Recording recording) {
+            this.recording = recording;
+        }
+
+        private void closeRecording() {
+            DialogueRecorder.Recording current = recording;
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        public StringBuffer getResponse() {
+            return response;
+        }
+    }
+
+    public DialogueContext(String sessionId) {
+        this.sessionId = sessionId;
+        OPEN_CONTEXTS.add(this);
+    }
+
+    /**
+     * 所有未关闭的上下文
+     */
+    public static Collection<DialogueContext> openContexts() {
+        return Collections.unmodifiableSet(OPEN_CONTEXTS);
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    // --------------------对话-------------------------
+
+    public AtomicInteger getSeqCounter() {
+        return seqCounter;
+    }
+
+    public long getSttStartTime() {
+        return sttStartTime;
+    }
+
+    public void setSttStartTime(long sttStartTime) {
+        this.sttStartTime = sttStartTime;
+    }
+
+    public long getLlmStartTime() {
+        return llmStartTime;
+    }
+
+    public void setLlmStartTime(long llmStartTime) {
+        this.llmStartTime = llmStartTime;
+    }
+
+    public CopyOnWriteArrayList<DialogueService.Sentence> getSentenceQueue() {
+        return sentenceQueue;
+    }
+
+    public AtomicBoolean getFirstSentDone() {
+        return firstSentDone;
+    }
+
+    public ReentrantLock getQueueLock() {
+        return queueLock;
+    }
+
+    PriorityBlockingQueue<DialogueService.TtsTask> getTtsTaskQueue() {
+        return ttsTaskQueue;
+    }
+
+    /**
+     * 获取TTS并发信号量，首次使用时按配置的并发数创建
+     */
+    public Semaphore getTtsSemaphore(int permits) {
+        Semaphore semaphore = ttsSemaphore;
+        if (semaphore == null) {
+            synchronized (this) {
+                semaphore = ttsSemaphore;
+                if (semaphore == null) {
+                    semaphore = new Semaphore(permits);
+                    ttsSemaphore = semaphore;
+                }
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * 已创建的TTS并发信号量，未创建时返回null
+     */
+    public Semaphore getTtsSemaphore() {
+        return ttsSemaphore;
+    }
+
+    /**
+     * 开始新一轮对话，上一轮被打断时结束它的录音
+     */
+    public synchronized Turn startTurn(Long assistantTimeMillis) {
+        Turn previous = turn;
+        if (previous != null) {
+            previous.closeRecording();
+        }
+        Turn newTurn = new Turn(assistantTimeMillis);
+        turn = newTurn;
+        return newTurn;
+    }
+
+    /**
+     * 获取指定对话ID的状态
+     * 当前没有对话或对话ID更新时开始新一轮；属于已经过去的对话时返回null
+     */
+    public synchronized Turn getTurn(Long assistantTimeMillis) {
+        Turn current = turn;
+        if (current != null && current.assistantTimeMillis.equals(assistantTimeMillis)) {
+            return current;
+        }
+        if (current != null && current.assistantTimeMillis > assistantTimeMillis) {
+            return null;
+        }
+        return startTurn(assistantTimeMillis);
+    }
+
+    /**
+     * 结束指定的对话，释放其状态
+     */
+    public synchronized void endTurn(Long assistantTimeMillis) {
+        Turn current = turn;
+        if (current != null && current.assistantTimeMillis.equals(assistantTimeMillis)) {
+            turn = null;
+        }
+    }
+
+    // --------------------播放-------------------------
+
+    public AtomicBoolean getPlaying() {
+        return playing;
+    }
+
+    public ScheduledFuture<?> getFrameTask() {
+        return frameTask;
+    }
+
+    public void setFrameTask(ScheduledFuture<?> frameTask) {
+        this.frameTask = frameTask;
+    }
+
+    /**
+     * 取消帧发送任务
+     */
+    public void cancelFrameTask() {
+        ScheduledFuture<?> task = frameTask;
+        frameTask = null;
+        if (task != null && !task.isDone()) {
+            task.cancel(false);
+        }
+    }
+
+    public long getPlayStartNanos() {
+        return playStartNanos;
+    }
+
+    public long getPlayPositionMs() {
+        return playPositionMs;
+    }
+
+    public void startPlayClock() {
+        playStartNanos = System.nanoTime();
+        playPositionMs = 0;
+    }
+
+    public void advancePlayPosition(long millis) {
+        if (playPositionMs >= 0) {
+            playPositionMs += millis;
+        }
+    }
+
+    public void resetPlayClock() {
+        playStartNanos = -1;
+        playPositionMs = -1;
+    }
+
+    public PlayoutTracker getPlayout() {
+        return playout;
+    }
+
+    // --------------------VAD-------------------------
+
+    public Object getVadLock() {
+        return vadLock;
+    }
+
+    /**
+     * VAD状态，需持有vadLock访问
+     */
+    VadService.VadState getVadState() {
+        return vadState;
+    }
+
+    void setVadState(VadService.VadState vadState) {
+        this.vadState = vadState;
+    }
+
+    /**
+     * 释放会话的全部状态，可重复调用
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        OPEN_CONTEXTS.remove(this);
+        sentenceQueue.clear();
+        ttsTaskQueue.clear();
+        firstSentDone.set(false);
+        Turn current = turn;
+        if (current != null) {
+            current.closeRecording();
+        }
+        turn = null;
+        playing.set(false);
+        cancelFrameTask();
+        resetPlayClock();
+        playout.reset();
+        synchronized (vadLock) {
+            vadState = null;
+        }
+    }
+
+    /**
+     * 状态摘要，用于泄漏报告
+     */
+    public String describe() {
+        Turn current = turn;
+        return "sessionId=" + sessionId
+                + ", ageMs=" + (System.currentTimeMillis() - createTime)
+                + ", sentences=" + sentenceQueue.size()
+                + ", ttsTasks=" + ttsTaskQueue.size()
+                + ", turn=" + (current == null ? null : current.assistantTimeMillis + "/" + (current.recording != null))
+                + ", playing=" + playing.get()
+                + ", frameTask=" + (frameTask != null);
+    }
+}
@@ -0,0 +1,283 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OggOpusWriter;
+import com.xiaozhi.utils.OpusProcessor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对话录音
+ * 每段录音打开一个FileChannel，音频产生时把写入任务交给后台写线程追加到文件，结束时回填文件头，
+ * 不再在一轮对话结束时把所有句子读入内存再合并成一个文件，也不在STT结果发出前同步写用户录音。
+ * 可以保存为WAV，也可以编码为Ogg Opus（约为WAV的十分之一大小）。
+ * 写线程的队列有上限，队列满时放弃这段录音，调用方从不等待，录音不会影响播放。
+ */
+@Component
+public class DialogueRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(DialogueRecorder.class);
+
+    public static final String FORMAT_OPUS = "opus";
+
+    // 录音格式：wav 或 opus
+    @Value("${xiaozhi.audio.recording.format:wav}")
+    private String format;
+
+    // 每个写线程排队的写入任务上限
+    @Value("${xiaozhi.audio.recording.queue-size:256}")
+    private int queueSize;
+
+    @Value("${xiaozhi.audio.recording.writers:2}")
+    private int writerCount;
+
+    @Autowired
+    private OpusProcessor opusProcessor;
+
+    // 同一段录音固定由一个写线程处理，保证写入顺序
+    private ExecutorService[] writers;
+
+    private final AtomicInteger recordingIds = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        writers = new ExecutorService[Math.max(1, writerCount)];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    Thread.ofVirtual().name("dialogue-recorder-" + i).factory());
+        }
+        logger.info("对话录音已启动，格式: {}，写线程: {}", format, writers.length);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+        }
+        for (ExecutorService writer : writers) {
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 录音实际保存的路径，path为约定的wav路径，保存为opus时替换扩展名
+     */
+    public Path resolve(Path path) {
+        return FORMAT_OPUS.equals(format) ? AudioUtils.withOpusSuffix(path) : path;
+    }
+
+    /**
+     * 开始一段录音，path为约定的wav路径
+     */
+    public Recording open(Path path) {
+        int id = recordingIds.incrementAndGet();
+        Recording recording = new Recording(id, resolve(path), writers[Math.floorMod(id, writers.length)]);
+        recording.submit(recording::openFile);
+        return recording;
+    }
+
+    /**
+     * 一段录音，所有方法都只是提交写入任务，不阻塞调用方
+     */
+    public final class Recording {
+        private final int id;
+        private final Path path;
+        private final ExecutorService writer;
+        // 已经提交写入的句子音频文件，录音结束后删除
+        private final Queue<String> consumedFiles = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean dropped;
+        private volatile boolean closed;
+        private boolean finished;
+        private FileChannel channel;
+        private OggOpusWriter oggWriter;
+        private String encoderKey;
+        private long dataLength;
+
+        private Recording(int id, Path path, ExecutorService writer) {
+            this.id = id;
+            this.path = path;
+            this.writer = writer;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * 追加一段16kHz单声道PCM
+         */
+        public void appendPcm(byte[] pcm) {
+            if (pcm != null && pcm.length > 0) {
+                submit(() -> writePcm(pcm));
+            }
+        }
+
+        /**
+         * 追加一个音频文件的内容，文件在录音结束后删除
+         */
+        public void appendFile(String audioPath) {
+            if (audioPath == null) {
+                return;
+            }
+            consumedFiles.add(audioPath);
+            submit(() -> writePcm(AudioUtils.readAsPcm(fullPath(audioPath))));
+        }
+
+        /**
+         * 结束录音，回填文件头并关闭文件，可重复调用
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writer.execute(this::finish);
+            } catch (RejectedExecutionException e) {
+                // 队列已满时放弃录音，在单独的线程中释放文件
+                dropped = true;
+                Thread.startVirtualThread(this::finish);
+            }
+        }
+
+        private void submit(WriteTask task) {
+            if (closed || dropped) {
+                return;
+            }
+            try {
+                writer.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                logger.warn("录音写入队列已满，放弃录音: {}", path);
+                dropped = true;
+            }
+        }
+
+        private synchronized void run(WriteTask task) {
+            if (dropped || finished) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.warn("写入录音失败，放弃录音 {}: {}", path, e.getMessage());
+                dropped = true;
+            }
+        }
+
+        private void openFile() throws IOException {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            if (FORMAT_OPUS.equals(format)) {
+                encoderKey = "recording_" + id;
+                oggWriter = new OggOpusWriter(channel, AudioUtils.SAMPLE_RATE, AudioUtils.CHANNELS,
+                        AudioUtils.OPUS_FRAME_DURATION_MS);
+            } else {
+                // 先写入数据长度为0的文件头，结束时回填
+                write(AudioUtils.wavHeader(0));
+            }
+        }
+
+        private void writePcm(byte[] pcm) throws IOException {
+            if (oggWriter != null) {
+                for (byte[] packet : opusProcessor.pcmToOpus(encoderKey, pcm, true)) {
+                    oggWriter.writePacket(ByteBuffer.wrap(packet));
+                }
+            } else {
+                write(ByteBuffer.wrap(pcm));
+                dataLength += pcm.length;
+            }
+        }
+
+        private synchronized void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                if (channel != null && !dropped) {
+                    if (oggWriter != null) {
+                        for (byte[] packet : opusProcessor.flushLeftover(encoderKey)) {
+                            oggWriter.writePacket(ByteBuffer.wrap(packet));
+                        }
+                        oggWriter.close();
+                    } else {
+                        channel.write(AudioUtils.wavHeader(dataLength), 0);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("结束录音失败 {}: {}", path, e.getMessage());
+                dropped = true;
+            }
+            release();
+            String audioPath;
+            while ((audioPath = consumedFiles.poll()) != null) {
+                deleteQuietly(Path.of(fullPath(audioPath)));
+            }
+            if (dropped) {
+                deleteQuietly(path);
+            }
+        }
+
+        private void release() {
+            if (encoderKey != null) {
+                opusProcessor.cleanup(encoderKey);
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.debug("关闭录音文件失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static String fullPath(String audioPath) {
+        return audioPath.startsWith(AudioUtils.AUDIO_PATH) ? audioPath : AudioUtils.AUDIO_PATH + audioPath;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("删除音频文件失败: {}", e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriteTask {
+        void run() throws IOException;
+    }
+}
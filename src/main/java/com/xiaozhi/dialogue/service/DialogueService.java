@@ -4,16 +4,14 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.dialogue.llm.ChatService;
 import com.xiaozhi.dialogue.service.VadService.VadStatus;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
+import com.xiaozhi.dialogue.stt.SttOrchestrator;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
 import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
-import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.event.ChatSessionCloseEvent;
-import com.xiaozhi.service.SysConfigService;
-import com.xiaozhi.service.SysRoleService;
-import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.EmojiUtils;
 import com.xiaozhi.utils.EmojiUtils.EmoSentence;
 import org.slf4j.Logger;
@@ -26,12 +24,9 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import jakarta.annotation.Resource;
-import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
@@ -70,6 +65,9 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     @Resource
     private SttServiceFactory sttFactory;
 
+    @Resource
+    private SttOrchestrator sttOrchestrator;
+
     @Resource
     private MessageService messageService;
 
@@ -86,39 +84,18 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     private SessionManager sessionManager;
 
     @Resource
-    private SysConfigService configService;
-    
-    @Resource
-    private SysRoleService roleService;
-
-    // 会话状态管理
-    private final Map<String, AtomicInteger> seqCounters = new ConcurrentHashMap<>();
-    private final Map<String, Long> sttStartTimes = new ConcurrentHashMap<>();
-    private final Map<String, Long> llmStartTimes = new ConcurrentHashMap<>();
-    private final Map<String, CopyOnWriteArrayList<Sentence>> sentenceQueue = new ConcurrentHashMap<>();
-    private final Map<String, AtomicBoolean> firstSentDone = new ConcurrentHashMap<>();
-    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private RoleSnapshotService roleSnapshotService;
 
-    // 存储每个对话ID的所有模型回复音频路径
-    private final Map<Long, Map<Integer, String>> dialogueAudioPaths = new ConcurrentHashMap<>();
-    // 存储每个对话ID的完整文本回复
-    private final Map<Long, StringBuilder> dialogueResponses = new ConcurrentHashMap<>();
+    @Resource
+    private DialogueRecorder dialogueRecorder;
 
-    // 新增：并发控制相关
-    private final Map<String, Semaphore> sessionSemaphores = new ConcurrentHashMap<>();
-    private final Map<String, PriorityBlockingQueue<TtsTask>> sessionTaskQueues = new ConcurrentHashMap<>();
+    // 会话状态（句子队列、TTS任务队列、对话录音等）统一由ChatSession持有的DialogueContext管理
 
     @Override
     public void onApplicationEvent(ChatSessionCloseEvent event) {
         ChatSession chatSession = event.getSession();
         if(chatSession != null) {
-            // clean up dialogue audio paths and responses
-            Long assistantTimeMillis = chatSession.getAssistantTimeMillis();
-            if (assistantTimeMillis!=null ) {
-                dialogueAudioPaths.remove(assistantTimeMillis);
-                dialogueResponses.remove(assistantTimeMillis);
-            }
-            cleanupSession(chatSession.getSessionId());
+            cleanupSession(chatSession);
         }
     }
 
@@ -132,6 +109,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         private boolean isLast;
         private boolean ready = false;
         private String audioPath = null;
+        private boolean reusable = false; // 音频会被反复播放，播放时使用预编码的帧文件
         private long timestamp = System.currentTimeMillis();
         private double modelResponseTime = 0.0; // 模型响应时间（秒）
         private double ttsGenerationTime = 0.0; // TTS生成时间（秒）
@@ -187,6 +165,14 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             return audioPath;
         }
 
+        public boolean isReusable() {
+            return reusable;
+        }
+
+        public void setReusable(boolean reusable) {
+            this.reusable = reusable;
+        }
+
         public void setModelResponseTime(double time) {
             this.modelResponseTime = time;
         }
@@ -223,7 +209,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     /**
      * TTS任务封装，用于优先队列
      */
-    private static class TtsTask implements Comparable<TtsTask> {
+    static class TtsTask implements Comparable<TtsTask> {
         private final String sessionId;
         private final Sentence sentence;
         private final EmoSentence emoSentence;
@@ -267,22 +253,6 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         }
     }
 
-    /**
-     * 获取或创建session的信号量
-     */
-    private Semaphore getSessionSemaphore(String sessionId) {
-        return sessionSemaphores.computeIfAbsent(sessionId,
-                k -> new Semaphore(MAX_CONCURRENT_PER_SESSION));
-    }
-
-    /**
-     * 获取或创建session的任务队列
-     */
-    private PriorityBlockingQueue<TtsTask> getSessionTaskQueue(String sessionId) {
-        return sessionTaskQueues.computeIfAbsent(sessionId,
-                k -> new PriorityBlockingQueue<>());
-    }
-
     /**
      * 处理音频数据
      */
@@ -294,13 +264,15 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 if (device == null || ObjectUtils.isEmpty(device.getRoleId())) {
                     return;
                 }
-                SysRole role = roleService.selectRoleById(device.getRoleId());
-                // 获取STT和TTS配置
-                SysConfig sttConfig = role.getSttId() != null ? configService.selectConfigById(role.getSttId())
-                        : null;
+                RoleSnapshot snapshot = roleSnapshotService.get(session);
+                if (snapshot == null) {
+                    return;
+                }
+                // 获取STT配置
+                SysConfig sttConfig = snapshot.sttConfig();
 
                 // 处理VAD
-                VadService.VadResult vadResult = vadService.processAudio(sessionId, opusData);
+                VadService.VadResult vadResult = vadService.processAudio(session, opusData);
                 if (vadResult == null || vadResult.getStatus() == VadStatus.ERROR
                         || vadResult.getProcessedData() == null) {
                     return;
@@ -312,10 +284,12 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 switch (vadResult.getStatus()) {
                     case SPEECH_START:
                         // 检测到语音开始
-                        sttStartTimes.put(sessionId, System.currentTimeMillis());
+                        session.getDialogueContext().setSttStartTime(System.currentTimeMillis());
 
                         // 初始化对话状态
-                        initChat(sessionId);
+                        initChat(session);
+                        // 识别服务没有可用的预连接时立即开始建立，与中断播放等准备工作并行
+                        prewarmStt(sttConfig);
                         startStt(session, sessionId, sttConfig, device, vadResult.getProcessedData());
                         break;
 
@@ -342,6 +316,27 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             }
     }
 
+    /**
+     * 设备开始监听时提前建立识别服务的连接，用户开口时可以直接使用
+     */
+    public void prewarmStt(ChatSession session) {
+        RoleSnapshot snapshot = roleSnapshotService.get(session);
+        if (snapshot != null) {
+            prewarmStt(snapshot.sttConfig());
+        }
+    }
+
+    private void prewarmStt(SysConfig sttConfig) {
+        try {
+            SttService sttService = sttFactory.getSttService(sttConfig);
+            if (sttService != null) {
+                sttService.prewarm();
+            }
+        } catch (Exception e) {
+            logger.debug("预连接识别服务失败: {}", e.getMessage());
+        }
+    }
+
     /**
      * 启动语音识别
      */
@@ -355,46 +350,37 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         Thread.startVirtualThread(() -> {
             try {
                 // 如果正在播放，先中断音频
-                if (audioService.isPlaying(sessionId)) {
-                    sentenceQueue.get(sessionId).clear();
-                    audioService.sendStop(session);
+                if (audioService.isPlaying(session)) {
+                    session.getDialogueContext().getSentenceQueue().clear();
+                    audioService.interruptPlayback(session);
                 }
 
                 // 如果已经在进行流式识别，先清理旧的资源
                 sessionManager.closeAudioStream(sessionId);
 
-                // 创建新的音频数据接收管道
+                // 创建新的音频数据接收管道，先写入初始音频再接收后续音频，保证顺序
                 sessionManager.createAudioStream(sessionId);
-                sessionManager.setStreamingState(sessionId, true);
-
-                // 获取STT服务
-                SttService sttService = sttFactory.getSttService(sttConfig);
-                if (sttService == null) {
-                    logger.error("无法获取STT服务 - Provider: {}", sttConfig != null ? sttConfig.getProvider() : "null");
-                    return;
-                }
-
-                // 发送初始音频数据
                 if (initialAudio != null && initialAudio.length > 0) {
                     sessionManager.sendAudioData(sessionId, initialAudio);
                 }
+                sessionManager.setStreamingState(sessionId, true);
 
                 // 设置用户收到音频的时间戳作为用户消息的创建时间戳，也用于约定保存音频文件的路径。一定要在STT前获得时间戳。
                 final Long userTimeMillis =  System.currentTimeMillis();
                 session.setUserTimeMillis(userTimeMillis);
 
                 final String finalText;
-                if (sessionManager.getAudioStream(sessionId) != null) {
-                    finalText = sttService.streamRecognition(sessionManager.getAudioStream(sessionId));
-                    if (!StringUtils.hasText(finalText)) {
+                SttAudioStream audioStream = sessionManager.getAudioStream(sessionId);
+                if (audioStream != null) {
+                    // 云端识别由本地识别对冲，结果有硬超时
+                    finalText = sttOrchestrator.recognize(sttConfig, audioStream);
+                    // 识别期间被中止或开始了新的识别，丢弃这次结果
+                    if (audioStream.isCancelled() || !StringUtils.hasText(finalText)) {
                         return;
                     }
                 } else {
                     return;
                 }
-                // 获取完整的音频数据并保存
-                saveUserAudio(session);
-
                 CompletableFuture.runAsync(() -> messageService.sendSttMessage(session, finalText))
                         .thenRun(() -> audioService.sendStart(session))
                         .thenRun(() -> {
@@ -402,8 +388,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                             final Long assistantTimeMillis =  System.currentTimeMillis();
                             session.setAssistantTimeMillis(assistantTimeMillis);
                             // 初始化当前对话的音频路径映射和文本响应
-                            dialogueAudioPaths.put(assistantTimeMillis, new ConcurrentHashMap<>());
-                            dialogueResponses.put(assistantTimeMillis, new StringBuilder());
+                            session.getDialogueContext().startTurn(assistantTimeMillis);
                             // 使用句子切分处理响应
                             chatService.chatStreamBySentence(session, finalText, true,
                                     (sentence, isFirst, isLast) -> {
@@ -418,6 +403,8 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                             logger.error("处理对话失败: {}", e.getMessage(), e);
                             return null;
                         });
+                // 用户录音交给后台写入，不占用STT结果发送的时间
+                saveUserAudio(session);
             } catch (Exception e) {
                 logger.error("流式识别错误: {}", e.getMessage(), e);
             }
@@ -430,24 +417,14 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     private void saveUserAudio(ChatSession session) {
         try {
             // 获取当前语音活动的PCM数据
-            List<byte[]> pcmFrames = vadService.getPcmData(session.getSessionId());
+            List<byte[]> pcmFrames = vadService.getPcmData(session);
 
             if (pcmFrames != null && !pcmFrames.isEmpty()) {
-                // 计算总大小并合并PCM帧
-                int totalSize = pcmFrames.stream().mapToInt(frame -> frame.length).sum();
-                byte[] fullPcmData = new byte[totalSize];
-                int offset = 0;
-
-                for (byte[] frame : pcmFrames) {
-                    System.arraycopy(frame, 0, fullPcmData, offset, frame.length);
-                    offset += frame.length;
-                }
-
-                // 保存为WAV文件
-                Path path = session.getUserAudioPath();
-                AudioUtils.saveAsWav(path,fullPcmData);
-
-                logger.debug("用户音频已保存: {}", path.toString());
+                // 逐帧追加到录音文件，不再合并成一个大数组
+                DialogueRecorder.Recording recording = dialogueRecorder.open(session.getUserAudioPath());
+                pcmFrames.forEach(recording::appendPcm);
+                recording.close();
+                logger.debug("用户音频已提交保存: {}", recording.getPath());
             }
         } catch (Exception e) {
             logger.error("保存用户音频失败: {}", e.getMessage(), e);
@@ -457,12 +434,10 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     /**
      * 初始化对话状态
      */
-    private void initChat(String sessionId) {
-        llmStartTimes.put(sessionId, System.currentTimeMillis());
-        seqCounters.putIfAbsent(sessionId, new AtomicInteger(0));
-        sentenceQueue.putIfAbsent(sessionId, new CopyOnWriteArrayList<>());
-        firstSentDone.put(sessionId, new AtomicBoolean(false));
-        locks.putIfAbsent(sessionId, new ReentrantLock());
+    private void initChat(ChatSession session) {
+        DialogueContext context = session.getDialogueContext();
+        context.setLlmStartTime(System.currentTimeMillis());
+        context.getFirstSentDone().set(false);
     }
 
     /**
@@ -478,9 +453,12 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         Long assistantTimeMillis = session.getAssistantTimeMillis();
         Assert.notNull(assistantTimeMillis, "assistantTimeMillis cannot be null");
         String sessionId = session.getSessionId();
-        seqCounters.putIfAbsent(sessionId, new AtomicInteger(0));
+        DialogueContext context = session.getDialogueContext();
+        if (context.isClosed()) {
+            return;
+        }
         // 获取句子序列号
-        int seq = seqCounters.get(sessionId).incrementAndGet();
+        int seq = context.getSeqCounter().incrementAndGet();
         
         // 耗时操作需及时更新最后活动时间，避免误判为会话终止
         sessionManager.updateLastActivity(sessionId);
@@ -488,32 +466,29 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         // 累加完整回复内容
         if (text != null && !text.isEmpty()) {
             // 同时累加到对话ID对应的响应中
-            dialogueResponses.computeIfAbsent(assistantTimeMillis, k -> new StringBuilder()).append(text);
+            DialogueContext.Turn turn = context.getTurn(assistantTimeMillis);
+            if (turn != null) {
+                turn.getResponse().append(text);
+            }
         }
 
         // 计算模型响应时间
         final double responseTime;
-        Long startTime = llmStartTimes.get(sessionId);
-        if (startTime != null) {
+        long startTime = context.getLlmStartTime();
+        if (startTime > 0) {
             responseTime = (System.currentTimeMillis() - startTime) / 1000.0;
         } else {
             responseTime = 0.0;
         }
 
-        SysDevice device = session.getSysDevice();
-        SysRole role = roleService.selectRoleById(device.getRoleId());
-        if (device == null || role == null) {
+        RoleSnapshot snapshot = roleSnapshotService.get(session);
+        if (snapshot == null) {
             return;
         }
 
         // 新增加的设备很有可能没有配置TTS，采用默认Edge需要传递null
-        final SysConfig ttsConfig;
-        if (role.getTtsId() != null) {
-            ttsConfig = configService.selectConfigById(role.getTtsId());
-        } else {
-            ttsConfig = null;
-        }
-        String voiceName = role.getVoiceName();
+        final SysConfig ttsConfig = snapshot.ttsConfig();
+        String voiceName = snapshot.voiceName();
 
         // 处理表情符号
         EmoSentence emoSentence = EmojiUtils.processSentence(text);
@@ -532,14 +507,11 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             sentence.setMoods(emoSentence.getMoods());
 
             // 添加到句子队列
-            CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-            if (queue != null) {
-                queue.add(sentence);
-            }
+            context.getSentenceQueue().add(sentence);
 
             // 如果是首句，需要标记首句处理完成
             if (isFirst) {
-                firstSentDone.get(sessionId).set(true);
+                context.getFirstSentDone().set(true);
             }
 
             // 尝试处理队列
@@ -555,9 +527,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         logger.info("处理LLM返回的句子: seq={}, text={}, isFirst={}, isLast={}, responseTime={}s", seq, text, isFirst, isLast, responseTime/1000);
 
         // 添加到句子队列
-        CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-        if (queue == null) {return;}
-        queue.add(sentence);
+        context.getSentenceQueue().add(sentence);
 
         // 如果句子为空且是结束状态，直接标记为准备好（不需要生成音频）
         if ((text == null || text.isEmpty()) && isLast) {
@@ -566,7 +536,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
             // 如果是首句，需要标记首句处理完成
             if (isFirst) {
-                firstSentDone.get(sessionId).set(true);
+                context.getFirstSentDone().set(true);
             }
 
             // 尝试处理队列
@@ -606,20 +576,25 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
      * 提交TTS任务
      */
     private void submitTtsTask(TtsTask task) {
-        PriorityBlockingQueue<TtsTask> taskQueue = getSessionTaskQueue(task.sessionId);
-        taskQueue.offer(task);
+        DialogueContext context = task.session.getDialogueContext();
+        if (context.isClosed()) {
+            return;
+        }
+        context.getTtsTaskQueue().offer(task);
 
         // 尝试处理队列中的任务
-        processTtsTaskQueue(task.sessionId);
+        processTtsTaskQueue(task.session);
     }
 
     /**
      * 处理TTS任务队列
      */
-    private void processTtsTaskQueue(String sessionId) {
+    private void processTtsTaskQueue(ChatSession session) {
+        String sessionId = session.getSessionId();
         Thread.startVirtualThread(() -> {
-            PriorityBlockingQueue<TtsTask> taskQueue = getSessionTaskQueue(sessionId);
-            Semaphore semaphore = getSessionSemaphore(sessionId);
+            DialogueContext context = session.getDialogueContext();
+            PriorityBlockingQueue<TtsTask> taskQueue = context.getTtsTaskQueue();
+            Semaphore semaphore = context.getTtsSemaphore(MAX_CONCURRENT_PER_SESSION);
 
             while (!taskQueue.isEmpty()) {
                 // 耗时操作需及时更新最后活动时间，避免误判为会话终止
@@ -644,7 +619,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                     } finally {
                         semaphore.release();
                         // 任务完成后，继续处理队列
-                        processTtsTaskQueue(sessionId);
+                        processTtsTaskQueue(session);
                     }
                 });
             }
@@ -709,24 +684,19 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         // 标记音频准备就绪
         task.sentence.setAudio(audioPath);
 
-        // 如果有对话ID，将音频路径添加到对应的映射中
-        if (task.sentence.getAssistantTimeMillis() != null && audioPath != null) {
-            dialogueAudioPaths.computeIfAbsent(task.sentence.getAssistantTimeMillis(), k -> new ConcurrentHashMap<>())
-                    .put(task.sentence.getSeq(), audioPath);
+        DialogueContext context = task.session.getDialogueContext();
+        if (context.isClosed()) {
+            logger.error("会话 {} 已经被删除，无法标记首句处理完成。", task.sessionId);
+            return;
         }
 
         // 如果是首句，需要标记首句处理完成
         if (task.isFirst) {
-            if(firstSentDone.get(task.sessionId) != null) {
-                firstSentDone.get(task.sessionId).set(true);
-            } else {
-                logger.error("会话 {} 已经被删除，无法标记首句处理完成。", task.sessionId);
-            }
+            context.getFirstSentDone().set(true);
         }
 
         // 尝试处理队列
-        AtomicBoolean firstDone = firstSentDone.get(task.sessionId);
-        if (firstDone != null && firstDone.get()) {
+        if (context.getFirstSentDone().get()) {
             processQueue(task.session, task.sessionId);
         }
     }
@@ -772,61 +742,62 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             task.sentence.setAudio(null);
             task.sentence.setTtsGenerationTime(0);
 
+            DialogueContext context = task.session.getDialogueContext();
+            if (context.isClosed()) {
+                logger.error("会话 {} 已经被删除，无法处理队列。", task.sessionId);
+                return;
+            }
+
             // 如果是首句，需要标记首句处理完成
             if (task.isFirst) {
-                if(firstSentDone.get(task.sessionId) != null) {
-                    firstSentDone.get(task.sessionId).set(true);
-                } else {
-                    logger.error("会话 {} 已经被删除，无法标记首句处理完成。", task.sessionId);
-                }
+                context.getFirstSentDone().set(true);
             }
 
             // 尝试处理队列
-            if(firstSentDone.get(task.sessionId) != null ) {
-                if (firstSentDone.get(task.sessionId).get()) {
-                    processQueue(task.session, task.sessionId);
-                }
-            } else {
-                logger.error("会话 {} 已经被删除，无法处理队列。", task.sessionId);
+            if (context.getFirstSentDone().get()) {
+                processQueue(task.session, task.sessionId);
             }
         }
     }
 
     /**
-     * 保存助手的完整响应（文本和合并音频）
+     * 把句子的音频追加到本轮对话的录音，第一句时打开录音
      */
-    private void saveAssistantResponse(ChatSession session) {
-        Long assistantTimeMillis = session.getAssistantTimeMillis();
+    private void recordSentence(ChatSession session, Sentence sentence) {
+        if (sentence.getAssistantTimeMillis() == null || sentence.getAudioPath() == null) {
+            return;
+        }
+        DialogueContext.Turn turn = session.getDialogueContext().getTurn(sentence.getAssistantTimeMillis());
+        if (turn == null) {
+            return;
+        }
+        DialogueRecorder.Recording recording = turn.getRecording();
+        if (recording == null) {
+            recording = dialogueRecorder.open(session.getAssistantAudioPath());
+            turn.setRecording(recording);
+        }
+        recording.appendFile(sentence.getAudioPath());
+    }
+
+    /**
+     * 保存助手的完整响应，最后一句播放结束后结束录音，句子音频文件随录音结束删除
+     */
+    private void saveAssistantResponse(ChatSession session, Long assistantTimeMillis, CompletableFuture<Void> played) {
+        DialogueContext context = session.getDialogueContext();
         try {
-            // 获取该对话的所有音频路径
-            Map<Integer, String> audioPaths = dialogueAudioPaths.get(assistantTimeMillis);
-            if (audioPaths == null || audioPaths.isEmpty()) {
-                logger.warn("对话 {} 没有可用的音频路径", assistantTimeMillis);
+            DialogueContext.Turn turn = context.getTurn(assistantTimeMillis);
+            DialogueRecorder.Recording recording = turn == null ? null : turn.getRecording();
+            if (recording == null) {
+                logger.warn("对话 {} 没有可用的音频", assistantTimeMillis);
                 return;
             }
-
-            // 按序号排序音频路径
-            List<Integer> sortedSeqs = new ArrayList<>(audioPaths.keySet());
-            sortedSeqs.sort(Integer::compareTo);
-
-            // 准备要合并的音频文件路径
-            List<String> audioFilesToMerge = new ArrayList<>();
-            for (Integer seq : sortedSeqs) {
-                String path = audioPaths.get(seq);
-                if (path != null) {
-                    audioFilesToMerge.add(path);
-                }
-            }
-
-            // 合并音频文件
-            if (!audioFilesToMerge.isEmpty()) {
-                Path path = session.getAssistantAudioPath();
-                AudioUtils.mergeAudioFiles(path,audioFilesToMerge);
-                // 保存合并后的音频路径
-                logger.info("对话 {} 的音频已合并: {}", assistantTimeMillis, path);
-            }
-        } catch (Exception e) {
-            logger.error("保存助手响应失败 - 对话ID: {}, 错误: {}", assistantTimeMillis, e.getMessage(), e);
+            played.whenComplete((v, e) -> {
+                recording.close();
+                logger.info("对话 {} 的音频已提交保存: {}", assistantTimeMillis, recording.getPath());
+            });
+        } finally {
+            // 本轮对话已结束，释放文本响应
+            context.endTurn(assistantTimeMillis);
         }
     }
 
@@ -835,11 +806,12 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
      * 在流式处理完成后或非首句音频生成完成后调用
      */
     private void processQueue(ChatSession session, String sessionId) {
-        // 获取锁，确保线程安全
-        ReentrantLock lock = locks.get(sessionId);
-        if (lock == null) {
+        DialogueContext context = session.getDialogueContext();
+        if (context.isClosed()) {
             return;
         }
+        // 获取锁，确保线程安全
+        ReentrantLock lock = context.getQueueLock();
 
         // 尝试获取锁，避免多线程同时处理
         if (!lock.tryLock()) {
@@ -848,20 +820,19 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
         try {
             // 获取句子队列
-            CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-            if (queue == null || queue.isEmpty()) {
+            CopyOnWriteArrayList<Sentence> queue = context.getSentenceQueue();
+            if (queue.isEmpty()) {
                 return;
             }
 
             // 检查首句是否已经流式处理完成
-            AtomicBoolean firstDone = firstSentDone.get(sessionId);
-            if (firstDone == null || !firstDone.get()) {
+            if (!context.getFirstSentDone().get()) {
                 // 首句尚未处理完成，等待
                 return;
             }
 
             // 检查当前是否有句子正在播放
-            boolean isCurrentlyPlaying = audioService.isPlaying(sessionId);
+            boolean isCurrentlyPlaying = audioService.isPlaying(session);
 
             // 如果当前正在播放，不处理下一个句子
             if (isCurrentlyPlaying) {
@@ -891,21 +862,25 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                     // 从队列中移除已处理的句子
                     queue.remove(nextSentence);
 
+                    // 按播放顺序追加到本轮对话的录音
+                    recordSentence(session, nextSentence);
+
                     // 发送到客户端
-                    audioService.sendAudioMessage(
+                    CompletableFuture<Void> played = audioService.sendAudioMessage(
                             session,
                             nextSentence,
                             false, // 不是开始消息
                             nextSentence.isLast() // 如果是最后一句，则是结束消息
-                    ).thenRun(() -> {
+                    );
+                    played.thenRun(() -> {
                         // 在播放完成后，递归调用处理下一个句子
                         processQueue(session, sessionId);
                     });
-                }
-                //logger.info("是否最后一个句子{}, 对话ID: {}",nextSentence.isLast, nextSentence.assistantTimeMillis);
-                // 如果是最后一个句子，合并并存储助手的完整音频
-                if (nextSentence.isLast() && nextSentence.getAssistantTimeMillis() != null) {
-                    saveAssistantResponse(session);
+
+                    // 如果是最后一个句子，播放结束后完成助手的录音
+                    if (nextSentence.isLast() && nextSentence.getAssistantTimeMillis() != null) {
+                        saveAssistantResponse(session, nextSentence.getAssistantTimeMillis(), played);
+                    }
                 }
             }
         } finally {
@@ -952,7 +927,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     public void handleText(ChatSession session, String inputText, Consumer<Long> textConsumer) {
         // 初始化对话状态
         String sessionId = session.getSessionId();
-        initChat(sessionId);
+        initChat(session);
         Thread.startVirtualThread(() -> {
             try {
                 SysDevice device = sessionManager.getDeviceConfig(sessionId);
@@ -970,6 +945,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 // 设置LLM生成消息的时间戳作为Assistant消息的创建时间戳，也用于约定保存音频文件的路径。一定要在LLM前设置时间戳。
                 final Long assistantTimeMillis = System.currentTimeMillis();
                 session.setAssistantTimeMillis(assistantTimeMillis);
+                session.getDialogueContext().startTurn(assistantTimeMillis);
 
                 if (textConsumer != null) {
                     // 如果指定了输出文本，则直接使用指定的文本生成语音
@@ -1011,27 +987,19 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                     huiBenService.stopHuiBen(sessionId);
                     return;
                 }
+                DialogueContext context = session.getDialogueContext();
                 // 清空句子队列
-                CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-                if (queue != null) {
-                    queue.clear();
-                }
+                context.getSentenceQueue().clear();
 
                 // 重置首句处理状态
-                AtomicBoolean firstDone = firstSentDone.get(sessionId);
-                if (firstDone != null) {
-                    firstDone.set(false);
-                }
+                context.getFirstSentDone().set(false);
 
                 // 清理TTS任务队列和信号量
-                PriorityBlockingQueue<TtsTask> taskQueue = sessionTaskQueues.get(sessionId);
-                if (taskQueue != null) {
-                    taskQueue.clear();
-                    logger.info("已清空TTS任务队列 - SessionId: {}", sessionId);
-                }
+                context.getTtsTaskQueue().clear();
+                logger.info("已清空TTS任务队列 - SessionId: {}", sessionId);
                 
                 // 释放所有信号量许可，确保正在进行的TTS任务能够完成
-                Semaphore semaphore = sessionSemaphores.get(sessionId);
+                Semaphore semaphore = context.getTtsSemaphore();
                 if (semaphore != null) {
                     // 释放所有可能的许可，让正在进行的任务能够完成
                     semaphore.release(MAX_CONCURRENT_PER_SESSION);
@@ -1039,7 +1007,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 }
 
                 // 终止语音发送
-                audioService.sendStop(session);
+                audioService.interruptPlayback(session);
             } catch (Exception e) {
                 logger.error("中止对话失败: {}", e.getMessage(), e);
             }
@@ -1049,23 +1017,12 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     /**
      * 清理会话资源
      */
-    public void cleanupSession(String sessionId) {
-        seqCounters.remove(sessionId);
-        sttStartTimes.remove(sessionId);
-        llmStartTimes.remove(sessionId);
-        sentenceQueue.remove(sessionId);
-        firstSentDone.remove(sessionId);
-        locks.remove(sessionId);
-
-        // 新增：清理并发控制相关资源
-        sessionSemaphores.remove(sessionId);
-        PriorityBlockingQueue<TtsTask> taskQueue = sessionTaskQueues.remove(sessionId);
-        if (taskQueue != null) {
-            taskQueue.clear();
-        }
+    public void cleanupSession(ChatSession session) {
+        // 释放对话上下文中的全部状态
+        session.getDialogueContext().close();
 
         // 清理AudioService中的资源
-        audioService.cleanupSession(sessionId);
+        audioService.cleanupSession(session);
     }
 
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.communication.domain.iot.IotDescriptor;
 import com.xiaozhi.communication.domain.iot.IotProperty;
 import com.xiaozhi.communication.domain.iot.IotState;
+import com.xiaozhi.dialogue.llm.ChatService;
 import com.xiaozhi.dialogue.llm.tool.ToolCallStringResultConverter;
 import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
 import com.xiaozhi.utils.JsonUtil;
@@ -14,14 +15,20 @@ import org.apache.commons.text.StringSubstitutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.ai.tool.metadata.ToolMetadata;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Iot服务 - 负责iot处理和WebSocket发送
@@ -31,12 +38,21 @@ public class IotService {
     private static final Logger logger = LoggerFactory.getLogger(IotService.class);
     private static final String TAG = "IotService";
 
+    // 工具回调缓存的最大条目数（不同的设备描述数量），超出后不再缓存
+    private static final int MAX_CACHED_DESCRIPTORS = 1024;
+
     @Resource
     private SessionManager sessionManager;
 
     @Resource
     private MessageService messageService;
 
+    /**
+     * iot设备描述（不含属性值）的摘要 -> 工具回调
+     * 同型号设备上报的描述完全一致，生成的工具回调可以在会话之间共享，回调执行时从ToolContext获取会话。
+     */
+    private final Map<String, List<ToolCallback>> toolCallbackCache = new ConcurrentHashMap<>();
+
     /**
      * 处理iot设备描述信息，形成function_call，注册进sessionManager，用于后续的llm调用及设备调用
      *
@@ -182,18 +198,65 @@ public class IotService {
      */
     private void registerFunctionTools(String sessionId, IotDescriptor iotDescriptor) {
         ToolsSessionHolder toolsSessionHolder = sessionManager.getFunctionSessionHolder(sessionId);
-        registerPropertiesFunctionTools(sessionId, toolsSessionHolder, iotDescriptor);
-        registerMethodFunctionTools(sessionId, toolsSessionHolder, iotDescriptor);
+        String schemaKey = schemaKey(iotDescriptor);
+        List<ToolCallback> toolCallbacks = toolCallbackCache.get(schemaKey);
+        if (toolCallbacks == null) {
+            List<ToolCallback> built = new ArrayList<>();
+            buildPropertiesFunctionTools(iotDescriptor, built);
+            buildMethodFunctionTools(iotDescriptor, built);
+            toolCallbacks = List.copyOf(built);
+            if (toolCallbackCache.size() < MAX_CACHED_DESCRIPTORS) {
+                List<ToolCallback> existing = toolCallbackCache.putIfAbsent(schemaKey, toolCallbacks);
+                if (existing != null) {
+                    toolCallbacks = existing;
+                }
+            }
+        }
+        // 注册到当前会话的函数持有者
+        for (ToolCallback toolCallback : toolCallbacks) {
+            toolsSessionHolder.registerFunction(toolCallback.getToolDefinition().name(), toolCallback);
+        }
     }
 
     /**
-     * 注册iot设备的属性的查询方法到FunctionHolder
+     * 计算设备描述的摘要，只包含生成工具定义用到的字段，不包含属性的当前值
+     */
+    private static String schemaKey(IotDescriptor iotDescriptor) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(iotDescriptor.getName()).append('\u0000').append(iotDescriptor.getDescription());
+        if (iotDescriptor.getProperties() != null) {
+            new TreeMap<>(iotDescriptor.getProperties()).forEach((propName, prop) -> canonical.append("\u0000p:")
+                    .append(propName).append('\u0000').append(prop.getDescription())
+                    .append('\u0000').append(prop.getType()));
+        }
+        if (iotDescriptor.getMethods() != null) {
+            new TreeMap<>(iotDescriptor.getMethods()).forEach((methodName, method) -> {
+                canonical.append("\u0000m:").append(methodName).append('\u0000').append(method.getDescription());
+                if (method.getParameters() != null) {
+                    new TreeMap<>(method.getParameters()).forEach((paramName, param) -> canonical.append("\u0000a:")
+                            .append(paramName).append('\u0000').append(param.getDescription())
+                            .append('\u0000').append(param.getType()));
+                }
+            });
+        }
+        return DigestUtils.md5DigestAsHex(canonical.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sessionId(ToolContext toolContext) {
+        ChatSession chatSession = (ChatSession) toolContext.getContext().get(ChatService.TOOL_CONTEXT_SESSION_KEY);
+        return chatSession.getSessionId();
+    }
+
+    /**
+     * 生成iot设备属性的查询方法
      *
-     * @param sessionId          会话ID
-     * @param toolsSessionHolder session绑定的FunctionHolder
-     * @param iotDescriptor      iot信息
+     * @param iotDescriptor iot信息
+     * @param toolCallbacks 生成的工具回调
      */
-    private void registerPropertiesFunctionTools(String sessionId, ToolsSessionHolder toolsSessionHolder, IotDescriptor iotDescriptor) {
+    private void buildPropertiesFunctionTools(IotDescriptor iotDescriptor, List<ToolCallback> toolCallbacks) {
+        if (iotDescriptor.getProperties() == null) {
+            return;
+        }
         //遍历properties，生成FunctionCallTool
         var iotName = iotDescriptor.getName();
         for (var entry : iotDescriptor.getProperties().entrySet()) {
@@ -203,7 +266,7 @@ public class IotService {
             var funcName = "iot_get_" + iotName.toLowerCase() + "_" + propName.toLowerCase();
             var toolCallback = FunctionToolCallback
                     .builder(funcName, (Map<String, String> params, ToolContext toolContext) -> {
-                        Object value = getIotStatus(sessionId, iotName, propName);
+                        Object value = getIotStatus(sessionId(toolContext), iotName, propName);
                         if (value != null) {
                             // 获取参数
                             String response_success = params.get("response_success");
@@ -237,20 +300,21 @@ public class IotService {
                     .inputType(Map.class)
                     .toolCallResultConverter(ToolCallStringResultConverter.INSTANCE)
                     .build();
-            // 注册到当前会话的函数持有者
-            toolsSessionHolder.registerFunction(funcName, toolCallback);
+            toolCallbacks.add(toolCallback);
         }
 
     }
 
     /**
-     * 注册iot设备的可调用方法到FunctionHolder
+     * 生成iot设备的可调用方法
      *
-     * @param sessionId          会话ID
-     * @param toolsSessionHolder FunctionHolder实例
-     * @param iotDescriptor      iot信息
+     * @param iotDescriptor iot信息
+     * @param toolCallbacks 生成的工具回调
      */
-    private void registerMethodFunctionTools(String sessionId, ToolsSessionHolder toolsSessionHolder, IotDescriptor iotDescriptor) {
+    private void buildMethodFunctionTools(IotDescriptor iotDescriptor, List<ToolCallback> toolCallbacks) {
+        if (iotDescriptor.getMethods() == null) {
+            return;
+        }
         // 遍历methods，生成FunctionCallTool
         var iotName = iotDescriptor.getName();
 
@@ -291,7 +355,7 @@ public class IotService {
                         String actFuncName = funcName.replace("iot_" + iotName + "_", ""); // 原始方法调用，去掉iot_iotName_前缀
                         String response_success = (String) params.get("response_success");
                         params.remove("response_success"); // 移除response_success参数，避免传递给设备
-                        boolean result = sendIotMessage(sessionId, iotName, actFuncName, params);
+                        boolean result = sendIotMessage(sessionId(toolContext), iotName, actFuncName, params);
                         if (result) {
                             // 获取参数
                             if (response_success == null || response_success.isEmpty()) {
@@ -308,8 +372,7 @@ public class IotService {
                     .inputType(Map.class)
                     .toolCallResultConverter(ToolCallStringResultConverter.INSTANCE)
                     .build();
-            // 注册到当前会话的函数持有者
-            toolsSessionHolder.registerFunction(funcName, toolCallback);
+            toolCallbacks.add(toolCallback);
         }
     }
 
@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.utils.AudioUtils;
-import com.xiaozhi.utils.OpusProcessor;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +12,6 @@ import org.springframework.stereotype.Service;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,19 +39,17 @@ public class MusicService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    @Autowired
-    private OpusProcessor opusProcessor;
-
     @Autowired
     private SessionManager sessionManager;
 
     @Autowired
     private AudioService audioService;
 
-    // 使用虚拟线程执行器处理定时任务
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
-            Runtime.getRuntime().availableProcessors(),
-            Thread.ofVirtual().name("music-scheduler-", 0).factory());
+    @Autowired
+    private StreamingAudioPlayer streamingAudioPlayer;
+
+    @Autowired
+    private OpusContentCache contentCache;
 
     // 存储每个会话的当前歌词信息
     private final Map<String, List<LyricLine>> sessionLyrics = new ConcurrentHashMap<>();
@@ -62,11 +57,8 @@ public class MusicService {
     // 存储每个会话的当前播放时间
     private final Map<String, AtomicLong> playTime = new ConcurrentHashMap<>();
 
-    // 存储每个会话的音频文件路径，用于播放完成后删除
-    private final Map<String, String> sessionAudioFiles = new ConcurrentHashMap<>();
-
-    // 存储每个会话的调度任务
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    // 存储每个会话正在进行的播放
+    private final Map<String, StreamingAudioPlayer.Playback> playbacks = new ConcurrentHashMap<>();
 
     /**
      * 歌词行数据结构 - 使用JDK 16+ Record类型
@@ -94,8 +86,8 @@ public class MusicService {
                 // 重置播放时间
                 playTime.computeIfAbsent(sessionId, k -> new AtomicLong()).set(0);
 
-                // 清理之前的音频文件（如果有）
-                cleanupAudioFile(sessionId);
+                // 停止之前的播放（如果有）
+                stopPlayback(sessionId);
 
                 // 1. 获取音乐信息
                 Map<String, String> musicInfo = getMusicInfo(song, artist);
@@ -103,19 +95,7 @@ public class MusicService {
                     throw new RuntimeException("无法找到歌曲: " + song + (artist != null ? " - " + artist : ""));
                 }
 
-                // 2. 下载音频文件到本地临时目录，使用随机文件名避免冲突
-                String audioUrl = musicInfo.get("audioUrl");
-                String randomName = "music_" + sessionId + "_" + UUID.randomUUID() + ".mp3";
-                String audioPath = downloadFile(audioUrl, randomName);
-
-                if (audioPath == null) {
-                    throw new RuntimeException("下载音频文件失败");
-                }
-
-                // 保存音频文件路径，用于播放完成后删除
-                sessionAudioFiles.put(sessionId, audioPath);
-
-                // 3. 解析歌词
+                // 2. 解析歌词
                 String lyricUrl = musicInfo.get("lyricUrl");
                 List<LyricLine> lyrics = parseLyrics(lyricUrl);
                 sessionLyrics.put(sessionId, lyrics);
@@ -123,8 +103,8 @@ public class MusicService {
                 // 发送音乐开始消息
                 audioService.sendStart(session);
 
-                // 发送音频和同步歌词
-                sendAudioWithLyrics(session, audioPath);
+                // 3. 边下载边播放，同步发送歌词
+                sendAudioWithLyrics(session, musicInfo.get("audioUrl"));
 
             } catch (Exception e) {
 
@@ -140,117 +120,61 @@ public class MusicService {
     }
 
     /**
-     * 清理之前的音频文件
+     * 停止会话正在进行的播放并清理歌词
      */
-    private void cleanupAudioFile(String sessionId) {
-        String audioPath = sessionAudioFiles.remove(sessionId);
-        if (audioPath != null) {
-            try {
-                Files.deleteIfExists(Path.of(audioPath));
-            } catch (Exception e) {
-                logger.warn("删除音频文件失败: {}", audioPath, e);
-            }
+    private void stopPlayback(String sessionId) {
+        StreamingAudioPlayer.Playback playback = playbacks.remove(sessionId);
+        if (playback != null) {
+            playback.stop();
         }
         // 清理会话的歌词数据
         sessionLyrics.remove(sessionId);
     }
 
     /**
-     * 发送音频和同步歌词
+     * 边下载边播放音频，并同步歌词
      */
-    private void sendAudioWithLyrics(ChatSession session, String audioPath) {
+    private void sendAudioWithLyrics(ChatSession session, String audioUrl) {
         String sessionId = session.getSessionId();
 
-        try {
-            // 读取音频文件
-            Path audioFilePath = Path.of(audioPath);
-            if (!Files.exists(audioFilePath)) {
-                logger.warn("音频文件不存在: {}", audioPath);
-                return;
-            }
+        // 获取歌词
+        List<LyricLine> lyrics = sessionLyrics.getOrDefault(sessionId, Collections.emptyList());
+        AtomicLong currPlayTime = playTime.computeIfAbsent(sessionId, k -> new AtomicLong(0));
 
-            // 将音频文件转换为PCM格式
-            byte[] audioData = AudioUtils.readAsPcm(audioPath);
-            if (audioData == null || audioData.length == 0) {
-                logger.warn("音频数据为空");
-                return;
-            }
+        // 预处理歌词时间点，将毫秒时间转换为帧索引
+        Map<Integer, String> lyricFrameMap = new HashMap<>();
+        for (LyricLine line : lyrics) {
+            // 计算歌词对应的帧索引
+            lyricFrameMap.put((int) (line.timeMs() / OPUS_FRAME_INTERVAL_MS), line.text());
+        }
 
-            // 将PCM转换为Opus帧
-            List<byte[]> frames = opusProcessor.pcmToOpus(sessionId, audioData, false);
-            if (frames == null || frames.isEmpty()) {
-                logger.warn("Opus帧转换失败或为空");
-                return;
+        StreamingAudioPlayer.Playback playback = streamingAudioPlayer.play(session, audioUrl, frameIndex -> {
+            // 更新当前播放时间
+            currPlayTime.set(frameIndex * OPUS_FRAME_INTERVAL_MS);
+            // 先检查是否有对应这一帧的歌词需要发送
+            String lyricText = lyricFrameMap.get(frameIndex);
+            if (lyricText != null) {
+                audioService.sendSentenceStart(session, lyricText);
             }
+        });
+        playbacks.put(sessionId, playback);
 
-            // 获取歌词
-            List<LyricLine> lyrics = sessionLyrics.getOrDefault(sessionId, Collections.emptyList());
-            AtomicLong currPlayTime = playTime.computeIfAbsent(sessionId, k -> new AtomicLong(0));
-
-            // 预处理歌词时间点，将毫秒时间转换为帧索引
-            Map<Integer, String> lyricFrameMap = new HashMap<>();
-            for (LyricLine line : lyrics) {
-                // 计算歌词对应的帧索引
-                int frameIndex = (int) (line.timeMs() / OPUS_FRAME_INTERVAL_MS);
-                if (frameIndex < frames.size()) {
-                    lyricFrameMap.put(frameIndex, line.text());
-                }
+        playback.completion().whenComplete((result, e) -> {
+            // 被新的播放替换或已被停止时不再处理
+            if (!playbacks.remove(sessionId, playback)) {
+                return;
             }
-
-            // 创建帧发送任务，使用原子引用替代数组
-            AtomicLong frameIndexRef = new AtomicLong(0);
-            Runnable frameTask = () -> {
-                try {
-                    int currentIndex = (int) frameIndexRef.get();
-                    if (currentIndex >= frames.size()) {
-                        // 所有帧已发送，取消任务
-                        audioService.cancelScheduledTask(sessionId);
-                        return;
-                    }
-
-                    // 更新活跃时间
-                    sessionManager.updateLastActivity(sessionId);
-
-                    // 更新当前播放时间
-                    currPlayTime.set(currentIndex * OPUS_FRAME_INTERVAL_MS);
-
-                    // 先检查是否有对应这一帧的歌词需要发送
-                    String lyricText = lyricFrameMap.get(currentIndex);
-                    if (lyricText != null) {
-                        audioService.sendSentenceStart(session, lyricText);
-                    }
-
-                    // 发送当前帧
-                    byte[] frame = frames.get(currentIndex);
-                    audioService.sendOpusFrame(session, frame);
-
-                    // 增加帧索引
-                    frameIndexRef.incrementAndGet();
-
-                } catch (Exception e) {
-                    // 发生错误，取消调度任务
-                    logger.error("发送音频帧时发生错误", e);
-                    audioService.cancelScheduledTask(sessionId);
-                }
-            };
-
-            // 启动定时任务，每隔OPUS_FRAME_INTERVAL_MS毫秒执行一次
-            ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
-                    frameTask,
-                    0,
-                    OPUS_FRAME_INTERVAL_MS,
-                    TimeUnit.MILLISECONDS);
-
-            // 存储任务引用，以便稍后取消
-            scheduledTasks.put(sessionId, task);
-        } catch (Exception e) {
-            logger.error("处理音频时发生错误 - SessionId: {}", sessionId, e);
+            sessionLyrics.remove(sessionId);
+            sessionManager.setMusicPlaying(sessionId, false);
             try {
+                if (e != null) {
+                    audioService.sendSentenceStart(session, "播放音乐时发生错误: " + e.getMessage());
+                }
                 audioService.sendStop(session);
             } catch (Exception ex) {
                 logger.error("发送停止消息失败", ex);
             }
-        }
+        });
     }
 
     /**
@@ -333,41 +257,6 @@ public class MusicService {
         }
     }
 
-    /**
-     * 下载文件到临时目录
-     */
-    private String downloadFile(String fileUrl, String fileName) {
-        try {
-            // 确保音频目录存在
-            Path audioDir = Path.of(AudioUtils.AUDIO_PATH);
-            Files.createDirectories(audioDir);
-
-            // 将文件保存到音频目录
-            Path outputPath = audioDir.resolve(fileName);
-
-            // 使用OkHttp3下载文件
-            Request request = new Request.Builder()
-                    .url(fileUrl)
-                    .get()
-                    .build();
-
-            try (Response response = okHttpClient.newCall(request).execute()) {
-                if (!response.isSuccessful() || response.body() == null) {
-                    logger.error("下载文件失败，响应码: {}", response.code());
-                    return null;
-                }
-
-                // 将响应体写入文件
-                Files.write(outputPath, response.body().bytes());
-
-                return outputPath.toAbsolutePath().toString();
-            }
-        } catch (Exception e) {
-            logger.error("下载文件时发生错误", e);
-            return null;
-        }
-    }
-
     /**
      * 解析LRC格式歌词
      */
@@ -380,42 +269,32 @@ public class MusicService {
         }
 
         try {
+            // 歌词原文按地址缓存，重复播放时不再请求
+            String responseBody = contentCache.getText(lyricUrl, this::fetchText);
+            if (responseBody == null) {
+                return result;
+            }
 
-            // 使用OkHttp3发送请求
-            Request request = new Request.Builder()
-                    .url(lyricUrl)
-                    .get()
-                    .build();
-
-            try (Response response = okHttpClient.newCall(request).execute()) {
-                if (!response.isSuccessful() || response.body() == null) {
-                    logger.error("获取歌词失败，响应码: {}", response.code());
-                    return result;
-                }
-
-                String responseBody = response.body().string();
-
-                // LRC时间标签正则表达式: [mm:ss.xx]
-                Pattern pattern = Pattern.compile("\\[(\\d{2}):(\\d{2})\\.(\\d{2})\\](.*)");
+            // LRC时间标签正则表达式: [mm:ss.xx]
+            Pattern pattern = Pattern.compile("\\[(\\d{2}):(\\d{2})\\.(\\d{2})\\](.*)");
 
-                // 使用Stream API处理每一行
-                return responseBody.lines()
-                        .map(pattern::matcher)
-                        .filter(Matcher::find)
-                        .map(matcher -> {
-                            int minutes = Integer.parseInt(matcher.group(1));
-                            int seconds = Integer.parseInt(matcher.group(2));
-                            int hundredths = Integer.parseInt(matcher.group(3));
+            // 使用Stream API处理每一行
+            return responseBody.lines()
+                    .map(pattern::matcher)
+                    .filter(Matcher::find)
+                    .map(matcher -> {
+                        int minutes = Integer.parseInt(matcher.group(1));
+                        int seconds = Integer.parseInt(matcher.group(2));
+                        int hundredths = Integer.parseInt(matcher.group(3));
 
-                            // 计算毫秒时间
-                            long timeMs = (minutes * 60 * 1000) + (seconds * 1000) + (hundredths * 10);
-                            String text = matcher.group(4).trim();
+                        // 计算毫秒时间
+                        long timeMs = (minutes * 60 * 1000) + (seconds * 1000) + (hundredths * 10);
+                        String text = matcher.group(4).trim();
 
-                            return new LyricLine(timeMs, text);
-                        })
-                        .sorted(Comparator.comparingLong(LyricLine::timeMs))
-                        .toList();
-            }
+                        return new LyricLine(timeMs, text);
+                    })
+                    .sorted(Comparator.comparingLong(LyricLine::timeMs))
+                    .toList();
 
         } catch (Exception e) {
             logger.error("解析歌词时发生错误", e);
@@ -424,6 +303,27 @@ public class MusicService {
         return result;
     }
 
+    /**
+     * 获取歌词原文
+     */
+    private String fetchText(String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .build();
+
+        try (Response response = okHttpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                logger.error("获取歌词失败，响应码: {}", response.code());
+                return null;
+            }
+            return response.body().string();
+        } catch (Exception e) {
+            logger.error("获取歌词时发生错误", e);
+            return null;
+        }
+    }
+
     /**
      * 停止播放音乐
      * 
@@ -432,13 +332,8 @@ public class MusicService {
     public void stopMusic(String sessionId) {
         Thread.startVirtualThread(() -> {
             try {
-                ScheduledFuture<?> task = scheduledTasks.remove(sessionId);
-                if (task != null) {
-                    task.cancel(true); // 取消任务
-                }
-
-                // 清理音频文件
-                cleanupAudioFile(sessionId);
+                // 停止播放，取消下载
+                stopPlayback(sessionId);
 
                 // 更新音乐播放状态
                 sessionManager.setMusicPlaying(sessionId, false);
@@ -0,0 +1,102 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OggOpusReader;
+import com.xiaozhi.utils.OpusFrameFile;
+import com.xiaozhi.utils.OpusProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 预编码音频资源
+ * 验证码提示音等会反复播放的本地音频，第一次播放时导入为{@link OpusFrameFile}，保存在源文件旁边（源文件名加.xzof），
+ * 之后直接映射帧文件按帧发送，不再读取整个文件、判断格式或重新编码。源文件比帧文件新时重新导入。
+ * Opus文件只接受标准的Ogg封装，由{@link OggOpusReader}严格解析；其他格式解码为PCM后编码。
+ * 已映射的帧文件按最近使用保留一定数量，映射的内存由操作系统页缓存管理，不占用堆。
+ */
+@Component
+public class OpusAssetStore {
+    private static final Logger logger = LoggerFactory.getLogger(OpusAssetStore.class);
+
+    @Value("${xiaozhi.audio.asset.max-open:256}")
+    private int maxOpen;
+
+    @Autowired
+    private OpusProcessor opusProcessor;
+
+    // 已映射的帧文件，按源文件路径索引
+    private final LinkedHashMap<String, Asset> opened = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 获取源文件对应的Opus帧，必要时先导入
+     */
+    public List<ByteBuffer> open(String sourcePath) throws IOException {
+        Path source = Path.of(sourcePath).toAbsolutePath().normalize();
+        String key = source.toString();
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        synchronized (this) {
+            Asset asset = opened.get(key);
+            if (asset != null && asset.sourceModified == modified) {
+                return asset.frames;
+            }
+        }
+
+        Path target = source.resolveSibling(source.getFileName() + OpusFrameFile.SUFFIX);
+        OpusFrameFile frames = null;
+        if (Files.exists(target) && Files.getLastModifiedTime(target).toMillis() >= modified) {
+            try {
+                frames = OpusFrameFile.open(target);
+            } catch (IOException e) {
+                logger.warn("帧文件无效，重新导入: {}", e.getMessage());
+            }
+        }
+        if (frames == null) {
+            long start = System.currentTimeMillis();
+            OpusFrameFile.write(target, importFrames(source));
+            frames = OpusFrameFile.open(target);
+            logger.info("导入音频资源: {}，{} 帧，耗时 {}ms", source, frames.size(), System.currentTimeMillis() - start);
+        }
+
+        synchronized (this) {
+            opened.put(key, new Asset(modified, frames));
+            var iterator = opened.entrySet().iterator();
+            while (opened.size() > maxOpen && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return frames;
+    }
+
+    private List<ByteBuffer> importFrames(Path source) throws IOException {
+        if (source.getFileName().toString().toLowerCase().endsWith(".opus")) {
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                // 解析出的帧是映射区域的切片，写入帧文件后即可释放
+                return OggOpusReader.readPackets(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        byte[] pcm = AudioUtils.readAsPcm(source.toString());
+        // 使用独立的编码器，避免与对话的TTS编码状态互相影响
+        String encoderKey = "asset_" + System.nanoTime();
+        try {
+            return opusProcessor.pcmToOpus(encoderKey, pcm, false).stream().map(ByteBuffer::wrap).toList();
+        } finally {
+            opusProcessor.cleanup(encoderKey);
+        }
+    }
+
+    private record Asset(long sourceModified, OpusFrameFile frames) {
+    }
+}
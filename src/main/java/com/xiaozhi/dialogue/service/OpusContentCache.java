@@ -0,0 +1,363 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusFrameFile;
+import com.xiaozhi.utils.OpusProcessor;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 音乐、绘本等网络音频的Opus帧缓存
+ * 按来源地址缓存编码好的Opus帧序列，重复播放时直接发送，不再下载、解码和编码。
+ * 内存层按总字节数限制、按最近使用淘汰；磁盘层每个来源一个{@link OpusFrameFile}，读取时直接映射，按总大小清理最旧的文件。
+ * 同一来源正在编码时，后来的听众直接共享这次编码，按各自的进度读取已经编码好的帧；所有听众都停止时取消下载。
+ * 歌词等文本也按地址缓存原文。
+ */
+@Component
+public class OpusContentCache {
+    private static final Logger logger = LoggerFactory.getLogger(OpusContentCache.class);
+
+    private static final OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    private static final String TEXT_FILE_SUFFIX = ".txt";
+
+    @Value("${xiaozhi.audio.content-cache.dir:audio/cache/}")
+    private String cacheDir;
+
+    @Value("${xiaozhi.audio.content-cache.memory-bytes:67108864}")
+    private long maxMemoryBytes;
+
+    @Value("${xiaozhi.audio.content-cache.disk-bytes:1073741824}")
+    private long maxDiskBytes;
+
+    @Autowired
+    private OpusProcessor opusProcessor;
+
+    // 已完成的内容，按最近使用排序
+    private final LinkedHashMap<String, Content> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    // 正在加载的内容，同一来源只加载一次
+    private final Map<String, Content> loading = new HashMap<>();
+
+    /**
+     * 打开一个来源的帧序列，未缓存时开始加载；使用完后必须调用release
+     */
+    public Content open(String url) {
+        String key = DigestUtils.md5DigestAsHex(url.getBytes(StandardCharsets.UTF_8));
+        Content content;
+        synchronized (this) {
+            content = memory.get(key);
+            if (content != null) {
+                return content;
+            }
+            content = loading.get(key);
+            if (content != null) {
+                content.listeners++;
+                return content;
+            }
+            content = new Content(key);
+            content.listeners = 1;
+            loading.put(key, content);
+        }
+        Content loadingContent = content;
+        content.loader = Thread.ofVirtual().name("opus-content-" + key).start(() -> load(loadingContent, url));
+        return content;
+    }
+
+    /**
+     * 听众停止使用，正在加载的内容没有听众时取消加载
+     */
+    public void release(Content content) {
+        synchronized (this) {
+            if (content.done || --content.listeners > 0) {
+                return;
+            }
+            loading.remove(content.key, content);
+        }
+        content.cancel();
+    }
+
+    /**
+     * 获取文本内容（如歌词），优先读取缓存
+     */
+    public String getText(String url, Function<String, String> fetcher) {
+        Path path = Path.of(cacheDir, DigestUtils.md5DigestAsHex(url.getBytes(StandardCharsets.UTF_8)) + TEXT_FILE_SUFFIX);
+        try {
+            if (Files.exists(path)) {
+                return Files.readString(path);
+            }
+        } catch (IOException e) {
+            logger.warn("读取文本缓存失败: {}", e.getMessage());
+        }
+        String text = fetcher.apply(url);
+        if (text != null) {
+            try {
+                writeAtomically(path, tmp -> Files.writeString(tmp, text));
+            } catch (IOException e) {
+                logger.warn("写入文本缓存失败: {}", e.getMessage());
+            }
+        }
+        return text;
+    }
+
+    private void load(Content content, String url) {
+        Path path = Path.of(cacheDir, content.key + OpusFrameFile.SUFFIX);
+        boolean fromDisk = false;
+        Exception error = null;
+        try {
+            fromDisk = Files.exists(path) && readFrames(content, path);
+            if (!fromDisk) {
+                download(content, url);
+            }
+        } catch (CancellationException e) {
+            error = e;
+        } catch (Exception e) {
+            if (!content.cancelled) {
+                logger.error("加载音频内容失败 - Url: {}", url, e);
+            }
+            error = e;
+        } catch (Error e) {
+            logger.error("加载音频内容失败 - Url: {}", url, e);
+            error = new IOException("加载音频内容失败: " + e, e);
+            throw e;
+        } finally {
+            // 任何情况下都结束加载，听众不会一直等待，之后的open也不会加入已经停止的加载
+            content.complete(error);
+            synchronized (this) {
+                loading.remove(content.key, content);
+                if (error == null) {
+                    cacheInMemory(content);
+                }
+            }
+        }
+        if (error == null && !fromDisk) {
+            writeFrames(content, path);
+        }
+    }
+
+    private void download(Content content, String url) throws IOException {
+        Call call = okHttpClient.newCall(new Request.Builder().url(url).get().build());
+        content.call = call;
+        if (content.cancelled) {
+            throw new CancellationException();
+        }
+        // 使用独立的编码器，避免与对话的TTS编码状态互相影响
+        String encoderKey = "content_" + content.key + "_" + System.nanoTime();
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("下载音频失败，响应码: " + response.code());
+            }
+            AudioUtils.decodeToPcm(response.body().byteStream(), pcm -> {
+                if (content.cancelled) {
+                    throw new CancellationException();
+                }
+                content.append(wrap(opusProcessor.pcmToOpus(encoderKey, pcm, true)));
+            });
+            content.append(wrap(opusProcessor.flushLeftover(encoderKey)));
+        } finally {
+            opusProcessor.cleanup(encoderKey);
+        }
+    }
+
+    private static List<ByteBuffer> wrap(List<byte[]> frames) {
+        return frames.stream().map(ByteBuffer::wrap).toList();
+    }
+
+    /**
+     * 读取缓存文件的帧
+     *
+     * @return 是否读取成功，文件被截断或损坏时删除文件并返回false，由调用方重新下载转码
+     */
+    private boolean readFrames(Content content, Path path) {
+        OpusFrameFile frames;
+        try {
+            frames = OpusFrameFile.open(path);
+        } catch (IOException e) {
+            logger.warn("音频缓存文件无法读取，删除后重新下载: {}", e.getMessage());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException deleteError) {
+                logger.warn("删除音频缓存文件失败: {}", deleteError.getMessage());
+            }
+            return false;
+        }
+        // 帧是映射文件的切片，不读入堆内存
+        content.append(frames);
+        try {
+            // 更新修改时间，磁盘清理时按最近使用保留
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.debug("更新缓存文件时间失败: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    private void writeFrames(Content content, Path path) {
+        try {
+            OpusFrameFile.write(path, content.frames());
+            trimDisk();
+        } catch (IOException e) {
+            logger.warn("写入音频缓存文件失败: {}", e.getMessage());
+        }
+    }
+
+    private void cacheInMemory(Content content) {
+        // 单个内容超过内存上限的四分之一时只保留在磁盘
+        if (content.bytes > maxMemoryBytes / 4) {
+            return;
+        }
+        memory.put(content.key, content);
+        memoryBytes += content.bytes;
+        var iterator = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    private void trimDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(Path.of(cacheDir))) {
+            files = stream.filter(Files::isRegularFile).toList();
+        }
+        long total = 0;
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            sizes.put(file, size);
+            total += size;
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        List<Path> oldestFirst = new ArrayList<>(files);
+        oldestFirst.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : oldestFirst) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            try {
+                if (Files.deleteIfExists(file)) {
+                    total -= sizes.get(file);
+                }
+            } catch (IOException e) {
+                // 文件仍被映射时部分系统不允许删除，留到下次清理
+                logger.debug("删除缓存文件失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeAtomically(Path path, FileWriter writer) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            writer.write(tmp);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private interface FileWriter {
+        void write(Path tmp) throws IOException;
+    }
+
+    /**
+     * 一个来源的Opus帧序列，加载过程中帧不断追加，多个听众各自按序号读取
+     */
+    public static final class Content {
+        private final String key;
+        private final List<ByteBuffer> frames = new ArrayList<>();
+        private long bytes;
+        private int listeners;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile Exception error;
+        private volatile Call call;
+        private volatile Thread loader;
+
+        private Content(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 获取指定序号的帧，尚未编码到时返回null
+         */
+        public synchronized ByteBuffer frame(int index) {
+            return index < frames.size() ? frames.get(index) : null;
+        }
+
+        public synchronized int available() {
+            return frames.size();
+        }
+
+        /**
+         * 加载已经结束（成功、失败或取消）
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        private synchronized void append(List<ByteBuffer> newFrames) {
+            for (ByteBuffer frame : newFrames) {
+                frames.add(frame);
+                bytes += frame.remaining();
+            }
+        }
+
+        private synchronized List<ByteBuffer> frames() {
+            return new ArrayList<>(frames);
+        }
+
+        private void complete(Exception e) {
+            error = e;
+            done = true;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Call current = call;
+            if (current != null) {
+                current.cancel();
+            }
+            Thread thread = loader;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
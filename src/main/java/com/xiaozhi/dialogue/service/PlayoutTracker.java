@@ -0,0 +1,204 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 设备端播放进度
+ * 按已发送的帧数×帧时长减去经过的时间估计设备还要播放多久：每发送一帧，已发送音频的播放结束时间在
+ * max(当前时间, 原结束时间)上加一帧，再加上设备缓冲的估计就是设备播放完最后一帧的时间。
+ * 只显示文字或表情的句子没有音频，按显示时长占用时间线，与仍在播放的音频重叠计时。
+ * 设备在hello中声明支持播放确认时，已发送音频的播放时间过去后收到设备播放完毕的消息即视为播放结束，不再等待设备缓冲的估计；
+ * 未声明支持的设备发来的播放完毕消息忽略，始终按估计的时间结束。
+ */
+public class PlayoutTracker {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioUtils.OPUS_FRAME_DURATION_MS);
+
+    private final LongSupplier clock;
+
+    // 已发送的音频按实时播放完的时间，不含设备缓冲
+    private long audioEndNanos;
+    // 是否有还没确认播放完的音频
+    private boolean hasAudio;
+    // 文字显示到的时间
+    private long holdUntilNanos;
+    private volatile boolean ackSupported;
+
+    // 等待播放结束的Future，结果为false表示被新的播放或中断取代
+    private CompletableFuture<Boolean> pending;
+    private ScheduledFuture<?> timer;
+    private ScheduledExecutorService scheduler;
+    private long deviceBufferNanos;
+
+    public PlayoutTracker() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock 纳秒时钟，与System.nanoTime语义相同
+     */
+    PlayoutTracker(LongSupplier clock) {
+        this.clock = clock;
+        this.holdUntilNanos = clock.getAsLong();
+    }
+
+    public boolean isAckSupported() {
+        return ackSupported;
+    }
+
+    public void setAckSupported(boolean ackSupported) {
+        this.ackSupported = ackSupported;
+    }
+
+    /**
+     * 向设备发送了一帧音频
+     */
+    public synchronized void onFrameSent() {
+        long now = clock.getAsLong();
+        audioEndNanos = (hasAudio ? Math.max(now, audioEndNanos) : now) + FRAME_NANOS;
+        hasAudio = true;
+    }
+
+    /**
+     * 没有音频的文字或表情从现在起至少显示指定时长
+     */
+    public synchronized void hold(long millis) {
+        long until = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - holdUntilNanos > 0) {
+            holdUntilNanos = until;
+        }
+    }
+
+    /**
+     * 设备报告播放队列已空
+     * 设备未声明支持播放确认，或已发送音频的播放时间还没过去（最后几帧到达设备之前的报告）时忽略
+     */
+    public void onDrained() {
+        if (!ackSupported) {
+            return;
+        }
+        CompletableFuture<Boolean> drained;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (!hasAudio || now - (audioEndNanos - FRAME_NANOS) < 0) {
+                return;
+            }
+            hasAudio = false;
+            drained = reschedule(now);
+        }
+        complete(drained, true);
+    }
+
+    /**
+     * 等待设备播放完已发送的音频并显示完文字
+     * 同一时间只有一个等待，新的等待或{@link #reset()}会让之前的等待以false完成
+     *
+     * @param scheduler         定时器
+     * @param deviceBufferNanos 设备缓冲的估计，设备支持播放确认时作为等不到确认的上限
+     * @return 播放结束时以true完成
+     */
+    public CompletableFuture<Boolean> whenDrained(ScheduledExecutorService scheduler, long deviceBufferNanos) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> superseded;
+        CompletableFuture<Boolean> drained;
+        synchronized (this) {
+            superseded = takePending();
+            this.scheduler = scheduler;
+            this.deviceBufferNanos = deviceBufferNanos;
+            pending = future;
+            drained = reschedule(clock.getAsLong());
+        }
+        complete(superseded, false);
+        complete(drained, true);
+        return future;
+    }
+
+    /**
+     * 取消正在等待的播放结束，之前的等待以false完成
+     * 新的一段播放开始时调用，由新的播放在结束后发送stop
+     */
+    public void supersede() {
+        CompletableFuture<Boolean> superseded;
+        synchronized (this) {
+            superseded = takePending();
+        }
+        complete(superseded, false);
+    }
+
+    /**
+     * 设备端的音频被中断，不再等待播放
+     */
+    public void reset() {
+        CompletableFuture<Boolean> superseded;
+        synchronized (this) {
+            superseded = takePending();
+            hasAudio = false;
+            holdUntilNanos = clock.getAsLong();
+        }
+        complete(superseded, false);
+    }
+
+    private long deadline(long now) {
+        long deadline = now;
+        if (hasAudio && audioEndNanos + deviceBufferNanos - deadline > 0) {
+            deadline = audioEndNanos + deviceBufferNanos;
+        }
+        if (holdUntilNanos - deadline > 0) {
+            deadline = holdUntilNanos;
+        }
+        return deadline;
+    }
+
+    private CompletableFuture<Boolean> takePending() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        CompletableFuture<Boolean> future = pending;
+        pending = null;
+        return future;
+    }
+
+    /**
+     * 按当前的估计重新安排等待，时间到时再检查一次，期间又发送了音频就继续等待
+     *
+     * @return 已经播放结束时返回需要完成的等待，在锁外完成
+     */
+    private CompletableFuture<Boolean> reschedule(long now) {
+        if (pending == null) {
+            return null;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        long delay = deadline(now) - now;
+        if (delay <= 0) {
+            hasAudio = false;
+            return takePending();
+        }
+        timer = scheduler.schedule(this::onTimer, delay, TimeUnit.NANOSECONDS);
+        return null;
+    }
+
+    private void onTimer() {
+        CompletableFuture<Boolean> drained;
+        synchronized (this) {
+            timer = null;
+            drained = reschedule(clock.getAsLong());
+        }
+        complete(drained, true);
+    }
+
+    private static void complete(CompletableFuture<Boolean> future, boolean drained) {
+        if (future != null) {
+            future.complete(drained);
+        }
+    }
+}
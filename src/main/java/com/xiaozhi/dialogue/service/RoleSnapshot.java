@@ -0,0 +1,60 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.entity.SysRole;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 会话当前角色的解析结果
+ * 连接建立或角色切换时解析一次，音频帧、VAD和TTS等热路径只读取快照，不再经过缓存代理查询角色和配置。
+ * 角色或其引用的配置更新后快照被丢弃，下次使用时重新解析。
+ *
+ * @param role       角色
+ * @param sttConfig  STT配置，未配置时为null（使用默认Vosk）
+ * @param ttsConfig  TTS配置，未配置时为null（使用默认Edge）
+ * @param llmConfig  LLM配置
+ * @param voiceName  TTS音色
+ * @param vadSpeechTh  VAD语音阈值
+ * @param vadSilenceTh VAD静音阈值
+ * @param vadEnergyTh  VAD能量阈值
+ * @param vadSilenceMs VAD静音超时（毫秒）
+ */
+public record RoleSnapshot(SysRole role,
+                           SysConfig sttConfig,
+                           SysConfig ttsConfig,
+                           SysConfig llmConfig,
+                           String voiceName,
+                           float vadSpeechTh,
+                           float vadSilenceTh,
+                           float vadEnergyTh,
+                           int vadSilenceMs) {
+
+    public static final float DEFAULT_VAD_SPEECH_TH = 0.4f;
+    public static final float DEFAULT_VAD_SILENCE_TH = 0.2f;
+    public static final float DEFAULT_VAD_ENERGY_TH = 0.001f;
+    public static final int DEFAULT_VAD_SILENCE_MS = 1200;
+
+    public static RoleSnapshot of(SysRole role, SysConfig sttConfig, SysConfig ttsConfig, SysConfig llmConfig) {
+        return new RoleSnapshot(role, sttConfig, ttsConfig, llmConfig,
+                role.getVoiceName(),
+                Optional.ofNullable(role.getVadSpeechTh()).orElse(DEFAULT_VAD_SPEECH_TH),
+                Optional.ofNullable(role.getVadSilenceTh()).orElse(DEFAULT_VAD_SILENCE_TH),
+                Optional.ofNullable(role.getVadEnergyTh()).orElse(DEFAULT_VAD_ENERGY_TH),
+                Optional.ofNullable(role.getVadSilenceMs()).orElse(DEFAULT_VAD_SILENCE_MS));
+    }
+
+    public Integer roleId() {
+        return role.getRoleId();
+    }
+
+    /**
+     * 快照是否引用了指定配置
+     */
+    public boolean references(Integer configId) {
+        return configId != null && (Objects.equals(configId, role.getSttId())
+                || Objects.equals(configId, role.getTtsId())
+                || Objects.equals(configId, role.getModelId()));
+    }
+}
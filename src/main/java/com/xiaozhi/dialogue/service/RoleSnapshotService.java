@@ -0,0 +1,116 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.entity.SysDevice;
+import com.xiaozhi.entity.SysRole;
+import com.xiaozhi.event.SysConfigChangeEvent;
+import com.xiaozhi.event.SysRoleChangeEvent;
+import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.service.SysRoleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Objects;
+
+/**
+ * 会话角色快照服务
+ * 为每个会话解析并持有当前角色及其STT/TTS/LLM配置，热路径通过快照读取，避免每帧经过缓存代理查询。
+ * 设备切换角色后roleId不一致，快照自动重新解析；角色或配置更新时按事件丢弃受影响会话的快照。
+ */
+@Service
+public class RoleSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(RoleSnapshotService.class);
+
+    @Autowired
+    private SysRoleService roleService;
+
+    @Autowired
+    private SysConfigService configService;
+
+    @Autowired
+    @Lazy
+    private SessionManager sessionManager;
+
+    /**
+     * 获取会话当前角色的快照，设备未绑定角色时返回null
+     */
+    public RoleSnapshot get(ChatSession session) {
+        SysDevice device = session.getSysDevice();
+        if (device == null || device.getRoleId() == null) {
+            return null;
+        }
+        RoleSnapshot snapshot = session.getRoleSnapshot();
+        if (snapshot != null && Objects.equals(snapshot.roleId(), device.getRoleId())) {
+            return snapshot;
+        }
+        return resolve(session);
+    }
+
+    /**
+     * 重新解析会话当前角色的快照
+     */
+    public RoleSnapshot resolve(ChatSession session) {
+        SysDevice device = session.getSysDevice();
+        if (device == null || device.getRoleId() == null) {
+            session.setRoleSnapshot(null);
+            return null;
+        }
+        SysRole role = roleService.selectRoleById(device.getRoleId());
+        if (role == null) {
+            session.setRoleSnapshot(null);
+            return null;
+        }
+        RoleSnapshot snapshot = RoleSnapshot.of(role,
+                selectConfig(role.getSttId()),
+                selectConfig(role.getTtsId()),
+                selectConfig(role.getModelId()));
+        session.setRoleSnapshot(snapshot);
+        return snapshot;
+    }
+
+    private SysConfig selectConfig(Integer configId) {
+        return configId == null ? null : configService.selectConfigById(configId);
+    }
+
+    /**
+     * 角色更新提交后，丢弃使用该角色的会话快照
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoleChange(SysRoleChangeEvent event) {
+        int count = 0;
+        for (ChatSession session : sessionManager.getSessions()) {
+            RoleSnapshot snapshot = session.getRoleSnapshot();
+            if (snapshot != null && Objects.equals(snapshot.roleId(), event.getRoleId())) {
+                session.setRoleSnapshot(null);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("角色 {} 已更新，失效 {} 个会话的角色快照", event.getRoleId(), count);
+        }
+    }
+
+    /**
+     * 配置更新提交后，丢弃引用该配置的会话快照
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onConfigChange(SysConfigChangeEvent event) {
+        int count = 0;
+        for (ChatSession session : sessionManager.getSessions()) {
+            RoleSnapshot snapshot = session.getRoleSnapshot();
+            if (snapshot != null && snapshot.references(event.getConfigId())) {
+                session.setRoleSnapshot(null);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("配置 {} 已更新，失效 {} 个会话的角色快照", event.getConfigId(), count);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.utils.AudioUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * 边下载边播放的音频流
+ * 帧来自 {@link OpusContentCache}：已缓存的内容直接播放，未缓存的由缓存边下载边解码编码，
+ * 同一来源的多个听众共享一次编码，各自按帧序号读取。
+ * 已编码的帧达到预缓冲数量后开始按帧时长定时发送，编码跟不上时跳过本次等待后续帧。
+ * 停止播放时释放内容，没有其他听众时由缓存取消下载。
+ */
+@Component
+public class StreamingAudioPlayer {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingAudioPlayer.class);
+
+    private static final long OPUS_FRAME_INTERVAL_MS = AudioUtils.OPUS_FRAME_DURATION_MS;
+
+    // 开始播放前预先缓冲的帧数，默认8帧约0.5秒
+    @Value("${xiaozhi.audio.stream.preroll-frames:8}")
+    private int prerollFrames;
+
+    @Autowired
+    private OpusContentCache contentCache;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private AudioService audioService;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Thread.ofVirtual().name("stream-player-", 0).factory());
+
+    /**
+     * 开始播放
+     *
+     * @param session      会话
+     * @param url          音频地址
+     * @param beforeFrame  每帧发送前回调，参数为帧序号，用于同步歌词等文本
+     * @return 播放句柄，用于停止播放和等待播放结束
+     */
+    public Playback play(ChatSession session, String url, IntConsumer beforeFrame) {
+        Playback playback = new Playback(session, contentCache.open(url), beforeFrame);
+        playback.start();
+        return playback;
+    }
+
+    /**
+     * 一次播放
+     */
+    public final class Playback {
+        private final ChatSession session;
+        private final OpusContentCache.Content content;
+        private final IntConsumer beforeFrame;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private volatile ScheduledFuture<?> pacer;
+        private boolean playing;
+        private volatile Exception error;
+        private volatile int frameIndex;
+
+        private Playback(ChatSession session, OpusContentCache.Content content, IntConsumer beforeFrame) {
+            this.session = session;
+            this.content = content;
+            this.beforeFrame = beforeFrame;
+        }
+
+        private void start() {
+            pacer = scheduler.scheduleAtFixedRate(this::sendNextFrame, 0, OPUS_FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private void sendNextFrame() {
+            if (finished.get()) {
+                return;
+            }
+            try {
+                if (!session.isOpen()) {
+                    stop();
+                    return;
+                }
+                if (!playing) {
+                    // 音频较短、不足预缓冲帧数时加载结束也开始播放
+                    if (content.available() < prerollFrames && !content.isDone()) {
+                        return;
+                    }
+                    playing = true;
+                }
+                ByteBuffer frame = content.frame(frameIndex);
+                if (frame == null) {
+                    if (content.isDone()) {
+                        error = content.getError();
+                        finish();
+                    }
+                    // 下载跟不上时跳过本次，等待后续帧
+                    return;
+                }
+                sessionManager.updateLastActivity(session.getSessionId());
+                if (beforeFrame != null) {
+                    beforeFrame.accept(frameIndex);
+                }
+                audioService.sendOpusFrame(session, frame);
+                frameIndex++;
+            } catch (Exception e) {
+                logger.error("发送音频帧时发生错误 - SessionId: {}", session.getSessionId(), e);
+                error = e;
+                finish();
+            }
+        }
+
+        /**
+         * 停止播放并释放内容
+         */
+        public void stop() {
+            finish();
+        }
+
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> task = pacer;
+            if (task != null) {
+                task.cancel(false);
+            }
+            contentCache.release(content);
+            if (error != null && frameIndex == 0) {
+                completion.completeExceptionally(error);
+            } else {
+                completion.complete(null);
+            }
+        }
+
+        /**
+         * 已发送的帧数
+         */
+        public int getFrameIndex() {
+            return frameIndex;
+        }
+
+        /**
+         * 播放结束（正常结束或被停止）时完成；没有播放出任何声音就失败时异常完成
+         */
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+    }
+}
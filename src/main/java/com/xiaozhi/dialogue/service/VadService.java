@@ -1,10 +1,10 @@
 package com.xiaozhi.dialogue.service;
 
+import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.dialogue.vad.PcmArena;
+import com.xiaozhi.dialogue.vad.PcmRingBuffer;
 import com.xiaozhi.dialogue.vad.impl.SileroVadModel;
-import com.xiaozhi.entity.SysDevice;
-import com.xiaozhi.entity.SysRole;
-import com.xiaozhi.service.SysRoleService;
 import com.xiaozhi.utils.OpusProcessor;
 
 import org.slf4j.Logger;
@@ -14,11 +14,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PreDestroy;
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 语音活动检测服务
@@ -27,12 +25,14 @@ import java.util.concurrent.ConcurrentHashMap;
 public class VadService {
     private static final Logger logger = LoggerFactory.getLogger(VadService.class);
     
-    // 会话状态
-    private final ConcurrentHashMap<String, VadState> states = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    // 会话状态保存在会话的DialogueContext中，访问时持有其vadLock
     
     @Value("${vad.prebuffer.ms:200}")
     private int preBufferMs;
+
+    // 一次语音最长保留的时长，超过后强制结束语音
+    @Value("${vad.max-utterance.ms:60000}")
+    private int maxUtteranceMs;
     
     // 每10帧输出一次VAD状态
     private static final int LOG_FRAME_INTERVAL = 10;
@@ -42,6 +42,12 @@ public class VadService {
     
     // VAD模型的样本大小 (16kHz, 512 samples)
     private static final int VAD_SAMPLE_SIZE = 512;
+
+    // 16kHz, 16bit, mono = 32 bytes/ms
+    private static final int PCM_BYTES_PER_MS = 32;
+
+    // 语音数据每块1秒
+    private static final int UTTERANCE_CHUNK_SIZE = 1000 * PCM_BYTES_PER_MS;
     
     @Autowired
     private OpusProcessor opusProcessor;
@@ -50,7 +56,7 @@ public class VadService {
     private SileroVadModel vadModel;
     
     @Autowired
-    private SysRoleService roleService;
+    private RoleSnapshotService roleSnapshotService;
     
     @Autowired
     private SessionManager sessionManager;
@@ -58,14 +64,12 @@ public class VadService {
     @PreDestroy
     public void cleanup() {
         logger.info("VAD服务资源已释放");
-        states.clear();
-        locks.clear();
     }
 
     /**
      * 简化的会话状态类
      */
-    private class VadState {
+    static class VadState {
         // 语音状态
         private boolean speaking = false;
         private long speechTime = 0;
@@ -81,21 +85,20 @@ public class VadService {
         // 帧计数器（用于每10帧输出一次）
         private int frameCounter = 0;
 
-        // 预缓冲
-        private final LinkedList<byte[]> preBuffer = new LinkedList<>();
-        private int preBufferSize = 0;
-        private final int maxPreBufferSize;
+        // 预缓冲，固定容量的环形缓冲区
+        private final PcmRingBuffer preBuffer;
 
-        // 音频数据
-        private final List<byte[]> pcmData = new ArrayList<>();
-        private final List<byte[]> opusData = new ArrayList<>();
+        // 一次语音的音频数据，总量有上限
+        private final PcmArena pcmData;
 
-        // 短帧累积
-        private final ByteArrayOutputStream pcmAccumulator = new ByteArrayOutputStream();
+        // 短帧累积，短帧累积到MIN_PCM_LENGTH就取出，容量固定
+        private final byte[] pcmAccumulator = new byte[MIN_PCM_LENGTH * 2];
+        private int accumSize = 0;
         private long lastAccumTime = 0;
 
-        public VadState() {
-            this.maxPreBufferSize = preBufferMs * 32; // 16kHz, 16bit, mono = 32 bytes/ms
+        public VadState(int preBufferMs, int maxUtteranceMs) {
+            this.preBuffer = new PcmRingBuffer(preBufferMs * PCM_BYTES_PER_MS);
+            this.pcmData = new PcmArena(UTTERANCE_CHUNK_SIZE, maxUtteranceMs * PCM_BYTES_PER_MS);
             this.lastAccumTime = System.currentTimeMillis();
         }
 
@@ -175,53 +178,36 @@ public class VadService {
                 return;
             }
 
-            preBuffer.add(data.clone());
-            preBufferSize += data.length;
-
-            while (preBufferSize > maxPreBufferSize && !preBuffer.isEmpty()) {
-                byte[] removed = preBuffer.removeFirst();
-                preBufferSize -= removed.length;
-            }
+            preBuffer.write(data);
         }
 
         public byte[] drainPreBuffer() {
-            if (preBuffer.isEmpty()) {
-                return new byte[0];
-            }
-
-            byte[] result = new byte[preBufferSize];
-            int offset = 0;
-
-            for (byte[] chunk : preBuffer) {
-                System.arraycopy(chunk, 0, result, offset, chunk.length);
-                offset += chunk.length;
-            }
-
-            preBuffer.clear();
-            preBufferSize = 0;
-            return result;
+            return preBuffer.drain();
         }
 
         // 累积缓冲区管理
         public void accumulate(byte[] pcm) {
             if (pcm != null && pcm.length > 0) {
-                try {
-                    pcmAccumulator.write(pcm);
-                    lastAccumTime = System.currentTimeMillis();
-                } catch (Exception e) {
-                    logger.error("累积PCM数据失败", e);
+                // 只会累积短帧，累积满后丢弃最旧的数据
+                int overflow = accumSize + pcm.length - pcmAccumulator.length;
+                if (overflow > 0) {
+                    System.arraycopy(pcmAccumulator, overflow, pcmAccumulator, 0, accumSize - overflow);
+                    accumSize -= overflow;
                 }
+                System.arraycopy(pcm, 0, pcmAccumulator, accumSize, pcm.length);
+                accumSize += pcm.length;
+                lastAccumTime = System.currentTimeMillis();
             }
         }
 
         public byte[] drainAccumulator() {
-            byte[] result = pcmAccumulator.toByteArray();
-            pcmAccumulator.reset();
+            byte[] result = Arrays.copyOf(pcmAccumulator, accumSize);
+            accumSize = 0;
             return result;
         }
 
         public int getAccumSize() {
-            return pcmAccumulator.size();
+            return accumSize;
         }
 
         public boolean isAccumTimedOut() {
@@ -229,24 +215,21 @@ public class VadService {
         }
 
         // 音频数据管理
-        public void addPcm(byte[] pcm) {
-            if (pcm != null && pcm.length > 0) {
-                pcmData.add(pcm.clone());
-            }
-        }
 
-        public void addOpus(byte[] opus) {
-            if (opus != null && opus.length > 0) {
-                opusData.add(opus.clone());
+        /**
+         * 保存语音数据
+         *
+         * @return 是否全部保存，达到语音时长上限时返回false
+         */
+        public boolean addPcm(byte[] pcm) {
+            if (pcm != null && pcm.length > 0) {
+                return pcmData.append(pcm);
             }
+            return true;
         }
 
         public List<byte[]> getPcmData() {
-            return new ArrayList<>(pcmData);
-        }
-
-        public List<byte[]> getOpusData() {
-            return new ArrayList<>(opusData);
+            return pcmData.copyChunks();
         }
 
         public void reset() {
@@ -258,24 +241,32 @@ public class VadService {
             originalProbs.clear(); // 重置原始概率列表
             frameCounter = 0;      // 重置帧计数器
             preBuffer.clear();
-            preBufferSize = 0;
             pcmData.clear();
-            opusData.clear();
-            pcmAccumulator.reset();
+            accumSize = 0;
             lastAccumTime = System.currentTimeMillis();
         }
     }
 
+    /**
+     * 获取会话的对话上下文，会话不存在时返回null
+     */
+    private DialogueContext context(String sessionId) {
+        ChatSession session = sessionManager.getSession(sessionId);
+        return session == null ? null : session.getDialogueContext();
+    }
+
     /**
      * 初始化会话
      */
     public void initSession(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return;
+        }
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             if (state == null) {
-                state = new VadState();
-                states.put(sessionId, state);
+                context.setVadState(new VadState(preBufferMs, maxUtteranceMs));
             } else {
                 state.reset();
             }
@@ -288,53 +279,51 @@ public class VadService {
      * 检查会话是否已初始化
      */
     public boolean isSessionInitialized(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            return states.containsKey(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return false;
+        }
+        synchronized (context.getVadLock()) {
+            return context.getVadState() != null;
         }
     }
 
     /**
-     * 获取会话锁
+     * 处理音频数据
      */
-    private Object getLock(String sessionId) {
-        return locks.computeIfAbsent(sessionId, k -> new Object());
+    public VadResult processAudio(String sessionId, byte[] opusData) {
+        ChatSession session = sessionManager.getSession(sessionId);
+        return session == null ? null : processAudio(session, opusData);
     }
 
     /**
      * 处理音频数据
      */
-    public VadResult processAudio(String sessionId, byte[] opusData) {
-
-        if (!isSessionInitialized(sessionId)) {
-            return null;
+    public VadResult processAudio(ChatSession session, byte[] opusData) {
+        String sessionId = session.getSessionId();
+        DialogueContext context = session.getDialogueContext();
+        Object lock = context.getVadLock();
+        synchronized (lock) {
+            if (context.getVadState() == null) {
+                return null;
+            }
         }
 
-        Object lock = getLock(sessionId);
-
-        // 获取设备配置
-        SysDevice device = sessionManager.getDeviceConfig(sessionId);
-        // 添加空值检查，使用默认值
-        float speechThreshold = 0.4f;
-        float silenceThreshold = 0.2f;
-        float energyThreshold = 0.001f;
-        int silenceTimeoutMs = 1200;
-
-        if (device != null && device.getRoleId() != null) {
-            SysRole role = roleService.selectRoleById(device.getRoleId());
-            speechThreshold = Optional.ofNullable(role.getVadSpeechTh()).orElse(speechThreshold);
-            silenceThreshold = Optional.ofNullable(role.getVadSilenceTh()).orElse(silenceThreshold);
-            energyThreshold = Optional.ofNullable(role.getVadEnergyTh()).orElse(energyThreshold);
-            silenceTimeoutMs = Optional.ofNullable(role.getVadSilenceMs()).orElse(silenceTimeoutMs);
-        }
+        // 从会话的角色快照读取VAD参数，未绑定角色时使用默认值
+        RoleSnapshot snapshot = roleSnapshotService.get(session);
+        float speechThreshold = snapshot != null ? snapshot.vadSpeechTh() : RoleSnapshot.DEFAULT_VAD_SPEECH_TH;
+        float silenceThreshold = snapshot != null ? snapshot.vadSilenceTh() : RoleSnapshot.DEFAULT_VAD_SILENCE_TH;
+        float energyThreshold = snapshot != null ? snapshot.vadEnergyTh() : RoleSnapshot.DEFAULT_VAD_ENERGY_TH;
+        int silenceTimeoutMs = snapshot != null ? snapshot.vadSilenceMs() : RoleSnapshot.DEFAULT_VAD_SILENCE_MS;
 
         synchronized (lock) {
             try {
                 // 获取会话状态
-                VadState state = states.computeIfAbsent(sessionId, k -> new VadState());
-
-                // 保存原始Opus数据
-                state.addOpus(opusData);
+                VadState state = context.getVadState();
+                if (state == null) {
+                    // 等待锁期间会话已重置
+                    return null;
+                }
 
                 // 解码Opus数据
                 byte[] pcmData;
@@ -443,13 +432,11 @@ public class VadService {
                         return new VadResult(VadStatus.SPEECH_END, pcmData);
                     } else {
                         // 继续收集
-                        state.addPcm(pcmData);
-                        return new VadResult(VadStatus.SPEECH_CONTINUE, pcmData);
+                        return continueSpeech(state, sessionId, pcmData);
                     }
                 } else if (state.isSpeaking()) {
                     // 语音继续
-                    state.addPcm(pcmData);
-                    return new VadResult(VadStatus.SPEECH_CONTINUE, pcmData);
+                    return continueSpeech(state, sessionId, pcmData);
                 } else {
                     // 无语音
                     return new VadResult(VadStatus.NO_SPEECH, null);
@@ -461,6 +448,19 @@ public class VadService {
         }
     }
 
+    /**
+     * 语音中的帧（包括未超过静音时长的静音帧）加入缓冲，达到语音时长上限时强制结束
+     */
+    private VadResult continueSpeech(VadState state, String sessionId, byte[] pcmData) {
+        if (!state.addPcm(pcmData)) {
+            // 达到语音时长上限（如嘈杂环境中一直检测到语音），强制结束
+            state.setSpeaking(false);
+            logger.warn("语音超过最大时长 {}ms，强制结束: {}", maxUtteranceMs, sessionId);
+            return new VadResult(VadStatus.SPEECH_END, pcmData);
+        }
+        return new VadResult(VadStatus.SPEECH_CONTINUE, pcmData);
+    }
+
     /**
      * 执行语音检测
      */
@@ -529,14 +529,16 @@ public class VadService {
      * 重置会话
      */
     public void resetSession(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return;
+        }
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             if (state != null) {
                 state.reset();
             }
-            states.remove(sessionId);
-            locks.remove(sessionId);
+            context.setVadState(null);
             
             logger.info("VAD会话已重置: {}", sessionId);
         }
@@ -546,9 +548,12 @@ public class VadService {
      * 检查是否正在说话
      */
     public boolean isSpeaking(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return false;
+        }
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             return state != null && state.isSpeaking();
         }
     }
@@ -557,9 +562,12 @@ public class VadService {
      * 获取当前语音概率
      */
     public float getSpeechProbability(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return 0.0f;
+        }
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             return state != null ? state.getLastOriginalProb() : 0.0f;
         }
     }
@@ -567,32 +575,24 @@ public class VadService {
     /**
      * 获取音频数据
      */
-    public List<byte[]> getPcmData(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+    public List<byte[]> getPcmData(ChatSession session) {
+        DialogueContext context = session.getDialogueContext();
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             return state != null ? state.getPcmData() : new ArrayList<>();
         }
     }
 
-    /**
-     * 获取Opus数据
-     */
-    public List<byte[]> getOpusData(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
-            return state != null ? state.getOpusData() : new ArrayList<>();
-        }
-    }
-
     /**
      * 获取当前帧计数
      */
     public int getFrameCounter(String sessionId) {
-        Object lock = getLock(sessionId);
-        synchronized (lock) {
-            VadState state = states.get(sessionId);
+        DialogueContext context = context(sessionId);
+        if (context == null) {
+            return 0;
+        }
+        synchronized (context.getVadLock()) {
+            VadState state = context.getVadState();
             return state != null ? state.getFrameCounter() : 0;
         }
     }
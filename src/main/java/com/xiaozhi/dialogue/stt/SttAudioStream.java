@@ -0,0 +1,180 @@
+package com.xiaozhi.dialogue.stt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次流式识别的音频输入
+ * 使用单播Sink和有上限的缓冲队列：识别服务还没连上或处理不过来时音频先在队列中等待，队列满时丢弃新的音频并计数，
+ * 不会随着说话时长无限增长。
+ * 识别服务通过{@link #pushTo}订阅，每收到一块音频立即交给识别服务（发送WebSocket帧、acceptWaveForm等），
+ * 音频结束时立即回调，不再转存到阻塞队列按100ms轮询，说话结束后识别服务马上收到结束信号。
+ */
+public final class SttAudioStream {
+    private static final Logger logger = LoggerFactory.getLogger(SttAudioStream.class);
+
+    // 回调在虚拟线程上执行，不占用接收设备音频的线程；同一个流的回调按顺序执行，不会并发
+    private static final Scheduler SCHEDULER = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stt-audio-", 0).factory()), "stt-audio");
+
+    // 所有音频流因队列已满丢弃的音频块数
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private final int capacity;
+    private final BlockingQueue<byte[]> queue;
+    private final Sinks.Many<byte[]> sink;
+    // 音频结束或被取消时完成
+    private final CompletableFuture<Void> ended = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private boolean terminated;
+    private boolean overflowLogged;
+
+    /**
+     * @param capacity 等待识别服务处理的音频块上限
+     */
+    public SttAudioStream(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(queue);
+    }
+
+    /**
+     * 写入一块音频，不阻塞；队列已满时丢弃
+     *
+     * @return 是否写入成功
+     */
+    public synchronized boolean emit(byte[] chunk) {
+        Sinks.EmitResult result = sink.tryEmitNext(chunk);
+        // 还没有订阅时队列满返回FAIL_ZERO_SUBSCRIBER，同样是缓冲已满
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW || result == Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            DROPPED.increment();
+            if (!overflowLogged) {
+                overflowLogged = true;
+                logger.warn("识别服务处理不及时，音频队列已满（{}块），丢弃后续音频", queue.size());
+            }
+        }
+        return result.isSuccess();
+    }
+
+    /**
+     * 音频结束，识别服务处理完已缓冲的音频后收到结束回调
+     */
+    public synchronized void complete() {
+        terminated = true;
+        sink.tryEmitComplete();
+        ended.complete(null);
+    }
+
+    /**
+     * 放弃这次识别，未处理的音频不再交给识别服务，已经结束的流不受影响
+     */
+    public synchronized void cancel() {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        cancelled = true;
+        queue.clear();
+        sink.tryEmitError(new CancellationException("音频流已关闭"));
+        ended.complete(null);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 写入方结束音频（完成或取消）时完成，与识别服务的处理进度无关
+     */
+    public CompletableFuture<Void> whenEnded() {
+        return ended;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 等待识别服务处理的音频块数
+     */
+    public int depth() {
+        return queue.size();
+    }
+
+    /**
+     * 所有音频流累计丢弃的音频块数
+     */
+    public static long droppedCount() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * 以Flux形式订阅音频，只能订阅一次，供自带响应式接口的SDK使用
+     */
+    public Flux<byte[]> asFlux() {
+        return sink.asFlux();
+    }
+
+    /**
+     * 订阅音频并逐块推送给识别服务，只能订阅一次
+     * 返回的Future在结束回调执行完后完成；流被取消、出错或回调抛出异常时异常完成。
+     * 取消返回的Future会停止推送。
+     */
+    public CompletableFuture<Void> pushTo(AudioConsumer consumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        // 每处理完一块再取下一块，未处理的音频都留在有上限的队列中
+        Disposable subscription = sink.asFlux()
+                .publishOn(SCHEDULER, 1)
+                .subscribe(chunk -> {
+                            try {
+                                consumer.onAudio(chunk);
+                            } catch (Exception e) {
+                                throw Exceptions.propagate(e);
+                            }
+                        },
+                        error -> done.completeExceptionally(Exceptions.unwrap(error)),
+                        () -> {
+                            try {
+                                consumer.onComplete();
+                                done.complete(null);
+                            } catch (Exception e) {
+                                done.completeExceptionally(e);
+                            }
+                        });
+        done.whenComplete((result, error) -> {
+            if (done.isCancelled()) {
+                subscription.dispose();
+            }
+        });
+        return done;
+    }
+
+    /**
+     * 接收音频的识别服务
+     */
+    public interface AudioConsumer {
+
+        /**
+         * 收到一块16kHz单声道PCM
+         */
+        void onAudio(byte[] chunk) throws Exception;
+
+        /**
+         * 音频结束，发送结束信号或取最终结果
+         */
+        void onComplete() throws Exception;
+    }
+}
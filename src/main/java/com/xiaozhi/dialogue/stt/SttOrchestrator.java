@@ -0,0 +1,322 @@
+package com.xiaozhi.dialogue.stt;
+
+import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
+import com.xiaozhi.entity.SysConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 语音识别编排
+ * 使用云端识别服务时，同一份音频同时交给本地Vosk识别作为对冲：音频结束后云端在期限内返回就用云端结果，
+ * 否则改用先得到的有效结果，落选和超时的识别立即取消，不再接收音频并关闭连接。
+ * 音频结束后等待识别结果有超时，从识别开始算起还有硬超时，识别服务卡住或设备不再发送音频时设备不会一直没有反应。
+ * 每个识别配置按滚动窗口统计失败率（出错、返回null或超时），超过阈值后熔断一段时间，熔断期间直接使用本地识别，
+ * 没有本地识别时直接放弃识别。没有加载Vosk模型或关闭对冲时，只对单个识别服务应用超时和失败统计。
+ */
+@Component
+public class SttOrchestrator {
+    private static final Logger logger = LoggerFactory.getLogger(SttOrchestrator.class);
+
+    // 是否用本地识别对冲云端识别
+    @Value("${xiaozhi.stt.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    // 音频结束后等待云端结果的时间，超过后使用本地结果
+    @Value("${xiaozhi.stt.hedge.deadline-ms:1500}")
+    private long hedgeDeadlineMs;
+
+    // 音频结束后等待识别结果的上限
+    @Value("${xiaozhi.stt.timeout-ms:10000}")
+    private long timeoutMs;
+
+    // 从识别开始算起的硬超时，应大于最长语音时长加音频结束后的超时
+    @Value("${xiaozhi.stt.max-duration-ms:70000}")
+    private long maxDurationMs;
+
+    // 熔断：每个配置滚动窗口内的识别次数
+    @Value("${xiaozhi.stt.circuit.window-size:20}")
+    private int windowSize;
+
+    // 熔断：窗口内失败率阈值
+    @Value("${xiaozhi.stt.circuit.failure-rate:0.5}")
+    private double failureRateThreshold;
+
+    // 熔断：窗口内最少识别次数
+    @Value("${xiaozhi.stt.circuit.min-calls:5}")
+    private int minCalls;
+
+    // 熔断：打开持续时间
+    @Value("${xiaozhi.stt.circuit.open-ms:30000}")
+    private long openMillis;
+
+    @Resource
+    private SttServiceFactory sttFactory;
+
+    private final Map<String, SttProviderHealth> healthMap = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stt-recognition-", 0).factory());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 识别一段音频
+     *
+     * @param sttConfig   识别配置，为空时使用默认服务
+     * @param audioStream 音频数据流
+     * @return 识别的文本，没有可用的识别服务或识别失败时返回null
+     */
+    public String recognize(SysConfig sttConfig, SttAudioStream audioStream) {
+        long startNanos = System.nanoTime();
+        SttService primary = sttFactory.getSttService(sttConfig);
+        SttService local = hedgeEnabled ? sttFactory.getLocalSttService() : null;
+        if (primary == null || primary == local) {
+            if (primary == null && local == null) {
+                logger.error("无法获取STT服务 - Provider: {}", sttConfig != null ? sttConfig.getProvider() : "null");
+                return null;
+            }
+            return recognize(List.of(start(local, null, audioStream)), audioStream, 0, startNanos);
+        }
+
+        SttProviderHealth health = healthMap.computeIfAbsent(healthKey(sttConfig, primary),
+                key -> new SttProviderHealth(key, windowSize, failureRateThreshold, minCalls, openMillis));
+        if (!health.tryAcquire()) {
+            if (local == null) {
+                logger.warn("识别服务熔断中，没有可用的本地识别，放弃识别 - {}，失败率: {}", health.getKey(), health.failureRate());
+                audioStream.cancel();
+                return null;
+            }
+            logger.info("识别服务熔断中，使用本地识别 - {}，失败率: {}", health.getKey(), health.failureRate());
+            return recognize(List.of(start(local, null, audioStream)), audioStream, 0, startNanos);
+        }
+        if (local == null) {
+            return recognize(List.of(start(primary, health, audioStream)), audioStream, 0, startNanos);
+        }
+
+        // 同一份音频分别交给云端和本地识别
+        SttAudioStream primaryAudio = new SttAudioStream(audioStream.capacity());
+        SttAudioStream localAudio = new SttAudioStream(audioStream.capacity());
+        audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+            @Override
+            public void onAudio(byte[] chunk) {
+                primaryAudio.emit(chunk);
+                localAudio.emit(chunk);
+            }
+
+            @Override
+            public void onComplete() {
+                primaryAudio.complete();
+                localAudio.complete();
+            }
+        }).exceptionally(e -> {
+            primaryAudio.cancel();
+            localAudio.cancel();
+            return null;
+        });
+        return recognize(List.of(start(primary, health, primaryAudio), start(local, null, localAudio)),
+                audioStream, hedgeDeadlineMs, startNanos);
+    }
+
+    /**
+     * 等待识别结果
+     * 第一个为首选服务：音频结束后的deadlineMs内只等首选服务，之后取先得到的非空文本；
+     * 到超时仍没有非空文本时，按顺序取已完成的结果（可能为空字符串）。返回前取消还没有完成的识别。
+     */
+    private String recognize(List<Attempt> attempts, SttAudioStream audioStream, long deadlineMs, long startNanos) {
+        long hardDeadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(maxDurationMs);
+        try {
+            Attempt preferred = attempts.getFirst();
+            // 首选服务在音频结束前就返回时不必继续等待
+            await(List.of(preferred), audioStream.whenEnded(), hardDeadlineNanos);
+            if (preferred.isSucceeded()) {
+                return preferred.text();
+            }
+            if (!await(List.of(), audioStream.whenEnded(), hardDeadlineNanos)) {
+                logger.warn("识别开始后{}ms音频仍没有结束，放弃识别", maxDurationMs);
+                audioStream.cancel();
+                return null;
+            }
+            long endNanos = System.nanoTime();
+
+            if (attempts.size() > 1) {
+                await(List.of(preferred), null,
+                        Math.min(endNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMs), hardDeadlineNanos));
+                if (preferred.isSucceeded()) {
+                    return preferred.text();
+                }
+                logger.info("{}在音频结束后{}ms内没有返回结果，改用先完成的识别结果", preferred.name, deadlineMs);
+            }
+
+            long timeoutNanos = Math.min(endNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMs), hardDeadlineNanos);
+            while (true) {
+                for (Attempt attempt : attempts) {
+                    if (attempt.isSucceeded() && StringUtils.hasText(attempt.text())) {
+                        return attempt.text();
+                    }
+                }
+                List<Attempt> pending = attempts.stream().filter(attempt -> !attempt.result.isDone()).toList();
+                if (pending.isEmpty() || !await(pending, null, timeoutNanos)) {
+                    break;
+                }
+            }
+
+            for (Attempt attempt : attempts) {
+                if (!attempt.result.isDone()) {
+                    logger.warn("{}识别超时，音频结束后{}ms仍没有结果", attempt.name, timeoutMs);
+                    attempt.record(false);
+                }
+            }
+            for (Attempt attempt : attempts) {
+                if (attempt.isSucceeded()) {
+                    return attempt.text();
+                }
+            }
+            return null;
+        } finally {
+            // 落选或超时的识别不再接收音频，识别服务随之关闭连接
+            attempts.forEach(Attempt::cancel);
+        }
+    }
+
+    /**
+     * 等待任一识别完成或另一个条件完成
+     *
+     * @return 是否在期限前等到
+     */
+    private boolean await(List<Attempt> attempts, CompletableFuture<?> other, long deadlineNanos) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        attempts.forEach(attempt -> futures.add(attempt.result));
+        if (other != null) {
+            futures.add(other);
+        }
+        CompletableFuture<Object> any = CompletableFuture.anyOf(futures.toArray(CompletableFuture[]::new));
+        try {
+            any.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Attempt start(SttService service, SttProviderHealth health, SttAudioStream audioStream) {
+        Attempt attempt = new Attempt(service.getProviderName(), health, audioStream);
+        attempt.task = executor.submit(() -> {
+            String text = null;
+            Throwable error = null;
+            try {
+                text = service.streamRecognition(audioStream);
+            } catch (Throwable e) {
+                error = e;
+            }
+            // 先统计再完成结果，等待结果的线程返回时熔断状态已经更新
+            if (!attempt.cancelled) {
+                if (error != null) {
+                    logger.error("{}识别失败", attempt.name, error);
+                }
+                attempt.record(error == null && text != null);
+            }
+            if (error != null) {
+                attempt.result.completeExceptionally(error);
+            } else {
+                attempt.result.complete(text);
+            }
+        });
+        return attempt;
+    }
+
+    private static String healthKey(SysConfig sttConfig, SttService service) {
+        return service.getProviderName() + ":" + (sttConfig != null ? sttConfig.getConfigId() : null);
+    }
+
+    /**
+     * 一个识别服务的一次识别
+     */
+    private static final class Attempt {
+        private final String name;
+        private final SttProviderHealth health;
+        // 这次识别接收的音频
+        private final SttAudioStream audioStream;
+        // 执行识别的线程，取消时中断，识别服务不再等待服务端的结果
+        private volatile Future<?> task;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        // 超时先计入失败后，迟到的结果不再重复计入
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        Attempt(String name, SttProviderHealth health, SttAudioStream audioStream) {
+            this.name = name;
+            this.health = health;
+            this.audioStream = audioStream;
+        }
+
+        /**
+         * 取消还没有完成的识别：关闭音频流并中断识别线程，识别服务的订阅随之结束并关闭连接，迟到的结果不再统计
+         */
+        void cancel() {
+            if (result.isDone()) {
+                return;
+            }
+            cancelled = true;
+            audioStream.cancel();
+            task.cancel(true);
+            result.cancel(false);
+            if (health != null && recorded.compareAndSet(false, true)) {
+                // 没有结果可以统计，归还半开状态的探测名额
+                health.release();
+            }
+        }
+
+        /**
+         * 已经完成且返回了结果（可能为空字符串）
+         */
+        boolean isSucceeded() {
+            return result.isDone() && !result.isCompletedExceptionally() && result.join() != null;
+        }
+
+        String text() {
+            return result.join();
+        }
+
+        void record(boolean success) {
+            if (health == null || !recorded.compareAndSet(false, true)) {
+                return;
+            }
+            if (success) {
+                health.recordSuccess();
+            } else {
+                health.recordFailure();
+            }
+        }
+    }
+}
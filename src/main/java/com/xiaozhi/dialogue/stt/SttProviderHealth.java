@@ -0,0 +1,123 @@
+package com.xiaozhi.dialogue.stt;
+
+import java.util.Arrays;
+
+/**
+ * 单个STT配置的健康统计
+ * 滚动记录识别结果（出错、返回null或超过硬超时都算失败），并维护熔断状态：
+ * CLOSED 正常调用；OPEN 熔断中不再调用；熔断时间到期后进入 HALF_OPEN，只放行一次探测识别。
+ */
+public class SttProviderHealth {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String key;
+    private final boolean[] failures;
+    private final double failureRateThreshold;
+    private final int minCalls;
+    private final long openNanos;
+
+    private int outcomeIndex;
+    private int outcomeCount;
+    private int failureCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public SttProviderHealth(String key, int windowSize, double failureRateThreshold, int minCalls, long openMillis) {
+        this.key = key;
+        this.failures = new boolean[Math.max(1, windowSize)];
+        this.failureRateThreshold = failureRateThreshold;
+        this.minCalls = minCalls;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 发起识别前调用，熔断中返回false；半开状态下只有第一个调用者获得探测名额
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    yield false;
+                }
+                probeInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        recordOutcome(false);
+        if (state == State.HALF_OPEN) {
+            // 探测成功，恢复正常并清空窗口
+            state = State.CLOSED;
+            probeInFlight = false;
+            outcomeIndex = 0;
+            outcomeCount = 0;
+            failureCount = 0;
+            Arrays.fill(failures, false);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        recordOutcome(true);
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED && outcomeCount >= minCalls
+                && (double) failureCount / outcomeCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 识别被取消、没有结果可以统计时调用，归还半开状态下的探测名额
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized double failureRate() {
+        return outcomeCount == 0 ? 0 : (double) failureCount / outcomeCount;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == failures.length) {
+            if (failures[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        failures[outcomeIndex] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % failures.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probeInFlight = false;
+    }
+}
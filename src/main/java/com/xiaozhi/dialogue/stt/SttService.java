@@ -1,7 +1,5 @@
 package com.xiaozhi.dialogue.stt;
 
-import reactor.core.publisher.Sinks;
-
 /**
  * STT服务接口
  */
@@ -23,10 +21,10 @@ public interface SttService {
   /**
    * 流式处理音频数据
    * 
-   * @param audioSink 音频数据流
+   * @param audioStream 音频数据流，通过{@link SttAudioStream#pushTo}逐块接收
    * @return 识别的文本结果流
    */
-  String streamRecognition(Sinks.Many<byte[]> audioSink);
+  String streamRecognition(SttAudioStream audioStream);
 
   /**
    * 检查服务是否支持流式处理
@@ -36,4 +34,10 @@ public interface SttService {
   default boolean supportsStreaming() {
     return false;
   }
+
+  /**
+   * 即将开始识别时调用，使用WebSocket的服务提前建立连接
+   */
+  default void prewarm() {
+  }
 }
@@ -0,0 +1,290 @@
+package com.xiaozhi.dialogue.stt;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * WebSocket预连接池
+ * 每个识别服务配置一个池，池中保持少量已经完成DNS、TCP、TLS、握手和鉴权的连接，识别开始时直接取用，
+ * 省去每轮对话建立连接的时间。连接仍然只用于一次识别，用完由调用方关闭，取走后池在后台补充。
+ * 只有最近使用过或刚预连接过的配置才保持预连接，一段时间没有使用后池自动清空，不长期占用服务端连接。
+ * 预连接超过最长空闲时间就关闭换新，避免被服务端的空闲超时断开；握手失败、被断开或心跳超时的连接直接移出池。
+ */
+public class WebSocketPool {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketPool.class);
+
+    // 预连接失败后的重试间隔
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private final String name;
+    private final OkHttpClient client;
+    private final Supplier<Request> requestFactory;
+    private final int size;
+    private final long maxIdleMs;
+    private final long keepWarmMs;
+
+    // 预连接，包括正在握手的和已经打开的，先建立的在前
+    private final Deque<Connection> warm = new ArrayDeque<>();
+    // 在此之前保持预连接
+    private long activeUntil;
+    // 预连接失败后，在此之前不再尝试
+    private long retryAt;
+    private long backoffMs;
+    private boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param name           池名称，用于日志和指标
+     * @param client         共享的OkHttpClient
+     * @param requestFactory 每次连接生成新的请求，需要签名的服务每次重新签名
+     * @param size           保持的预连接数
+     * @param maxIdleMs      预连接的最长空闲时间，应小于服务端的空闲超时
+     * @param keepWarmMs     最后一次使用后保持预连接的时间
+     */
+    WebSocketPool(String name, OkHttpClient client, Supplier<Request> requestFactory,
+                  int size, long maxIdleMs, long keepWarmMs) {
+        this.name = name;
+        this.client = client;
+        this.requestFactory = requestFactory;
+        this.size = size;
+        this.maxIdleMs = maxIdleMs;
+        this.keepWarmMs = keepWarmMs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 取一个连接，listener收到的事件与新建连接时相同；没有可用的预连接时新建
+     * 取到的预连接如果已经打开，onOpen在本方法返回前回调
+     */
+    public WebSocket acquire(WebSocketListener listener) {
+        long now = System.currentTimeMillis();
+        WebSocket webSocket = null;
+        while (webSocket == null) {
+            Connection connection;
+            synchronized (this) {
+                activeUntil = now + keepWarmMs;
+                connection = warm.pollFirst();
+            }
+            if (connection == null) {
+                break;
+            }
+            webSocket = connection.attach(listener);
+        }
+        if (webSocket != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            webSocket = client.newWebSocket(requestFactory.get(), listener);
+        }
+        maintain(now);
+        return webSocket;
+    }
+
+    /**
+     * 即将开始识别时调用，池中没有预连接时立即开始建立
+     */
+    public void prewarm() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            activeUntil = now + keepWarmMs;
+        }
+        maintain(now);
+    }
+
+    /**
+     * 关闭过期的预连接并补足数量，由{@link WebSocketPoolManager}定时调用
+     */
+    void maintain(long now) {
+        List<Connection> expired = new ArrayList<>();
+        synchronized (this) {
+            boolean active = !closed && now < activeUntil;
+            for (Iterator<Connection> iterator = warm.iterator(); iterator.hasNext(); ) {
+                Connection connection = iterator.next();
+                if (!active || now - connection.createdAt >= maxIdleMs) {
+                    iterator.remove();
+                    expired.add(connection);
+                }
+            }
+            if (active && now >= retryAt) {
+                while (warm.size() < size) {
+                    warm.addLast(new Connection(now));
+                }
+            }
+        }
+        for (Connection connection : expired) {
+            connection.discard();
+        }
+    }
+
+    /**
+     * 关闭所有预连接，不再补充
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        maintain(System.currentTimeMillis());
+    }
+
+    /**
+     * 已经打开、等待取用的预连接数
+     */
+    public synchronized int idleCount() {
+        return (int) warm.stream().filter(Connection::isOpen).count();
+    }
+
+    /**
+     * 正在握手的预连接数
+     */
+    public synchronized int connectingCount() {
+        return warm.size() - idleCount();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    private synchronized void onConnected() {
+        backoffMs = 0;
+    }
+
+    private void onLost(Connection connection, Throwable error) {
+        synchronized (this) {
+            if (!warm.remove(connection) || error == null) {
+                return;
+            }
+            backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(MIN_BACKOFF_MS, backoffMs * 2));
+            retryAt = System.currentTimeMillis() + backoffMs;
+        }
+        failures.increment();
+        logger.warn("预连接失败 - Pool: {}, {}ms后重试: {}", name, backoffMs, error.getMessage());
+    }
+
+    /**
+     * 一个预连接，取用前自己处理连接事件，取用后把事件转给使用者
+     */
+    private final class Connection extends WebSocketListener {
+        private final long createdAt;
+        private WebSocket webSocket;
+        private WebSocketListener delegate;
+        // 统计时不加连接的锁，避免与池的锁交叉
+        private volatile Response response;
+        private volatile boolean dead;
+
+        Connection(long createdAt) {
+            this.createdAt = createdAt;
+            synchronized (this) {
+                webSocket = client.newWebSocket(requestFactory.get(), this);
+            }
+        }
+
+        boolean isOpen() {
+            return response != null && !dead;
+        }
+
+        /**
+         * 交给使用者，连接已经断开时返回null
+         */
+        synchronized WebSocket attach(WebSocketListener listener) {
+            if (dead) {
+                return null;
+            }
+            delegate = listener;
+            if (response != null) {
+                listener.onOpen(webSocket, response);
+            }
+            return webSocket;
+        }
+
+        synchronized void discard() {
+            if (delegate == null && !dead) {
+                dead = true;
+                webSocket.close(1000, "idle");
+            }
+        }
+
+        @Override
+        public synchronized void onOpen(WebSocket webSocket, Response response) {
+            this.response = response;
+            onConnected();
+            if (delegate != null) {
+                delegate.onOpen(webSocket, response);
+            }
+        }
+
+        @Override
+        public synchronized void onMessage(WebSocket webSocket, String text) {
+            if (delegate != null) {
+                delegate.onMessage(webSocket, text);
+            }
+        }
+
+        @Override
+        public synchronized void onMessage(WebSocket webSocket, ByteString bytes) {
+            if (delegate != null) {
+                delegate.onMessage(webSocket, bytes);
+            }
+        }
+
+        @Override
+        public synchronized void onClosing(WebSocket webSocket, int code, String reason) {
+            if (delegate != null) {
+                delegate.onClosing(webSocket, code, reason);
+                return;
+            }
+            // 空闲时被服务端关闭
+            dead = true;
+            webSocket.close(1000, null);
+            onLost(this, null);
+        }
+
+        @Override
+        public synchronized void onClosed(WebSocket webSocket, int code, String reason) {
+            if (delegate != null) {
+                delegate.onClosed(webSocket, code, reason);
+                return;
+            }
+            dead = true;
+            onLost(this, null);
+        }
+
+        @Override
+        public synchronized void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            if (delegate != null) {
+                delegate.onFailure(webSocket, t, response);
+                return;
+            }
+            dead = true;
+            onLost(this, t);
+        }
+    }
+}
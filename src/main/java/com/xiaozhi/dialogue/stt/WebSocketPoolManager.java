@@ -0,0 +1,144 @@
+package com.xiaozhi.dialogue.stt;
+
+import com.xiaozhi.utils.HttpUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 识别服务的WebSocket预连接池管理
+ * 所有池共用一个OkHttpClient（与{@link HttpUtil}共享调度器和连接池），由一个定时任务每秒清理过期的预连接并补足数量。
+ * 连接开启了心跳，心跳超时的预连接会被移出池。各池的状态注册到Micrometer，可通过 /actuator/metrics/stt.connection.pool.idle 等查看。
+ */
+@Component
+public class WebSocketPoolManager {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketPoolManager.class);
+
+    // 每个配置保持的预连接数，0表示不预连接
+    @Value("${xiaozhi.stt.pool.size:1}")
+    private int size;
+
+    // 最后一次识别后保持预连接的时间
+    @Value("${xiaozhi.stt.pool.keep-warm-ms:60000}")
+    private long keepWarmMs;
+
+    // 心跳间隔，超过一个间隔没有收到回应的连接视为断开
+    @Value("${xiaozhi.stt.pool.ping-interval-ms:5000}")
+    private long pingIntervalMs;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<String, PoolEntry> pools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private OkHttpClient client;
+
+    @PostConstruct
+    public void init() {
+        client = HttpUtil.client.newBuilder()
+                .pingInterval(Duration.ofMillis(pingIntervalMs))
+                .build();
+        scheduler.scheduleAtFixedRate(this::maintain, 1, 1, TimeUnit.SECONDS);
+        logger.info("识别服务预连接池已启动，每个配置预连接数: {}", size);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        for (String name : pools.keySet()) {
+            remove(name);
+        }
+    }
+
+    /**
+     * 获取或创建连接池
+     *
+     * @param name           池名称，通常为"provider:configId"
+     * @param maxIdleMs      预连接的最长空闲时间，应小于服务端的空闲超时
+     * @param requestFactory 每次连接生成新的请求
+     */
+    public WebSocketPool get(String name, long maxIdleMs, Supplier<Request> requestFactory) {
+        return pools.computeIfAbsent(name, key -> {
+            WebSocketPool pool = new WebSocketPool(key, client, requestFactory, Math.max(0, size), maxIdleMs, keepWarmMs);
+            return new PoolEntry(pool, bindMetrics(pool, meterRegistry.getIfAvailable()));
+        }).pool();
+    }
+
+    /**
+     * 关闭并移除连接池，配置变更时调用
+     */
+    public void remove(String name) {
+        PoolEntry entry = pools.remove(name);
+        if (entry == null) {
+            return;
+        }
+        entry.pool().close();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            entry.meters().forEach(registry::remove);
+        }
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        for (PoolEntry entry : pools.values()) {
+            try {
+                entry.pool().maintain(now);
+            } catch (Exception e) {
+                logger.warn("维护预连接池失败 - Pool: {}: {}", entry.pool().getName(), e.getMessage());
+            }
+        }
+    }
+
+    private static List<Meter> bindMetrics(WebSocketPool pool, MeterRegistry registry) {
+        if (registry == null) {
+            return List.of();
+        }
+        return List.of(
+                Gauge.builder("stt.connection.pool.idle", pool, WebSocketPool::idleCount)
+                        .tag("pool", pool.getName())
+                        .description("The number of open connections waiting to be used")
+                        .register(registry),
+                Gauge.builder("stt.connection.pool.connecting", pool, WebSocketPool::connectingCount)
+                        .tag("pool", pool.getName())
+                        .description("The number of warm connections still handshaking")
+                        .register(registry),
+                FunctionCounter.builder("stt.connection.pool.hits", pool, WebSocketPool::hitCount)
+                        .tag("pool", pool.getName())
+                        .description("The number of recognitions that started on a warm connection")
+                        .register(registry),
+                FunctionCounter.builder("stt.connection.pool.misses", pool, WebSocketPool::missCount)
+                        .tag("pool", pool.getName())
+                        .description("The number of recognitions that had to open a new connection")
+                        .register(registry),
+                FunctionCounter.builder("stt.connection.pool.failures", pool, WebSocketPool::failureCount)
+                        .tag("pool", pool.getName())
+                        .description("The number of warm connections that failed before use")
+                        .register(registry));
+    }
+
+    private record PoolEntry(WebSocketPool pool, List<Meter> meters) {
+    }
+}
@@ -1,10 +1,12 @@
 package com.xiaozhi.dialogue.stt.factory;
 
 import com.xiaozhi.dialogue.stt.SttService;
+import com.xiaozhi.dialogue.stt.WebSocketPoolManager;
 import com.xiaozhi.dialogue.stt.providers.*;
 import com.xiaozhi.entity.SysConfig;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -31,6 +33,9 @@ public class SttServiceFactory {
     // 备选默认提供商（当Vosk初始化失败时使用）
     private String fallbackProvider = null;
 
+    @Resource
+    private WebSocketPoolManager poolManager;
+
     /**
      * 应用启动时自动初始化Vosk服务
      */
@@ -79,6 +84,13 @@ public class SttServiceFactory {
         return getSttService(null);
     }
 
+    /**
+     * 获取本地STT服务（Vosk），模型未加载时返回null
+     */
+    public SttService getLocalSttService() {
+        return voskInitialized ? serviceCache.get(DEFAULT_PROVIDER) : null;
+    }
+
     /**
      * 根据配置获取STT服务
      */
@@ -114,8 +126,8 @@ public class SttServiceFactory {
         return switch (config.getProvider()) {
             case "tencent" -> new TencentSttService(config);
             case "aliyun" -> new AliyunSttService(config);
-            case "funasr" -> new FunASRSttService(config);
-            case "xfyun" -> new XfyunSttService(config);
+            case "funasr" -> new FunASRSttService(config, poolManager);
+            case "xfyun" -> new XfyunSttService(config, poolManager);
             default -> {
                 var service = initializeVosk();
                 if (service == null) {
@@ -136,5 +148,7 @@ public class SttServiceFactory {
         String provider = config.getProvider();
         String cacheKey = provider + ":" + (configId != null ? configId : "default");
         serviceCache.remove(cacheKey);
+        // 配置可能已经变更，关闭按旧配置建立的预连接
+        poolManager.remove(provider + ":" + configId);
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.xiaozhi.dialogue.stt.providers;
 
 import com.alibaba.dashscope.audio.asr.recognition.Recognition;
 import com.alibaba.dashscope.audio.asr.recognition.RecognitionParam;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -10,7 +11,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
@@ -47,7 +47,7 @@ public class AliyunSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public String streamRecognition(SttAudioStream audioStream) {
         var recognizer = new Recognition();
 
         // 创建识别参数
@@ -62,7 +62,7 @@ public class AliyunSttService implements SttService {
         var recognition = Flux.<String>create(sink -> {
             try {
                 recognizer.streamCall(param, Flowable.create(emitter -> {
-                            audioSink.asFlux().subscribe(
+                            audioStream.asFlux().subscribe(
                                     chunk -> emitter.onNext(ByteBuffer.wrap(chunk)),
                                     emitter::onError,
                                     emitter::onComplete
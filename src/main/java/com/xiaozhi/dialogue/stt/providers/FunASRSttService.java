@@ -2,22 +2,24 @@ package com.xiaozhi.dialogue.stt.providers;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.dialogue.stt.SttService;
+import com.xiaozhi.dialogue.stt.WebSocketPool;
+import com.xiaozhi.dialogue.stt.WebSocketPoolManager;
 import com.xiaozhi.entity.SysConfig;
 
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
 import org.apache.commons.lang3.StringUtils;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
 
-import java.net.URI;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -36,13 +38,16 @@ public class FunASRSttService implements SttService {
 
     private static final String SPEAKING_START = "{\"mode\":\"online\",\"wav_name\":\"voice.wav\",\"is_speaking\":true,\"wav_format\":\"pcm\",\"chunk_size\":[5,10,5],\"itn\":true}";
     private static final String SPEAKING_END = "{\"is_speaking\": false}";
-    private static final int QUEUE_TIMEOUT_MS = 100; // 队列等待超时时间
     private static final long RECOGNITION_TIMEOUT_MS = 30000; // 识别超时时间（30秒）
+    private static final long MAX_IDLE_MS = 60000; // 预连接最长空闲时间
 
     private final String apiUrl;
+    private final WebSocketPool connectionPool;
 
-    public FunASRSttService(SysConfig config) {
+    public FunASRSttService(SysConfig config, WebSocketPoolManager poolManager) {
         this.apiUrl = config.getApiUrl();
+        this.connectionPool = poolManager.get(PROVIDER_NAME + ":" + config.getConfigId(), MAX_IDLE_MS,
+                () -> new Request.Builder().url(apiUrl).build());
     }
 
     @Override
@@ -62,60 +67,44 @@ public class FunASRSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
+    public void prewarm() {
+        connectionPool.prewarm();
+    }
+
+    @Override
+    public String streamRecognition(SttAudioStream audioStream) {
         AtomicReference<String> finalResult = new AtomicReference<>("");
         CountDownLatch recognitionLatch = new CountDownLatch(1);
-        
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-            data -> audioQueue.offer(data),
-            error -> {
-                logger.error("音频流处理错误", error);
-                isCompleted.set(true);
-            },
-            () -> isCompleted.set(true)
-        );
-        
-        // 创建WebSocket客户端
-        WebSocketClient webSocketClient = new WebSocketClient(URI.create(apiUrl)) {
+        AtomicReference<CompletableFuture<Void>> pushing = new AtomicReference<>();
+
+        // 从预连接池取连接，没有预连接时新建
+        WebSocketListener listener = new WebSocketListener() {
             @Override
-            public void onOpen(ServerHandshake handshake) {
+            public void onOpen(WebSocket webSocket, Response response) {
                 logger.debug("FunASR WebSocket连接已打开");
-                send(SPEAKING_START);
-                
-                // 启动虚拟线程发送音频数据
-                Thread.startVirtualThread(() -> {
-                    try {
-                        while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                            byte[] audioChunk = null;
-                            try {
-                                audioChunk = audioQueue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                            } catch (InterruptedException e) {
-                                logger.warn("音频数据队列等待被中断", e);
-                                Thread.currentThread().interrupt(); // 重新设置中断标志
-                                break;
-                            }
-                            
-                            if (audioChunk != null && isOpen()) {
-                                send(audioChunk);
-                            }
-                        }
-                        
-                        // 发送结束信号
-                        if (isOpen()) {
-                            send(SPEAKING_END);
-                        }
-                    } catch (Exception e) {
-                        logger.error("发送音频数据时发生错误", e);
+                webSocket.send(SPEAKING_START);
+
+                // 连接建立前的音频在音频流中等待，连接后逐块发送，音频结束立即发送结束信号
+                pushing.set(audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+                    @Override
+                    public void onAudio(byte[] chunk) {
+                        webSocket.send(ByteString.of(chunk));
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        webSocket.send(SPEAKING_END);
                     }
+                }));
+                pushing.get().exceptionally(e -> {
+                    logger.debug("FunASR音频流中断: {}", e.getMessage());
+                    recognitionLatch.countDown();
+                    return null;
                 });
             }
 
             @Override
-            public void onMessage(String message) {
+            public void onMessage(WebSocket webSocket, String message) {
                 try {
                     JSONObject jsonObject = JSON.parseObject(message);
                     if (jsonObject.getBoolean("is_final")) {
@@ -129,39 +118,49 @@ public class FunASRSttService implements SttService {
             }
 
             @Override
-            public void onClose(int code, String reason, boolean remote) {
+            public void onClosing(WebSocket webSocket, int code, String reason) {
                 logger.info("FunASR WS关闭，原因：{}", reason);
+                webSocket.close(1000, null);
                 // 确保锁被释放
                 recognitionLatch.countDown();
             }
 
             @Override
-            public void onError(Exception ex) {
-                logger.error("FunASR WS错误", ex);
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                logger.error("FunASR WS错误", t);
                 // 确保锁被释放
                 recognitionLatch.countDown();
             }
         };
 
+        WebSocket webSocket = null;
         try {
-            // 连接WebSocket
-            webSocketClient.connect();
-            
+            webSocket = connectionPool.acquire(listener);
+
             // 等待识别完成或超时
             boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
             
             if (!recognized) {
                 logger.warn("FunASR识别超时");
             }
+        } catch (InterruptedException e) {
+            // 识别被取消（如对冲中落选），关闭连接
+            Thread.currentThread().interrupt();
+            logger.debug("FunASR识别已取消");
         } catch (Exception e) {
             logger.error("FunASR识别过程中发生错误", e);
         } finally {
+            // 停止推送音频
+            CompletableFuture<Void> push = pushing.get();
+            if (push != null) {
+                push.cancel(false);
+            }
             // 关闭WebSocket连接
-            if (webSocketClient.isOpen()) {
-                webSocketClient.close();
+            if (webSocket != null) {
+                webSocket.close(1000, null);
             }
         }
         
         return finalResult.get();
     }
-}
\ No newline at end of file
+}
@@ -9,6 +9,7 @@ import com.tencent.asrv2.SpeechRecognizerRequest;
 import com.tencent.asrv2.SpeechRecognizerResponse;
 import com.tencent.core.ws.Credential;
 import com.tencent.core.ws.SpeechClient;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -17,7 +18,6 @@ import com.xiaozhi.utils.HttpUtil;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -31,9 +31,8 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -46,7 +45,6 @@ public class TencentSttService implements SttService {
     private static final String API_VERSION = "2019-06-14";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
     private static final String FORMAT = "pcm"; // 支持的音频格式：pcm, wav, mp3
-    private static final int QUEUE_TIMEOUT_MS = 100; // 队列等待超时时间
     private static final long RECOGNITION_TIMEOUT_MS = 30000; // 识别超时时间（30秒）
 
     // 使用腾讯云SDK的默认URL
@@ -133,28 +131,15 @@ public class TencentSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public String streamRecognition(SttAudioStream audioStream) {
         // 检查配置是否已设置
         if (secretId == null || secretKey == null || appId == null) {
             logger.error("腾讯云语音识别配置未设置，无法进行识别");
             return null;
         }
 
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
         AtomicReference<String> finalResult = new AtomicReference<>("");
         CountDownLatch recognitionLatch = new CountDownLatch(1);
-        
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-            data -> audioQueue.offer(data),
-            error -> {
-                logger.error("音频流处理错误", error);
-                isCompleted.set(true);
-            },
-            () -> isCompleted.set(true)
-        );
 
         // 生成唯一的语音ID
         String voiceId = UUID.randomUUID().toString();
@@ -268,47 +253,46 @@ public class TencentSttService implements SttService {
             // 标记是否已经发送了停止信号
             AtomicBoolean stopSent = new AtomicBoolean(false);
 
-            // 启动虚拟线程发送音频数据
-            Thread.startVirtualThread(() -> {
-                try {
-                    while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                        byte[] audioChunk = null;
-                        try {
-                            audioChunk = audioQueue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                        } catch (InterruptedException e) {
-                            logger.warn("音频数据队列等待被中断", e);
-                            Thread.currentThread().interrupt(); // 重新设置中断标志
-                            break;
-                        }
-                        
-                        if (audioChunk != null && activeRecognizers.containsKey(voiceId)) {
-                            try {
-                                recognizer.write(audioChunk);
-                            } catch (Exception e) {
-                                logger.error("发送音频数据时发生错误 - VoiceId: {}", voiceId, e);
-                                break;
-                            }
-                        }
+            // 每收到一块音频直接写入识别器，音频结束立即发送停止信号
+            CompletableFuture<Void> pushing = audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+                @Override
+                public void onAudio(byte[] chunk) throws Exception {
+                    if (activeRecognizers.containsKey(voiceId)) {
+                        recognizer.write(chunk);
                     }
-                    
-                    // 发送停止信号
+                }
+
+                @Override
+                public void onComplete() throws Exception {
                     if (activeRecognizers.containsKey(voiceId) && !stopSent.getAndSet(true)) {
-                        try {
-                            recognizer.stop();
-                        } catch (Exception e) {
-                            logger.error("停止识别器时发生错误 - VoiceId: {}", voiceId, e);
-                        }
+                        recognizer.stop();
                     }
-                } catch (Exception e) {
-                    logger.error("处理音频流时发生错误 - VoiceId: {}", voiceId, e);
                 }
             });
+            pushing.exceptionally(e -> {
+                logger.debug("腾讯云音频流中断 - VoiceId: {}, {}", voiceId, e.getMessage());
+                recognitionLatch.countDown();
+                return null;
+            });
 
             // 等待识别完成或超时
-            boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            
-            if (!recognized) {
-                logger.warn("腾讯云识别超时 - VoiceId: {}", voiceId);
+            boolean recognized = false;
+            boolean cancelled = false;
+            try {
+                recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // 识别被取消（如对冲中落选），清理识别器后再恢复中断状态
+                cancelled = true;
+                logger.debug("腾讯云识别已取消 - VoiceId: {}", voiceId);
+            }
+
+            // 音频流中断或识别被取消时识别器还没有收到停止信号，同超时一样清理
+            boolean interrupted = cancelled || pushing.isCompletedExceptionally();
+            pushing.cancel(false);
+            if (!recognized || interrupted) {
+                if (!recognized && !cancelled) {
+                    logger.warn("腾讯云识别超时 - VoiceId: {}", voiceId);
+                }
                 // 超时后清理资源
                 if (activeRecognizers.containsKey(voiceId)) {
                     try {
@@ -320,6 +304,9 @@ public class TencentSttService implements SttService {
                     }
                 }
             }
+            if (cancelled) {
+                Thread.currentThread().interrupt();
+            }
 
         } catch (Exception e) {
             logger.error("创建语音识别会话时发生错误", e);
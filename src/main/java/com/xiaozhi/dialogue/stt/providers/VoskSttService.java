@@ -1,5 +1,6 @@
 package com.xiaozhi.dialogue.stt.providers;
 
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.utils.AudioUtils;
 import jakarta.annotation.PostConstruct;
@@ -10,17 +11,12 @@ import org.vosk.LibVosk;
 import org.vosk.LogLevel;
 import org.vosk.Model;
 import org.vosk.Recognizer;
-import reactor.core.publisher.Sinks;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 
 /**
  * Vosk STT服务实现
@@ -133,82 +129,43 @@ public class VoskSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public String streamRecognition(SttAudioStream audioStream) {
         if (!isModelLoaded()) {
             logger.error("Vosk模型未加载，无法进行流式识别！");
             return null;
         }
 
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-        List<String> recognizedText = new ArrayList<>();
         StringBuilder finalResult = new StringBuilder();
-
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-                data -> audioQueue.offer(data),
-                error -> {
-                    logger.error("音频流处理错误", error);
-                    isCompleted.set(true);
-                },
-                () -> isCompleted.set(true)
-        );
-
-        // 使用虚拟线程处理音频识别
-        try {
-            Thread.startVirtualThread(() -> {
-                try (Recognizer recognizer = new Recognizer(model, AudioUtils.SAMPLE_RATE)) {
-                    while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                        try {
-                            byte[] audioChunk = audioQueue.poll(100, TimeUnit.MILLISECONDS);
-                            if (audioChunk != null) {
-                                boolean hasResult = recognizer.acceptWaveForm(audioChunk, audioChunk.length);
-                                if (hasResult) {
-                                    // 提取部分识别结果中的文本
-                                    String result = recognizer.getResult();
-                                    JSONObject jsonResult = new JSONObject(result);
-                                    if (jsonResult.has("text") && !jsonResult.getString("text").isEmpty()) {
-                                        String text = jsonResult.getString("text").replaceAll("\\s+", "");
-                                        recognizedText.add(text);
-                                        logger.debug("Vosk识别中间结果: {}", text);
-                                    }
-                                }
-                            }
-
-                            // 如果已完成且队列为空，获取最终结果
-                            if (isCompleted.get() && audioQueue.isEmpty()) {
-                                String finalText = recognizer.getFinalResult();
-                                JSONObject jsonFinal = new JSONObject(finalText);
-                                if (jsonFinal.has("text")) {
-                                    String text = jsonFinal.getString("text").replaceAll("\\s+", "");
-                                    if (!text.isEmpty()) {
-                                        recognizedText.add(text);
-                                        logger.debug("Vosk识别最终结果: {}", text);
-                                    }
-                                }
-                                break;
-                            }
-                        } catch (InterruptedException e) {
-                            logger.warn("音频数据队列等待被中断", e);
-                            Thread.currentThread().interrupt(); // 重新设置中断标志
-                            break;
-                        }
-                    }
-
-                    // 合并所有识别结果
-                    for (String text : recognizedText) {
-                        finalResult.append(text);
+        try (Recognizer recognizer = new Recognizer(model, AudioUtils.SAMPLE_RATE)) {
+            // 每收到一块音频直接送入识别器，音频结束后立即取最终结果
+            audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+                @Override
+                public void onAudio(byte[] chunk) {
+                    if (recognizer.acceptWaveForm(chunk, chunk.length)) {
+                        appendText(finalResult, recognizer.getResult(), "Vosk识别中间结果: {}");
                     }
+                }
 
-                } catch (Exception e) {
-                    logger.error("Vosk流式识别过程中发生错误", e);
+                @Override
+                public void onComplete() {
+                    appendText(finalResult, recognizer.getFinalResult(), "Vosk识别最终结果: {}");
                 }
-            }).join(); // 等待虚拟线程完成
+            }).join();
+        } catch (CompletionException | CancellationException e) {
+            logger.debug("Vosk流式识别结束: {}", e.getMessage());
         } catch (Exception e) {
-            logger.error("启动虚拟线程失败", e);
+            logger.error("Vosk流式识别过程中发生错误", e);
         }
 
         return finalResult.toString();
     }
+
+    private static void appendText(StringBuilder finalResult, String result, String logFormat) {
+        JSONObject json = new JSONObject(result);
+        if (json.has("text") && !json.getString("text").isEmpty()) {
+            String text = json.getString("text").replaceAll("\\s+", "");
+            finalResult.append(text);
+            logger.debug(logFormat, text);
+        }
+    }
 }
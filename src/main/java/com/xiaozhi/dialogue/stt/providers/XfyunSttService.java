@@ -6,11 +6,13 @@ import cn.xfyun.model.response.iat.IatResult;
 import cn.xfyun.model.response.iat.Text;
 import cn.xfyun.service.iat.AbstractIatWebSocketListener;
 import com.google.gson.JsonObject;
+import com.xiaozhi.dialogue.stt.SttAudioStream;
 import com.xiaozhi.dialogue.stt.SttService;
+import com.xiaozhi.dialogue.stt.WebSocketPool;
+import com.xiaozhi.dialogue.stt.WebSocketPoolManager;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
 import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
@@ -18,8 +20,6 @@ import okhttp3.WebSocketListener;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
-import reactor.core.scheduler.Schedulers;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -48,18 +48,25 @@ public class XfyunSttService implements SttService {
     // 识别超时时间（5秒）
     private static final long RECOGNITION_TIMEOUT_MS = 5000;
 
+    // 预连接最长空闲时间，讯飞在连接后10秒内没有收到音频会断开
+    private static final long MAX_IDLE_MS = 8000;
+
     private static final String hostUrl = "https://iat-api.xfyun.cn/v2/iat";
 
     private String secretId;
     private String secretKey;
     private String appId;
+    private final WebSocketPool connectionPool;
 
-    public XfyunSttService(SysConfig config) {
+    public XfyunSttService(SysConfig config, WebSocketPoolManager poolManager) {
         if (config != null) {
             this.secretId = config.getApiKey();
             this.secretKey = config.getApiSecret();
             this.appId = config.getAppId();
         }
+        // 每次连接重新签名，预连接同样完成了鉴权
+        this.connectionPool = poolManager.get(PROVIDER_NAME + ":" + (config != null ? config.getConfigId() : null),
+                MAX_IDLE_MS, this::newRequest);
     }
 
     @Override
@@ -72,6 +79,13 @@ public class XfyunSttService implements SttService {
         return true;
     }
 
+    @Override
+    public void prewarm() {
+        if (secretId != null && secretKey != null && appId != null) {
+            connectionPool.prewarm();
+        }
+    }
+
     @Override
     public String recognition(byte[] audioData) {
         if (audioData == null || audioData.length == 0) {
@@ -209,74 +223,56 @@ public class XfyunSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public String streamRecognition(SttAudioStream audioStream) {
         // 检查配置是否已设置
         if (secretId == null || secretKey == null || appId == null) {
             logger.error("讯飞云语音识别配置未设置，无法进行识别");
             return null;
         }
 
-        // 构建鉴权URL
-        String authUrl;
-        try {
-            authUrl = getAuthUrl(secretId, secretKey);
-        } catch (Exception e) {
-            logger.error("构建鉴权URL时发生错误！", e);
-            return null;
-        }
-
-        String wsUrl = authUrl.replace("http://", "ws://")
-                .replace("https://", "wss://");
-        OkHttpClient client = new OkHttpClient.Builder().build();
-        Request request = new Request.Builder().url(wsUrl).build();
         AtomicInteger status = new AtomicInteger(StatusFirstFrame);
         AtomicReference<WebSocket> webSocketRef = new AtomicReference<>();
-        BlockingQueue<JsonObject> frameQueue = new LinkedBlockingQueue<>();
+        AtomicReference<CompletableFuture<Void>> pushing = new AtomicReference<>();
         AtomicBoolean isClosed = new AtomicBoolean(false);
         AtomicBoolean latchReleased = new AtomicBoolean(false);
         CountDownLatch recognitionLatch = new CountDownLatch(1);
         List<Text> resultSegments = new ArrayList<>();
 
-        WebSocket webSocket = client.newWebSocket(request, new WebSocketListener() {
+        WebSocketListener listener = new WebSocketListener() {
             @Override
             public void onOpen(WebSocket webSocket, Response response) {
                 webSocketRef.set(webSocket);
                 isClosed.set(false);
-                Thread.startVirtualThread(() -> {
-                    // 使用 Flux 订阅音频流
-                    audioSink.asFlux()
-                            .subscribeOn(Schedulers.single())  // 保证顺序执行
-                            .subscribe(
-                                    chunk -> {
-                                        if (isClosed.get()) return;
-                                        try {
-                                            if (chunk == null || chunk.length == 0) {
-                                                logger.debug("audioSink 数据为空，主动结束流");
-                                                frameQueue.offer(buildContinueFrame(chunk, chunk.length));
-                                                return;
-                                            }
-                                            if ((status.compareAndSet(StatusFirstFrame, StatusContinueFrame))) {
-                                                logger.debug("xfyun开始发送音频首帧");
-                                                frameQueue.offer(buildFirstFrame(chunk, chunk.length));
-                                            } else {
-                                                // logger.debug("xfyun继续发送音频帧");
-                                                frameQueue.offer(buildContinueFrame(chunk, chunk.length));
-                                            }
-                                        } catch (Exception e) {
-                                            logger.error("发送音频帧失败", e);
-                                        }
-                                    },
-                                    error -> {
-                                        logger.error("音频流错误", error);
-                                    },
-                                    () -> {
-                                        if (isClosed.get()) return;
-                                        // 流结束，发送最后一帧
-                                        logger.debug("audioSink结束发送结束通知");
-                                        JsonObject frame = buildLastFrame();
-                                        webSocket.send(frame.toString());
-                                    }
-                            );
+                // 连接建立前的音频在音频流中等待，连接后逐块发送，音频结束立即发送最后一帧
+                pushing.set(audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+                    @Override
+                    public void onAudio(byte[] chunk) {
+                        if (isClosed.get() || chunk == null || chunk.length == 0) {
+                            return;
+                        }
+                        if (status.compareAndSet(StatusFirstFrame, StatusContinueFrame)) {
+                            logger.debug("xfyun开始发送音频首帧");
+                            webSocket.send(buildFirstFrame(chunk, chunk.length).toString());
+                        } else {
+                            webSocket.send(buildContinueFrame(chunk, chunk.length).toString());
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        if (isClosed.get()) return;
+                        // 流结束，发送最后一帧
+                        logger.debug("音频流结束发送结束通知");
+                        webSocket.send(buildLastFrame().toString());
+                    }
+                }));
+                pushing.get().exceptionally(e -> {
+                    logger.debug("音频流中断: {}", e.getMessage());
+                    wsClose(webSocketRef, isClosed);
+                    if (latchReleased.compareAndSet(false, true)) {
+                        recognitionLatch.countDown();
+                    }
+                    return null;
                 });
             }
 
@@ -324,27 +320,11 @@ public class XfyunSttService implements SttService {
                 webSocketRef.set(null);
                 super.onClosed(webSocket, code, reason);
             }
-        });
-
-        // 发送帧线程
-        Thread sendThread = new Thread(() -> {
-            while (!isClosed.get()) {
-                try {
-                    JsonObject frame = frameQueue.poll(100, TimeUnit.MILLISECONDS);
-                    if (frame != null) {
-                        WebSocket ws = webSocketRef.get();
-                        if (ws != null) {
-                            ws.send(frame.toString());
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("发送音频帧失败", e);
-                }
-            }
-        });
-        sendThread.start();
+        };
 
         try {
+            // 从预连接池取连接，没有预连接时新建
+            connectionPool.acquire(listener);
             // 等待识别完成或超时
             boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
             String finalText = "";
@@ -356,14 +336,39 @@ public class XfyunSttService implements SttService {
                 wsClose(webSocketRef, isClosed);
             }
             return finalText;
+        } catch (InterruptedException e) {
+            // 识别被取消（如对冲中落选），关闭连接
+            Thread.currentThread().interrupt();
+            logger.debug("讯飞云识别已取消");
+            wsClose(webSocketRef, isClosed);
+            return getFinalResult(resultSegments);
         } catch (Exception e) {
             logger.error("创建语音识别会话时发生错误", e);
             wsClose(webSocketRef, isClosed);
             // 主动关闭会话
             return getFinalResult(resultSegments);
+        } finally {
+            // 停止推送音频
+            CompletableFuture<Void> push = pushing.get();
+            if (push != null) {
+                push.cancel(false);
+            }
         }
     }
 
+    private Request newRequest() {
+        // 构建鉴权URL
+        String authUrl;
+        try {
+            authUrl = getAuthUrl(secretId, secretKey);
+        } catch (Exception e) {
+            throw new IllegalStateException("构建鉴权URL时发生错误", e);
+        }
+        String wsUrl = authUrl.replace("http://", "ws://")
+                .replace("https://", "wss://");
+        return new Request.Builder().url(wsUrl).build();
+    }
+
     private void wsClose(AtomicReference<WebSocket> webSocketRef, AtomicBoolean isClosed) {
         if (isClosed.compareAndSet(false, true)) {
             WebSocket ws = webSocketRef.get();
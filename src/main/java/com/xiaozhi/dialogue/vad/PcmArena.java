@@ -0,0 +1,92 @@
+package com.xiaozhi.dialogue.vad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 有上限的PCM分块存储
+ * 一次语音的数据按固定大小的块连续存放，不随每帧分配新数组；清空时只保留第一块复用，长语音占用的内存不会一直留在会话上。
+ * 总量达到上限后不再接收数据，由调用方决定如何结束这次语音。
+ */
+public class PcmArena {
+    private final int chunkSize;
+    private final int maxChunks;
+    private final List<byte[]> chunks = new ArrayList<>();
+    // 已写入的字节数
+    private int size;
+
+    /**
+     * @param chunkSize 每块的字节数
+     * @param maxBytes  最多保存的字节数
+     */
+    public PcmArena(int chunkSize, int maxBytes) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = Math.max(1, (maxBytes + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * 追加数据，超出上限的部分丢弃
+     *
+     * @return 数据是否全部写入
+     */
+    public boolean append(byte[] data) {
+        int offset = 0;
+        while (offset < data.length) {
+            int chunkIndex = size / chunkSize;
+            if (chunkIndex >= maxChunks) {
+                return false;
+            }
+            if (chunkIndex == chunks.size()) {
+                chunks.add(new byte[chunkSize]);
+            }
+            int position = size % chunkSize;
+            int length = Math.min(data.length - offset, chunkSize - position);
+            System.arraycopy(data, offset, chunks.get(chunkIndex), position, length);
+            offset += length;
+            size += length;
+        }
+        return true;
+    }
+
+    public boolean isFull() {
+        return size >= maxChunks * chunkSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 复制出已写入的数据，每块一个数组
+     */
+    public List<byte[]> copyChunks() {
+        List<byte[]> result = new ArrayList<>(size / chunkSize + 1);
+        for (int offset = 0; offset < size; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, size - offset)];
+            System.arraycopy(chunks.get(offset / chunkSize), 0, chunk, 0, chunk.length);
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    /**
+     * 复制出已写入的全部数据
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[size];
+        for (int offset = 0; offset < size; offset += chunkSize) {
+            System.arraycopy(chunks.get(offset / chunkSize), 0, result, offset, Math.min(chunkSize, size - offset));
+        }
+        return result;
+    }
+
+    /**
+     * 清空数据，保留第一块供下次复用，其余块释放
+     */
+    public void clear() {
+        size = 0;
+        while (chunks.size() > 1) {
+            chunks.remove(chunks.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.xiaozhi.dialogue.vad;
+
+/**
+ * 固定容量的PCM环形缓冲区
+ * 创建时一次分配，写满后覆盖最旧的数据，用于保留语音开始前的一小段音频。
+ */
+public class PcmRingBuffer {
+    private final byte[] buffer;
+    // 下一个写入位置
+    private int head;
+    private int size;
+
+    public PcmRingBuffer(int capacity) {
+        this.buffer = new byte[Math.max(2, capacity & ~1)];
+    }
+
+    /**
+     * 写入数据，超出容量时只保留最新的部分
+     */
+    public void write(byte[] data) {
+        write(data, 0, data.length);
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        if (length >= buffer.length) {
+            // 只保留最后capacity字节
+            System.arraycopy(data, offset + length - buffer.length, buffer, 0, buffer.length);
+            head = 0;
+            size = buffer.length;
+            return;
+        }
+        int first = Math.min(length, buffer.length - head);
+        System.arraycopy(data, offset, buffer, head, first);
+        System.arraycopy(data, offset + first, buffer, 0, length - first);
+        head = (head + length) % buffer.length;
+        size = Math.min(buffer.length, size + length);
+    }
+
+    /**
+     * 按写入顺序取出全部数据并清空
+     */
+    public byte[] drain() {
+        byte[] result = new byte[size];
+        int start = Math.floorMod(head - size, buffer.length);
+        int first = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, result, 0, first);
+        System.arraycopy(buffer, 0, result, first, size - first);
+        clear();
+        return result;
+    }
+
+    /**
+     * 复制出最新的length字节，不清空；数据不足时前面补0
+     */
+    public byte[] latest(int length) {
+        byte[] result = new byte[length];
+        int count = Math.min(length, size);
+        int start = Math.floorMod(head - count, buffer.length);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, result, length - count, first);
+        System.arraycopy(buffer, 0, result, length - count + first, count - first);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -8,8 +8,8 @@ import java.util.List;
  */
 public class VadSessionState {
     // 音频缓冲区
-    private List<Byte> audioBuffer = new ArrayList<>();
-    private List<Byte> preBuffer = new ArrayList<>();
+    private final PcmArena audioBuffer = new PcmArena(CHUNK_SIZE, MAX_AUDIO_SIZE);
+    private final PcmRingBuffer preBuffer = new PcmRingBuffer(MAX_PRE_BUFFER_SIZE);
 
     // 语音检测状态
     private List<Float> probabilities = new ArrayList<>();
@@ -21,8 +21,10 @@ public class VadSessionState {
     private int consecutiveSpeechFrames = 0;
 
     // 配置参数
+    private static final int MAX_PRE_BUFFER_SIZE = 32000; // 预缓冲区大小 (1秒@16kHz,16位双字节)
+    private static final int CHUNK_SIZE = 32000; // 主缓冲区每块1秒
+    private static final int MAX_AUDIO_SIZE = 32000 * 60; // 主缓冲区最多保存60秒
     private final int requiredConsecutiveFrames = 3;
-    private final int maxPreBufferSize = 32000; // 预缓冲区大小 (1秒@16kHz,16位双字节)
     private final int windowSizeSample = 512; // 分析窗口大小
     private final int frameDurationMs = 30; // 每帧持续时间(毫秒)
 
@@ -30,29 +32,23 @@ public class VadSessionState {
      * 添加数据到预缓冲区
      */
     public void addToPrebuffer(byte[] data) {
-        for (byte b : data) {
-            preBuffer.add(b);
-            // 限制预缓冲区大小
-            if (preBuffer.size() > maxPreBufferSize) {
-                preBuffer.remove(0);
-            }
-        }
+        // 超出预缓冲区大小时覆盖最旧的数据
+        preBuffer.write(data);
     }
 
     /**
      * 添加数据到主缓冲区
      */
     public void addToMainBuffer(byte[] data) {
-        for (byte b : data) {
-            audioBuffer.add(b);
-        }
+        // 超过上限的数据丢弃
+        audioBuffer.append(data);
     }
 
     /**
      * 将预缓冲区的数据转移到主缓冲区
      */
     public void transferPrebufferToMainBuffer() {
-        audioBuffer.addAll(preBuffer);
+        audioBuffer.append(preBuffer.latest(preBuffer.size()));
     }
 
     /**
@@ -71,12 +67,12 @@ public class VadSessionState {
         float[] samples = new float[windowSizeSample];
 
         // 从预缓冲区中提取最新的一个窗口数据
-        int startIdx = preBuffer.size() - windowSizeSample * 2;
+        byte[] window = preBuffer.latest(windowSizeSample * 2);
         for (int i = 0; i < windowSizeSample; i++) {
             // 将两个字节转换为一个short，然后归一化为[-1,1]范围的float
-            int idx = startIdx + i * 2;
-            short sample = (short) ((preBuffer.get(idx) & 0xFF) |
-                    ((preBuffer.get(idx + 1) & 0xFF) << 8));
+            int idx = i * 2;
+            short sample = (short) ((window[idx] & 0xFF) |
+                    ((window[idx + 1] & 0xFF) << 8));
             samples[i] = sample / 32767.0f;
         }
 
@@ -165,18 +161,14 @@ public class VadSessionState {
      * 获取完整的音频数据
      */
     public byte[] getCompleteAudio() {
-        byte[] completeAudio = new byte[audioBuffer.size()];
-        for (int i = 0; i < audioBuffer.size(); i++) {
-            completeAudio[i] = audioBuffer.get(i);
-        }
-        return completeAudio;
+        return audioBuffer.toByteArray();
     }
 
     /**
      * 检查是否有音频数据
      */
     public boolean hasAudioData() {
-        return !audioBuffer.isEmpty();
+        return audioBuffer.size() > 0;
     }
 
     /**
@@ -0,0 +1,36 @@
+package com.xiaozhi.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * 设备在线状态
+ * 由设备上下线时生成，创建后不再修改，批量写入sys_device的state、lastLogin、ip、location
+ */
+@Getter
+@AllArgsConstructor
+public class DevicePresence {
+
+    private final String deviceId;
+
+    /**
+     * 产生该状态的会话ID
+     */
+    private final String sessionId;
+
+    private final String state;
+
+    /**
+     * 状态变化时间，写入lastLogin
+     */
+    private final Date lastSeen;
+
+    /**
+     * 为null时不修改数据库中的值
+     */
+    private final String ip;
+
+    private final String location;
+}
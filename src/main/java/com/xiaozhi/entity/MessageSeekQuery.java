@@ -0,0 +1,30 @@
+package com.xiaozhi.entity;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.Date;
+
+/**
+ * 聊天记录键集分页查询条件
+ * 在SysMessage查询条件的基础上增加游标位置，从(cursorTime, cursorId)之后继续按时间倒序读取
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class MessageSeekQuery extends SysMessage {
+
+    /**
+     * 上一页最后一条消息的创建时间，为null时从头读取
+     */
+    private Date cursorTime;
+
+    /**
+     * 上一页最后一条消息的ID
+     */
+    private Integer cursorId;
+
+    /**
+     * 本次读取的条数
+     */
+    private int fetchSize;
+}
@@ -1,15 +1,10 @@
 package com.xiaozhi.entity;
 
-import com.xiaozhi.utils.AudioUtils;
-
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.experimental.Accessors;
 
-import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
-
 /**
  * 聊天记录表
  * 
@@ -83,22 +78,4 @@ public class SysMessage extends Base<SysMessage> {
     private String roleName;
     @Schema(description = "设备名称")
     private String deviceName;
-
-    public String getAudioPath() {
-        if (this.createTime == null) {
-            // 分页会先进行一次处理，但是获取的为count(0)，没有实际字段会报错，这里直接返回
-            return audioPath;
-        }
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HHmmss");
-        String formattedTime = sdf.format(createTime);
-
-        String fileName = formattedTime + "-" + sender + ".wav";
-
-        return Paths.get(
-                AudioUtils.AUDIO_PATH,
-                deviceId.replace(":", "-"),
-                String.valueOf(roleId),
-                fileName
-        ).toString();
-    }
 }
\ No newline at end of file
@@ -67,6 +67,12 @@ public class SysRole extends Base<SysRole> {
     @Schema(description = "模型ID")
     private Integer modelId;
 
+    /**
+     * LLM路由组
+     */
+    @Schema(description = "LLM路由组，格式为 configId[:weight],...，用于故障转移和对冲请求")
+    private String modelGroup;
+
     /**
      * 模型名称
      */
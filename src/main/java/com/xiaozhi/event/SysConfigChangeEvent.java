@@ -0,0 +1,21 @@
+package com.xiaozhi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 配置变更事件，配置更新后发布，用于失效会话中已解析的角色快照
+ */
+public class SysConfigChangeEvent extends ApplicationEvent {
+
+    private final Integer configId;
+
+    public SysConfigChangeEvent(Object source, Integer configId) {
+        super(source);
+        this.configId = configId;
+    }
+
+    public Integer getConfigId() {
+        return configId;
+    }
+
+}
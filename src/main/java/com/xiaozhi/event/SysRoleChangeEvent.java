@@ -0,0 +1,21 @@
+package com.xiaozhi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 角色变更事件，角色更新后发布，用于失效会话中已解析的角色快照
+ */
+public class SysRoleChangeEvent extends ApplicationEvent {
+
+    private final Integer roleId;
+
+    public SysRoleChangeEvent(Object source, Integer roleId) {
+        super(source);
+        this.roleId = roleId;
+    }
+
+    public Integer getRoleId() {
+        return roleId;
+    }
+
+}
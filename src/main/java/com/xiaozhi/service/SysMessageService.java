@@ -1,9 +1,12 @@
 package com.xiaozhi.service;
 
 import com.xiaozhi.common.web.PageFilter;
+import com.xiaozhi.common.web.SeekPage;
+import com.xiaozhi.entity.MessageSeekQuery;
 import com.xiaozhi.entity.SysMessage;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 聊天记录查询/添加
@@ -21,6 +24,14 @@ public interface SysMessageService {
    */
   int add(SysMessage message);
 
+  /**
+   * 批量新增记录
+   * 
+   * @param messages
+   * @return
+   */
+  int addBatch(List<SysMessage> messages);
+
   /**
    * 查询聊天记录
    * 指定分页信息
@@ -29,6 +40,36 @@ public interface SysMessageService {
    */
   List<SysMessage> query(SysMessage message, PageFilter pageFilter);
 
+  /**
+   * 键集分页查询聊天记录，按时间倒序
+   * 
+   * @param query 查询条件
+   * @param cursor 上一页返回的游标，为空时查询第一页
+   * @param limit 每页条数
+   * @param count 是否统计总条数
+   * @return
+   */
+  SeekPage<SysMessage> querySeek(MessageSeekQuery query, String cursor, int limit, boolean count);
+
+  /**
+   * 流式读取全部符合条件的聊天记录，按时间倒序逐条交给consumer
+   * 
+   * @param message 查询条件
+   * @param consumer 逐条处理
+   */
+  void export(SysMessage message, Consumer<SysMessage> consumer);
+
+  /**
+   * 查询对话历史，按时间正序返回最近的limit条
+   * 
+   * @param deviceId 设备ID
+   * @param roleId 角色ID，为null时不区分角色
+   * @param messageType 消息类型
+   * @param limit 最大条数
+   * @return
+   */
+  List<SysMessage> queryHistory(String deviceId, Integer roleId, String messageType, int limit);
+
   /**
    * 删除记忆
    * 
@@ -37,4 +78,11 @@ public interface SysMessageService {
    */
   int delete(SysMessage message);
 
+  /**
+   * 按聊天记录重新统计各设备的消息数，修正累加计数的偏差
+   * 
+   * @return 校正的设备数量
+   */
+  int reconcileMessageCounts();
+
 }
\ No newline at end of file
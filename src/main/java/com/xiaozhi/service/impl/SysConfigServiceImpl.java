@@ -1,17 +1,23 @@
 package com.xiaozhi.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.xiaozhi.common.cache.BoundedCacheManager;
 import com.xiaozhi.common.web.PageFilter;
 import com.xiaozhi.dao.ConfigMapper;
 import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
 import com.xiaozhi.dialogue.token.factory.TokenServiceFactory;
 import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
 import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.event.SysConfigChangeEvent;
 import com.xiaozhi.service.SysConfigService;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -43,6 +49,24 @@ public class SysConfigServiceImpl extends BaseServiceImpl implements SysConfigSe
     @Resource
     private TtsServiceFactory ttsServiceFactory;
 
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+
+    /**
+     * 注册配置缓存的刷新加载器，缓存key为配置ID或模型类型
+     */
+    @PostConstruct
+    public void registerCacheLoader() {
+        if (cacheManager instanceof BoundedCacheManager boundedCacheManager) {
+            boundedCacheManager.registerLoader(CACHE_NAME, key -> key instanceof Integer configId
+                    ? configMapper.selectConfigById(configId)
+                    : findModelType((String) key));
+        }
+    }
+
     /**
      * 添加配置
      * 
@@ -85,6 +109,8 @@ public class SysConfigServiceImpl extends BaseServiceImpl implements SysConfigSe
             if (configs.size() > 0) {
                 tokenService.removeCache(configs.getFirst());
             }
+            // 事务提交后失效引用该配置的会话角色快照
+            eventPublisher.publishEvent(new SysConfigChangeEvent(this, config.getConfigId()));
         }
         return rows;
     }
@@ -139,6 +165,10 @@ public class SysConfigServiceImpl extends BaseServiceImpl implements SysConfigSe
     @Override
     @Cacheable(value = CACHE_NAME, key ="#modelType", unless = "#result == null")
     public SysConfig selectModelType(String modelType) {
+        return findModelType(modelType);
+    }
+
+    private SysConfig findModelType(String modelType) {
         SysConfig queryConfig = new SysConfig();
         queryConfig.setModelType(modelType);
 
@@ -1,15 +1,38 @@
 package com.xiaozhi.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.xiaozhi.common.datasource.ReadReplica;
 import com.xiaozhi.common.web.PageFilter;
+import com.xiaozhi.common.web.SeekCursor;
+import com.xiaozhi.common.web.SeekPage;
+import com.xiaozhi.dao.DeviceMapper;
 import com.xiaozhi.dao.MessageMapper;
+import com.xiaozhi.entity.MessageSeekQuery;
 import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.service.SysMessageService;
+import com.xiaozhi.utils.AudioUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
+import org.apache.ibatis.cursor.Cursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * 聊天记录
@@ -21,9 +44,38 @@ import java.util.List;
 @Service
 public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(SysMessageServiceImpl.class);
+
+    // 每次重新统计的设备数量
+    private static final int RECONCILE_CHUNK_SIZE = 200;
+
     @Resource
     private MessageMapper messageMapper;
 
+    @Resource
+    private DeviceMapper deviceMapper;
+
+    @Value("${xiaozhi.message.count.reconcile-interval-minutes:360}")
+    private long reconcileIntervalMinutes;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 定时按sys_message重新统计各设备的消息数，修正计数偏差
+     */
+    @PostConstruct
+    public void init() {
+        if (reconcileIntervalMinutes > 0) {
+            scheduler.scheduleWithFixedDelay(this::reconcileMessageCounts,
+                    reconcileIntervalMinutes, reconcileIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
     /**
      * 新增聊天记录
      *
@@ -33,7 +85,35 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
     @Override
     @Transactional(transactionManager = "transactionManager")
     public int add(SysMessage message) {
-        return messageMapper.add(message);
+        int rows = messageMapper.add(message);
+        // 没有设备的消息不计数，不能因为计数让插入回滚
+        if (rows > 0 && message.getDeviceId() != null) {
+            deviceMapper.incrementMessageCount(Map.of(message.getDeviceId(), (long) rows));
+        }
+        return rows;
+    }
+
+    /**
+     * 批量新增聊天记录，一条多行INSERT完成
+     *
+     * @param messages
+     * @return
+     */
+    @Override
+    @Transactional(transactionManager = "transactionManager")
+    public int addBatch(List<SysMessage> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        int rows = messageMapper.addBatch(messages);
+        // 同一事务内按设备汇总后一次性累加消息数
+        Map<String, Long> deltas = messages.stream()
+                .filter(message -> message.getDeviceId() != null)
+                .collect(Collectors.groupingBy(SysMessage::getDeviceId, Collectors.counting()));
+        if (!deltas.isEmpty()) {
+            deviceMapper.incrementMessageCount(deltas);
+        }
+        return rows;
     }
 
     /**
@@ -43,11 +123,82 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
      * @return
      */
     @Override
+    @ReadReplica
     public List<SysMessage> query(SysMessage message, PageFilter pageFilter) {
         if(pageFilter != null){
             PageHelper.startPage(pageFilter.getStart(), pageFilter.getLimit());
         }
-        return messageMapper.query(message);
+        List<SysMessage> messages = messageMapper.query(message);
+        messages.forEach(SysMessageServiceImpl::fillAudioPath);
+        return messages;
+    }
+
+    /**
+     * 键集分页查询聊天记录
+     * 多读取一条判断是否还有下一页，只在需要时统计总数
+     *
+     * @param query
+     * @param cursor
+     * @param limit
+     * @param count
+     * @return
+     */
+    @Override
+    @ReadReplica
+    public SeekPage<SysMessage> querySeek(MessageSeekQuery query, String cursor, int limit, boolean count) {
+        SeekCursor seekCursor = SeekCursor.decode(cursor);
+        query.setCursorTime(seekCursor == null ? null : seekCursor.getDate());
+        query.setCursorId(seekCursor == null ? null : seekCursor.id());
+        query.setFetchSize(limit + 1);
+        List<SysMessage> messages = messageMapper.querySeek(query);
+        messages.forEach(SysMessageServiceImpl::fillAudioPath);
+        boolean hasMore = messages.size() > limit;
+        if (hasMore) {
+            messages = messages.subList(0, limit);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            SysMessage last = messages.getLast();
+            nextCursor = SeekCursor.of(last.getCreateTime(), last.getMessageId()).encode();
+        }
+        Long total = count ? messageMapper.count(query) : null;
+        return new SeekPage<>(messages, nextCursor, hasMore, total);
+    }
+
+    /**
+     * 流式导出聊天记录，游标需要在事务内读取
+     *
+     * @param message
+     * @param consumer
+     */
+    @Override
+    @Transactional(transactionManager = "transactionManager", readOnly = true)
+    public void export(SysMessage message, Consumer<SysMessage> consumer) {
+        try (Cursor<SysMessage> cursor = messageMapper.queryCursor(message)) {
+            cursor.forEach(item -> {
+                fillAudioPath(item);
+                consumer.accept(item);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 查询对话历史
+     *
+     * @param deviceId
+     * @param roleId
+     * @param messageType
+     * @param limit
+     * @return
+     */
+    @Override
+    @ReadReplica
+    public List<SysMessage> queryHistory(String deviceId, Integer roleId, String messageType, int limit) {
+        List<SysMessage> messages = new ArrayList<>(messageMapper.queryHistory(deviceId, roleId, messageType, limit));
+        Collections.reverse(messages);
+        return messages;
     }
 
     /**
@@ -59,7 +210,48 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
     @Override
     @Transactional(transactionManager = "transactionManager")
     public int delete(SysMessage message) {
-        return messageMapper.delete(message);
+        int rows = messageMapper.delete(message);
+        if (rows > 0) {
+            // 逻辑删除后重新统计受影响设备的消息数
+            List<String> deviceIds = StringUtils.hasText(message.getDeviceId()) ? List.of(message.getDeviceId()) : null;
+            deviceMapper.recountMessages(message.getUserId(), deviceIds);
+        }
+        return rows;
+    }
+
+    /**
+     * 按设备分批重新统计消息数
+     */
+    @Override
+    public int reconcileMessageCounts() {
+        long start = System.currentTimeMillis();
+        int devices = 0;
+        try {
+            String afterDeviceId = null;
+            List<String> deviceIds;
+            do {
+                deviceIds = deviceMapper.queryDeviceIds(afterDeviceId, RECONCILE_CHUNK_SIZE);
+                if (deviceIds.isEmpty()) {
+                    break;
+                }
+                deviceMapper.recountMessages(null, deviceIds);
+                devices += deviceIds.size();
+                afterDeviceId = deviceIds.getLast();
+            } while (deviceIds.size() == RECONCILE_CHUNK_SIZE);
+            logger.info("设备消息数校正完成，共 {} 个设备，耗时 {}ms", devices, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("设备消息数校正失败: {}", e.getMessage(), e);
+        }
+        return devices;
     }
 
-}
\ No newline at end of file
+    /**
+     * 没有保存录音路径的旧记录按约定补上wav路径，当时的录音只有wav格式
+     */
+    private static void fillAudioPath(SysMessage message) {
+        if (message.getAudioPath() == null && message.getDeviceId() != null && message.getCreateTime() != null) {
+            message.setAudioPath(AudioUtils.messageAudioPath(message.getDeviceId(), message.getRoleId(),
+                    message.getSender(), message.getCreateTime()).toString());
+        }
+    }
+}
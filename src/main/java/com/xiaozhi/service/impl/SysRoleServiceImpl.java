@@ -1,15 +1,20 @@
 package com.xiaozhi.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.xiaozhi.common.cache.BoundedCacheManager;
+import com.xiaozhi.common.datasource.ReadReplica;
 import com.xiaozhi.common.web.PageFilter;
 import com.xiaozhi.dao.RoleMapper;
 import com.xiaozhi.entity.SysRole;
+import com.xiaozhi.event.SysRoleChangeEvent;
 import com.xiaozhi.service.SysRoleService;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,6 +37,19 @@ public class SysRoleServiceImpl extends BaseServiceImpl implements SysRoleServic
     @Autowired(required = false)
     private CacheManager cacheManager;
 
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 注册角色缓存的刷新加载器，热点角色在过期前异步重新加载
+     */
+    @PostConstruct
+    public void registerCacheLoader() {
+        if (cacheManager instanceof BoundedCacheManager boundedCacheManager) {
+            boundedCacheManager.registerLoader(CACHE_NAME, key -> roleMapper.selectRoleById((Integer) key));
+        }
+    }
+
     /**
      * 添加角色
      *
@@ -57,6 +75,7 @@ public class SysRoleServiceImpl extends BaseServiceImpl implements SysRoleServic
      * @return
      */
     @Override
+    @ReadReplica
     public List<SysRole> query(SysRole role, PageFilter pageFilter) {
         if(pageFilter != null){
             PageHelper.startPage(pageFilter.getStart(), pageFilter.getLimit());
@@ -88,10 +107,16 @@ public class SysRoleServiceImpl extends BaseServiceImpl implements SysRoleServic
             if (updatedRole != null) {
                 Cache cache = cacheManager.getCache(CACHE_NAME);
                 if (cache != null) {
+                    // 先失效再写入，多节点部署时其他节点的本地副本随之失效
+                    cache.evict(updatedRole.getRoleId());
                     cache.put(updatedRole.getRoleId(), updatedRole);
                 }
             }
         }
+        if (result > 0 && role.getRoleId() != null) {
+            // 事务提交后失效在线会话中的角色快照
+            eventPublisher.publishEvent(new SysRoleChangeEvent(this, role.getRoleId()));
+        }
 
         return result;
     }
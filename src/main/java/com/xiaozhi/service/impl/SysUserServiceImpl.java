@@ -1,6 +1,7 @@
 package com.xiaozhi.service.impl;
 
 import com.github.pagehelper.PageHelper;
+import com.xiaozhi.common.datasource.ReadReplica;
 import com.xiaozhi.common.exception.UserPasswordNotMatchException;
 import com.xiaozhi.common.exception.UsernameNotFoundException;
 import com.xiaozhi.common.web.PageFilter;
@@ -82,6 +83,7 @@ public class SysUserServiceImpl extends BaseServiceImpl implements SysUserServic
      * @return 用户列表
      */
     @Override
+    @ReadReplica
     public List<SysUser> queryUsers(SysUser user, PageFilter pageFilter) {
         if(pageFilter != null){
             PageHelper.startPage(pageFilter.getStart(), pageFilter.getLimit());
@@ -0,0 +1,182 @@
+package com.xiaozhi.utils;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * 进程内音频解码与编码
+ * 基于javacv的FFmpegFrameGrabber/FFmpegFrameRecorder，直接在内存中把mp3等格式解码并重采样为16kHz单声道16位PCM，
+ * 不再为每次转换写临时文件并启动ffmpeg进程。
+ * 每个Grabber绑定一个输入源，无法跨输入复用，因此不做池化，而是用信号量限制同时进行的一次性转换数量；
+ * 流式解码随播放节奏进行、持续时间长，不占用名额，数量由播放会话决定。
+ * 重采样由Grabber内部的swresample上下文完成，随Grabber一起创建和释放。
+ * 原生库在第一次使用时加载，加载失败（缺少当前平台的原生包等）时所有方法抛出IOException，由调用方改用ffmpeg命令。
+ */
+public final class AudioDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(AudioDecoder.class);
+
+    private static final int SAMPLE_RATE = AudioUtils.SAMPLE_RATE;
+    private static final int CHANNELS = AudioUtils.CHANNELS;
+
+    // 同时进行的解码/编码数量上限
+    private static final Semaphore PERMITS = new Semaphore(
+            Integer.getInteger("xiaozhi.audio.decoder.max-concurrent", Math.max(2, Runtime.getRuntime().availableProcessors())));
+
+    private AudioDecoder() {
+    }
+
+    /**
+     * 原生库只加载一次，加载结果在第一次使用时确定
+     */
+    private static final class Native {
+        static final boolean AVAILABLE = load();
+
+        private static boolean load() {
+            try {
+                FFmpegFrameGrabber.tryLoad();
+                FFmpegFrameRecorder.tryLoad();
+                avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+                return true;
+            } catch (Exception | LinkageError e) {
+                logger.warn("加载ffmpeg原生库失败，音频转换将使用ffmpeg命令: {}", e.toString());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 提前加载ffmpeg原生库，避免首次解码时的加载延迟
+     */
+    public static void warmUp() {
+        isAvailable();
+    }
+
+    /**
+     * ffmpeg原生库是否可用
+     */
+    public static boolean isAvailable() {
+        return Native.AVAILABLE;
+    }
+
+    /**
+     * 解码音频文件为PCM
+     */
+    public static byte[] decodeToPcm(String filePath) throws IOException {
+        checkAvailable();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        acquire();
+        try {
+            decode(new FFmpegFrameGrabber(filePath), out::writeBytes);
+        } finally {
+            PERMITS.release();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码音频流为PCM，输入流由调用方关闭
+     */
+    public static byte[] decodeToPcm(InputStream input) throws IOException {
+        checkAvailable();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        acquire();
+        try {
+            decodeToPcm(input, out::writeBytes);
+        } finally {
+            PERMITS.release();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 流式解码，每解出一段PCM就交给consumer，适合边下载边播放；输入流由调用方关闭。
+     * consumer可以阻塞以控制解码速度，抛出的运行时异常会中止解码并传给调用方
+     */
+    public static void decodeToPcm(InputStream input, Consumer<byte[]> consumer) throws IOException {
+        checkAvailable();
+        // maximumSize为0表示不缓存输入用于回退定位，mp3等顺序读取的格式不需要
+        decode(new FFmpegFrameGrabber(input, 0), consumer);
+    }
+
+    private static void decode(FFmpegFrameGrabber grabber, Consumer<byte[]> consumer) throws IOException {
+        try (grabber) {
+            grabber.setSampleRate(SAMPLE_RATE);
+            grabber.setAudioChannels(CHANNELS);
+            grabber.setSampleFormat(avutil.AV_SAMPLE_FMT_S16);
+            grabber.start();
+            Frame frame;
+            while ((frame = grabber.grabSamples()) != null) {
+                if (frame.samples == null || frame.samples.length == 0) {
+                    continue;
+                }
+                byte[] pcm = toBytes((ShortBuffer) frame.samples[0]);
+                if (pcm.length > 0) {
+                    consumer.accept(pcm);
+                }
+            }
+            grabber.stop();
+        } catch (FFmpegFrameGrabber.Exception e) {
+            throw new IOException("音频解码失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将16kHz单声道PCM编码为mp3写入输出流，输出流由调用方关闭
+     */
+    public static void encodeMp3(byte[] pcm, OutputStream output) throws IOException {
+        checkAvailable();
+        acquire();
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(output, CHANNELS)) {
+            recorder.setFormat("mp3");
+            recorder.setAudioCodec(avcodec.AV_CODEC_ID_MP3);
+            recorder.setSampleRate(SAMPLE_RATE);
+            recorder.setAudioChannels(CHANNELS);
+            recorder.setAudioBitrate(AudioUtils.BITRATE);
+            recorder.start();
+            ShortBuffer samples = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            recorder.recordSamples(SAMPLE_RATE, CHANNELS, samples);
+            recorder.stop();
+        } catch (FFmpegFrameRecorder.Exception e) {
+            throw new IOException("mp3编码失败: " + e.getMessage(), e);
+        } finally {
+            PERMITS.release();
+        }
+    }
+
+    private static void checkAvailable() throws IOException {
+        if (!isAvailable()) {
+            throw new IOException("ffmpeg原生库不可用");
+        }
+    }
+
+    private static void acquire() throws IOException {
+        try {
+            PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待音频解码资源时被中断", e);
+        }
+    }
+
+    private static byte[] toBytes(ShortBuffer samples) {
+        ShortBuffer source = samples.duplicate();
+        ByteBuffer buffer = ByteBuffer.allocate(source.remaining() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(source);
+        return buffer.array();
+    }
+}
@@ -8,12 +8,19 @@ import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class AudioUtils {
     public static final String AUDIO_PATH = "audio/";
@@ -36,6 +43,21 @@ public class AudioUtils {
         String fileName = uuid + ".mp3";
         String filePath = AUDIO_PATH + fileName;
 
+        // 优先在进程内编码，失败时再调用ffmpeg命令
+        try {
+            Files.createDirectories(Paths.get(AUDIO_PATH));
+            try (OutputStream out = Files.newOutputStream(Paths.get(filePath))) {
+                AudioDecoder.encodeMp3(audio, out);
+            }
+            return fileName;
+        } catch (IOException | LinkageError e) {
+            logger.warn("进程内mp3编码失败，改用ffmpeg命令: {}", e.getMessage());
+            try {
+                Files.deleteIfExists(Paths.get(filePath));
+            } catch (IOException ignored) {
+            }
+        }
+
         // 创建临时PCM文件
         String tempPcmPath = AUDIO_PATH + uuid + ".pcm";
 
@@ -160,75 +182,49 @@ public class AudioUtils {
     }
 
     /**
-     * 合并多个音频文件为一个WAV文件
-     * 支持合并的格式： wav, mp3, pcm
+     * 16kHz单声道16位PCM的WAV文件头
      *
-     * @param audioPaths 要合并的音频文件路径列表
-     * @return 合并后的WAV文件名
+     * @param dataLength PCM数据长度
+     * @return 44字节的文件头
      */
-    public static void mergeAudioFiles(Path path, List<String> audioPaths) {
-        if (audioPaths.size() == 1) {
-            // TODO 考虑改为文件迁移mv 或rename
-//            return Paths.get(audioPaths.getFirst()).getFileName().toString();
-        }
-//        var uuid = UUID.randomUUID().toString().replace("-", "");
-//        var outputFileName = uuid + ".wav";
-//        var outputPath = Paths.get(AUDIO_PATH, outputFileName).toString();
-
-        try {
-            // 确保音频目录存在
-            Files.createDirectories(path.getParent());
-            // 计算所有PCM数据的总大小
-            var totalPcmSize = 0L;
-            var audioChunks = new ArrayList<byte[]>();
-            for (var audioPath : audioPaths) {
-                var fullPath = audioPath.startsWith(AUDIO_PATH) ? audioPath : AUDIO_PATH + audioPath;
-                byte[] pcmData = readAsPcm(fullPath);
-                totalPcmSize += pcmData.length;
-                audioChunks.add(pcmData);
-
-            }
-
-            // 创建输出WAV文件
-            try (FileOutputStream fos = new FileOutputStream(path.toFile());
-                 DataOutputStream dos = new DataOutputStream(fos)) {
-
-                // 写入WAV文件头
-                int bitsPerSample = 16; // 16位采样
-
-                // RIFF头
-                dos.writeBytes("RIFF");
-                dos.writeInt(Integer.reverseBytes(36 + (int) totalPcmSize)); // 文件长度
-                dos.writeBytes("WAVE");
-
-                // fmt子块
-                dos.writeBytes("fmt ");
-                dos.writeInt(Integer.reverseBytes(16)); // 子块大小
-                dos.writeShort(Short.reverseBytes((short) 1)); // 音频格式 (1 = PCM)
-                dos.writeShort(Short.reverseBytes((short) CHANNELS)); // 通道数
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE)); // 采样率
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE * CHANNELS * bitsPerSample / 8)); // 字节率
-                dos.writeShort(Short.reverseBytes((short) (CHANNELS * bitsPerSample / 8))); // 块对齐
-                dos.writeShort(Short.reverseBytes((short) bitsPerSample)); // 每个样本的位数
-
-                // data子块
-                dos.writeBytes("data");
-                dos.writeInt(Integer.reverseBytes((int) totalPcmSize)); // 数据大小
+    public static ByteBuffer wavHeader(long dataLength) {
+        int bitsPerSample = 16; // 16位采样
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        // RIFF头
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) (36 + dataLength)); // 文件长度
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        // fmt子块
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16); // 子块大小
+        header.putShort((short) 1); // 音频格式 (1 = PCM)
+        header.putShort((short) CHANNELS); // 通道数
+        header.putInt(SAMPLE_RATE); // 采样率
+        header.putInt(SAMPLE_RATE * CHANNELS * bitsPerSample / 8); // 字节率
+        header.putShort((short) (CHANNELS * bitsPerSample / 8)); // 块对齐
+        header.putShort((short) bitsPerSample); // 每个样本的位数
+        // data子块
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) dataLength); // 数据大小
+        return header.flip();
+    }
 
-                // 依次写入每个文件的PCM数据
-                for (var pcmData : audioChunks) {
-                    dos.write(pcmData);
-                }
-            }
-            // 目前采用的处理策略是删除已经合并了的文件。
-            for (var audioPath : audioPaths) {
-                var fullPath = audioPath.startsWith(AUDIO_PATH) ? audioPath : AUDIO_PATH + audioPath;
-                Files.deleteIfExists(Paths.get(fullPath));
-            }
+    /**
+     * 聊天记录约定的wav录音路径：audio/{device-id}/{role-id}/{timestamp}-{sender}.wav
+     */
+    public static Path messageAudioPath(String deviceId, Integer roleId, String sender, Date createTime) {
+        String formattedTime = new SimpleDateFormat("yyyy-MM-dd'T'HHmmss").format(createTime);
+        return Paths.get(AUDIO_PATH, deviceId.replace(":", "-"), String.valueOf(roleId),
+                formattedTime + "-" + sender + ".wav");
+    }
 
-        } catch (Exception e) {
-            logger.error("合并音频文件时发生错误", e);
-        }
+    /**
+     * 把约定的wav录音路径换成对应的opus路径
+     */
+    public static Path withOpusSuffix(Path wavPath) {
+        String fileName = wavPath.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return wavPath.resolveSibling((dot > 0 ? fileName.substring(0, dot) : fileName) + ".opus");
     }
 
     /**
@@ -309,6 +305,12 @@ public class AudioUtils {
      * @return PCM数据字节数组
      */
     public static byte[] mp3ToPcm(String mp3Path) throws IOException {
+        // 优先在进程内解码，失败时再调用ffmpeg命令
+        try {
+            return AudioDecoder.decodeToPcm(mp3Path);
+        } catch (IOException | LinkageError e) {
+            logger.warn("进程内解码MP3失败，改用ffmpeg命令 - {}: {}", mp3Path, e.getMessage());
+        }
         try {
             // 创建临时PCM文件
             String tempPcmPath = AUDIO_PATH + UUID.randomUUID().toString().replace("-", "") + ".pcm";
@@ -357,6 +359,70 @@ public class AudioUtils {
         }
     }
 
+    /**
+     * 流式解码音频为16kHz单声道PCM，每解出一段就交给consumer；输入流由调用方关闭
+     * ffmpeg原生库可用时在进程内解码，否则通过管道交给ffmpeg命令解码。
+     * consumer抛出的运行时异常会中止解码并传给调用方
+     */
+    public static void decodeToPcm(InputStream input, Consumer<byte[]> consumer) throws IOException {
+        if (AudioDecoder.isAvailable()) {
+            try {
+                AudioDecoder.decodeToPcm(input, consumer);
+                return;
+            } catch (LinkageError e) {
+                // 输入已经读取了一部分，不能再交给ffmpeg命令
+                throw new IOException("进程内解码失败: " + e, e);
+            }
+        }
+
+        String[] command = {
+                "ffmpeg",
+                "-loglevel", "error",
+                "-i", "pipe:0",
+                "-ar", String.valueOf(SAMPLE_RATE),
+                "-ac", String.valueOf(CHANNELS),
+                "-f", "s16le", // 16位有符号小端序PCM
+                "pipe:1"
+        };
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        // 另起线程把输入写给ffmpeg，当前线程读取PCM，避免两个管道互相等待
+        AtomicReference<IOException> inputError = new AtomicReference<>();
+        Thread writer = Thread.ofVirtual().name("ffmpeg-input").start(() -> {
+            try (OutputStream stdin = process.getOutputStream()) {
+                input.transferTo(stdin);
+            } catch (IOException e) {
+                // ffmpeg提前退出时写入失败属于正常情况，读取输入失败时需要报告
+                if (process.isAlive()) {
+                    inputError.set(e);
+                }
+            }
+        });
+        try (InputStream stdout = process.getInputStream()) {
+            // 每次最多100ms的PCM
+            byte[] buffer = new byte[SAMPLE_RATE * CHANNELS * 2 / 10];
+            int read;
+            while ((read = stdout.readNBytes(buffer, 0, buffer.length)) > 0) {
+                consumer.accept(Arrays.copyOf(buffer, read));
+            }
+            int exitCode = process.waitFor();
+            writer.join();
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg解码失败，退出代码: " + exitCode);
+            }
+            if (inputError.get() != null) {
+                throw inputError.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ffmpeg解码被中断", e);
+        } finally {
+            process.destroy();
+            writer.interrupt();
+        }
+    }
+
     /**
      * 检测音频文件格式并返回MIME类型
      *
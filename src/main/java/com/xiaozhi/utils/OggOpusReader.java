@@ -0,0 +1,211 @@
+package com.xiaozhi.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ogg封装的Opus解析
+ * 按RFC 3533逐页校验：捕获标识、版本、页序号连续、CRC校验和、分段表不越界、跨页数据包的续接标志，
+ * 任何一项不符合都直接报错，不再逐字节搜索下一页或把残缺数据当作帧返回。
+ * 按RFC 7845跳过每条逻辑流开头的OpusHead和OpusTags两个头部包，只返回音频包。
+ * 完整位于一页内的数据包直接返回输入缓冲区的切片，不复制；只有跨页的数据包才拼接到新数组。
+ */
+public final class OggOpusReader {
+
+    // "OggS"，按小端读取
+    private static final int CAPTURE_PATTERN = 0x5367674F;
+    private static final int PAGE_HEADER_SIZE = 27;
+    static final int CRC_OFFSET = 22;
+
+    private static final int FLAG_CONTINUED = 0x01;
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+
+    private static final byte[] OPUS_HEAD = {'O', 'p', 'u', 's', 'H', 'e', 'a', 'd'};
+    private static final byte[] OPUS_TAGS = {'O', 'p', 'u', 's', 'T', 'a', 'g', 's'};
+
+    // Ogg使用的CRC-32，多项式0x04C11DB7，不反转、初值为0
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private OggOpusReader() {
+    }
+
+    /**
+     * 是否以Ogg页的捕获标识开头
+     */
+    public static boolean isOgg(ByteBuffer data) {
+        return data.remaining() >= 4
+                && data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(data.position()) == CAPTURE_PATTERN;
+    }
+
+    /**
+     * 解析Ogg Opus数据中的全部音频包，返回的切片与输入共享内容
+     */
+    public static List<ByteBuffer> readPackets(ByteBuffer data) throws IOException {
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        List<ByteBuffer> packets = new ArrayList<>();
+        int pos = in.position();
+        int end = in.limit();
+
+        int serial = 0;
+        int expectedSequence = 0;
+        boolean inStream = false;
+        // 当前逻辑流已经读到的头部包数量，OpusHead和OpusTags之后才是音频包
+        int headerPackets = 0;
+        boolean opus = false;
+        // 跨页数据包已经读到的部分
+        ByteArrayOutputStream partial = null;
+
+        while (pos < end) {
+            if (end - pos < PAGE_HEADER_SIZE) {
+                throw new IOException("Ogg页头不完整，位置: " + pos);
+            }
+            if (in.getInt(pos) != CAPTURE_PATTERN) {
+                throw new IOException("缺少Ogg页标识，位置: " + pos);
+            }
+            if (in.get(pos + 4) != 0) {
+                throw new IOException("不支持的Ogg版本: " + in.get(pos + 4));
+            }
+            int flags = in.get(pos + 5) & 0xFF;
+            int pageSerial = in.getInt(pos + 14);
+            int sequence = in.getInt(pos + 18);
+            int checksum = in.getInt(pos + CRC_OFFSET);
+            int segmentCount = in.get(pos + 26) & 0xFF;
+
+            int segmentTable = pos + PAGE_HEADER_SIZE;
+            if (segmentTable + segmentCount > end) {
+                throw new IOException("Ogg分段表越界，位置: " + pos);
+            }
+            int bodyLength = 0;
+            for (int i = 0; i < segmentCount; i++) {
+                bodyLength += in.get(segmentTable + i) & 0xFF;
+            }
+            int body = segmentTable + segmentCount;
+            int pageEnd = body + bodyLength;
+            if (pageEnd > end) {
+                throw new IOException("Ogg页数据不完整，位置: " + pos);
+            }
+            if (crc(in, pos, pageEnd) != checksum) {
+                throw new IOException("Ogg页校验失败，页序号: " + sequence);
+            }
+
+            if ((flags & FLAG_BOS) != 0) {
+                // 新的逻辑流只能出现在开头或上一条流结束之后（串联流）
+                if (inStream) {
+                    throw new IOException("不支持多路复用的Ogg流");
+                }
+                inStream = true;
+                serial = pageSerial;
+                expectedSequence = sequence;
+                headerPackets = 0;
+            } else if (!inStream || pageSerial != serial) {
+                throw new IOException("Ogg页不属于当前逻辑流，页序号: " + sequence);
+            }
+            if (sequence != expectedSequence) {
+                throw new IOException("Ogg页序号不连续，期望: " + expectedSequence + "，实际: " + sequence);
+            }
+            expectedSequence++;
+            if (((flags & FLAG_CONTINUED) != 0) != (partial != null)) {
+                throw new IOException("Ogg跨页数据包的续接标志不匹配，页序号: " + sequence);
+            }
+
+            int packetStart = body;
+            int offset = body;
+            for (int i = 0; i < segmentCount; i++) {
+                int lacing = in.get(segmentTable + i) & 0xFF;
+                offset += lacing;
+                if (lacing == 255) {
+                    continue;
+                }
+                // 分段长度小于255表示数据包结束
+                ByteBuffer packet;
+                if (partial != null) {
+                    partial.writeBytes(bytesOf(in, packetStart, offset));
+                    packet = ByteBuffer.wrap(partial.toByteArray());
+                    partial = null;
+                } else {
+                    packet = in.slice(packetStart, offset - packetStart);
+                }
+                packetStart = offset;
+                if (headerPackets == 0) {
+                    if (!startsWith(packet, OPUS_HEAD)) {
+                        throw new IOException("不是Opus流，缺少OpusHead");
+                    }
+                    headerPackets++;
+                    opus = true;
+                } else if (headerPackets == 1) {
+                    if (!startsWith(packet, OPUS_TAGS)) {
+                        throw new IOException("Opus流缺少OpusTags");
+                    }
+                    headerPackets++;
+                } else if (packet.hasRemaining()) {
+                    packets.add(packet);
+                }
+            }
+            if (packetStart < pageEnd) {
+                // 最后一个分段长度为255，数据包延续到下一页
+                if (partial == null) {
+                    partial = new ByteArrayOutputStream();
+                }
+                partial.writeBytes(bytesOf(in, packetStart, pageEnd));
+            }
+
+            if ((flags & FLAG_EOS) != 0) {
+                if (partial != null) {
+                    throw new IOException("Ogg流在数据包中间结束，页序号: " + sequence);
+                }
+                inStream = false;
+            }
+            pos = pageEnd;
+        }
+        if (partial != null) {
+            throw new IOException("Ogg最后一个数据包不完整");
+        }
+        if (!opus) {
+            throw new IOException("不是Opus流，缺少OpusHead");
+        }
+        return packets;
+    }
+
+    static int crc(ByteBuffer in, int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            // 计算时校验和字段按0处理
+            int b = i >= start + CRC_OFFSET && i < start + CRC_OFFSET + 4 ? 0 : in.get(i) & 0xFF;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static boolean startsWith(ByteBuffer packet, byte[] magic) {
+        if (packet.remaining() < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (packet.get(packet.position() + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytesOf(ByteBuffer in, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        in.get(start, bytes);
+        return bytes;
+    }
+}
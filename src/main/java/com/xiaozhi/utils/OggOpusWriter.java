@@ -0,0 +1,136 @@
+package com.xiaozhi.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ogg封装的Opus写入
+ * 按RFC 7845先写OpusHead和OpusTags两个头部页，之后每凑够约1秒的音频包写出一页，关闭时写出带结束标志的最后一页。
+ * 每页写出后不再修改，写入中断时已经写出的页仍然可以播放。
+ */
+public final class OggOpusWriter implements Closeable {
+
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+    private static final int MAX_SEGMENTS = 255;
+    // Opus的时间戳统一按48kHz计算
+    private static final int GRANULE_RATE = 48000;
+    private static final String VENDOR = "xiaozhi";
+
+    private final WritableByteChannel channel;
+    private final int serial = ThreadLocalRandom.current().nextInt();
+    private final int samplesPerPacket;
+    private final int packetsPerPage;
+    private final List<ByteBuffer> packets = new ArrayList<>();
+    private int segments;
+    private int sequence;
+    private long granule;
+    private boolean closed;
+
+    /**
+     * @param channel          输出通道，由调用方关闭
+     * @param sampleRate       编码前的采样率
+     * @param channels         声道数
+     * @param frameDurationMs  每个Opus包的时长
+     */
+    public OggOpusWriter(WritableByteChannel channel, int sampleRate, int channels, int frameDurationMs) throws IOException {
+        this.channel = channel;
+        this.samplesPerPacket = GRANULE_RATE / 1000 * frameDurationMs;
+        this.packetsPerPage = Math.max(1, 1000 / frameDurationMs);
+
+        ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(StandardCharsets.US_ASCII));
+        head.put((byte) 1);                 // 版本
+        head.put((byte) channels);
+        head.putShort((short) 0);           // pre-skip，编码器前导延迟很短，不做裁剪
+        head.putInt(sampleRate);
+        head.putShort((short) 0);           // 输出增益
+        head.put((byte) 0);                 // 声道映射族
+        writePage(FLAG_BOS, 0, List.of(head.flip()));
+
+        byte[] vendor = VENDOR.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer tags = ByteBuffer.allocate(8 + 4 + vendor.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        tags.put("OpusTags".getBytes(StandardCharsets.US_ASCII));
+        tags.putInt(vendor.length).put(vendor);
+        tags.putInt(0);                     // 用户注释数
+        writePage(0, 0, List.of(tags.flip()));
+    }
+
+    /**
+     * 追加一个Opus包，所在页写出之前调用方不能修改包的内容
+     */
+    public void writePacket(ByteBuffer packet) throws IOException {
+        int packetSegments = packet.remaining() / 255 + 1;
+        if (segments + packetSegments > MAX_SEGMENTS) {
+            flushPage(0);
+        }
+        packets.add(packet.duplicate());
+        segments += packetSegments;
+        granule += samplesPerPacket;
+        if (packets.size() >= packetsPerPage) {
+            flushPage(0);
+        }
+    }
+
+    /**
+     * 写出剩余的音频包和结束页，不关闭输出通道
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushPage(FLAG_EOS);
+    }
+
+    private void flushPage(int flags) throws IOException {
+        if (packets.isEmpty() && flags == 0) {
+            return;
+        }
+        writePage(flags, granule, packets);
+        packets.clear();
+        segments = 0;
+    }
+
+    private void writePage(int flags, long granulePosition, List<ByteBuffer> pagePackets) throws IOException {
+        int segmentCount = 0;
+        int bodyLength = 0;
+        for (ByteBuffer packet : pagePackets) {
+            segmentCount += packet.remaining() / 255 + 1;
+            bodyLength += packet.remaining();
+        }
+        ByteBuffer page = ByteBuffer.allocate(27 + segmentCount + bodyLength).order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(StandardCharsets.US_ASCII));
+        page.put((byte) 0);
+        page.put((byte) flags);
+        page.putLong(granulePosition);
+        page.putInt(serial);
+        page.putInt(sequence++);
+        page.putInt(0);                     // 校验和，最后填入
+        page.put((byte) segmentCount);
+        for (ByteBuffer packet : pagePackets) {
+            int remaining = packet.remaining();
+            while (remaining >= 255) {
+                page.put((byte) 255);
+                remaining -= 255;
+            }
+            page.put((byte) remaining);
+        }
+        for (ByteBuffer packet : pagePackets) {
+            page.put(packet.duplicate());
+        }
+        page.putInt(OggOpusReader.CRC_OFFSET, OggOpusReader.crc(page, 0, page.position()));
+        page.flip();
+        while (page.hasRemaining()) {
+            channel.write(page);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.xiaozhi.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 预编码Opus帧文件
+ * 统一的存储格式：4字节标识"XZOF"、4字节帧数n、n+1个4字节帧偏移（相对数据区），之后是连续存放的帧数据，均为大端。
+ * 文件通过FileChannel.map只读映射，按偏移索引直接返回帧的切片，读取时不复制、不解析，也不占用堆内存。
+ * 打开时校验标识和偏移索引，索引与文件长度不一致（写入中断等）时直接报错。
+ */
+public final class OpusFrameFile extends AbstractList<ByteBuffer> implements RandomAccess {
+
+    public static final String SUFFIX = ".xzof";
+
+    // "XZOF"
+    private static final int MAGIC = 0x585A4F46;
+    private static final int INDEX_OFFSET = 8;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int dataStart;
+
+    private OpusFrameFile(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.limit() < INDEX_OFFSET + 4 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("不是Opus帧文件: " + path);
+        }
+        int frames = buffer.getInt(4);
+        long indexEnd = INDEX_OFFSET + 4L * (frames + 1L);
+        if (frames < 0 || indexEnd > buffer.limit()) {
+            throw new IOException("Opus帧文件索引越界: " + path);
+        }
+        int previous = buffer.getInt(INDEX_OFFSET);
+        if (previous != 0) {
+            throw new IOException("Opus帧文件索引错误: " + path);
+        }
+        for (int i = 1; i <= frames; i++) {
+            int offset = buffer.getInt(INDEX_OFFSET + 4 * i);
+            if (offset < previous) {
+                throw new IOException("Opus帧文件索引错误: " + path);
+            }
+            previous = offset;
+        }
+        if (indexEnd + previous != buffer.limit()) {
+            throw new IOException("Opus帧文件不完整: " + path);
+        }
+        this.buffer = buffer;
+        this.count = frames;
+        this.dataStart = (int) indexEnd;
+    }
+
+    /**
+     * 只读映射帧文件，映射在文件关闭、删除后仍然有效
+     */
+    public static OpusFrameFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Opus帧文件过大: " + path);
+            }
+            return new OpusFrameFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path);
+        }
+    }
+
+    /**
+     * 写入帧文件，先写临时文件再原子替换，读取方不会看到写了一半的文件
+     */
+    public static void write(Path path, List<ByteBuffer> frames) throws IOException {
+        int dataLength = 0;
+        for (ByteBuffer frame : frames) {
+            dataLength += frame.remaining();
+        }
+        ByteBuffer out = ByteBuffer.allocate(INDEX_OFFSET + 4 * (frames.size() + 1) + dataLength);
+        out.putInt(MAGIC).putInt(frames.size());
+        int offset = 0;
+        out.putInt(offset);
+        for (ByteBuffer frame : frames) {
+            offset += frame.remaining();
+            out.putInt(offset);
+        }
+        for (ByteBuffer frame : frames) {
+            out.put(frame.duplicate());
+        }
+        out.flip();
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 第index帧的只读切片，与映射的文件共享内容
+     */
+    @Override
+    public ByteBuffer get(int index) {
+        Objects.checkIndex(index, count);
+        int start = buffer.getInt(INDEX_OFFSET + 4 * index);
+        int end = buffer.getInt(INDEX_OFFSET + 4 * (index + 1));
+        return buffer.slice(dataStart + start, end - start);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 帧数据的总字节数
+     */
+    public long bytes() {
+        return buffer.limit() - dataStart;
+    }
+}
@@ -10,7 +10,6 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -254,8 +253,8 @@ public class OpusProcessor {
                 }
             }
 
-            // 解析OGG
-            List<byte[]> packets = parseOgg(data);
+            // 解析OGG，头部包由解析器跳过
+            List<ByteBuffer> packets = OggOpusReader.readPackets(ByteBuffer.wrap(data));
 
             if (packets.isEmpty()) {
                 logger.warn("OGG中无数据包");
@@ -264,20 +263,12 @@ public class OpusProcessor {
 
             // 解码所有包
             ByteArrayOutputStream out = new ByteArrayOutputStream();
-            int count = 0;
 
-            for (byte[] packet : packets) {
+            for (ByteBuffer packet : packets) {
                 try {
-                    // 跳过Opus头
-                    if (packet.length > 8 && packet[0] == 'O' && packet[1] == 'p'
-                            && packet[2] == 'u' && packet[3] == 's') {
-                        continue;
-                    }
-
-                    byte[] pcm = opusToPcm(sid, packet);
+                    byte[] pcm = opusToPcm(sid, toArray(packet));
                     if (pcm.length > 0) {
                         out.write(pcm);
-                        count++;
                     }
                 } catch (OpusException e) {
                     logger.warn("包解码失败: {}", e.getMessage());
@@ -292,330 +283,10 @@ public class OpusProcessor {
         }
     }
 
-    /**
-     * 解析OGG格式
-     */
-    private List<byte[]> parseOgg(byte[] data) {
-        List<byte[]> packets = new ArrayList<>();
-        ByteArrayInputStream in = new ByteArrayInputStream(data);
-
-        byte[] pattern = new byte[4];
-        byte[] segments = new byte[255];
-
-        while (in.available() > 0) {
-            try {
-                // 读取OGG标识
-                if (in.read(pattern, 0, 4) < 4)
-                    break;
-
-                // 检查标识
-                if (pattern[0] != 'O' || pattern[1] != 'g' || pattern[2] != 'g' || pattern[3] != 'S') {
-                    // 查找下一个标识
-                    int b;
-                    boolean found = false;
-                    while ((b = in.read()) != -1) {
-                        if (b == 'O') {
-                            if (in.read(pattern, 0, 3) < 3)
-                                break;
-                            if (pattern[0] == 'g' && pattern[1] == 'g' && pattern[2] == 'S') {
-                                found = true;
-                                break;
-                            }
-                        }
-                    }
-                    if (!found)
-                        break;
-                }
-
-                // 跳过版本和标志
-                in.skip(2);
-
-                // 跳过粒度位置、序列号、页序号、校验和
-                in.skip(16);
-
-                // 读取分段数
-                int segCount = in.read();
-                if (segCount == -1)
-                    break;
-
-                // 读取分段表
-                if (in.read(segments, 0, segCount) < segCount)
-                    break;
-
-                // 计算数据长度
-                int dataLen = 0;
-                for (int i = 0; i < segCount; i++) {
-                    dataLen += segments[i] & 0xFF;
-                }
-
-                // 读取数据
-                byte[] pageData = new byte[dataLen];
-                int read = in.read(pageData, 0, dataLen);
-                if (read < dataLen) {
-                    byte[] actual = new byte[read];
-                    System.arraycopy(pageData, 0, actual, 0, read);
-                    pageData = actual;
-                }
-
-                // 解析数据包
-                int offset = 0;
-                int packetLen = 0;
-
-                for (int i = 0; i < segCount; i++) {
-                    int segLen = segments[i] & 0xFF;
-                    packetLen += segLen;
-
-                    // 如果段长不是255，表示包结束
-                    if (segLen != 255) {
-                        if (packetLen > 0 && offset + packetLen <= pageData.length) {
-                            byte[] packet = new byte[packetLen];
-                            System.arraycopy(pageData, offset, packet, 0, packetLen);
-                            packets.add(packet);
-                        }
-                        offset += packetLen;
-                        packetLen = 0;
-                    }
-                }
-
-                // 处理最后一个包
-                if (packetLen > 0 && offset + packetLen <= pageData.length) {
-                    byte[] packet = new byte[packetLen];
-                    System.arraycopy(pageData, offset, packet, 0, packetLen);
-                    packets.add(packet);
-                }
-            } catch (Exception e) {
-                logger.warn("OGG解析错误: {}", e.getMessage());
-            }
-        }
-
-        return packets;
-    }
-
-    /**
-     * 读取Opus文件
-     */
-    public List<byte[]> readOpus(File file) throws IOException {
-        List<byte[]> frames = new ArrayList<>();
-
-        // 检查文件大小
-        long size = file.length();
-        if (size <= 0) {
-            logger.warn("空文件: {}", file.getPath());
-            return frames;
-        }
-
-        try (FileInputStream fis = new FileInputStream(file)) {
-            // 检查文件格式
-            byte[] header = new byte[8];
-            fis.read(header, 0, Math.min(8, (int) size));
-            fis.getChannel().position(0);
-
-            // 检查OGG格式
-            if (isOgg(header)) {
-                return readOgg(file);
-            }
-
-            // 检查原始Opus格式
-            if (isOpusHead(header)) {
-                return readRaw(fis);
-            }
-
-            // 尝试帧格式
-            frames = readFramed(fis);
-            if (!frames.isEmpty()) {
-                return frames;
-            }
-
-            return readWhole(file);
-        } catch (Exception e) {
-            logger.error("读取失败: {}", file.getName(), e);
-            return readWhole(file);
-        }
-    }
-
-    /**
-     * 检查OGG格式
-     */
-    private boolean isOgg(byte[] data) {
-        return data.length >= 4 &&
-                data[0] == 'O' && data[1] == 'g' &&
-                data[2] == 'g' && data[3] == 'S';
-    }
-
-    /**
-     * 检查Opus头
-     */
-    private boolean isOpusHead(byte[] data) {
-        return data.length >= 8 &&
-                data[0] == 'O' && data[1] == 'p' &&
-                data[2] == 'u' && data[3] == 's' &&
-                data[4] == 'H' && data[5] == 'e' &&
-                data[6] == 'a' && data[7] == 'd';
-    }
-
-    /**
-     * 读取OGG文件
-     */
-    private List<byte[]> readOgg(File file) throws IOException {
-        // 使用Files.readAllBytes代替FileInputStream.readAllBytes
-        byte[] data = Files.readAllBytes(file.toPath());
-        return parseOgg(data);
-    }
-
-    /**
-     * 读取原始Opus文件
-     */
-    private List<byte[]> readRaw(FileInputStream fis) throws IOException {
-        List<byte[]> frames = new ArrayList<>();
-
-        // 跳过头部
-        fis.skip(19);
-
-        byte[] buffer = new byte[4096];
-        int read;
-
-        while ((read = fis.read(buffer)) > 0) {
-            byte[] frame = new byte[read];
-            System.arraycopy(buffer, 0, frame, 0, read);
-            frames.add(frame);
-        }
-
-        return frames;
-    }
-
-    /**
-     * 读取帧格式文件
-     */
-    private List<byte[]> readFramed(FileInputStream fis) throws IOException {
-        // 尝试2字节帧头
-        fis.getChannel().position(0);
-        List<byte[]> frames = readFrames(fis, 2);
-
-        if (!frames.isEmpty()) {
-            logger.info("2字节帧头成功: {} 帧", frames.size());
-            return frames;
-        }
-
-        // 尝试4字节帧头
-        fis.getChannel().position(0);
-        frames = readFrames(fis, 4);
-
-        if (!frames.isEmpty()) {
-            logger.info("4字节帧头成功: {} 帧", frames.size());
-            return frames;
-        }
-
-        // 尝试固定大小帧
-        fis.getChannel().position(0);
-        frames = readFixed(fis, 80);
-
-        if (!frames.isEmpty()) {
-            logger.info("固定帧成功: {} 帧", frames.size());
-        }
-
-        return frames;
-    }
-
-    /**
-     * 读取带帧头的文件
-     */
-    private List<byte[]> readFrames(FileInputStream fis, int headerSize) throws IOException {
-        List<byte[]> frames = new ArrayList<>();
-        byte[] buffer = new byte[MAX_SIZE];
-        byte[] sizeBytes = new byte[headerSize];
-        int good = 0;
-        int bad = 0;
-
-        while (fis.read(sizeBytes, 0, headerSize) == headerSize) {
-            int frameSize = getFrameSize(sizeBytes, headerSize);
-
-            // 检查帧大小
-            if (frameSize <= 0 || frameSize > MAX_SIZE) {
-                bad++;
-                if (bad > 3)
-                    break;
-                continue;
-            }
-
-            // 读取帧
-            int read = fis.read(buffer, 0, frameSize);
-            if (read != frameSize)
-                break;
-
-            byte[] frame = new byte[frameSize];
-            System.arraycopy(buffer, 0, frame, 0, frameSize);
-            frames.add(frame);
-            good++;
-
-            // 5个有效帧就认为格式正确
-            if (good >= 5)
-                return frames;
-        }
-
-        // 帧太少，可能不是正确格式
-        if (good < 5)
-            frames.clear();
-
-        return frames;
-    }
-
-    /**
-     * 获取帧大小
-     */
-    private int getFrameSize(byte[] bytes, int size) {
-        if (size == 2) {
-            return ((bytes[1] & 0xFF) << 8) | (bytes[0] & 0xFF);
-        } else if (size == 4) {
-            return ((bytes[3] & 0xFF) << 24) |
-                    ((bytes[2] & 0xFF) << 16) |
-                    ((bytes[1] & 0xFF) << 8) |
-                    (bytes[0] & 0xFF);
-        }
-        return -1;
-    }
-
-    /**
-     * 读取固定大小帧
-     */
-    private List<byte[]> readFixed(FileInputStream fis, int frameSize) throws IOException {
-        List<byte[]> frames = new ArrayList<>();
-        byte[] buffer = new byte[frameSize];
-
-        int read;
-        while ((read = fis.read(buffer)) == frameSize) {
-            byte[] frame = new byte[frameSize];
-            System.arraycopy(buffer, 0, frame, 0, frameSize);
-            frames.add(frame);
-
-            // 足够多的帧
-            if (frames.size() >= 5)
-                return frames;
-        }
-
-        // 处理最后一帧
-        if (read > 0) {
-            byte[] last = new byte[read];
-            System.arraycopy(buffer, 0, last, 0, read);
-            frames.add(last);
-        }
-
-        return frames;
-    }
-
-    /**
-     * 读取整个文件作为单帧
-     */
-    private List<byte[]> readWhole(File file) throws IOException {
-        List<byte[]> frames = new ArrayList<>();
-
-        // 使用Files.readAllBytes代替FileInputStream.readAllBytes
-        byte[] data = Files.readAllBytes(file.toPath());
-        if (data.length > 0) {
-            frames.add(data);
-            logger.info("整个文件作为单帧: {} 字节", data.length);
-        }
-
-        return frames;
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
     }
 
     /**
@@ -775,6 +446,7 @@ public class OpusProcessor {
         decoders.remove(sid);
         overlaps.remove(sid);
         leftoverStates.remove(sid); // 清理残留数据状态
+        encoders.remove(sid);
 
         // 清理编码器
         List<String> toRemove = new ArrayList<>();
@@ -0,0 +1,262 @@
+package com.xiaozhi.common.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class BoundedCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        BoundedCache cache = cache(2, Duration.ZERO, Duration.ZERO);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        // 访问a后b成为最久未使用
+        assertEquals(1, cache.get("a").get());
+
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a").get());
+        assertEquals(3, cache.get("c").get());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    void expiresAfterWrite() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofMillis(100), Duration.ZERO);
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a").get());
+
+        Thread.sleep(150);
+
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.expirationCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void writesPurgeExpiredEntriesThatAreNeverRead() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofMillis(100), Duration.ZERO);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        Thread.sleep(150);
+        cache.put("c", 3);
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.expirationCount());
+    }
+
+    @Test
+    void putIfAbsentReplacesExpiredEntry() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofMillis(100), Duration.ZERO);
+        assertNull(cache.putIfAbsent("a", 1));
+        assertEquals(1, cache.putIfAbsent("a", 2).get());
+
+        Thread.sleep(150);
+
+        assertNull(cache.putIfAbsent("a", 3));
+        assertEquals(3, cache.get("a").get());
+    }
+
+    @Test
+    void refreshAheadReturnsStaleValueAndReloadsInBackground() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofSeconds(10), Duration.ofMillis(50));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        cache.setLoader(key -> {
+            loads.incrementAndGet();
+            await(release);
+            return "新值";
+        });
+        cache.put("a", "旧值");
+        Thread.sleep(80);
+
+        // 刷新完成前继续返回旧值，且只发起一次刷新
+        assertEquals("旧值", cache.get("a").get());
+        assertEquals("旧值", cache.get("a").get());
+        release.countDown();
+
+        waitUntil(() -> "新值".equals(cache.get("a").get()), "刷新完成");
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.refreshCount());
+    }
+
+    @Test
+    void refreshAheadRemovesEntryWhenLoaderReturnsNull() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofSeconds(10), Duration.ofMillis(50));
+        cache.setLoader(key -> null);
+        cache.put("a", "旧值");
+        Thread.sleep(80);
+
+        assertEquals("旧值", cache.get("a").get());
+
+        waitUntil(() -> cache.get("a") == null, "数据已不存在时删除条目");
+    }
+
+    @Test
+    void refreshAheadKeepsStaleValueWhenLoaderFails() throws InterruptedException {
+        BoundedCache cache = cache(10, Duration.ofSeconds(10), Duration.ofMillis(50));
+        AtomicInteger loads = new AtomicInteger();
+        cache.setLoader(key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            return "新值";
+        });
+        cache.put("a", "旧值");
+        Thread.sleep(80);
+
+        assertEquals("旧值", cache.get("a").get());
+        waitUntil(() -> loads.get() == 1, "第一次刷新");
+
+        // 失败后下一次命中重新刷新
+        waitUntil(() -> "新值".equals(cache.get("a").get()), "再次刷新");
+    }
+
+    @Test
+    void concurrentGetWithLoaderLoadsOnce() throws Exception {
+        BoundedCache cache = cache(10, Duration.ZERO, Duration.ZERO);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("a", () -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(100);
+                        return "值";
+                    });
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("值", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, cache.putCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loaderFailureReachesWaitersAndIsNotCached() throws Exception {
+        BoundedCache cache = cache(10, Duration.ZERO, Duration.ZERO);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("a", () -> {
+                loading.countDown();
+                release.await();
+                throw new IllegalStateException("数据库不可用");
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // 等待中的调用不会自己加载，收到同一个异常
+            Future<String> waiter = executor.submit(() -> cache.get("a", () -> "不会调用"));
+            Thread.sleep(50);
+            release.countDown();
+
+            for (Future<String> result : List.of(first, waiter)) {
+                ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(Cache.ValueRetrievalException.class, error.getCause());
+            }
+            assertEquals(0, cache.size());
+            // 失败不缓存，之后重新加载
+            assertEquals("值", cache.get("a", () -> "值"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictDuringLoadDiscardsLoadedValue() throws Exception {
+        BoundedCache cache = cache(10, Duration.ZERO, Duration.ZERO);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = executor.submit(() -> cache.get("a", () -> {
+                loading.countDown();
+                release.await();
+                return "旧值";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // 加载期间数据被修改并删除缓存
+            cache.evict("a");
+            release.countDown();
+
+            assertEquals("旧值", result.get(5, TimeUnit.SECONDS));
+            assertNull(cache.get("a"));
+            assertEquals("新值", cache.get("a", () -> "新值"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cachesNullValues() {
+        BoundedCache cache = cache(10, Duration.ZERO, Duration.ZERO);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertNull(cache.get("a", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get("a", () -> {
+            loads.incrementAndGet();
+            return "值";
+        }));
+
+        assertEquals(1, loads.get());
+    }
+
+    private static BoundedCache cache(int maxSize, Duration expire, Duration refresh) {
+        return new BoundedCache("test", new CacheSpec(maxSize, expire, refresh), NearCacheInvalidator.NONE);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("等待超时: " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
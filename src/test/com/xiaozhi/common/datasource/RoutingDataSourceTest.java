@@ -0,0 +1,165 @@
+package com.xiaozhi.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用两个H2内存库分别作为主库和从库，按DataSourceConfig的方式组装，查询各库中的标记判断走了哪个库
+ */
+class RoutingDataSourceTest {
+
+    private HikariDataSource primaryPool;
+    private HikariDataSource replicaPool;
+    private ReplicaDataSource replica;
+    private RoutingDataSource routing;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readOnlyTx;
+    private TransactionTemplate writeTx;
+    private Queries queries;
+
+    /**
+     * 模拟业务Service，方法标注了ReadReplica
+     */
+    public interface Queries {
+        String whichDatabase();
+    }
+
+    @BeforeEach
+    void setUp() {
+        String id = UUID.randomUUID().toString();
+        primaryPool = pool("primary-" + id, false);
+        replicaPool = pool("replica-" + id, true);
+        new JdbcTemplate(primaryPool).execute("CREATE TABLE db_marker (name VARCHAR(20))");
+        new JdbcTemplate(primaryPool).update("INSERT INTO db_marker VALUES ('primary')");
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaPool);
+        replicaJdbc.execute("CREATE TABLE db_marker (name VARCHAR(20))");
+        replicaJdbc.update("INSERT INTO db_marker VALUES ('replica')");
+        // 模拟SHOW REPLICA STATUS的结果
+        replicaJdbc.execute("CREATE TABLE replica_status (Seconds_Behind_Source INT)");
+        replicaJdbc.update("INSERT INTO replica_status VALUES (0)");
+
+        replica = new ReplicaDataSource(replicaPool, "SELECT Seconds_Behind_Source FROM replica_status", 5);
+        routing = new RoutingDataSource(primaryPool, List.of(replica), 3600);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbc = new JdbcTemplate(dataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        writeTx = new TransactionTemplate(transactionManager);
+
+        ProxyFactory proxyFactory = new ProxyFactory(new Queries() {
+            @Override
+            @ReadReplica
+            public String whichDatabase() {
+                return currentDatabase();
+            }
+        });
+        proxyFactory.addInterface(Queries.class);
+        proxyFactory.addAdvisor(new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(ReadReplica.class), new ReadReplicaInterceptor()));
+        queries = (Queries) proxyFactory.getProxy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        routing.close();
+    }
+
+    @Test
+    void queriesWithoutTransactionGoToPrimary() {
+        assertEquals("primary", currentDatabase());
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        assertEquals("replica", readOnlyTx.execute(status -> currentDatabase()));
+    }
+
+    @Test
+    void readReplicaMethodWithoutTransactionGoesToReplica() {
+        assertEquals("replica", queries.whichDatabase());
+        // 方法结束后恢复
+        assertEquals("primary", currentDatabase());
+    }
+
+    @Test
+    void readReplicaMethodInsideWriteTransactionStaysOnPrimary() {
+        String database = writeTx.execute(status -> {
+            jdbc.update("INSERT INTO db_marker VALUES ('written')");
+            return queries.whichDatabase();
+        });
+
+        assertEquals("primary", database);
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimaryUntilItCatchesUp() {
+        new JdbcTemplate(replicaPool).update("UPDATE replica_status SET Seconds_Behind_Source = 30");
+        replica.check();
+
+        assertFalse(replica.isAvailable());
+        assertEquals(30, replica.getLagSeconds());
+        assertEquals("primary", readOnlyTx.execute(status -> currentDatabase()));
+        assertEquals("primary", queries.whichDatabase());
+
+        new JdbcTemplate(replicaPool).update("UPDATE replica_status SET Seconds_Behind_Source = 1");
+        replica.check();
+
+        assertTrue(replica.isAvailable());
+        assertEquals("replica", queries.whichDatabase());
+    }
+
+    @Test
+    void brokenReplicationFallsBackToPrimary() {
+        new JdbcTemplate(replicaPool).update("UPDATE replica_status SET Seconds_Behind_Source = NULL");
+        replica.check();
+
+        assertFalse(replica.isAvailable());
+        assertEquals("primary", queries.whichDatabase());
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() {
+        // 从库在两次检查之间宕机，获取连接失败时直接回退
+        replicaPool.close();
+
+        assertEquals("primary", readOnlyTx.execute(status -> currentDatabase()));
+        assertEquals("primary", queries.whichDatabase());
+
+        replica.check();
+        assertFalse(replica.isAvailable());
+    }
+
+    private String currentDatabase() {
+        return jdbc.queryForObject("SELECT name FROM db_marker WHERE name <> 'written'", String.class);
+    }
+
+    private static HikariDataSource pool(String name, boolean readOnly) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(name);
+        pool.setJdbcUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(2);
+        pool.setConnectionTimeout(1000);
+        pool.setReadOnly(readOnly);
+        return pool;
+    }
+}
@@ -0,0 +1,109 @@
+package com.xiaozhi.communication.common;
+
+import com.xiaozhi.dao.DeviceMapper;
+import com.xiaozhi.entity.DevicePresence;
+import com.xiaozhi.entity.SysDevice;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DevicePresenceTrackerTest {
+
+    private DevicePresenceTracker tracker;
+    private DeviceMapper deviceMapper;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new DevicePresenceTracker();
+        deviceMapper = mock(DeviceMapper.class);
+        ReflectionTestUtils.setField(tracker, "deviceMapper", deviceMapper);
+    }
+
+    @Test
+    void offlineDeviceIsDroppedAfterItIsWritten() {
+        tracker.online("d1", "s1", "127.0.0.1", null);
+        tracker.offline("d1", "s1");
+
+        tracker.flush();
+
+        verify(deviceMapper).updatePresence(any());
+        assertEquals(0, tracker.pending());
+        assertNull(tracker.getPresence("d1"));
+    }
+
+    @Test
+    void offlineDeviceIsKeptWhenItsWriteFails() {
+        tracker.online("d1", "s1", "127.0.0.1", null);
+        tracker.flush();
+        tracker.offline("d1", "s1");
+        doThrow(new IllegalStateException("数据库不可用")).when(deviceMapper).updatePresence(any());
+
+        tracker.flush();
+
+        // 数据库中仍是在线，内存中保留离线状态覆盖查询结果，并等待重试
+        assertEquals(1, tracker.pending());
+        assertNotNull(tracker.getPresence("d1"));
+        assertFalse(tracker.isOnline("d1"));
+
+        doReturn(1).when(deviceMapper).updatePresence(any());
+        tracker.flush();
+
+        assertEquals(0, tracker.pending());
+        assertNull(tracker.getPresence("d1"));
+    }
+
+    @Test
+    void onlyTheFailedChunkIsKept() {
+        // 超过一条UPDATE的数量，分两批写入，第一批失败
+        for (int i = 0; i < 201; i++) {
+            tracker.offline("d" + i, "s" + i);
+        }
+        doThrow(new IllegalStateException("数据库不可用")).doReturn(1).when(deviceMapper).updatePresence(any());
+
+        tracker.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DevicePresence>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceMapper, times(2)).updatePresence(captor.capture());
+        List<DevicePresence> failed = captor.getAllValues().get(0);
+        List<DevicePresence> written = captor.getAllValues().get(1);
+        assertEquals(201, failed.size() + written.size());
+
+        assertEquals(failed.size(), tracker.pending());
+        failed.forEach(presence -> assertSame(presence, tracker.getPresence(presence.getDeviceId())));
+        written.forEach(presence -> assertNull(tracker.getPresence(presence.getDeviceId())));
+    }
+
+    @Test
+    void newerStateDuringFailedWriteIsNotOverwritten() {
+        tracker.offline("d1", "s1");
+        // 写入期间设备重新上线
+        doAnswer(invocation -> {
+            tracker.online("d1", "s2", "127.0.0.1", null);
+            throw new IllegalStateException("数据库不可用");
+        }).when(deviceMapper).updatePresence(any());
+
+        tracker.flush();
+
+        assertTrue(tracker.isOnline("d1"));
+        assertEquals(1, tracker.pending());
+        assertEquals(SysDevice.DEVICE_STATE_ONLINE, tracker.getPresence("d1").getState());
+    }
+}
@@ -0,0 +1,69 @@
+package com.xiaozhi.dialogue.llm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式断句器基准测试
+ * 模拟LLM按2~4个字符一个token的流式输出，运行方式：直接执行main方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SentenceSegmenterBenchmark {
+
+    private static final String REPLY = "你好呀😊！今天天气真不错，气温大约是23.5度，适合出去走走。"
+            + "我给你讲个故事吧：从前有一只小兔子(≧▽≦)，它特别喜欢吃胡萝卜，每天都要吃1,000根！"
+            + "Let's count together: one, two, three... Are you ready? 好的，我们开始吧\n"
+            + "最后提醒你，记得多喝水哦 :-) 晚安～";
+
+    private List<String> tokens;
+
+    @Setup
+    public void setup() {
+        tokens = new ArrayList<>();
+        StringBuilder reply = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            reply.append(REPLY);
+        }
+        int step = 2;
+        for (int i = 0; i < reply.length(); i += step) {
+            int end = Math.min(reply.length(), i + step);
+            tokens.add(reply.substring(i, end));
+            step = step % 3 + 2;
+        }
+    }
+
+    @Benchmark
+    public void segment(Blackhole blackhole) {
+        SentenceSegmenter segmenter = new SentenceSegmenter(blackhole::consume);
+        for (String token : tokens) {
+            segmenter.append(token);
+        }
+        blackhole.consume(segmenter.remainder());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SentenceSegmenterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
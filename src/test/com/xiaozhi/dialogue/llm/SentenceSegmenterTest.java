@@ -0,0 +1,214 @@
+package com.xiaozhi.dialogue.llm;
+
+import com.xiaozhi.utils.EmojiUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 新断句器与原先逐字符正则断句逻辑的对照测试
+ * 同样的输入按不同的token切分分别交给两者，断出的句子和剩余内容应当一致；
+ * 唯一有意的差异是数字中的逗号（如1,000）不再断句。
+ */
+class SentenceSegmenterTest {
+
+    private static final List<String> SAME_AS_LEGACY = List.of(
+            // 中英文混合标点
+            "你好呀！今天天气真不错，适合出去走走。我们去公园吧？好的，那就出发！",
+            "Hello there! How are you today? I'm fine, thanks; and you? 我也很好：一切顺利。",
+            "第一行内容比较长\n第二行内容也很长\r\n第三行：\"引号里的内容\"结束了",
+            "短。短！短？这一句足够长了。嗯，好",
+            "。。。！！！？？？，，，真正的内容在这里。",
+            "一、二、三、四、五、六；七、八。",
+            // 表情符号，包括基本多文种平面内和需要代理对的
+            "你好呀😊今天很开心🎉我们一起玩吧✨好不好❤️",
+            "太棒了👍👍👍继续加油💪！",
+            "天气☀️晴朗，温度适宜⛅适合出行",
+            // 颜文字
+            "我好开心(≧▽≦)今天真是太好了",
+            "好累啊(；′⌒`)需要休息一下",
+            "你看<(￣︶￣)>多么得意的样子",
+            "嘿嘿\\(^o^)/真棒呀，继续",
+            "呵呵 :-) 这个笑话不错 ;) 再讲一个 :D 好吗",
+            "无奈¯\\_(ツ)_/¯就这样吧，没办法",
+            "害羞*_*了呢，真的好害羞",
+            "括号太长(这是一段很长很长的括号内容超过十个字)不算颜文字，所以继续",
+            // 数字，不含数字间逗号
+            "价格是23.5元，数量是100个。总共2350元！",
+            "版本3.14.15发布了，请升级到最新版本。",
+            "共有100,然后还有200;最后是300。",
+            "第1名是小明,第2名是小红。");
+
+    @Test
+    void matchesLegacySegmentation() {
+        Random random = new Random(42);
+        for (String text : SAME_AS_LEGACY) {
+            List<List<String>> splits = List.of(
+                    List.of(text),
+                    splitByCodePoint(text),
+                    splitRandomly(text, random),
+                    splitRandomly(text, random));
+            for (List<String> tokens : splits) {
+                assertEquals(legacy(tokens), segment(tokens), () -> "输入: " + tokens);
+            }
+        }
+    }
+
+    @Test
+    void reassemblesSurrogatePairsSplitAcrossTokens() {
+        for (String text : SAME_AS_LEGACY) {
+            // 按char切分会把代理对拆到两个token中，结果应与完整码点输入相同
+            List<String> chars = new ArrayList<>();
+            for (char c : text.toCharArray()) {
+                chars.add(String.valueOf(c));
+            }
+            assertEquals(legacy(splitByCodePoint(text)), segment(chars), () -> "输入: " + text);
+        }
+    }
+
+    @Test
+    void keepsCommaBetweenDigitsInSentence() {
+        String text = "今天一共卖出了1,000件商品，收入是2,500.5元。";
+
+        // 原逻辑在数字中的逗号处断句
+        assertEquals(new Result(List.of("今天一共卖出了1,", "000件商品，", "收入是2,", "500.5元。"), ""),
+                legacy(splitByCodePoint(text)));
+        // 新断句器保留数字完整
+        assertEquals(new Result(List.of("今天一共卖出了1,000件商品，", "收入是2,500.5元。"), ""),
+                segment(splitByCodePoint(text)));
+        assertEquals(segment(List.of(text)), segment(splitByCodePoint(text)));
+    }
+
+    @Test
+    void commaAfterDigitStillBreaksBeforeText() {
+        // 数字后的逗号要看到下一个字符才能决定，断出的句子不包含下一个字符
+        String text = "我们一共有100,然后再买50,好吗";
+        assertEquals(legacy(splitByCodePoint(text)), segment(splitByCodePoint(text)));
+        assertEquals(new Result(List.of("我们一共有100,", "然后再买50,"), "好吗"),
+                segment(splitByCodePoint(text)));
+    }
+
+    private static Result segment(List<String> tokens) {
+        List<String> sentences = new ArrayList<>();
+        SentenceSegmenter segmenter = new SentenceSegmenter(sentences::add);
+        for (String token : tokens) {
+            segmenter.append(token);
+        }
+        return new Result(sentences, segmenter.remainder());
+    }
+
+    private static Result legacy(List<String> tokens) {
+        LegacySegmenter segmenter = new LegacySegmenter();
+        for (String token : tokens) {
+            segmenter.onToken(token);
+        }
+        return new Result(segmenter.sentences, segmenter.currentSentence.toString());
+    }
+
+    private static List<String> splitByCodePoint(String text) {
+        List<String> tokens = new ArrayList<>();
+        text.codePoints().forEach(codePoint -> tokens.add(new String(Character.toChars(codePoint))));
+        return tokens;
+    }
+
+    // 按1~4个码点一段随机切分，模拟LLM的token
+    private static List<String> splitRandomly(String text, Random random) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            int end = i;
+            for (int n = 1 + random.nextInt(4); n > 0 && end < text.length(); n--) {
+                end += Character.charCount(text.codePointAt(end));
+            }
+            tokens.add(text.substring(i, end));
+            i = end;
+        }
+        return tokens;
+    }
+
+    private record Result(List<String> sentences, String remainder) {
+    }
+
+    /**
+     * 原ChatService.TokenStreamResponseListener中的断句逻辑
+     */
+    private static class LegacySegmenter {
+        private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
+        private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
+        private static final Pattern SPECIAL_PATTERN = Pattern.compile("[：:\"]");
+        private static final Pattern NEWLINE_PATTERN = Pattern.compile("[\n\r]");
+        private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
+        private static final int MIN_SENTENCE_LENGTH = 5;
+
+        final StringBuilder currentSentence = new StringBuilder();
+        final StringBuilder contextBuffer = new StringBuilder();
+        final List<String> sentences = new ArrayList<>();
+
+        void onToken(String token) {
+            for (int i = 0; i < token.length();) {
+                int codePoint = token.codePointAt(i);
+                String charStr = new String(Character.toChars(codePoint));
+
+                contextBuffer.append(charStr);
+                if (contextBuffer.length() > 20) {
+                    contextBuffer.delete(0, contextBuffer.length() - 20);
+                }
+                currentSentence.append(charStr);
+
+                boolean shouldSendSentence = false;
+                boolean isEndMark = SENTENCE_END_PATTERN.matcher(charStr).find();
+                boolean isPauseMark = PAUSE_PATTERN.matcher(charStr).find();
+                boolean isSpecialMark = SPECIAL_PATTERN.matcher(charStr).find();
+                boolean isNewline = NEWLINE_PATTERN.matcher(charStr).find();
+                boolean isEmoji = EmojiUtils.isEmoji(codePoint);
+
+                boolean containsKaomoji = false;
+                if (currentSentence.length() >= 3) {
+                    containsKaomoji = EmojiUtils.containsKaomoji(currentSentence.toString());
+                }
+
+                if (isEndMark && charStr.equals(".")) {
+                    String context = contextBuffer.toString();
+                    Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
+                    if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
+                        isEndMark = false;
+                    }
+                }
+
+                if (isEndMark) {
+                    shouldSendSentence = true;
+                } else if (isNewline) {
+                    shouldSendSentence = true;
+                } else if ((isPauseMark || isSpecialMark || isEmoji || containsKaomoji)
+                        && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+                    shouldSendSentence = true;
+                }
+
+                if (shouldSendSentence && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+                    String sentence = currentSentence.toString().trim();
+                    sentence = EmojiUtils.filterKaomoji(sentence);
+                    if (containsSubstantialContent(sentence)) {
+                        sentences.add(sentence);
+                        currentSentence.setLength(0);
+                    }
+                }
+
+                i += Character.charCount(codePoint);
+            }
+        }
+
+        private static boolean containsSubstantialContent(String text) {
+            if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
+                return false;
+            }
+            String stripped = text.replaceAll("[\\p{P}\\s]", "");
+            return stripped.length() >= 2;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmEndpointHealthTest {
+
+    @Test
+    void percentileNeedsMinimumSamples() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 10, 0.5, 4, 30_000);
+        health.recordFirstToken(100);
+        health.recordFirstToken(200);
+
+        assertEquals(-1, health.ttftPercentileNanos(0.95, 3));
+        assertEquals(200, health.ttftPercentileNanos(0.95, 2));
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 10, 0.5, 4, 30_000);
+        // 乱序写入1..10
+        for (long nanos : new long[]{7, 3, 10, 1, 5, 9, 2, 8, 4, 6}) {
+            health.recordFirstToken(nanos);
+        }
+
+        assertEquals(5, health.ttftPercentileNanos(0.5, 1));
+        assertEquals(9, health.ttftPercentileNanos(0.9, 1));
+        assertEquals(10, health.ttftPercentileNanos(0.95, 1));
+        assertEquals(1, health.ttftPercentileNanos(0, 1));
+    }
+
+    @Test
+    void percentileOnlyCoversTheWindow() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 3, 0.5, 4, 30_000);
+        for (long nanos : new long[]{1000, 1000, 1000, 10, 20, 30}) {
+            health.recordFirstToken(nanos);
+        }
+
+        // 早于窗口的慢样本已经滚出
+        assertEquals(30, health.ttftPercentileNanos(1, 1));
+    }
+
+    @Test
+    void breakerOpensAtFailureRateAfterMinimumCalls() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 10, 0.5, 4, 30_000);
+        health.recordSuccess();
+        health.recordFailure();
+        health.recordFailure();
+
+        // 调用次数不足时不熔断
+        assertEquals(LlmEndpointHealth.State.CLOSED, health.getState());
+        assertTrue(health.tryAcquire());
+
+        health.recordFailure();
+        assertEquals(LlmEndpointHealth.State.OPEN, health.getState());
+        assertEquals(0.75, health.failureRate());
+        assertFalse(health.tryAcquire());
+        assertFalse(health.isAvailable());
+    }
+
+    @Test
+    void breakerStaysClosedBelowThreshold() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 10, 0.5, 4, 30_000);
+        health.recordFailure();
+        for (int i = 0; i < 5; i++) {
+            health.recordSuccess();
+        }
+
+        assertEquals(LlmEndpointHealth.State.CLOSED, health.getState());
+    }
+
+    @Test
+    void halfOpenAllowsOneProbeAndClosesOnSuccess() {
+        LlmEndpointHealth health = openedHealth();
+
+        assertTrue(health.isAvailable());
+        assertTrue(health.tryAcquire());
+        assertEquals(LlmEndpointHealth.State.HALF_OPEN, health.getState());
+        // 探测进行中不再放行
+        assertFalse(health.tryAcquire());
+        assertFalse(health.isAvailable());
+
+        health.recordSuccess();
+        assertEquals(LlmEndpointHealth.State.CLOSED, health.getState());
+        assertEquals(0, health.failureRate());
+        assertTrue(health.tryAcquire());
+    }
+
+    @Test
+    void failedProbeReopens() {
+        LlmEndpointHealth health = openedHealth();
+        assertTrue(health.tryAcquire());
+
+        health.recordFailure();
+
+        assertEquals(LlmEndpointHealth.State.OPEN, health.getState());
+    }
+
+    @Test
+    void cancelledProbeReleasesTheSlot() {
+        LlmEndpointHealth health = openedHealth();
+        assertTrue(health.tryAcquire());
+
+        health.recordCancelled();
+
+        assertEquals(LlmEndpointHealth.State.HALF_OPEN, health.getState());
+        assertTrue(health.tryAcquire());
+    }
+
+    // 熔断时间为0，打开后下一次tryAcquire即进入半开
+    private static LlmEndpointHealth openedHealth() {
+        LlmEndpointHealth health = new LlmEndpointHealth(1, 10, 0.5, 2, 0);
+        health.recordFailure();
+        health.recordFailure();
+        assertEquals(LlmEndpointHealth.State.OPEN, health.getState());
+        return health;
+    }
+}
@@ -0,0 +1,99 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import com.xiaozhi.entity.SysRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LlmRouterTest {
+
+    private LlmRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new LlmRouter();
+        ReflectionTestUtils.setField(router, "windowSize", 20);
+        ReflectionTestUtils.setField(router, "hedgePercentile", 0.95);
+        ReflectionTestUtils.setField(router, "hedgeMinSamples", 5);
+        ReflectionTestUtils.setField(router, "hedgeDefaultMs", 3000L);
+        ReflectionTestUtils.setField(router, "hedgeMinMs", 500L);
+        ReflectionTestUtils.setField(router, "hedgeMaxMs", 8000L);
+        ReflectionTestUtils.setField(router, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(router, "minCalls", 2);
+        ReflectionTestUtils.setField(router, "openMillis", 60_000L);
+    }
+
+    @Test
+    void hedgeDelayUsesDefaultUntilEnoughSamples() {
+        recordFirstTokens(1, 1200, 4);
+
+        assertEquals(Duration.ofMillis(3000), router.hedgeDelay(1));
+    }
+
+    @Test
+    void hedgeDelayFollowsTheFirstTokenPercentile() {
+        recordFirstTokens(1, 1000, 18);
+        recordFirstTokens(1, 2500, 2);
+
+        // 20个样本的p95是第19个
+        assertEquals(Duration.ofMillis(2500), router.hedgeDelay(1));
+    }
+
+    @Test
+    void hedgeDelayIsClamped() {
+        recordFirstTokens(1, 100, 10);
+        recordFirstTokens(2, 20_000, 10);
+
+        assertEquals(Duration.ofMillis(500), router.hedgeDelay(1));
+        assertEquals(Duration.ofMillis(8000), router.hedgeDelay(2));
+    }
+
+    @Test
+    void routeKeepsGroupOrderWithPrimaryFirst() {
+        // 无效项和权重为0的项被忽略
+        SysRole role = new SysRole().setModelId(3).setModelGroup("1, 2, x, 4:0");
+        assertEquals(List.of(3, 1, 2), router.route(role));
+
+        // 组内已包含主模型时按组内顺序
+        role.setModelGroup("1, 3, 2, 1");
+        assertEquals(List.of(1, 3, 2), router.route(role));
+    }
+
+    @Test
+    void routeSkipsEndpointsWithOpenBreaker() {
+        SysRole role = new SysRole().setModelId(1).setModelGroup("2,3");
+        router.health(2).recordFailure();
+        router.health(2).recordFailure();
+
+        assertEquals(List.of(1, 3), router.route(role));
+    }
+
+    @Test
+    void routeFallsBackToFullOrderWhenAllAreOpen() {
+        SysRole role = new SysRole().setModelId(1).setModelGroup("2");
+        for (Integer configId : List.of(1, 2)) {
+            router.health(configId).recordFailure();
+            router.health(configId).recordFailure();
+        }
+
+        assertEquals(List.of(1, 2), router.route(role));
+    }
+
+    @Test
+    void parseGroupReadsWeights() {
+        List<LlmRouter.Member> members = LlmRouter.parseGroup(1, "2:3, 1:2");
+
+        assertEquals(List.of(new LlmRouter.Member(2, 3, true), new LlmRouter.Member(1, 2, true)), members);
+    }
+
+    private void recordFirstTokens(Integer configId, long millis, int count) {
+        for (int i = 0; i < count; i++) {
+            router.health(configId).recordFirstToken(millis * 1_000_000L);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.xiaozhi.dialogue.llm.router;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingChatModelTest {
+
+    private static final long HEDGE_DELAY_MS = 200;
+
+    private LlmRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new LlmRouter();
+        ReflectionTestUtils.setField(router, "windowSize", 20);
+        ReflectionTestUtils.setField(router, "hedgePercentile", 0.95);
+        ReflectionTestUtils.setField(router, "hedgeMinSamples", 10);
+        ReflectionTestUtils.setField(router, "hedgeDefaultMs", HEDGE_DELAY_MS);
+        ReflectionTestUtils.setField(router, "hedgeMinMs", 0L);
+        ReflectionTestUtils.setField(router, "hedgeMaxMs", 8000L);
+        ReflectionTestUtils.setField(router, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(router, "minCalls", 2);
+        ReflectionTestUtils.setField(router, "openMillis", 60_000L);
+    }
+
+    @Test
+    void blockingCallDoesNotRecordFirstToken() {
+        RoutingChatModel model = model(new StubModel(prompt -> Flux.just(response("你好"))));
+
+        assertEquals("你好", text(model.call(prompt())));
+
+        // 整体耗时不能作为首token样本，否则会拉高对冲延迟
+        assertEquals(-1, router.health(1).ttftPercentileNanos(0.5, 1));
+        assertEquals(0, router.health(1).failureRate());
+    }
+
+    @Test
+    void blockingCallFailsOverAndSkipsOpenBreaker() {
+        StubModel failing = new StubModel(prompt -> Flux.error(new IllegalStateException("服务不可用")));
+        RoutingChatModel model = model(failing, new StubModel(prompt -> Flux.just(response("备用"))));
+
+        assertEquals("备用", text(model.call(prompt())));
+        assertEquals("备用", text(model.call(prompt())));
+        assertEquals(LlmEndpointHealth.State.OPEN, router.health(1).getState());
+
+        // 熔断后不再调用第一个端点
+        assertEquals("备用", text(model.call(prompt())));
+        assertEquals(2, failing.calls.get());
+    }
+
+    @Test
+    void blockingCallThrowsLastErrorWhenAllFail() {
+        RoutingChatModel model = model(new StubModel(prompt -> Flux.error(new IllegalStateException("服务不可用"))));
+
+        assertThrows(IllegalStateException.class, () -> model.call(prompt()));
+    }
+
+    @Test
+    void hedgeFiresWhenPrimaryHasNoFirstToken() {
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        StubModel primary = new StubModel(prompt -> Flux.just(response("主"))
+                .delaySubscription(Duration.ofSeconds(5))
+                .doOnCancel(() -> primaryCancelled.set(true)));
+        RoutingChatModel model = model(primary, new StubModel(prompt -> Flux.just(response("备用"))));
+
+        long start = System.nanoTime();
+        assertEquals(List.of("备用"), texts(model.stream(prompt())));
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= HEDGE_DELAY_MS, "等待了" + elapsed + "ms");
+        assertTrue(primaryCancelled.get());
+        // 落败的主请求以已等待的时间作为首token样本，不计入失败
+        assertTrue(router.health(1).ttftPercentileNanos(1, 1) >= TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS));
+        assertEquals(0, router.health(1).failureRate());
+    }
+
+    @Test
+    void errorBeforeFirstTokenFailsOverWithoutWaiting() {
+        ReflectionTestUtils.setField(router, "hedgeDefaultMs", 5000L);
+        RoutingChatModel model = model(
+                new StubModel(prompt -> Flux.error(new IllegalStateException("服务不可用"))),
+                new StubModel(prompt -> Flux.just(response("备用"))));
+
+        long start = System.nanoTime();
+        assertEquals(List.of("备用"), texts(model.stream(prompt())));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(1.0, router.health(1).failureRate());
+    }
+
+    @Test
+    void noHedgeOnceARequestOwnsTheToolCalls() {
+        // 主请求在对冲延迟前开始执行工具，之后即使首token晚到也不发起对冲
+        StubModel primary = new StubModel(prompt -> Flux.defer(() -> {
+            assertTrue(ticket(prompt).claim());
+            return Flux.just(response("主")).delaySubscription(Duration.ofMillis(HEDGE_DELAY_MS * 2));
+        }));
+        StubModel hedge = new StubModel(prompt -> Flux.just(response("备用")));
+        RoutingChatModel model = model(primary, hedge);
+
+        assertEquals(List.of("主"), texts(model.stream(prompt())));
+        assertEquals(0, hedge.calls.get());
+    }
+
+    @Test
+    void hedgedRequestsShareOneTicketOwner() {
+        AtomicInteger owner = new AtomicInteger(-1);
+        RoutingChatModel.HedgeTicket primary = new RoutingChatModel.HedgeTicket(owner, 0);
+        RoutingChatModel.HedgeTicket hedge = new RoutingChatModel.HedgeTicket(owner, 1);
+
+        assertTrue(hedge.claim());
+        // 同一请求的后续工具调用仍然放行，另一方落败
+        assertTrue(hedge.claim());
+        assertFalse(primary.claim());
+        assertEquals(1, owner.get());
+    }
+
+    @Test
+    void eachAttemptGetsItsOwnTicket() {
+        List<RoutingChatModel.HedgeTicket> tickets = new CopyOnWriteArrayList<>();
+        Function<Prompt, Flux<ChatResponse>> slow = prompt -> {
+            tickets.add(ticket(prompt));
+            return Flux.just(response("慢")).delaySubscription(Duration.ofSeconds(5));
+        };
+        RoutingChatModel model = model(new StubModel(slow),
+                new StubModel(prompt -> {
+                    tickets.add(ticket(prompt));
+                    return Flux.just(response("备用"));
+                }));
+
+        assertEquals(List.of("备用"), texts(model.stream(prompt())));
+
+        assertEquals(2, tickets.size());
+        assertSame(tickets.get(0).owner(), tickets.get(1).owner());
+        assertEquals(0, tickets.get(0).attempt());
+        assertEquals(1, tickets.get(1).attempt());
+    }
+
+    private RoutingChatModel model(StubModel... models) {
+        List<RoutingChatModel.Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < models.length; i++) {
+            StubModel stub = models[i];
+            endpoints.add(new RoutingChatModel.Endpoint(i + 1, () -> stub));
+        }
+        return new RoutingChatModel(endpoints, router);
+    }
+
+    private static Prompt prompt() {
+        return new Prompt("你好", ToolCallingChatOptions.builder().build());
+    }
+
+    private static RoutingChatModel.HedgeTicket ticket(Prompt prompt) {
+        ToolCallingChatOptions options = (ToolCallingChatOptions) prompt.getOptions();
+        return (RoutingChatModel.HedgeTicket) options.getToolContext().get(RoutingChatModel.TOOL_CONTEXT_HEDGE_KEY);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult().getOutput().getText();
+    }
+
+    private static List<String> texts(Flux<ChatResponse> stream) {
+        return stream.map(RoutingChatModelTest::text).collectList().block(Duration.ofSeconds(5));
+    }
+
+    /**
+     * 按给定函数返回结果的模型，阻塞调用取流的最后一个结果
+     */
+    static final class StubModel implements ChatModel {
+        private final Function<Prompt, Flux<ChatResponse>> responses;
+        final AtomicInteger calls = new AtomicInteger();
+
+        StubModel(Function<Prompt, Flux<ChatResponse>> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            return responses.apply(prompt).blockLast();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            calls.incrementAndGet();
+            return responses.apply(prompt);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.xiaozhi.dialogue.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PlayoutTrackerTest {
+
+    private static final long DEVICE_BUFFER_MS = 200;
+
+    private long nowNanos;
+    private PlayoutTracker tracker;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setUp() {
+        nowNanos = TimeUnit.SECONDS.toNanos(100);
+        tracker = new PlayoutTracker(() -> nowNanos);
+        scheduler = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(scheduler).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void burstOfFramesPlaysForFramesTimesFrameDurationMinusElapsed() {
+        sendFrames(10);
+        advance(100);
+
+        CompletableFuture<Boolean> drained = whenDrained();
+
+        // 10帧×60ms，发送后过了100ms，再加设备缓冲
+        assertEquals(10 * 60 - 100 + DEVICE_BUFFER_MS, scheduledDelayMs());
+        assertFalse(drained.isDone());
+    }
+
+    @Test
+    void pacedFramesOnlyCountFromTheLastFrame() {
+        // 按实时节奏发送，每帧的播放在上一帧播完时开始
+        for (int i = 0; i < 10; i++) {
+            sendFrames(1);
+            advance(60);
+        }
+        advance(20);
+
+        whenDrained();
+
+        assertEquals(DEVICE_BUFFER_MS - 20, scheduledDelayMs());
+    }
+
+    @Test
+    void framesSentAfterAGapStartFromNow() {
+        sendFrames(5);
+        advance(1000);
+        sendFrames(2);
+
+        whenDrained();
+
+        assertEquals(2 * 60 + DEVICE_BUFFER_MS, scheduledDelayMs());
+    }
+
+    @Test
+    void completesImmediatelyWhenPlayoutAlreadyElapsed() {
+        sendFrames(3);
+        advance(3 * 60 + DEVICE_BUFFER_MS);
+
+        CompletableFuture<Boolean> drained = whenDrained();
+
+        assertTrue(drained.join());
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void timerReschedulesWhenMoreAudioWasSent() {
+        sendFrames(2);
+        CompletableFuture<Boolean> drained = whenDrained();
+        Runnable timer = scheduledTimer();
+
+        advance(2 * 60 + DEVICE_BUFFER_MS);
+        sendFrames(3);
+        clearInvocations(scheduler);
+        timer.run();
+
+        assertFalse(drained.isDone());
+        assertEquals(3 * 60 + DEVICE_BUFFER_MS, scheduledDelayMs());
+
+        advance(3 * 60 + DEVICE_BUFFER_MS);
+        scheduledTimer().run();
+        assertTrue(drained.join());
+    }
+
+    @Test
+    void drainAckIsIgnoredUnlessSupported() {
+        sendFrames(5);
+        CompletableFuture<Boolean> drained = whenDrained();
+        advance(5 * 60);
+
+        tracker.onDrained();
+
+        assertFalse(drained.isDone());
+    }
+
+    @Test
+    void drainAckEndsPlayoutOnceSentAudioHasPlayed() {
+        tracker.setAckSupported(true);
+        sendFrames(5);
+        CompletableFuture<Boolean> drained = whenDrained();
+
+        // 最后一帧还没开始播放时的报告来自之前的空队列，忽略
+        advance(3 * 60);
+        tracker.onDrained();
+        assertFalse(drained.isDone());
+
+        // 不必等待设备缓冲的估计
+        advance(60);
+        tracker.onDrained();
+        assertTrue(drained.join());
+    }
+
+    @Test
+    void textHoldOverlapsAudio() {
+        sendFrames(20);
+        tracker.hold(1000);
+
+        whenDrained();
+
+        // 音频1200ms加缓冲长于文字显示的1000ms
+        assertEquals(20 * 60 + DEVICE_BUFFER_MS, scheduledDelayMs());
+    }
+
+    @Test
+    void textHoldExtendsBeyondShortAudio() {
+        sendFrames(2);
+        tracker.hold(1000);
+        advance(300);
+        tracker.hold(1000);
+
+        whenDrained();
+
+        assertEquals(1000, scheduledDelayMs());
+    }
+
+    @Test
+    void newWaitSupersedesPrevious() {
+        sendFrames(5);
+        CompletableFuture<Boolean> first = whenDrained();
+        CompletableFuture<Boolean> second = whenDrained();
+
+        assertFalse(first.join());
+        assertFalse(second.isDone());
+
+        tracker.supersede();
+        assertFalse(second.join());
+    }
+
+    @Test
+    void resetDropsSentAudioAndHold() {
+        sendFrames(50);
+        tracker.hold(5000);
+        CompletableFuture<Boolean> interrupted = whenDrained();
+
+        tracker.reset();
+
+        assertFalse(interrupted.join());
+        clearInvocations(scheduler);
+        assertTrue(whenDrained().join());
+    }
+
+    private void sendFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            tracker.onFrameSent();
+        }
+    }
+
+    private void advance(long millis) {
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private CompletableFuture<Boolean> whenDrained() {
+        return tracker.whenDrained(scheduler, TimeUnit.MILLISECONDS.toNanos(DEVICE_BUFFER_MS));
+    }
+
+    private long scheduledDelayMs() {
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler).schedule(any(Runnable.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        return TimeUnit.NANOSECONDS.toMillis(delay.getValue());
+    }
+
+    private Runnable scheduledTimer() {
+        ArgumentCaptor<Runnable> timer = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(timer.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+        return timer.getValue();
+    }
+}
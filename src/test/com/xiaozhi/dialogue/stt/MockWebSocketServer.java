@@ -0,0 +1,199 @@
+package com.xiaozhi.dialogue.stt;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的本地WebSocket服务端
+ * 只实现预连接池测试需要的部分：握手、回显文本、回应心跳和关闭握手，可以拒绝握手或暂缓握手的响应。
+ */
+class MockWebSocketServer implements AutoCloseable {
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger closedByClient = new AtomicInteger();
+
+    // 非0时以该状态码拒绝握手
+    private volatile int rejectStatus;
+    // 不为null时握手请求等待放行后再响应
+    private volatile CountDownLatch handshakeGate;
+
+    MockWebSocketServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("mock-ws-accept").start(this::acceptLoop);
+    }
+
+    String url() {
+        return "ws://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    int handshakes() {
+        return handshakes.get();
+    }
+
+    int rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * 客户端发起关闭握手的连接数
+     */
+    int closedByClient() {
+        return closedByClient.get();
+    }
+
+    void rejectHandshakes(int status) {
+        rejectStatus = status;
+    }
+
+    /**
+     * 暂缓之后的握手响应，返回的latch倒数后放行
+     */
+    CountDownLatch holdHandshakes() {
+        CountDownLatch gate = new CountDownLatch(1);
+        handshakeGate = gate;
+        return gate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                Thread.ofVirtual().name("mock-ws-conn").start(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+            String key = readHandshake(input);
+            CountDownLatch gate = handshakeGate;
+            if (gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+                return;
+            }
+            int status = rejectStatus;
+            if (status != 0) {
+                rejected.incrementAndGet();
+                output.write(("HTTP/1.1 " + status + " Rejected\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+                return;
+            }
+            output.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            handshakes.incrementAndGet();
+            readFrames(new DataInputStream(input), output);
+        } catch (IOException e) {
+            // 连接被客户端或测试结束时断开
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readHandshake(InputStream input) throws IOException {
+        // 客户端收到握手响应之前不会发送数据帧，读取请求时不会读走帧数据
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+        String key = null;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            throw new IOException("不是WebSocket握手请求");
+        }
+        return key;
+    }
+
+    private void readFrames(DataInputStream input, OutputStream output) throws IOException {
+        while (true) {
+            int first = input.readUnsignedByte();
+            int second = input.readUnsignedByte();
+            int opcode = first & 0x0F;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = input.readUnsignedShort();
+            } else if (length == 127) {
+                length = input.readLong();
+            }
+            byte[] mask = new byte[4];
+            if ((second & 0x80) != 0) {
+                input.readFully(mask);
+            }
+            byte[] payload = new byte[(int) length];
+            input.readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i % 4];
+            }
+            switch (opcode) {
+                case 0x1, 0x2 -> writeFrame(output, opcode, payload);
+                case 0x9 -> writeFrame(output, 0xA, payload);
+                case 0x8 -> {
+                    closedByClient.incrementAndGet();
+                    writeFrame(output, 0x8, payload);
+                    return;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static synchronized void writeFrame(OutputStream output, int opcode, byte[] payload) throws IOException {
+        output.write(0x80 | opcode);
+        if (payload.length < 126) {
+            output.write(payload.length);
+        } else {
+            output.write(126);
+            output.write(payload.length >>> 8);
+            output.write(payload.length & 0xFF);
+        }
+        output.write(payload);
+        output.flush();
+    }
+
+    private static String accept(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.xiaozhi.dialogue.stt;
+
+import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
+import com.xiaozhi.entity.SysConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SttOrchestratorTest {
+
+    private static final long HEDGE_DEADLINE_MS = 1500;
+
+    private final SysConfig config = new SysConfig().setProvider("cloud").setConfigId(1);
+    private StubStt cloud;
+    private StubStt local;
+    private SttServiceFactory factory;
+    private SttOrchestrator orchestrator;
+
+    @BeforeEach
+    void setUp() {
+        cloud = new StubStt("cloud");
+        local = new StubStt("vosk");
+        factory = mock(SttServiceFactory.class);
+        when(factory.getSttService(any())).thenReturn(cloud);
+        when(factory.getLocalSttService()).thenReturn(local);
+
+        orchestrator = new SttOrchestrator();
+        ReflectionTestUtils.setField(orchestrator, "sttFactory", factory);
+        ReflectionTestUtils.setField(orchestrator, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(orchestrator, "hedgeDeadlineMs", HEDGE_DEADLINE_MS);
+        ReflectionTestUtils.setField(orchestrator, "timeoutMs", 3000L);
+        ReflectionTestUtils.setField(orchestrator, "maxDurationMs", 10_000L);
+        ReflectionTestUtils.setField(orchestrator, "windowSize", 4);
+        ReflectionTestUtils.setField(orchestrator, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(orchestrator, "minCalls", 2);
+        ReflectionTestUtils.setField(orchestrator, "openMillis", 60_000L);
+        orchestrator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orchestrator.destroy();
+    }
+
+    @Test
+    void primaryWinsWithinDeadline() throws InterruptedException {
+        cloud.respond("云端结果", 100);
+        local.respond("本地结果", 5000);
+
+        long start = System.nanoTime();
+        assertEquals("云端结果", orchestrator.recognize(config, endedAudio()));
+
+        assertTrue(elapsedMs(start) < HEDGE_DEADLINE_MS);
+        // 落选的本地识别被取消
+        assertTrue(local.cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void primaryIsPreferredEvenWhenLocalFinishesFirst() {
+        cloud.respond("云端结果", 300);
+        local.respond("本地结果", 0);
+
+        assertEquals("云端结果", orchestrator.recognize(config, endedAudio()));
+    }
+
+    @Test
+    void hedgeFiresAfterDeadline() throws InterruptedException {
+        cloud.respond("云端结果", 5000);
+        local.respond("本地结果", 0);
+
+        long start = System.nanoTime();
+        assertEquals("本地结果", orchestrator.recognize(config, endedAudio()));
+
+        long elapsed = elapsedMs(start);
+        assertTrue(elapsed >= HEDGE_DEADLINE_MS, "等待了" + elapsed + "ms");
+        assertTrue(elapsed < HEDGE_DEADLINE_MS + 1000, "等待了" + elapsed + "ms");
+        // 超过期限的云端识别被取消，不再等待服务端结果
+        assertTrue(cloud.cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fallsBackToLocalWhenPrimaryFails() {
+        cloud.fail();
+        local.respond("本地结果", 0);
+
+        long start = System.nanoTime();
+        assertEquals("本地结果", orchestrator.recognize(config, endedAudio()));
+
+        // 首选服务已经失败，不必等到对冲期限
+        assertTrue(elapsedMs(start) < HEDGE_DEADLINE_MS);
+    }
+
+    @Test
+    void hardTimeoutAfterAudioEnds() throws InterruptedException {
+        ReflectionTestUtils.setField(orchestrator, "hedgeDeadlineMs", 200L);
+        ReflectionTestUtils.setField(orchestrator, "timeoutMs", 500L);
+        cloud.respond("云端结果", 60_000);
+        local.respond("本地结果", 60_000);
+
+        long start = System.nanoTime();
+        assertNull(orchestrator.recognize(config, endedAudio()));
+
+        assertTrue(elapsedMs(start) < 1500);
+        assertTrue(cloud.cancelled.await(1, TimeUnit.SECONDS));
+        assertTrue(local.cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void hardTimeoutWhenAudioNeverEnds() throws InterruptedException {
+        ReflectionTestUtils.setField(orchestrator, "maxDurationMs", 500L);
+        cloud.respond("云端结果", 0);
+        local.respond("本地结果", 0);
+        SttAudioStream audio = new SttAudioStream(16);
+        audio.emit(new byte[320]);
+
+        // 设备不再发送音频也不结束，识别线程不会一直等待
+        long start = System.nanoTime();
+        assertNull(orchestrator.recognize(config, audio));
+
+        assertTrue(elapsedMs(start) < 1500);
+        assertTrue(audio.isCancelled());
+        assertTrue(cloud.cancelled.await(1, TimeUnit.SECONDS));
+        assertTrue(local.cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void breakerOpensAndRoutesToLocal() {
+        cloud.fail();
+        local.respond("本地结果", 0);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("本地结果", orchestrator.recognize(config, endedAudio()));
+        }
+        assertEquals(2, cloud.calls.get());
+
+        // 熔断后不再调用云端识别
+        assertEquals("本地结果", orchestrator.recognize(config, endedAudio()));
+        assertEquals(2, cloud.calls.get());
+        assertEquals(3, local.calls.get());
+    }
+
+    @Test
+    void breakerOpenWithoutLocalFailsFast() {
+        when(factory.getLocalSttService()).thenReturn(null);
+        cloud.fail();
+
+        for (int i = 0; i < 2; i++) {
+            assertNull(orchestrator.recognize(config, endedAudio()));
+        }
+        assertEquals(2, cloud.calls.get());
+
+        SttAudioStream audio = new SttAudioStream(16);
+        audio.emit(new byte[320]);
+        long start = System.nanoTime();
+        assertNull(orchestrator.recognize(config, audio));
+
+        assertEquals(2, cloud.calls.get());
+        assertTrue(audio.isCancelled());
+        assertTrue(elapsedMs(start) < 100);
+    }
+
+    @Test
+    void timeoutsCountTowardsTheBreaker() {
+        ReflectionTestUtils.setField(orchestrator, "timeoutMs", 200L);
+        ReflectionTestUtils.setField(orchestrator, "hedgeDeadlineMs", 100L);
+        cloud.respond("云端结果", 60_000);
+        local.respond("", 0);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("", orchestrator.recognize(config, endedAudio()));
+        }
+
+        orchestrator.recognize(config, endedAudio());
+        assertEquals(2, cloud.calls.get());
+    }
+
+    private static SttAudioStream endedAudio() {
+        SttAudioStream audio = new SttAudioStream(16);
+        audio.emit(new byte[320]);
+        audio.complete();
+        return audio;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 可注入延迟和失败的识别服务：读完音频后等待指定时间再返回结果
+     */
+    static final class StubStt implements SttService {
+        private final String name;
+        private volatile String text = "";
+        private volatile long latencyMs;
+        private volatile boolean failing;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+
+        StubStt(String name) {
+            this.name = name;
+        }
+
+        void respond(String text, long latencyMs) {
+            this.text = text;
+            this.latencyMs = latencyMs;
+        }
+
+        void fail() {
+            this.failing = true;
+        }
+
+        @Override
+        public String getProviderName() {
+            return name;
+        }
+
+        @Override
+        public String recognition(byte[] audioData) {
+            return text;
+        }
+
+        @Override
+        public String streamRecognition(SttAudioStream audioStream) {
+            calls.incrementAndGet();
+            try {
+                audioStream.pushTo(new SttAudioStream.AudioConsumer() {
+                    @Override
+                    public void onAudio(byte[] chunk) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                }).join();
+            } catch (CompletionException | CancellationException e) {
+                cancelled.countDown();
+                return null;
+            }
+            if (failing) {
+                throw new IllegalStateException(name + "识别失败");
+            }
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                return null;
+            }
+            return text;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.xiaozhi.dialogue.stt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static com.xiaozhi.dialogue.stt.WebSocketPoolTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebSocketPoolManagerTest {
+
+    private MockWebSocketServer server;
+    private MeterRegistry registry;
+    private WebSocketPoolManager manager;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws IOException {
+        server = new MockWebSocketServer();
+        registry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(registry);
+
+        manager = new WebSocketPoolManager();
+        ReflectionTestUtils.setField(manager, "size", 1);
+        ReflectionTestUtils.setField(manager, "keepWarmMs", 60_000L);
+        ReflectionTestUtils.setField(manager, "pingIntervalMs", 5_000L);
+        ReflectionTestUtils.setField(manager, "meterRegistry", provider);
+        manager.init();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        manager.destroy();
+        server.close();
+    }
+
+    @Test
+    void sharesOnePoolPerName() {
+        WebSocketPool pool = manager.get("funasr:1", 10_000, this::request);
+
+        assertSame(pool, manager.get("funasr:1", 10_000, this::request));
+        assertNotSame(pool, manager.get("funasr:2", 10_000, this::request));
+    }
+
+    @Test
+    void exposesPoolStateAsMetrics() {
+        WebSocketPool pool = manager.get("funasr:1", 10_000, this::request);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        assertEquals(1.0, registry.get("stt.connection.pool.idle").tag("pool", "funasr:1").gauge().value());
+        assertEquals(0.0, registry.get("stt.connection.pool.connecting").tag("pool", "funasr:1").gauge().value());
+
+        pool.acquire(new WebSocketPoolTest.RecordingListener());
+        assertEquals(1.0, registry.get("stt.connection.pool.hits").tag("pool", "funasr:1").functionCounter().count());
+        assertEquals(0.0, registry.get("stt.connection.pool.misses").tag("pool", "funasr:1").functionCounter().count());
+    }
+
+    @Test
+    void removeClosesWarmConnectionsAndUnregistersMetrics() {
+        WebSocketPool pool = manager.get("xfyun:1", 10_000, this::request);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        manager.remove("xfyun:1");
+
+        await(() -> server.closedByClient() == 1, "关闭预连接");
+        assertNull(registry.find("stt.connection.pool.idle").tag("pool", "xfyun:1").gauge());
+        // 配置变更后重新创建的是新池
+        assertNotSame(pool, manager.get("xfyun:1", 10_000, this::request));
+    }
+
+    @Test
+    void scheduledMaintenanceRefillsAcquiredConnections() {
+        WebSocketPool pool = manager.get("funasr:1", 10_000, this::request);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        pool.acquire(new WebSocketPoolTest.RecordingListener()).close(1000, null);
+
+        await(() -> pool.idleCount() == 1 && server.handshakes() == 2, "补充预连接");
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url()).build();
+    }
+}
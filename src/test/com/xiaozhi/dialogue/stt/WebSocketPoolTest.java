@@ -0,0 +1,237 @@
+package com.xiaozhi.dialogue.stt;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class WebSocketPoolTest {
+
+    private static final long MAX_IDLE_MS = 10_000;
+    private static final long KEEP_WARM_MS = 60_000;
+
+    private MockWebSocketServer server;
+    private OkHttpClient client;
+    private final List<WebSocketPool> pools = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebSocketServer();
+        client = new OkHttpClient.Builder().build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pools.forEach(WebSocketPool::close);
+        server.close();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Test
+    void acquiresWarmConnectionAndRefills() throws InterruptedException {
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        RecordingListener listener = new RecordingListener();
+        WebSocket webSocket = pool.acquire(listener);
+
+        // 已经打开的预连接在acquire返回前回调onOpen
+        assertEquals(0, listener.opened.getCount());
+        assertEquals(1, pool.hitCount());
+        assertEquals(0, pool.missCount());
+        webSocket.send("hello");
+        assertEquals("hello", listener.messages.poll(5, TimeUnit.SECONDS));
+
+        // 取走后在后台补充
+        await(() -> pool.idleCount() == 1 && server.handshakes() == 2, "补充预连接");
+        webSocket.close(1000, null);
+    }
+
+    @Test
+    void opensNewConnectionWhenNoneIsWarm() throws InterruptedException {
+        WebSocketPool pool = pool(0);
+
+        RecordingListener listener = new RecordingListener();
+        WebSocket webSocket = pool.acquire(listener);
+
+        assertTrue(listener.opened.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.hitCount());
+        assertEquals(1, pool.missCount());
+        assertEquals(0, pool.idleCount() + pool.connectingCount());
+        webSocket.close(1000, null);
+    }
+
+    @Test
+    void replacesConnectionsOlderThanMaxIdle() {
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        pool.maintain(System.currentTimeMillis() + MAX_IDLE_MS);
+
+        await(() -> server.closedByClient() == 1, "关闭过期的预连接");
+        await(() -> pool.idleCount() == 1 && server.handshakes() == 2, "换新预连接");
+    }
+
+    @Test
+    void closesWarmConnectionsWhenPoolGoesIdle() {
+        WebSocketPool pool = pool(2);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 2, "预连接打开");
+
+        // 超过保持时间没有使用
+        pool.maintain(System.currentTimeMillis() + KEEP_WARM_MS + 1);
+
+        assertEquals(0, pool.idleCount() + pool.connectingCount());
+        await(() -> server.closedByClient() == 2, "关闭空闲的预连接");
+        assertEquals(2, server.handshakes());
+    }
+
+    @Test
+    void closeReleasesWarmConnectionsAndStopsRefilling() {
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        await(() -> pool.idleCount() == 1, "预连接打开");
+
+        pool.close();
+        pool.prewarm();
+
+        assertEquals(0, pool.idleCount() + pool.connectingCount());
+        await(() -> server.closedByClient() == 1, "关闭预连接");
+    }
+
+    @Test
+    void adoptsConnectionStillHandshaking() throws InterruptedException {
+        CountDownLatch gate = server.holdHandshakes();
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        assertEquals(1, pool.connectingCount());
+
+        RecordingListener listener = new RecordingListener();
+        WebSocket webSocket = pool.acquire(listener);
+
+        // 取用正在握手的预连接，不新建连接，握手完成后使用者收到onOpen
+        assertEquals(1, pool.hitCount());
+        assertEquals(0, pool.missCount());
+        assertEquals(1, listener.opened.getCount());
+        gate.countDown();
+        assertTrue(listener.opened.await(5, TimeUnit.SECONDS));
+        webSocket.send("adopted");
+        assertEquals("adopted", listener.messages.poll(5, TimeUnit.SECONDS));
+
+        // 握手的连接一个交给使用者，一个是补充的预连接
+        await(() -> pool.idleCount() == 1 && server.handshakes() == 2, "补充预连接");
+        webSocket.close(1000, null);
+    }
+
+    @Test
+    void backsOffAfterHandshakeFailures() {
+        server.rejectHandshakes(503);
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        await(() -> pool.failureCount() == 1, "第一次预连接失败");
+
+        // 第一次失败后等待1秒
+        pool.maintain(System.currentTimeMillis());
+        assertEquals(0, pool.connectingCount());
+        pool.maintain(System.currentTimeMillis() + 1100);
+        await(() -> pool.failureCount() == 2, "第二次预连接失败");
+
+        // 连续失败时间隔加倍
+        pool.maintain(System.currentTimeMillis() + 1500);
+        assertEquals(0, pool.connectingCount());
+        assertEquals(2, server.rejected());
+
+        server.rejectHandshakes(0);
+        long recoveredAt = System.currentTimeMillis() + 2100;
+        pool.maintain(recoveredAt);
+        await(() -> pool.idleCount() == 1, "恢复后预连接打开");
+        assertEquals(2, pool.failureCount());
+
+        // 连接成功后重置间隔，之后的失败重新从1秒开始
+        server.rejectHandshakes(503);
+        pool.maintain(recoveredAt + MAX_IDLE_MS);
+        await(() -> pool.failureCount() == 3, "第三次预连接失败");
+        pool.maintain(System.currentTimeMillis() + 1100);
+        await(() -> pool.failureCount() == 4, "间隔已重置");
+    }
+
+    @Test
+    void acquireDoesNotRetryDuringBackoff() throws InterruptedException {
+        server.rejectHandshakes(503);
+        WebSocketPool pool = pool(1);
+        pool.prewarm();
+        await(() -> pool.failureCount() == 1, "预连接失败");
+
+        // 退避期间的识别直接新建连接，不补充预连接
+        RecordingListener listener = new RecordingListener();
+        pool.acquire(listener);
+
+        assertEquals(1, pool.missCount());
+        assertEquals(0, pool.connectingCount());
+        assertTrue(listener.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.failureCount());
+    }
+
+    private WebSocketPool pool(int size) {
+        Request request = new Request.Builder().url(server.url()).build();
+        WebSocketPool pool = new WebSocketPool("test", client, () -> request, size, MAX_IDLE_MS, KEEP_WARM_MS);
+        pools.add(pool);
+        return pool;
+    }
+
+    static void await(BooleanSupplier condition, String description) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("等待超时: " + description);
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("等待被中断: " + description);
+            }
+        }
+    }
+
+    static class RecordingListener extends WebSocketListener {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            opened.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            messages.add(text);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            failed.countDown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.xiaozhi.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AudioUtilsTest {
+
+    // MPEG-1 Layer III，128kbps，44.1kHz，单声道，无CRC
+    private static final byte[] FRAME_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0xC0};
+    private static final int FRAME_BYTES = 144 * 128000 / 44100;
+    private static final int SAMPLES_PER_FRAME = 1152;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void decodesSmallMp3To16kMonoPcm() throws IOException {
+        assumeTrue(AudioDecoder.isAvailable() || hasFfmpegCommand(), "没有可用的ffmpeg");
+        int frames = 40;
+        Path mp3 = writeSilentMp3(frames);
+
+        byte[] pcm = AudioUtils.mp3ToPcm(mp3.toString());
+
+        // 约1.04秒的静音，重采样到16kHz后每个样本2字节，允许解码器首尾的少量填充
+        double expectedSamples = (double) frames * SAMPLES_PER_FRAME * AudioUtils.SAMPLE_RATE / 44100;
+        assertEquals(0, pcm.length % 2);
+        assertEquals(expectedSamples, pcm.length / 2.0, expectedSamples * 0.1);
+        for (byte b : pcm) {
+            assertEquals(0, b);
+        }
+    }
+
+    @Test
+    void decodesSmallMp3InProcess() throws IOException {
+        assumeTrue(AudioDecoder.isAvailable(), "ffmpeg原生库不可用");
+        Path mp3 = writeSilentMp3(20);
+
+        byte[] pcm = AudioDecoder.decodeToPcm(mp3.toString());
+
+        double expectedSamples = 20.0 * SAMPLES_PER_FRAME * AudioUtils.SAMPLE_RATE / 44100;
+        assertEquals(expectedSamples, pcm.length / 2.0, expectedSamples * 0.1);
+    }
+
+    @Test
+    void missingNativeLibrariesSurfaceAsIOException() throws IOException {
+        assumeFalse(AudioDecoder.isAvailable(), "ffmpeg原生库可用");
+        assumeFalse(hasFfmpegCommand(), "ffmpeg命令可用");
+        Path mp3 = writeSilentMp3(4);
+
+        // 原生库缺失不能以NoClassDefFoundError等错误抛出，调用方按IOException处理
+        assertThrows(IOException.class, () -> AudioDecoder.decodeToPcm(mp3.toString()));
+        assertThrows(IOException.class, () -> AudioUtils.mp3ToPcm(mp3.toString()));
+        // 流式解码同样立即失败，不会让播放一直等待
+        try (InputStream input = Files.newInputStream(mp3)) {
+            assertThrows(IOException.class, () -> AudioUtils.decodeToPcm(input, pcm -> {
+            }));
+        }
+    }
+
+    @Test
+    void streamsSmallMp3ToPcm() throws IOException {
+        assumeTrue(AudioDecoder.isAvailable() || hasFfmpegCommand(), "没有可用的ffmpeg");
+        Path mp3 = writeSilentMp3(40);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream input = Files.newInputStream(mp3)) {
+            AudioUtils.decodeToPcm(input, out::writeBytes);
+        }
+
+        double expectedSamples = 40.0 * SAMPLES_PER_FRAME * AudioUtils.SAMPLE_RATE / 44100;
+        assertEquals(expectedSamples, out.size() / 2.0, expectedSamples * 0.1);
+    }
+
+    /**
+     * 生成由静音帧组成的mp3：帧头后的side info和主数据全为0，解码结果为静音
+     */
+    private Path writeSilentMp3(int frames) throws IOException {
+        byte[] data = new byte[frames * FRAME_BYTES];
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(FRAME_HEADER, 0, data, i * FRAME_BYTES, FRAME_HEADER.length);
+        }
+        Path mp3 = tempDir.resolve("silence.mp3");
+        Files.write(mp3, data);
+        return mp3;
+    }
+
+    private static boolean hasFfmpegCommand() {
+        try {
+            Process process = new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}